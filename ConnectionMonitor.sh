@@ -1,4 +1,14 @@
-if [ ! -s PingSites.properties ] || [ ! -s DBEmailer.properties ]; then
+if [ "$1" = "check" ]; then
+    CHECK_SOURCE=$(find test -name "$2.java" 2>/dev/null)
+    if [ -z "$2" ] || [ -z "$CHECK_SOURCE" ]; then
+        echo 'Usage: ConnectionMonitor.sh check <name> [arguments], where name is one of:'
+        find test -name '*.java' -exec basename {} .java \;
+    else
+        CHECK_CLASS=$(echo "$CHECK_SOURCE" | sed -e 's|^test/||' -e 's|\.java$||' -e 's|/|.|g')
+        shift 2
+        javac -cp ".:./lib/*:./test" "$CHECK_SOURCE" && java -cp ".:./lib/*:./test" "$CHECK_CLASS" "$@"
+    fi
+elif [ ! -s PingSites.properties ] || [ ! -s DBEmailer.properties ]; then
     echo 'A config file was not found, please run InitConfigs.sh and read the readme for more information.'
 else
     javac -cp ".:./lib/*" org/connectionmonitor/app/MonitorApp.java
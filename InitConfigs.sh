@@ -10,8 +10,22 @@ if [ ! -s DBEmailer.properties ]; then
 	echo 'DBName='>>DBEmailer.properties
     echo 'DBUser='>>DBEmailer.properties
     echo 'DBPassword='>>DBEmailer.properties
+    echo 'DBPoolSize=4'>>DBEmailer.properties
+    echo 'DBPartitionLog=false'>>DBEmailer.properties
+    echo 'StorageBackend=mysql'>>DBEmailer.properties
+    echo 'StorageDirectory=logstore'>>DBEmailer.properties
+    echo 'SampleStorage=false'>>DBEmailer.properties
+    echo 'SampleDirectory=samples'>>DBEmailer.properties
+    echo 'SampleBlockSize=600'>>DBEmailer.properties
+    echo 'SampleRetainDays=30'>>DBEmailer.properties
+    echo 'SpoolDirectory=spool'>>DBEmailer.properties
+    echo 'SpoolMaxMB=64'>>DBEmailer.properties
     echo 'EmailAddress='>>DBEmailer.properties
     echo 'EmailPassword='>>DBEmailer.properties
+    echo 'SmtpHost=smtp.gmail.com'>>DBEmailer.properties
+    echo 'SmtpPort=587'>>DBEmailer.properties
+    echo 'EmailDigestSeconds=0'>>DBEmailer.properties
+    echo 'EmailQueueCapacity=100'>>DBEmailer.properties
     echo 'ReportFrequency='>>DBEmailer.properties
     echo 'NotifyList='>>DBEmailer.properties
     echo 'EmergencyNotifyList='>>DBEmailer.properties
@@ -20,6 +34,32 @@ if [ ! -s DBEmailer.properties ]; then
     fileCreated=true
 fi
 
+if [ ! -s Monitor.properties ]; then
+    echo 'ExecutionMode=thread'>>Monitor.properties
+    echo 'SchedulerPoolSize=2'>>Monitor.properties
+    echo 'BatchProbeCommand=fping -e -r 0 -t 1000'>>Monitor.properties
+    echo 'AdaptiveCadence=false'>>Monitor.properties
+    echo 'MaxProbeIntervalMs=10000'>>Monitor.properties
+    echo 'ConfirmProbeIntervalMs=200'>>Monitor.properties
+    echo 'ConfirmProbeCount=3'>>Monitor.properties
+    echo 'StableProbesBeforeBackoff=60'>>Monitor.properties
+    echo 'StaggerStart=true'>>Monitor.properties
+    echo 'StartJitterMs=0'>>Monitor.properties
+    echo 'MetricsIntervalSeconds=0'>>Monitor.properties
+    echo 'DnsCacheTtlSeconds=300'>>Monitor.properties
+    echo 'LogQueueCapacity=8192'>>Monitor.properties
+    echo 'LogBatchSize=256'>>Monitor.properties
+    echo 'LogFlushIntervalMs=500'>>Monitor.properties
+    echo 'RetainUnreachableDays=0'>>Monitor.properties
+    echo 'RetainReachableAgainDays=0'>>Monitor.properties
+    echo 'RetainSlowDays=0'>>Monitor.properties
+    echo 'RetentionIntervalMinutes=60'>>Monitor.properties
+    echo 'RetentionBatchSize=1000'>>Monitor.properties
+    echo 'RetentionBatchPauseMs=100'>>Monitor.properties
+    echo 'Monitor.properties created, defaults are filled in and may be changed before running ConnectionMonitor.'
+    fileCreated=true
+fi
+
 if [ fileCreated==true ]; then
     echo 'Check readme for more information on properties files.'
 fi
@@ -0,0 +1,50 @@
+package org.connectionmonitor.app;
+
+/**
+ * Enumeration of the ways the probes for all PingSites can be run.
+ * @author Cory Ma
+ */
+public enum ExecutionMode
+{
+	THREAD("thread"),
+	SCHEDULER("scheduler"),
+	VIRTUAL("virtual");
+	
+	private final String CONFIG_NAME;
+	
+	/**
+	 * Constructor.
+	 * @param configName     Name used to select the mode in the config file
+	 */
+	private ExecutionMode(String configName)
+	{
+		CONFIG_NAME = configName;
+	}
+	
+	/**
+	 * Gets the name used to select the mode in the config file.
+	 * @return The config name of the mode
+	 */
+	public String getConfigName()
+	{
+		return CONFIG_NAME;
+	}
+	
+	/**
+	 * Finds the ExecutionMode associated with a name from the config file.
+	 * @param configName     Name from the config file
+	 * @return The matching ExecutionMode, THREAD if the name is empty or unrecognized
+	 */
+	public static ExecutionMode fromConfigName(String configName)
+	{
+		ExecutionMode executionMode = THREAD;
+		for(ExecutionMode mode : values())
+		{
+			if(mode.getConfigName().equalsIgnoreCase(configName))
+			{
+				executionMode = mode;
+			}
+		}
+		return executionMode;
+	}
+}
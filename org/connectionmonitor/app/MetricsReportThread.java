@@ -0,0 +1,51 @@
+package org.connectionmonitor.app;
+
+import org.connectionmonitor.metrics.MonitorMetrics;
+import org.my.libraries.MoreDateFunctions;
+
+/**
+ * Thread for printing the MonitorMetrics report to the console at a regular interval.
+ * @author Cory Ma
+ */
+public class MetricsReportThread extends ShutDownableThread
+{
+	private final long MS_PER_CHECK = 1000;
+	
+	private final long msPerReport;
+	
+	/**
+	 * Constructor.
+	 * @param secondsPerReport     Number of seconds between reports
+	 */
+	public MetricsReportThread(int secondsPerReport)
+	{
+		super("MetricsReportThread");
+		msPerReport = secondsPerReport * 1000L;
+	}
+	
+	/**
+	 * Overridden Thread run() method. This will loop until the isShutDown flag is set, printing the metrics report
+	 * every msPerReport. Sleeps are kept short so shutting down doesn't wait for the next report.
+	 */
+	@Override
+	public void run()
+	{
+		long nextReport = System.currentTimeMillis() + msPerReport;
+		while(!isShutDown())
+		{
+			try
+			{
+				if(System.currentTimeMillis() >= nextReport)
+				{
+					System.out.print("Metrics at " + MoreDateFunctions.getNowTimestamp() + "\n" + MonitorMetrics.buildReport());
+					nextReport = System.currentTimeMillis() + msPerReport;
+				}
+				sleep(MS_PER_CHECK);
+			}
+			catch(InterruptedException iE)
+			{
+				iE.printStackTrace();
+			}
+		}
+	}
+}
@@ -8,9 +8,11 @@ import java.util.ArrayList;
 import java.util.Vector;
 
 import org.connectionmonitor.config.DBEmailerConfigManager;
+import org.connectionmonitor.config.MonitorConfigManager;
 import org.connectionmonitor.config.PingSitesConfigManager;
 import org.connectionmonitor.db.DBAccessHandler;
 import org.connectionmonitor.email.EmailReportHandler;
+import org.connectionmonitor.ping.PingAction;
 import org.connectionmonitor.ping.PingHandler;
 import org.connectionmonitor.ping.PingSite;
 import org.my.libraries.IOUtilities;
@@ -29,6 +31,9 @@ public class MonitorApp
 	public static void main(String[] args)
     {
 		ArrayList<ShutDownableThread> threadList = new ArrayList<>();
+		ArrayList<SiteMonitor> siteMonitors = new ArrayList<>();
+		ProbeScheduler probeScheduler = null;
+		VirtualProbeThreads virtualProbeThreads = null;
 		Vector<String> activePingSiteNames = new Vector<String>(); //Tracks all active ping sites for querying
 		
 		DBAccessHandler dbAccessHandler;
@@ -36,6 +41,7 @@ public class MonitorApp
 		
 		DBEmailerConfigManager dbEmailerConfigManager = new DBEmailerConfigManager();
 		PingSitesConfigManager pingSitesConfigManager = new PingSitesConfigManager();
+		MonitorConfigManager monitorConfigManager = new MonitorConfigManager();
 		
 		boolean isShutDown = false;
 		
@@ -44,11 +50,14 @@ public class MonitorApp
 			//Set up config managers.
 			dbEmailerConfigManager.importConfig();
 			pingSitesConfigManager.importConfig();
+			monitorConfigManager.importConfig();
 			
 			ArrayList<PingSite> pingSites = pingSitesConfigManager.getPingSitesFromConfig();
 			dbAccessHandler = dbEmailerConfigManager.buildDBAccessHandlerFromConfig();
 			emailReportHandler = dbEmailerConfigManager.buildEmailReportHandlerFromConfig();
 
+			dbAccessHandler.setLogWriterSettings(monitorConfigManager.getConfigLogQueueCapacity(), monitorConfigManager.getConfigLogBatchSize(), 
+					monitorConfigManager.getConfigLogFlushInterval());
 			dbAccessHandler.initDBConnection();
 			
 			RegularReportThread regularReportThread = new RegularReportThread(activePingSiteNames, emailReportHandler, dbAccessHandler);
@@ -56,27 +65,63 @@ public class MonitorApp
 			
 			for(PingSite pingSite : pingSites)
 			{
-				threadList.add(new PingThread(pingSite, new PingHandler(pingSite), emailReportHandler, dbAccessHandler));
+				siteMonitors.add(new SiteMonitor(pingSite, new PingHandler(pingSite), emailReportHandler, dbAccessHandler, 
+						monitorConfigManager.buildProbeCadenceFromConfig()));
 				dbAccessHandler.insertSiteEntry(pingSite.getName(), pingSite.getAddress());
 				activePingSiteNames.add(pingSite.getName());
 			}
 			
+			PingAction.getBatchProber().setProbeCommand(monitorConfigManager.getConfigBatchProbeCommand());
+			PingAction.getDnsCache().setTTL(monitorConfigManager.getConfigDnsCacheTTL());
+			
+			ExecutionMode executionMode = monitorConfigManager.getConfigExecutionMode();
+			if(executionMode == ExecutionMode.SCHEDULER)
+			{
+				probeScheduler = new ProbeScheduler(monitorConfigManager.getConfigSchedulerPoolSize());
+			}
+			else if(executionMode == ExecutionMode.VIRTUAL)
+			{
+				virtualProbeThreads = new VirtualProbeThreads();
+			}
+			
+			int metricsInterval = monitorConfigManager.getConfigMetricsInterval();
+			if(metricsInterval > 0)
+			{
+				threadList.add(new MetricsReportThread(metricsInterval));
+			}
+			RetentionThread retentionThread = monitorConfigManager.buildRetentionThreadFromConfig(dbAccessHandler);
+			if(retentionThread != null)
+			{
+				threadList.add(retentionThread);
+			}
+			
 			startThreads(threadList);
+			startProbes(siteMonitors, monitorConfigManager.buildProbeStaggerFromConfig(siteMonitors.size()), threadList, probeScheduler, virtualProbeThreads);
 			
 			BufferedReader consoleIn = new BufferedReader(new InputStreamReader(System.in));
 			
-			while(!isShutDown && threadList.size() > 1)
+			while(!isShutDown && !siteMonitors.isEmpty())
 			{
 				isShutDown = promptShutDownInput(consoleIn);
 				if(isShutDown)
 				{
+					if(probeScheduler != null)
+					{
+						probeScheduler.shutDown();
+					}
+					if(virtualProbeThreads != null)
+					{
+						virtualProbeThreads.shutDown();
+					}
 					shutDownThreads(threadList);
 				}
 			}
+			PingAction.closeProbers();
 			dbAccessHandler.closeDBConnection();
+			emailReportHandler.close();
 			IOUtilities.closeCloseable(consoleIn);
 		}
-		catch(ClassNotFoundException | SQLException e)
+		catch(SQLException e)
 		{
 			e.printStackTrace();
 		}
@@ -94,6 +139,40 @@ public class MonitorApp
 		}
 	}
 	
+	/**
+	 * Starts probing each site on the shared ProbeScheduler, on a virtual thread per site, or on a PingThread per site
+	 * when neither is given. Sites with a self-paced Prober always get their own PingThread in scheduler mode, since
+	 * each of their probes waits out the site's probe interval and would hold a pool thread the whole time.
+	 * @param siteMonitors            List of SiteMonitors to start probing with
+	 * @param probeStagger            ProbeStagger to spread the first probe of each site with
+	 * @param threadList              List to add any started PingThreads to
+	 * @param probeScheduler          ProbeScheduler to run the probes on, null if not used
+	 * @param virtualProbeThreads     VirtualProbeThreads to run the probes on, null if not used
+	 */
+	private static void startProbes(ArrayList<SiteMonitor> siteMonitors, ProbeStagger probeStagger, ArrayList<ShutDownableThread> threadList, 
+			ProbeScheduler probeScheduler, VirtualProbeThreads virtualProbeThreads)
+	{
+		for(int siteIndex = 0; siteIndex < siteMonitors.size(); siteIndex++)
+		{
+			SiteMonitor siteMonitor = siteMonitors.get(siteIndex);
+			long startDelay = probeStagger.getStartDelay(siteIndex);
+			if(probeScheduler != null && !siteMonitor.getPingSite().getProberType().isSelfPaced())
+			{
+				probeScheduler.addSite(siteMonitor, startDelay);
+			}
+			else if(virtualProbeThreads != null)
+			{
+				virtualProbeThreads.addSite(siteMonitor, startDelay);
+			}
+			else
+			{
+				PingThread pingThread = new PingThread(siteMonitor, startDelay);
+				threadList.add(pingThread);
+				pingThread.start();
+			}
+		}
+	}
+	
 	/**
 	 * Prompts user for shut down command of Q or q and loops until it receives it.
 	 * @return true if the application should start shutting down
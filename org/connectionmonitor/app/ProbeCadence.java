@@ -0,0 +1,114 @@
+package org.connectionmonitor.app;
+
+/**
+ * Decides how long to wait before the next probe of a site. With adaptive cadence a failed probe is followed right away
+ * by a short burst of confirmation probes. If every one of them fails too the outage is confirmed, which lets PingHandler
+ * report it without waiting out its usual outage time, and a reply to any of them dismisses the lost ping. A site that
+ * has stayed reachable for a while is probed less often, doubling its interval up to a maximum, which can delay
+ * noticing an outage by up to that maximum. Without adaptive cadence every probe is followed by the same delay and no
+ * outage is confirmed early. Each site needs its own ProbeCadence, and it isn't threadsafe.
+ * @author Cory Ma
+ */
+public class ProbeCadence
+{
+	private final boolean isAdaptive;
+	private final long baseIntervalMs;
+	private final long maxIntervalMs;
+	private final long confirmIntervalMs;
+	private final int confirmProbeCount;
+	private final int stableProbesBeforeBackoff;
+	
+	private long currentIntervalMs;
+	private int stableProbes = 0;
+	private int confirmProbesLeft = 0;
+	private boolean isConfirming = false;
+	private boolean isOutageConfirmed = false;
+	private boolean wasReachable = true;
+	
+	/**
+	 * Constructor for a fixed cadence.
+	 * @param intervalMs     Milliseconds between probes
+	 */
+	public ProbeCadence(long intervalMs)
+	{
+		this(false, intervalMs, intervalMs, intervalMs, 0, 0);
+	}
+	
+	/**
+	 * Constructor.
+	 * @param adaptive           Whether the cadence adapts to the results of probes
+	 * @param baseInterval       Milliseconds between probes normally, and while a site stays unreachable
+	 * @param maxInterval        Longest milliseconds between probes a stable site backs off to
+	 * @param confirmInterval    Milliseconds between confirmation probes after a failure
+	 * @param confirmCount       Number of confirmation probes after a failure, 0 to send none
+	 * @param stableCount        Number of reachable probes in a row before the interval is doubled
+	 */
+	public ProbeCadence(boolean adaptive, long baseInterval, long maxInterval, long confirmInterval, int confirmCount, int stableCount)
+	{
+		isAdaptive = adaptive;
+		baseIntervalMs = baseInterval;
+		maxIntervalMs = Math.max(baseInterval, maxInterval);
+		confirmIntervalMs = confirmInterval;
+		confirmProbeCount = Math.max(0, confirmCount);
+		stableProbesBeforeBackoff = Math.max(1, stableCount);
+		currentIntervalMs = baseInterval;
+	}
+	
+	/**
+	 * Records the result of a probe and gets the delay before the next one.
+	 * @param reachable     Whether the site was reachable on the probe
+	 * @return The delay before the next probe in milliseconds
+	 */
+	public long nextDelay(boolean reachable)
+	{
+		long delay = baseIntervalMs;
+		if(isAdaptive)
+		{
+			if(reachable)
+			{
+				confirmProbesLeft = 0;
+				isConfirming = false;
+				isOutageConfirmed = false;
+				stableProbes++;
+				if(stableProbes >= stableProbesBeforeBackoff)
+				{
+					currentIntervalMs = Math.min(currentIntervalMs * 2, maxIntervalMs);
+					stableProbes = 0;
+				}
+				delay = currentIntervalMs;
+			}
+			else
+			{
+				if(wasReachable && confirmProbeCount > 0)
+				{
+					confirmProbesLeft = confirmProbeCount; //First failure, start confirming
+					isConfirming = true;
+				}
+				else if(isConfirming && confirmProbesLeft == 0)
+				{
+					isConfirming = false; //This was the last confirmation probe, and every one failed
+					isOutageConfirmed = true;
+				}
+				currentIntervalMs = baseIntervalMs;
+				stableProbes = 0;
+				if(confirmProbesLeft > 0)
+				{
+					confirmProbesLeft--;
+					delay = confirmIntervalMs;
+				}
+			}
+			wasReachable = reachable;
+		}
+		return delay;
+	}
+	
+	/**
+	 * Checks if the current outage was confirmed by a whole burst of failed confirmation probes, as of the last
+	 * result passed to nextDelay(). Stays set until the site is reachable again.
+	 * @return true if the outage is confirmed, false if not or the site is reachable
+	 */
+	public boolean isOutageConfirmed()
+	{
+		return isOutageConfirmed;
+	}
+}
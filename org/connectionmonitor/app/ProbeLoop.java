@@ -0,0 +1,78 @@
+package org.connectionmonitor.app;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+/**
+ * The loop that repeatedly probes a single site through its SiteMonitor. This is kept apart from any Thread
+ * class so that it can be run on either a platform or a virtual thread.
+ * @author Cory Ma
+ */
+public class ProbeLoop implements Runnable
+{
+	private final SiteMonitor siteMonitor;
+	private final long startDelay;
+	private volatile boolean isShutDown = false;
+	
+	/**
+	 * Constructor.
+	 * @param monitor     SiteMonitor to perform probes with
+	 * @param delay       Milliseconds to wait before the first probe
+	 */
+	public ProbeLoop(SiteMonitor monitor, long delay)
+	{
+		siteMonitor = monitor;
+		startDelay = delay;
+	}
+	
+	/**
+	 * Gets the SiteMonitor the loop probes with.
+	 * @return The SiteMonitor of the loop
+	 */
+	public SiteMonitor getSiteMonitor()
+	{
+		return siteMonitor;
+	}
+	
+	/**
+	 * This will wait for the start delay, then loop until the isShutDown flag is set, pinging repeatedly and sleeping
+	 * for the SiteMonitor's probe delay between pings.
+	 */
+	@Override
+	public void run()
+	{
+		try
+		{
+			Thread.sleep(startDelay);
+		}
+		catch(InterruptedException iE)
+		{
+			iE.printStackTrace();
+		}
+		
+		while(!isShutDown)
+		{
+			try
+			{
+				siteMonitor.probe();
+				long probeDelay = siteMonitor.getProbeDelay();
+				if(probeDelay > 0)
+				{
+					Thread.sleep(probeDelay);
+				}
+			}
+			catch(IOException | InterruptedException | SQLException e)
+			{
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	/**
+	 * Sets the isShutDown flag to insure the loop ends gracefully.
+	 */
+	public void shutDown()
+	{
+		isShutDown = true;
+	}
+}
@@ -0,0 +1,349 @@
+package org.connectionmonitor.app;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.connectionmonitor.metrics.Gauge;
+import org.connectionmonitor.metrics.MonitorMetrics;
+import org.connectionmonitor.ping.AsyncProber;
+import org.connectionmonitor.ping.PingAction;
+import org.connectionmonitor.ping.PingResponse;
+import org.connectionmonitor.ping.PingSite;
+import org.connectionmonitor.ping.ProbeCallback;
+import org.connectionmonitor.ping.Prober;
+import org.connectionmonitor.ping.ProberType;
+
+/**
+ * Runs the probes for every site from a small shared pool of threads instead of a thread per site. Each site's
+ * next probe is scheduled once its current probe finishes, so probes for a single site never overlap. Sites using
+ * the batch prober are instead gathered up on each tick and every one that is due is probed by a single command.
+ * @author Cory Ma
+ */
+public class ProbeScheduler
+{
+	private final long BATCH_TICK_MS = 100;
+	
+	private final ScheduledThreadPoolExecutor executor;
+	private final CopyOnWriteArrayList<BatchSite> batchSites = new CopyOnWriteArrayList<>();
+	private long batchStartTime; //Only set and read by addSite()
+	private volatile boolean isShutDown = false;
+	
+	/**
+	 * Constructor.
+	 * @param poolSize     Number of threads to run probes with
+	 */
+	public ProbeScheduler(int poolSize)
+	{
+		executor = new ScheduledThreadPoolExecutor(Math.max(1, poolSize), new ProbeThreadFactory(), new ScheduledThreadPoolExecutor.DiscardPolicy());
+		executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false); //Waiting probes are dropped on shut down
+	}
+	
+	/**
+	 * Starts probing a site. Sites with a self-paced Prober shouldn't be added, each of their probes would hold a
+	 * pool thread for the whole probe interval. Batch sites ignore the start delay and all start together on the
+	 * first batch, so the batch command is run once per interval for all of them rather than on every tick for a few.
+	 * @param siteMonitor     SiteMonitor to perform probes with
+	 * @param startDelay      Milliseconds to wait before the first probe, unless it's a batch site
+	 */
+	public void addSite(SiteMonitor siteMonitor, long startDelay)
+	{
+		if(siteMonitor.getPingSite().getProberType() == ProberType.BATCH)
+		{
+			if(batchSites.isEmpty())
+			{
+				//Sites added before the first tick share its batch, ones added later join the next one
+				batchStartTime = System.currentTimeMillis() + BATCH_TICK_MS;
+				executor.scheduleWithFixedDelay(new BatchTask(), BATCH_TICK_MS, BATCH_TICK_MS, TimeUnit.MILLISECONDS);
+			}
+			batchSites.add(new BatchSite(siteMonitor, batchStartTime));
+		}
+		else
+		{
+			executor.schedule(new ProbeTask(siteMonitor), startDelay, TimeUnit.MILLISECONDS);
+		}
+	}
+	
+	/**
+	 * Stops scheduling probes and waits for the ones running to finish, to insure that the program ends gracefully.
+	 */
+	public void shutDown()
+	{
+		isShutDown = true;
+		executor.shutdown();
+		try
+		{
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		}
+		catch(InterruptedException iE)
+		{
+			iE.printStackTrace();
+		}
+	}
+	
+	/**
+	 * A single probe of a site, which schedules the next probe of the site when done. Sites with an AsyncProber
+	 * don't hold a scheduler thread while the probe is out, their results are handed back to the scheduler instead.
+	 */
+	private class ProbeTask implements Runnable, ProbeCallback
+	{
+		private final SiteMonitor siteMonitor;
+		
+		/**
+		 * Constructor.
+		 * @param monitor     SiteMonitor to perform probes with
+		 */
+		public ProbeTask(SiteMonitor monitor)
+		{
+			siteMonitor = monitor;
+		}
+		
+		/**
+		 * Probes the site, then schedules the next probe after the SiteMonitor's probe delay. The next probe is
+		 * scheduled even if this one throws, so a site is never dropped from the schedule.
+		 */
+		@Override
+		public void run()
+		{
+			boolean isAsyncProbeOut = false;
+			try
+			{
+				Prober prober = PingAction.getProber(siteMonitor.getPingSite().getProberType());
+				if(prober instanceof AsyncProber)
+				{
+					Gauge probesInFlight = MonitorMetrics.gauge(MonitorMetrics.PROBES_IN_FLIGHT);
+					probesInFlight.increment();
+					try
+					{
+						((AsyncProber)prober).probeAsync(siteMonitor.getPingSite(), this);
+						isAsyncProbeOut = true;
+					}
+					finally
+					{
+						if(!isAsyncProbeOut)
+						{
+							probesInFlight.decrement();
+						}
+					}
+				}
+				else
+				{
+					siteMonitor.probe();
+				}
+			}
+			catch(IOException | InterruptedException | SQLException e)
+			{
+				e.printStackTrace();
+			}
+			catch(RuntimeException rE)
+			{
+				rE.printStackTrace();
+			}
+			finally
+			{
+				if(!isAsyncProbeOut)
+				{
+					scheduleNextProbe();
+				}
+			}
+		}
+		
+		/**
+		 * Hands the results of an AsyncProber's probe back to the scheduler's threads for processing.
+		 * @param pingResponse     The results of the probe
+		 */
+		@Override
+		public void probeComplete(final PingResponse pingResponse)
+		{
+			MonitorMetrics.gauge(MonitorMetrics.PROBES_IN_FLIGHT).decrement();
+			executor.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						siteMonitor.handleProbeResult(pingResponse);
+					}
+					catch(SQLException sqlE)
+					{
+						sqlE.printStackTrace();
+					}
+					catch(RuntimeException rE)
+					{
+						rE.printStackTrace();
+					}
+					finally
+					{
+						scheduleNextProbe();
+					}
+				}
+			});
+		}
+		
+		/**
+		 * Schedules the next probe of the site after the SiteMonitor's probe delay.
+		 */
+		private void scheduleNextProbe()
+		{
+			if(!isShutDown)
+			{
+				executor.schedule(this, siteMonitor.getProbeDelay(), TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+	
+	/**
+	 * A site probed by the batch prober, along with when its next probe is due.
+	 */
+	private static class BatchSite
+	{
+		private final SiteMonitor siteMonitor;
+		private volatile long nextProbeTime;
+		private final AtomicBoolean isProbing = new AtomicBoolean(false);
+		
+		/**
+		 * Constructor.
+		 * @param monitor       SiteMonitor to process the results with
+		 * @param firstProbe    Time in milliseconds the first probe is due
+		 */
+		public BatchSite(SiteMonitor monitor, long firstProbe)
+		{
+			siteMonitor = monitor;
+			nextProbeTime = firstProbe;
+		}
+	}
+	
+	/**
+	 * Runs on each tick, probing every batch site that is due with one run of the batch command. Each site's
+	 * results are then handled separately so one slow site doesn't hold up the rest. Sites are next due a probe
+	 * delay after the tick they were probed on, not after their results were handled, so sites probed together with
+	 * the same delay stay together.
+	 */
+	private class BatchTask implements Runnable
+	{
+		/**
+		 * Gathers the due sites and probes them together. Nothing is allowed to escape, since an exception would
+		 * cancel the task and stop every batch site for good. Sites whose results weren't handed off to be handled
+		 * are allowed to be probed again.
+		 */
+		@Override
+		public void run()
+		{
+			final long now = System.currentTimeMillis();
+			ArrayList<PingSite> duePingSites = new ArrayList<>();
+			final HashMap<PingSite, BatchSite> dueBatchSites = new HashMap<>();
+			ArrayList<BatchSite> handedOffBatchSites = new ArrayList<>();
+			Gauge probesInFlight = MonitorMetrics.gauge(MonitorMetrics.PROBES_IN_FLIGHT);
+			boolean isInFlight = false;
+			try
+			{
+				for(BatchSite batchSite : batchSites)
+				{
+					if(batchSite.nextProbeTime <= now && batchSite.isProbing.compareAndSet(false, true))
+					{
+						dueBatchSites.put(batchSite.siteMonitor.getPingSite(), batchSite);
+						duePingSites.add(batchSite.siteMonitor.getPingSite());
+					}
+				}
+				
+				if(!duePingSites.isEmpty())
+				{
+					probesInFlight.add(duePingSites.size());
+					isInFlight = true;
+					HashMap<PingSite, PingResponse> pingResponses = PingAction.getBatchProber().probeBatch(duePingSites);
+					probesInFlight.add(-duePingSites.size());
+					isInFlight = false;
+					for(final PingSite pingSite : duePingSites)
+					{
+						final PingResponse pingResponse = pingResponses.get(pingSite);
+						final BatchSite batchSite = dueBatchSites.get(pingSite);
+						executor.execute(new Runnable()
+						{
+							@Override
+							public void run()
+							{
+								try
+								{
+									batchSite.siteMonitor.handleProbeResult(pingResponse);
+								}
+								catch(SQLException sqlE)
+								{
+									sqlE.printStackTrace();
+								}
+								catch(RuntimeException rE)
+								{
+									rE.printStackTrace();
+								}
+								finally
+								{
+									finishBatchProbe(batchSite, now);
+								}
+							}
+						});
+						handedOffBatchSites.add(batchSite);
+					}
+				}
+			}
+			catch(IOException | InterruptedException e)
+			{
+				e.printStackTrace();
+			}
+			catch(RuntimeException rE)
+			{
+				rE.printStackTrace();
+			}
+			finally
+			{
+				if(isInFlight)
+				{
+					probesInFlight.add(-duePingSites.size());
+				}
+				for(BatchSite batchSite : dueBatchSites.values())
+				{
+					if(!handedOffBatchSites.contains(batchSite))
+					{
+						finishBatchProbe(batchSite, now);
+					}
+				}
+			}
+		}
+		
+		/**
+		 * Sets when a batch site is next due and allows it to be probed again.
+		 * @param batchSite     BatchSite that finished its probe
+		 * @param batchTime     Time in milliseconds of the tick the site was probed on
+		 */
+		private void finishBatchProbe(BatchSite batchSite, long batchTime)
+		{
+			batchSite.nextProbeTime = batchTime + batchSite.siteMonitor.getProbeDelay();
+			batchSite.isProbing.set(false);
+		}
+	}
+	
+	/**
+	 * Names the scheduler's threads so they can be told apart from the other threads.
+	 */
+	private static class ProbeThreadFactory implements ThreadFactory
+	{
+		private final AtomicInteger threadCount = new AtomicInteger(0);
+		
+		/**
+		 * Creates a named thread for the scheduler.
+		 * @param runnable     Runnable for the thread to run
+		 * @return The new thread
+		 */
+		@Override
+		public Thread newThread(Runnable runnable)
+		{
+			return new Thread(runnable, "ProbeScheduler-" + threadCount.incrementAndGet());
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package org.connectionmonitor.app;
+
+import java.util.Random;
+
+/**
+ * Spreads the first probe of each site evenly across the probe interval, so sites don't all probe at the same moment
+ * and cause a burst of processes and database writes followed by idle time. An optional random jitter is added on top.
+ * @author Cory Ma
+ */
+public class ProbeStagger
+{
+	private final boolean isStaggered;
+	private final long intervalMs;
+	private final int siteCount;
+	private final int jitterMs;
+	private final Random random = new Random();
+	
+	/**
+	 * Constructor.
+	 * @param staggered     Whether start times are spread out, if not all sites start right away
+	 * @param interval      Milliseconds to spread the start times across
+	 * @param sites         Number of sites being started
+	 * @param jitter        Largest random milliseconds added to each start time, 0 for none
+	 */
+	public ProbeStagger(boolean staggered, long interval, int sites, int jitter)
+	{
+		isStaggered = staggered;
+		intervalMs = interval;
+		siteCount = Math.max(1, sites);
+		jitterMs = jitter;
+	}
+	
+	/**
+	 * Gets the delay before the first probe of a site.
+	 * @param siteIndex     Index of the site in the order they are started
+	 * @return The delay before the site's first probe in milliseconds
+	 */
+	public long getStartDelay(int siteIndex)
+	{
+		long startDelay = 0;
+		if(isStaggered)
+		{
+			startDelay = (siteIndex * intervalMs) / siteCount;
+			if(jitterMs > 0)
+			{
+				startDelay += random.nextInt(jitterMs);
+			}
+		}
+		return startDelay;
+	}
+}
@@ -0,0 +1,118 @@
+package org.connectionmonitor.app;
+
+import java.sql.SQLException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.connectionmonitor.db.DBAccessHandler;
+import org.connectionmonitor.metrics.MonitorMetrics;
+import org.my.libraries.MoreDateFunctions;
+
+/**
+ * Thread for deleting log entries once they are older than the retention of their status. Each pass deletes in
+ * small batches with a pause between them, so the LogWriter's inserts are never held up for long. The rollups of
+ * the deleted entries are kept, so regular reports of old periods still have their totals. Each pass also deletes
+ * the SampleStore's day files older than its retention.
+ * @author Cory Ma
+ */
+public class RetentionThread extends ShutDownableThread
+{
+	public final static String RETENTION_DELETED = "retention.deleted";
+	public final static String RETENTION_SAMPLE_FILES_DELETED = "retention.sampleFilesDeleted";
+	public final static String RETENTION_PASS_MS = "retention.passMs";
+	
+	private final long MS_PER_CHECK = 1000;
+	
+	private final DBAccessHandler dbAccessHandler;
+	private final Map<Integer, Integer> retentionDays;
+	private final long msPerPass;
+	private final int batchSize;
+	private final long batchPauseMs;
+	
+	/**
+	 * Constructor.
+	 * @param dbHandler           DBAccessHandler to delete log entries and samples with
+	 * @param statusDays          Number of days to keep entries for, by status number. Statuses left out are kept forever.
+	 * @param minutesPerPass      Number of minutes between passes
+	 * @param entriesPerBatch     Number of entries to delete at most in one batch
+	 * @param pauseMs             Number of milliseconds to wait between batches
+	 */
+	public RetentionThread(DBAccessHandler dbHandler, Map<Integer, Integer> statusDays, int minutesPerPass, int entriesPerBatch, long pauseMs)
+	{
+		super("RetentionThread");
+		dbAccessHandler = dbHandler;
+		retentionDays = statusDays;
+		msPerPass = TimeUnit.MINUTES.toMillis(minutesPerPass);
+		batchSize = entriesPerBatch;
+		batchPauseMs = pauseMs;
+	}
+	
+	/**
+	 * Overridden Thread run() method. This will loop until the isShutDown flag is set, running a pass right away
+	 * and then every msPerPass. Sleeps are kept short so shutting down doesn't wait for the next pass.
+	 */
+	@Override
+	public void run()
+	{
+		long nextPass = System.currentTimeMillis();
+		while(!isShutDown())
+		{
+			try
+			{
+				if(System.currentTimeMillis() >= nextPass)
+				{
+					runPass();
+					nextPass = System.currentTimeMillis() + msPerPass;
+				}
+				sleep(MS_PER_CHECK);
+			}
+			catch(InterruptedException | SQLException e)
+			{
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	/**
+	 * Deletes batches of expired log entries until there are none left or the thread is shut down, then the expired
+	 * sample files, and prints how many were deleted.
+	 * @throws InterruptedException
+	 * @throws SQLException
+	 */
+	private void runPass() throws InterruptedException, SQLException
+	{
+		long passStart = System.currentTimeMillis();
+		Map<Integer, Date> statusCutoffs = new HashMap<>();
+		for(Map.Entry<Integer, Integer> statusDays : retentionDays.entrySet())
+		{
+			statusCutoffs.put(statusDays.getKey(), new Date(passStart - TimeUnit.DAYS.toMillis(statusDays.getValue())));
+		}
+		
+		long totalDeleted = 0;
+		int numDeleted = statusCutoffs.isEmpty() ? 0 : dbAccessHandler.deleteExpiredLogEntries(statusCutoffs, batchSize);
+		while(numDeleted > 0)
+		{
+			totalDeleted += numDeleted;
+			MonitorMetrics.gauge(RETENTION_DELETED).add(numDeleted);
+			numDeleted = 0;
+			if(!isShutDown())
+			{
+				sleep(batchPauseMs);
+				numDeleted = dbAccessHandler.deleteExpiredLogEntries(statusCutoffs, batchSize);
+			}
+		}
+		int sampleFilesDeleted = dbAccessHandler.deleteExpiredSamples();
+		MonitorMetrics.gauge(RETENTION_SAMPLE_FILES_DELETED).add(sampleFilesDeleted);
+		MonitorMetrics.gauge(RETENTION_PASS_MS).set(System.currentTimeMillis() - passStart);
+		if(totalDeleted > 0)
+		{
+			System.out.println("Retention deleted " + totalDeleted + " expired log entries at " + MoreDateFunctions.getNowTimestamp());
+		}
+		if(sampleFilesDeleted > 0)
+		{
+			System.out.println("Retention deleted " + sampleFilesDeleted + " expired sample files at " + MoreDateFunctions.getNowTimestamp());
+		}
+	}
+}
@@ -0,0 +1,185 @@
+package org.connectionmonitor.app;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+
+import org.connectionmonitor.db.DBAccessHandler;
+import org.connectionmonitor.email.CheckNeedEmailResponse;
+import org.connectionmonitor.email.EmailReportHandler;
+import org.connectionmonitor.metrics.Gauge;
+import org.connectionmonitor.metrics.MonitorMetrics;
+import org.connectionmonitor.ping.PingAction;
+import org.connectionmonitor.ping.PingHandler;
+import org.connectionmonitor.ping.PingHandlerResponse;
+import org.connectionmonitor.ping.PingResponse;
+import org.connectionmonitor.ping.PingSite;
+import org.my.libraries.MoreDateFunctions;
+import org.my.libraries.MoreMath;
+
+/**
+ * Performs the probing of a single PingSite and passes the results for processing. This holds the per site
+ * state so that the same monitoring is done no matter which thread runs the probes, but it isn't threadsafe
+ * and only one probe should be run for a site at a time.
+ * @author Cory Ma
+ */
+public class SiteMonitor
+{
+	private PingSite pingSite;
+	private PingHandler pingHandler;
+	private EmailReportHandler emailReportHandler;
+	private DBAccessHandler dbAccessHandler;
+	private ProbeCadence probeCadence;
+	private long probeDelay = 0;
+	
+	//Variables for recalculating average latency
+	private ArrayList<Double> latencyValues;
+	private Date lastRecalculated;
+	private int hoursForUpdate = 5;
+	private int sampleSize = 4000;
+	
+	/**
+	 * Constructor.
+	 * @param site             PingSite to perform pings on
+	 * @param handler          PingHandler to process results of ping
+	 * @param emailHandler     EmailReportHandler for email report synchronization
+	 * @param dbHandler        DBAccessHandler to handle read and write to database
+	 * @param cadence          ProbeCadence to decide the delay between probes with
+	 */
+	public SiteMonitor(PingSite site, PingHandler handler, EmailReportHandler emailHandler, DBAccessHandler dbHandler, ProbeCadence cadence)
+	{
+		pingSite = site;
+		pingHandler = handler;
+		emailReportHandler = emailHandler;
+		dbAccessHandler = dbHandler;
+		probeCadence = cadence;
+		
+		latencyValues = new ArrayList<Double>(sampleSize);
+		lastRecalculated = new Date();
+	}
+	
+	/**
+	 * Gets the PingSite being monitored.
+	 * @return The PingSite being monitored
+	 */
+	public PingSite getPingSite()
+	{
+		return pingSite;
+	}
+	
+	/**
+	 * Probes the site once and processes the results.
+	 * @throws IOException
+	 * @throws InterruptedException
+	 * @throws SQLException
+	 */
+	public void probe() throws IOException, InterruptedException, SQLException
+	{
+		PingResponse pingResponse;
+		Gauge probesInFlight = MonitorMetrics.gauge(MonitorMetrics.PROBES_IN_FLIGHT);
+		probesInFlight.increment();
+		try
+		{
+			pingResponse = PingAction.pingSite(pingSite);
+		}
+		finally
+		{
+			probesInFlight.decrement();
+		}
+		handleProbeResult(pingResponse);
+	}
+	
+	/**
+	 * Processes the results of a probe of the site, for probes that were run outside of probe().
+	 * @param pingResponse     Results of the probe
+	 * @throws SQLException
+	 */
+	public void handleProbeResult(PingResponse pingResponse) throws SQLException
+	{
+		if(pingResponse.getTimedOut())
+		{
+			MonitorMetrics.gauge(MonitorMetrics.PROBES_TIMED_OUT).increment();
+		}
+		probeDelay = probeCadence.nextDelay(pingResponse.getReachable());
+		dbAccessHandler.insertSample(pingSite.getName(), pingResponse.getPingTime(), pingResponse.getLatency(), pingResponse.getReachable());
+		//Self-paced probers ignore the cadence's delay, so their failures are never a confirmation burst
+		boolean isConfirmed = !pingSite.getProberType().isSelfPaced() && probeCadence.isOutageConfirmed();
+		PingHandlerResponse handlerResponse = pingHandler.handlePing(pingResponse, isConfirmed);
+		handleResponse(pingResponse, handlerResponse);
+		if(pingResponse.getReachable() && checkNeedPingSiteUpdate())
+		{
+			handlePingSiteUpdate(pingResponse.getLatency());
+		}
+	}
+	
+	/**
+	 * Gets the number of milliseconds to wait before the next probe, as decided by the ProbeCadence from the last result.
+	 * This is done to limit the checking somewhat. Probers that pace themselves already wait for the site's probe
+	 * interval, so no delay is added for them.
+	 * @return The delay before the next probe in milliseconds
+	 */
+	public long getProbeDelay()
+	{
+		return pingSite.getProberType().isSelfPaced() ? 0 : probeDelay;
+	}
+	
+	/**
+	 * Handles database access and site unreachable email sending based off of the results of a ping.
+	 * @param pingResponse
+	 * @param handlerResponse
+	 * @throws SQLException
+	 */
+	private void handleResponse(PingResponse pingResponse, PingHandlerResponse handlerResponse) throws SQLException
+	{
+		String pingIP = pingResponse.getIP();
+		double pingLatency = pingResponse.getLatency();
+		Date currentDate = pingResponse.getPingTime();
+		switch(handlerResponse)
+		{
+		case SITE_UNREACHABLE:
+			emailReportHandler.incrementNumEmergencyReportSites(currentDate);
+			dbAccessHandler.insertLogEntry(pingSite.getName(), 1, currentDate, pingIP, pingLatency);
+			break;
+		case SITE_REACHABLE_AGAIN:
+			dbAccessHandler.insertLogEntry(pingSite.getName(), 2, currentDate, pingIP, pingLatency, pingHandler.getOutageStart());
+			CheckNeedEmailResponse needEmail = emailReportHandler.decrementNumEmergencyReportSites(currentDate);
+			if(needEmail.getShouldSend())
+			{
+				String message = dbAccessHandler.buildEmergencyReportMessage(needEmail.getStartDateQuery(), needEmail.getEndDateQuery());
+				emailReportHandler.sendReport(true, message);
+			}
+			break;
+		case SITE_LATENCY_SLOW:
+			dbAccessHandler.insertLogEntry(pingSite.getName(), 3, currentDate, pingIP, pingLatency);
+			break;
+		default:
+		}
+	}
+	
+	/**
+	 * Checks to see if the associated PingSite needs to update latency values.
+	 * @return true if necessary, false if not
+	 */
+	private boolean checkNeedPingSiteUpdate()
+	{
+		Date currentDate = new Date();
+		return (MoreMath.modulo((int)MoreDateFunctions.timeDiffInHours(currentDate, lastRecalculated), 24) >= hoursForUpdate);
+	}
+	
+	/**
+	 * Adds the latency of a ping to a list, then calculates mean, and standard deviation and updates PingSite when enough data is collected.
+	 * @param pingLatency     Latency of a ping
+	 */
+	private void handlePingSiteUpdate(Double pingLatency)
+	{
+		latencyValues.add(pingLatency);
+		if(latencyValues.size() >= sampleSize)
+		{
+			lastRecalculated = MoreDateFunctions.roundToHour(new Date());
+			pingSite.setAvgLatency(MoreMath.mean(latencyValues));
+			pingSite.setLatencyStdDeviation(MoreMath.stdDev(latencyValues));
+			latencyValues.clear();
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package org.connectionmonitor.app;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+
+/**
+ * Runs the ProbeLoop for each site on its own virtual thread, keeping the simple blocking loop per site while
+ * allowing far more sites than platform threads would. Virtual threads are looked up at runtime so the
+ * application still compiles and runs on JDKs without them, in which case platform threads are used instead.
+ * @author Cory Ma
+ */
+public class VirtualProbeThreads
+{
+	private final ArrayList<ProbeLoop> probeLoops = new ArrayList<>();
+	private final ArrayList<Thread> threads = new ArrayList<>();
+	private final Method ofVirtualMethod;
+	private final Method unstartedMethod;
+	
+	/**
+	 * Constructor. Looks up Thread.ofVirtual(), printing a notice if it is unavailable.
+	 */
+	public VirtualProbeThreads()
+	{
+		Method ofVirtual = null;
+		Method unstarted = null;
+		try
+		{
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			unstarted = Class.forName("java.lang.Thread$Builder").getMethod("unstarted", Runnable.class);
+		}
+		catch(NoSuchMethodException | ClassNotFoundException e)
+		{
+			System.out.println("Virtual threads are not available on this JDK, platform threads will be used.");
+		}
+		ofVirtualMethod = ofVirtual;
+		unstartedMethod = unstarted;
+	}
+	
+	/**
+	 * Starts probing a site on a new thread.
+	 * @param siteMonitor     SiteMonitor to perform probes with
+	 * @param startDelay      Milliseconds to wait before the first probe
+	 */
+	public void addSite(SiteMonitor siteMonitor, long startDelay)
+	{
+		ProbeLoop probeLoop = new ProbeLoop(siteMonitor, startDelay);
+		Thread thread = newThread(probeLoop);
+		thread.setName(siteMonitor.getPingSite().getName() + "-ProbeLoop");
+		probeLoops.add(probeLoop);
+		threads.add(thread);
+		thread.start();
+	}
+	
+	/**
+	 * Ends every ProbeLoop, then joins their threads to insure that the program ends gracefully.
+	 */
+	public void shutDown()
+	{
+		for(ProbeLoop probeLoop : probeLoops)
+		{
+			probeLoop.shutDown();
+		}
+		for(Thread thread : threads)
+		{
+			try
+			{
+				thread.join();
+			}
+			catch(InterruptedException iE)
+			{
+				iE.printStackTrace();
+			}
+		}
+	}
+	
+	/**
+	 * Creates an unstarted virtual thread, or a platform thread if virtual threads are unavailable.
+	 * @param runnable     Runnable for the thread to run
+	 * @return The new thread
+	 */
+	private Thread newThread(Runnable runnable)
+	{
+		Thread thread = null;
+		if(ofVirtualMethod != null)
+		{
+			try
+			{
+				thread = (Thread)unstartedMethod.invoke(ofVirtualMethod.invoke(null), runnable);
+			}
+			catch(IllegalAccessException | InvocationTargetException e)
+			{
+				e.printStackTrace();
+			}
+		}
+		if(thread == null)
+		{
+			thread = new Thread(runnable);
+		}
+		return thread;
+	}
+}
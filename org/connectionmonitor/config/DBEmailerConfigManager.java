@@ -9,6 +9,11 @@ import java.io.OutputStream;
 import java.util.Properties;
 
 import org.connectionmonitor.db.DBAccessHandler;
+import org.connectionmonitor.db.LogStore;
+import org.connectionmonitor.db.MySqlLogStore;
+import org.connectionmonitor.db.LogSpool;
+import org.connectionmonitor.db.SampleStore;
+import org.connectionmonitor.db.SegmentLogStore;
 import org.connectionmonitor.email.EmailReportHandler;
 import org.connectionmonitor.email.Emailer;
 import org.my.libraries.IOUtilities;
@@ -24,12 +29,42 @@ public class DBEmailerConfigManager
 	private final static String PROP_DBNAME = "DBName";
 	private final static String PROP_DBUSER = "DBUser";
 	private final static String PROP_DBPWD = "DBPassword";
+	private final static String PROP_DBPOOLSIZE = "DBPoolSize";
+	private final static String PROP_DBPARTITIONLOG = "DBPartitionLog";
+	private final static String PROP_STORAGEBACKEND = "StorageBackend";
+	private final static String PROP_STORAGEDIRECTORY = "StorageDirectory";
+	private final static String PROP_SAMPLESTORAGE = "SampleStorage";
+	private final static String PROP_SAMPLEDIRECTORY = "SampleDirectory";
+	private final static String PROP_SAMPLEBLOCKSIZE = "SampleBlockSize";
+	private final static String PROP_SAMPLERETAINDAYS = "SampleRetainDays";
+	private final static String PROP_SPOOLDIRECTORY = "SpoolDirectory";
+	private final static String PROP_SPOOLMAXMB = "SpoolMaxMB";
 	private final static String PROP_REPORTFREQUENCY = "ReportFrequency";
 	private final static String PROP_NOTIFYLIST = "NotifyList";
 	private final static String PROP_EMERGENCYNOTIFYLIST = "EmergencyNotifyList";
 	private final static String PROP_STATIONNAME = "StationName";
 	private final static String PROP_EMAILADDR = "EmailAddress";
 	private final static String PROP_EMAILPWD = "EmailPassword";
+	private final static String PROP_SMTPHOST = "SmtpHost";
+	private final static String PROP_SMTPPORT = "SmtpPort";
+	private final static String PROP_EMAILDIGESTSECONDS = "EmailDigestSeconds";
+	private final static String PROP_EMAILQUEUECAPACITY = "EmailQueueCapacity";
+	
+	private final static String DEFAULT_DBPOOLSIZE = "4";
+	private final static String DEFAULT_DBPARTITIONLOG = "false";
+	private final static String DEFAULT_STORAGEBACKEND = "mysql";
+	private final static String DEFAULT_STORAGEDIRECTORY = "logstore";
+	private final static String STORAGEBACKEND_SEGMENT = "segment";
+	private final static String DEFAULT_SAMPLESTORAGE = "false";
+	private final static String DEFAULT_SAMPLEDIRECTORY = "samples";
+	private final static String DEFAULT_SAMPLEBLOCKSIZE = "600";
+	private final static String DEFAULT_SAMPLERETAINDAYS = "30";
+	private final static String DEFAULT_SPOOLDIRECTORY = "spool";
+	private final static String DEFAULT_SPOOLMAXMB = "64";
+	private final static String DEFAULT_SMTPHOST = "smtp.gmail.com";
+	private final static String DEFAULT_SMTPPORT = "587";
+	private final static String DEFAULT_EMAILDIGESTSECONDS = "0";
+	private final static String DEFAULT_EMAILQUEUECAPACITY = "100";
 	
 	private Properties dbEmailConfig = new Properties();
 	
@@ -63,6 +98,96 @@ public class DBEmailerConfigManager
 		dbEmailConfig.setProperty(PROP_DBPWD, dbPassword);
 	}
 	
+	/**
+	 * Sets the DBPoolSize property. Optional. exportConfig() must be called to save changes.
+	 * @param dbPoolSize     Largest number of connections to the database open at once
+	 */
+	public void setConfigDBPoolSize(String dbPoolSize)
+	{
+		dbEmailConfig.setProperty(PROP_DBPOOLSIZE, dbPoolSize);
+	}
+	
+	/**
+	 * Sets the DBPartitionLog property. Optional. exportConfig() must be called to save changes.
+	 * @param dbPartitionLog     "true" to partition a newly created log table by month
+	 */
+	public void setConfigDBPartitionLog(String dbPartitionLog)
+	{
+		dbEmailConfig.setProperty(PROP_DBPARTITIONLOG, dbPartitionLog);
+	}
+	
+	/**
+	 * Sets the StorageBackend property. Optional. exportConfig() must be called to save changes.
+	 * @param storageBackend     "mysql" to keep the log in the MySQL database, "segment" to keep it in local files
+	 */
+	public void setConfigStorageBackend(String storageBackend)
+	{
+		dbEmailConfig.setProperty(PROP_STORAGEBACKEND, storageBackend);
+	}
+	
+	/**
+	 * Sets the StorageDirectory property. Optional. exportConfig() must be called to save changes.
+	 * @param storageDirectory     Directory to keep the log in with the "segment" StorageBackend
+	 */
+	public void setConfigStorageDirectory(String storageDirectory)
+	{
+		dbEmailConfig.setProperty(PROP_STORAGEDIRECTORY, storageDirectory);
+	}
+	
+	/**
+	 * Sets the SampleStorage property. Optional. exportConfig() must be called to save changes.
+	 * @param sampleStorage     "true" to keep the result of every probe
+	 */
+	public void setConfigSampleStorage(String sampleStorage)
+	{
+		dbEmailConfig.setProperty(PROP_SAMPLESTORAGE, sampleStorage);
+	}
+	
+	/**
+	 * Sets the SampleDirectory property. Optional. exportConfig() must be called to save changes.
+	 * @param sampleDirectory     Directory to keep probe results in
+	 */
+	public void setConfigSampleDirectory(String sampleDirectory)
+	{
+		dbEmailConfig.setProperty(PROP_SAMPLEDIRECTORY, sampleDirectory);
+	}
+	
+	/**
+	 * Sets the SampleBlockSize property. Optional. exportConfig() must be called to save changes.
+	 * @param sampleBlockSize     Number of probe results compressed together before they are written
+	 */
+	public void setConfigSampleBlockSize(String sampleBlockSize)
+	{
+		dbEmailConfig.setProperty(PROP_SAMPLEBLOCKSIZE, sampleBlockSize);
+	}
+	
+	/**
+	 * Sets the SampleRetainDays property. Optional. exportConfig() must be called to save changes.
+	 * @param sampleRetainDays     Number of days to keep probe results for, 0 to keep them forever
+	 */
+	public void setConfigSampleRetainDays(String sampleRetainDays)
+	{
+		dbEmailConfig.setProperty(PROP_SAMPLERETAINDAYS, sampleRetainDays);
+	}
+	
+	/**
+	 * Sets the SpoolDirectory property. Optional. exportConfig() must be called to save changes.
+	 * @param spoolDirectory     Directory to keep log entries in while the database is unavailable
+	 */
+	public void setConfigSpoolDirectory(String spoolDirectory)
+	{
+		dbEmailConfig.setProperty(PROP_SPOOLDIRECTORY, spoolDirectory);
+	}
+	
+	/**
+	 * Sets the SpoolMaxMB property. Optional. exportConfig() must be called to save changes.
+	 * @param spoolMaxMB     Megabytes the spool may take up, 0 to not spool
+	 */
+	public void setConfigSpoolMaxMB(String spoolMaxMB)
+	{
+		dbEmailConfig.setProperty(PROP_SPOOLMAXMB, spoolMaxMB);
+	}
+	
 	/**
 	 * Sets the ReportFrequency property. exportConfig() must be called to save changes.
 	 * @param reportFrequency     Number of hours between reports
@@ -101,7 +226,7 @@ public class DBEmailerConfigManager
 	
 	/**
 	 * Sets the EmailAddress property. exportConfig() must be called to save changes.
-	 * @param emailAddress     Email address to send reports from, must currently be a Gmail account
+	 * @param emailAddress     Email address to send reports from, must be a Gmail account unless SmtpHost is set
 	 */
 	public void setConfigEmailAddress(String emailAddress)
 	{
@@ -117,6 +242,42 @@ public class DBEmailerConfigManager
 		dbEmailConfig.setProperty(PROP_EMAILPWD, emailPassword);
 	}
 	
+	/**
+	 * Sets the SmtpHost property. Optional. exportConfig() must be called to save changes.
+	 * @param smtpHost     Host name of the SMTP server to send reports through
+	 */
+	public void setConfigSmtpHost(String smtpHost)
+	{
+		dbEmailConfig.setProperty(PROP_SMTPHOST, smtpHost);
+	}
+	
+	/**
+	 * Sets the SmtpPort property. Optional. exportConfig() must be called to save changes.
+	 * @param smtpPort     Port of the SMTP server to send reports through
+	 */
+	public void setConfigSmtpPort(String smtpPort)
+	{
+		dbEmailConfig.setProperty(PROP_SMTPPORT, smtpPort);
+	}
+	
+	/**
+	 * Sets the EmailDigestSeconds property. Optional. exportConfig() must be called to save changes.
+	 * @param emailDigestSeconds     Seconds to combine reports into one email for, 0 to send each alone
+	 */
+	public void setConfigEmailDigestSeconds(String emailDigestSeconds)
+	{
+		dbEmailConfig.setProperty(PROP_EMAILDIGESTSECONDS, emailDigestSeconds);
+	}
+	
+	/**
+	 * Sets the EmailQueueCapacity property. Optional. exportConfig() must be called to save changes.
+	 * @param emailQueueCapacity     Number of emails that may wait to be sent before new ones are dropped
+	 */
+	public void setConfigEmailQueueCapacity(String emailQueueCapacity)
+	{
+		dbEmailConfig.setProperty(PROP_EMAILQUEUECAPACITY, emailQueueCapacity);
+	}
+	
 	/**
 	 * Imports settings from the DBEmailer.properties file.
 	 * @return true if settings were successfully imported, false if an exception was thrown or the file is empty
@@ -195,14 +356,48 @@ public class DBEmailerConfigManager
 	public DBAccessHandler buildDBAccessHandlerFromConfig()
 	{
 		if(dbAccessHandler == null)
+		{
+			dbAccessHandler = new DBAccessHandler(buildLogStoreFromConfig());
+			if(Boolean.parseBoolean(dbEmailConfig.getProperty(PROP_SAMPLESTORAGE, DEFAULT_SAMPLESTORAGE).trim()))
+			{
+				String sampleDirectory = dbEmailConfig.getProperty(PROP_SAMPLEDIRECTORY, DEFAULT_SAMPLEDIRECTORY).trim();
+				int sampleBlockSize = Integer.parseInt(dbEmailConfig.getProperty(PROP_SAMPLEBLOCKSIZE, DEFAULT_SAMPLEBLOCKSIZE).trim());
+				int sampleRetainDays = Integer.parseInt(dbEmailConfig.getProperty(PROP_SAMPLERETAINDAYS, DEFAULT_SAMPLERETAINDAYS).trim());
+				dbAccessHandler.setSampleStore(new SampleStore(sampleDirectory, sampleBlockSize, sampleRetainDays));
+			}
+			long spoolMaxMB = Long.parseLong(dbEmailConfig.getProperty(PROP_SPOOLMAXMB, DEFAULT_SPOOLMAXMB).trim());
+			if(spoolMaxMB > 0)
+			{
+				String spoolDirectory = dbEmailConfig.getProperty(PROP_SPOOLDIRECTORY, DEFAULT_SPOOLDIRECTORY).trim();
+				dbAccessHandler.setLogSpool(new LogSpool(spoolDirectory, spoolMaxMB * 1024 * 1024));
+			}
+		}
+		
+		return dbAccessHandler;
+	}
+	
+	/**
+	 * Constructs the LogStore for the StorageBackend from imported settings.
+	 * @return The constructed LogStore object
+	 */
+	private LogStore buildLogStoreFromConfig()
+	{
+		LogStore logStore;
+		String storageBackend = dbEmailConfig.getProperty(PROP_STORAGEBACKEND, DEFAULT_STORAGEBACKEND).trim();
+		if(storageBackend.equalsIgnoreCase(STORAGEBACKEND_SEGMENT))
+		{
+			logStore = new SegmentLogStore(dbEmailConfig.getProperty(PROP_STORAGEDIRECTORY, DEFAULT_STORAGEDIRECTORY).trim());
+		}
+		else
 		{
 			String dbName = dbEmailConfig.getProperty(PROP_DBNAME);
 			String dbUser = dbEmailConfig.getProperty(PROP_DBUSER);
 			String dbPwd = dbEmailConfig.getProperty(PROP_DBPWD);
-			dbAccessHandler = new DBAccessHandler(dbName, dbUser, dbPwd);
+			int dbPoolSize = Integer.parseInt(dbEmailConfig.getProperty(PROP_DBPOOLSIZE, DEFAULT_DBPOOLSIZE).trim());
+			boolean isLogPartitioned = Boolean.parseBoolean(dbEmailConfig.getProperty(PROP_DBPARTITIONLOG, DEFAULT_DBPARTITIONLOG).trim());
+			logStore = new MySqlLogStore(dbName, dbUser, dbPwd, dbPoolSize, isLogPartitioned);
 		}
-		
-		return dbAccessHandler;
+		return logStore;
 	}
 	
 	/**
@@ -219,7 +414,10 @@ public class DBEmailerConfigManager
 			String notifyList = dbEmailConfig.getProperty(PROP_NOTIFYLIST);
 			String emergencyNotifyList = dbEmailConfig.getProperty(PROP_EMERGENCYNOTIFYLIST);
 			String stationName = dbEmailConfig.getProperty(PROP_STATIONNAME);
-			emailReportHandler = new EmailReportHandler(emailer, reportFrequency, notifyList, emergencyNotifyList, stationName);
+			long digestWindowMs = Long.parseLong(dbEmailConfig.getProperty(PROP_EMAILDIGESTSECONDS, DEFAULT_EMAILDIGESTSECONDS).trim()) * 1000;
+			int queueCapacity = Integer.parseInt(dbEmailConfig.getProperty(PROP_EMAILQUEUECAPACITY, DEFAULT_EMAILQUEUECAPACITY).trim());
+			emailReportHandler = new EmailReportHandler(emailer, reportFrequency, notifyList, emergencyNotifyList, stationName,
+					digestWindowMs, queueCapacity);
 		}
 		
 		return emailReportHandler;
@@ -234,6 +432,8 @@ public class DBEmailerConfigManager
 	{
 		String emailAddress = dbEmailConfig.getProperty(PROP_EMAILADDR);
 		String emailPwd = dbEmailConfig.getProperty(PROP_EMAILPWD);
-		return new Emailer(emailAddress, emailPwd);
+		String smtpHost = dbEmailConfig.getProperty(PROP_SMTPHOST, DEFAULT_SMTPHOST).trim();
+		int smtpPort = Integer.parseInt(dbEmailConfig.getProperty(PROP_SMTPPORT, DEFAULT_SMTPPORT).trim());
+		return new Emailer(emailAddress, emailPwd, smtpHost, smtpPort);
 	}
 }
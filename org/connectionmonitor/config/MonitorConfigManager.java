@@ -0,0 +1,328 @@
+package org.connectionmonitor.config;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Properties;
+
+import org.connectionmonitor.app.ExecutionMode;
+import org.connectionmonitor.app.ProbeCadence;
+import org.connectionmonitor.app.ProbeStagger;
+import org.connectionmonitor.app.RetentionThread;
+import org.connectionmonitor.db.DBAccessHandler;
+import org.my.libraries.IOUtilities;
+
+/**
+ * An object for managing reads and writes from and to the Monitor config file used in ConnectionMonitor. Every
+ * setting in this file is optional and falls back to a default when missing, as does the file itself.
+ * @author Cory Ma
+ */
+public class MonitorConfigManager
+{
+	private final static String MONITOR_FILENAME = "Monitor.properties";
+	private final static String PROP_EXECUTIONMODE = "ExecutionMode";
+	private final static String PROP_SCHEDULERPOOLSIZE = "SchedulerPoolSize";
+	private final static String PROP_BATCHPROBECOMMAND = "BatchProbeCommand";
+	private final static String PROP_ADAPTIVECADENCE = "AdaptiveCadence";
+	private final static String PROP_MAXPROBEINTERVAL = "MaxProbeIntervalMs";
+	private final static String PROP_CONFIRMPROBEINTERVAL = "ConfirmProbeIntervalMs";
+	private final static String PROP_CONFIRMPROBECOUNT = "ConfirmProbeCount";
+	private final static String PROP_STABLEPROBESBEFOREBACKOFF = "StableProbesBeforeBackoff";
+	private final static String PROP_STAGGERSTART = "StaggerStart";
+	private final static String PROP_STARTJITTER = "StartJitterMs";
+	private final static String PROP_METRICSINTERVAL = "MetricsIntervalSeconds";
+	private final static String PROP_DNSCACHETTL = "DnsCacheTtlSeconds";
+	private final static String PROP_LOGQUEUECAPACITY = "LogQueueCapacity";
+	private final static String PROP_LOGBATCHSIZE = "LogBatchSize";
+	private final static String PROP_LOGFLUSHINTERVAL = "LogFlushIntervalMs";
+	private final static String PROP_RETAINUNREACHABLE = "RetainUnreachableDays";
+	private final static String PROP_RETAINREACHABLEAGAIN = "RetainReachableAgainDays";
+	private final static String PROP_RETAINSLOW = "RetainSlowDays";
+	private final static String PROP_RETENTIONINTERVAL = "RetentionIntervalMinutes";
+	private final static String PROP_RETENTIONBATCHSIZE = "RetentionBatchSize";
+	private final static String PROP_RETENTIONBATCHPAUSE = "RetentionBatchPauseMs";
+	
+	private final static int DEFAULT_SCHEDULERPOOLSIZE = 2;
+	private final static String DEFAULT_BATCHPROBECOMMAND = "fping -e -r 0 -t 1000";
+	private final static int PROBE_INTERVAL = 1000;
+	private final static int DEFAULT_MAXPROBEINTERVAL = 10000;
+	private final static int DEFAULT_CONFIRMPROBEINTERVAL = 200;
+	private final static int DEFAULT_CONFIRMPROBECOUNT = 3;
+	private final static int DEFAULT_STABLEPROBESBEFOREBACKOFF = 60;
+	private final static int DEFAULT_STARTJITTER = 0;
+	private final static int DEFAULT_METRICSINTERVAL = 0;
+	private final static int DEFAULT_DNSCACHETTL = 300;
+	private final static int DEFAULT_LOGQUEUECAPACITY = 8192;
+	private final static int DEFAULT_LOGBATCHSIZE = 256;
+	private final static int DEFAULT_LOGFLUSHINTERVAL = 500;
+	private final static int DEFAULT_RETAINDAYS = 0;
+	private final static int DEFAULT_RETENTIONINTERVAL = 60;
+	private final static int DEFAULT_RETENTIONBATCHSIZE = 1000;
+	private final static int DEFAULT_RETENTIONBATCHPAUSE = 100;
+	
+	private Properties monitorConfig = new Properties();
+	
+	/**
+	 * Sets the ExecutionMode property. exportConfig() must be called to save changes.
+	 * @param executionMode     How the probes for all sites are run
+	 */
+	public void setConfigExecutionMode(ExecutionMode executionMode)
+	{
+		monitorConfig.setProperty(PROP_EXECUTIONMODE, executionMode.getConfigName());
+	}
+	
+	/**
+	 * Sets the SchedulerPoolSize property. exportConfig() must be called to save changes.
+	 * @param poolSize     Number of threads the scheduler runs probes with
+	 */
+	public void setConfigSchedulerPoolSize(int poolSize)
+	{
+		monitorConfig.setProperty(PROP_SCHEDULERPOOLSIZE, Integer.toString(poolSize));
+	}
+	
+	/**
+	 * Sets the BatchProbeCommand property. exportConfig() must be called to save changes.
+	 * @param batchProbeCommand     Multi-target command used by the batch prober, without addresses
+	 */
+	public void setConfigBatchProbeCommand(String batchProbeCommand)
+	{
+		monitorConfig.setProperty(PROP_BATCHPROBECOMMAND, batchProbeCommand);
+	}
+	
+	/**
+	 * Gets the ExecutionMode property.
+	 * @return How the probes for all sites are run, THREAD by default
+	 */
+	public ExecutionMode getConfigExecutionMode()
+	{
+		return ExecutionMode.fromConfigName(monitorConfig.getProperty(PROP_EXECUTIONMODE));
+	}
+	
+	/**
+	 * Gets the SchedulerPoolSize property.
+	 * @return Number of threads the scheduler runs probes with
+	 */
+	public int getConfigSchedulerPoolSize()
+	{
+		return getIntProperty(PROP_SCHEDULERPOOLSIZE, DEFAULT_SCHEDULERPOOLSIZE);
+	}
+	
+	/**
+	 * Gets the BatchProbeCommand property.
+	 * @return Multi-target command used by the batch prober, without addresses
+	 */
+	public String getConfigBatchProbeCommand()
+	{
+		String batchProbeCommand = monitorConfig.getProperty(PROP_BATCHPROBECOMMAND);
+		if(batchProbeCommand == null || batchProbeCommand.trim().isEmpty())
+		{
+			batchProbeCommand = DEFAULT_BATCHPROBECOMMAND;
+		}
+		return batchProbeCommand;
+	}
+	
+	/**
+	 * Gets the MetricsIntervalSeconds property.
+	 * @return Number of seconds between metrics reports on the console, 0 for none
+	 */
+	public int getConfigMetricsInterval()
+	{
+		return getIntProperty(PROP_METRICSINTERVAL, DEFAULT_METRICSINTERVAL);
+	}
+	
+	/**
+	 * Gets the DnsCacheTtlSeconds property.
+	 * @return Number of seconds a resolved site address is used before it is resolved again, 0 to resolve on every probe
+	 */
+	public int getConfigDnsCacheTTL()
+	{
+		return getIntProperty(PROP_DNSCACHETTL, DEFAULT_DNSCACHETTL);
+	}
+	
+	/**
+	 * Gets the LogQueueCapacity property.
+	 * @return Number of log entries that may wait to be written before new ones are dropped
+	 */
+	public int getConfigLogQueueCapacity()
+	{
+		return getIntProperty(PROP_LOGQUEUECAPACITY, DEFAULT_LOGQUEUECAPACITY);
+	}
+	
+	/**
+	 * Gets the LogBatchSize property.
+	 * @return Number of log entries written to the database in one batch at most
+	 */
+	public int getConfigLogBatchSize()
+	{
+		return getIntProperty(PROP_LOGBATCHSIZE, DEFAULT_LOGBATCHSIZE);
+	}
+	
+	/**
+	 * Gets the LogFlushIntervalMs property.
+	 * @return Number of milliseconds a log entry may wait before its batch is written
+	 */
+	public int getConfigLogFlushInterval()
+	{
+		return getIntProperty(PROP_LOGFLUSHINTERVAL, DEFAULT_LOGFLUSHINTERVAL);
+	}
+	
+	/**
+	 * Constructs a RetentionThread from imported settings. A retention of 0 days keeps a status forever.
+	 * @param dbAccessHandler     DBAccessHandler to delete log entries and samples with
+	 * @return The constructed RetentionThread object, null if every status and sample is kept forever
+	 */
+	public RetentionThread buildRetentionThreadFromConfig(DBAccessHandler dbAccessHandler)
+	{
+		RetentionThread retentionThread = null;
+		HashMap<Integer, Integer> retentionDays = new HashMap<>();
+		addRetentionDays(retentionDays, 1, PROP_RETAINUNREACHABLE);
+		addRetentionDays(retentionDays, 2, PROP_RETAINREACHABLEAGAIN);
+		addRetentionDays(retentionDays, 3, PROP_RETAINSLOW);
+		if(!retentionDays.isEmpty() || dbAccessHandler.hasSampleRetention())
+		{
+			retentionThread = new RetentionThread(dbAccessHandler, retentionDays, getIntProperty(PROP_RETENTIONINTERVAL, DEFAULT_RETENTIONINTERVAL), 
+					getIntProperty(PROP_RETENTIONBATCHSIZE, DEFAULT_RETENTIONBATCHSIZE), getIntProperty(PROP_RETENTIONBATCHPAUSE, DEFAULT_RETENTIONBATCHPAUSE));
+		}
+		return retentionThread;
+	}
+	
+	/**
+	 * Adds the retention of a status to a map if it has one.
+	 * @param retentionDays     Map of status number to days of retention
+	 * @param statusNum         Status number of the setting
+	 * @param key               Key of the setting
+	 */
+	private void addRetentionDays(HashMap<Integer, Integer> retentionDays, int statusNum, String key)
+	{
+		int days = getIntProperty(key, DEFAULT_RETAINDAYS);
+		if(days > 0)
+		{
+			retentionDays.put(statusNum, days);
+		}
+	}
+	
+	/**
+	 * Constructs a ProbeStagger from imported settings.
+	 * @param siteCount     Number of sites being started
+	 * @return The constructed ProbeStagger object
+	 */
+	public ProbeStagger buildProbeStaggerFromConfig(int siteCount)
+	{
+		boolean isStaggered = Boolean.parseBoolean(monitorConfig.getProperty(PROP_STAGGERSTART, "true").trim());
+		return new ProbeStagger(isStaggered, PROBE_INTERVAL, siteCount, getIntProperty(PROP_STARTJITTER, DEFAULT_STARTJITTER));
+	}
+	
+	/**
+	 * Constructs a new ProbeCadence from imported settings, each site needs its own.
+	 * @return The constructed ProbeCadence object
+	 */
+	public ProbeCadence buildProbeCadenceFromConfig()
+	{
+		ProbeCadence probeCadence;
+		if(Boolean.parseBoolean(monitorConfig.getProperty(PROP_ADAPTIVECADENCE, "false").trim()))
+		{
+			probeCadence = new ProbeCadence(true, PROBE_INTERVAL, getIntProperty(PROP_MAXPROBEINTERVAL, DEFAULT_MAXPROBEINTERVAL), 
+					getIntProperty(PROP_CONFIRMPROBEINTERVAL, DEFAULT_CONFIRMPROBEINTERVAL), getIntProperty(PROP_CONFIRMPROBECOUNT, DEFAULT_CONFIRMPROBECOUNT), 
+					getIntProperty(PROP_STABLEPROBESBEFOREBACKOFF, DEFAULT_STABLEPROBESBEFOREBACKOFF));
+		}
+		else
+		{
+			probeCadence = new ProbeCadence(PROBE_INTERVAL);
+		}
+		return probeCadence;
+	}
+	
+	/**
+	 * Imports settings from the Monitor.properties file. A missing file is not an error since every setting has a default.
+	 * @return true if settings were successfully imported, false if an exception was thrown or the file is missing
+	 */
+	public boolean importConfig()
+	{
+		boolean success = true;
+		
+		try
+		{
+			InputStream monitorPropInStream = new FileInputStream(MONITOR_FILENAME);
+			try
+			{
+				monitorConfig.load(monitorPropInStream);
+			}
+			catch(IOException e)
+			{
+				e.printStackTrace();
+				success = false;
+			}
+			finally
+			{
+				IOUtilities.closeCloseable(monitorPropInStream);
+			}
+		}
+		catch(FileNotFoundException e)
+		{
+			success = false;
+		}
+		
+		return success;
+	}
+	
+	/**
+	 * Exports settings to the Monitor.properties file.
+	 * @return true if settings were successfully exported, false if an exception was thrown
+	 */
+	public boolean exportConfig()
+	{
+		boolean success = true;
+		try
+		{
+			OutputStream monitorPropOutStream = new FileOutputStream(MONITOR_FILENAME);
+			try
+			{
+				monitorConfig.store(monitorPropOutStream, null);
+			}
+			catch (IOException e)
+			{
+				e.printStackTrace();
+				success = false;
+			}
+			finally
+			{
+				IOUtilities.closeCloseable(monitorPropOutStream);
+			}
+		}
+		catch (FileNotFoundException e)
+		{
+			e.printStackTrace();
+			success = false;
+		}
+		
+		return success;
+	}
+	
+	/**
+	 * Gets a property as an integer.
+	 * @param key              Key of the property
+	 * @param defaultValue     Value to use if the property is missing, empty or not an integer
+	 * @return The value of the property
+	 */
+	private int getIntProperty(String key, int defaultValue)
+	{
+		int value = defaultValue;
+		String property = monitorConfig.getProperty(key);
+		if(property != null && !property.trim().isEmpty())
+		{
+			try
+			{
+				value = Integer.parseInt(property.trim());
+			}
+			catch(NumberFormatException nfEx)
+			{
+				nfEx.printStackTrace();
+			}
+		}
+		return value;
+	}
+}
@@ -11,6 +11,7 @@ import java.util.Enumeration;
 import java.util.Properties;
 
 import org.connectionmonitor.ping.PingSite;
+import org.connectionmonitor.ping.ProberType;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.my.libraries.IOUtilities;
@@ -26,6 +27,10 @@ public class PingSitesConfigManager
 	private final static String JSON_AVG = "average";
 	private final static String JSON_STDDEV = "stddev";
 	private final static String JSON_TOLERANCE = "tolerance";
+	private final static String JSON_PROBER = "prober";
+	private final static String JSON_PORT = "port";
+	private final static String JSON_INTERVAL = "interval";
+	private final static String JSON_TIMEOUT = "timeout";
 	
 	private Properties pingSitesConfig = new Properties();
 	
@@ -40,6 +45,10 @@ public class PingSitesConfigManager
 		pingSiteJSON.put(JSON_AVG, pingSite.getAvgLatency());
 		pingSiteJSON.put(JSON_STDDEV, pingSite.getLatencyStdDeviation()); 
 		pingSiteJSON.put(JSON_TOLERANCE, pingSite.getDeviationTolerance());
+		pingSiteJSON.put(JSON_PROBER, pingSite.getProberType().getConfigName());
+		pingSiteJSON.put(JSON_PORT, pingSite.getProbePort());
+		pingSiteJSON.put(JSON_INTERVAL, pingSite.getProbeInterval());
+		pingSiteJSON.put(JSON_TIMEOUT, pingSite.getProbeTimeout());
 		pingSitesConfig.setProperty(pingSite.getName(), pingSiteJSON.toString());
 	}
 	
@@ -167,6 +176,11 @@ public class PingSitesConfigManager
 				int configTolerance = pingSitesConfigJSON.getInt(JSON_TOLERANCE);
 				//If there was an error in the JSON request an exception will be thrown before it hits the constructor, then it will go for the next properties entry
 				PingSite newPingSite = new PingSite(key, configAddress, configAverage, configStdDev, configTolerance);
+				//Optional fields, sites without them keep the defaults set by the constructor
+				newPingSite.setProberType(ProberType.fromConfigName(pingSitesConfigJSON.optString(JSON_PROBER)));
+				newPingSite.setProbePort(pingSitesConfigJSON.optInt(JSON_PORT, newPingSite.getProbePort()));
+				newPingSite.setProbeInterval(pingSitesConfigJSON.optDouble(JSON_INTERVAL, newPingSite.getProbeInterval()));
+				newPingSite.setProbeTimeout(pingSitesConfigJSON.optInt(JSON_TIMEOUT, newPingSite.getProbeTimeout()));
 				System.out.println(newPingSite);
 				pingSites.add(newPingSite);
 			}
@@ -0,0 +1,241 @@
+package org.connectionmonitor.db;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A small pool of database Connections so that threads can use the database at the same time without sharing one
+ * Connection. Connections are opened as they are needed up to the pool size. One that sat idle for a while, or that
+ * had an error while borrowed, is checked before being handed out again and replaced if it is no longer usable,
+ * so the pool recovers on its own when the database restarts.
+ * @author Cory Ma
+ */
+public class ConnectionPool
+{
+	private final long BORROW_TIMEOUT_MS = 30000;
+	private final long BORROW_RECHECK_MS = 100;
+	private final long VALIDATE_AFTER_IDLE_MS = 5000;
+	private final int VALIDATION_TIMEOUT_SECONDS = 2;
+	
+	private final String dbURL;
+	private final String dbUser;
+	private final String dbPassword;
+	private final int poolSize;
+	
+	private final LinkedBlockingDeque<IdleConnection> idleConnections = new LinkedBlockingDeque<>();
+	private final AtomicInteger openCount = new AtomicInteger(0);
+	private volatile boolean isClosed = false;
+	
+	/**
+	 * Constructor.
+	 * @param url          Database URL
+	 * @param user         User name for database
+	 * @param password     Password for database
+	 * @param size         Largest number of Connections to open at once
+	 */
+	public ConnectionPool(String url, String user, String password, int size)
+	{
+		dbURL = url;
+		dbUser = user;
+		dbPassword = password;
+		poolSize = Math.max(1, size);
+	}
+	
+	/**
+	 * Borrows a Connection, opening one if none are idle and the pool isn't full, otherwise waiting for one
+	 * to be released. Every Connection borrowed must be given back with release().
+	 * @return A usable Connection
+	 * @throws SQLException
+	 */
+	public Connection borrow() throws SQLException
+	{
+		Connection connection = null;
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(BORROW_TIMEOUT_MS);
+		while(connection == null)
+		{
+			if(isClosed)
+			{
+				throw new SQLException("Connection pool is closed");
+			}
+			//Most recently used first, so idle Connections beyond what's needed age out and get checked
+			IdleConnection idleConnection = idleConnections.pollFirst();
+			if(idleConnection != null)
+			{
+				connection = checkIdleConnection(idleConnection);
+			}
+			else if(openCount.incrementAndGet() <= poolSize)
+			{
+				connection = openConnection();
+			}
+			else
+			{
+				openCount.decrementAndGet();
+				idleConnection = waitForIdleConnection(deadline);
+				if(idleConnection != null)
+				{
+					connection = checkIdleConnection(idleConnection);
+				}
+			}
+		}
+		return connection;
+	}
+	
+	/**
+	 * Gives a borrowed Connection back to the pool.
+	 * @param connection     Connection to give back
+	 * @param hadError       Whether an SQLException was thrown while it was borrowed, so it is checked now
+	 */
+	public void release(Connection connection, boolean hadError)
+	{
+		boolean isUsable = !isClosed;
+		if(isUsable && hadError)
+		{
+			isUsable = isValid(connection);
+		}
+		if(isUsable)
+		{
+			idleConnections.offerFirst(new IdleConnection(connection));
+		}
+		else
+		{
+			discardConnection(connection);
+		}
+	}
+	
+	/**
+	 * Closes every idle Connection. Connections still borrowed are closed when they are released.
+	 */
+	public void close()
+	{
+		isClosed = true;
+		IdleConnection idleConnection;
+		while((idleConnection = idleConnections.pollFirst()) != null)
+		{
+			discardConnection(idleConnection.connection);
+		}
+	}
+	
+	/**
+	 * Waits a short time for a Connection to be released. The wait is kept short since a discarded Connection
+	 * frees a place for a new one without anything being released.
+	 * @param deadline     System.nanoTime() to give up at
+	 * @return The released Connection, null if none was released in time to check again
+	 * @throws SQLException
+	 */
+	private IdleConnection waitForIdleConnection(long deadline) throws SQLException
+	{
+		IdleConnection idleConnection = null;
+		long remainingNs = deadline - System.nanoTime();
+		if(remainingNs <= 0)
+		{
+			throw new SQLException("Timed out waiting for a database connection");
+		}
+		try
+		{
+			idleConnection = idleConnections.pollFirst(Math.min(remainingNs, TimeUnit.MILLISECONDS.toNanos(BORROW_RECHECK_MS)), 
+					TimeUnit.NANOSECONDS);
+		}
+		catch(InterruptedException iE)
+		{
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted waiting for a database connection", iE);
+		}
+		return idleConnection;
+	}
+	
+	/**
+	 * Checks a Connection that was idle if it has been idle long enough that the database may have dropped it.
+	 * @param idleConnection     Connection to check
+	 * @return The Connection if it is usable, null if it was discarded
+	 */
+	private Connection checkIdleConnection(IdleConnection idleConnection)
+	{
+		Connection connection = idleConnection.connection;
+		long idleMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - idleConnection.releaseTime);
+		if(idleMs >= VALIDATE_AFTER_IDLE_MS && !isValid(connection))
+		{
+			discardConnection(connection);
+			connection = null;
+		}
+		return connection;
+	}
+	
+	/**
+	 * Opens a new Connection, giving its place in the pool back if it fails.
+	 * @return The new Connection
+	 * @throws SQLException
+	 */
+	private Connection openConnection() throws SQLException
+	{
+		Connection connection;
+		try
+		{
+			connection = DriverManager.getConnection(dbURL, dbUser, dbPassword);
+		}
+		catch(SQLException sqlE)
+		{
+			openCount.decrementAndGet();
+			throw sqlE;
+		}
+		return connection;
+	}
+	
+	/**
+	 * Closes a Connection and frees its place in the pool.
+	 * @param connection     Connection to close
+	 */
+	private void discardConnection(Connection connection)
+	{
+		openCount.decrementAndGet();
+		try
+		{
+			connection.close();
+		}
+		catch(SQLException sqlE)
+		{
+			sqlE.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Checks if a Connection can still reach the database.
+	 * @param connection     Connection to check
+	 * @return true if it is usable, false if not
+	 */
+	private boolean isValid(Connection connection)
+	{
+		boolean valid;
+		try
+		{
+			valid = connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+		}
+		catch(SQLException sqlE)
+		{
+			valid = false;
+		}
+		return valid;
+	}
+	
+	/**
+	 * A Connection waiting in the pool along with when it was released.
+	 */
+	private static class IdleConnection
+	{
+		private final Connection connection;
+		private final long releaseTime;
+		
+		/**
+		 * Constructor.
+		 * @param idle     Connection that was released
+		 */
+		public IdleConnection(Connection idle)
+		{
+			connection = idle;
+			releaseTime = System.nanoTime();
+		}
+	}
+}
@@ -1,84 +1,142 @@
 package org.connectionmonitor.db;
 
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.ResultSet;
+import java.io.IOException;
 import java.sql.SQLException;
-import java.sql.Statement;
-import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Vector;
 
 import org.my.libraries.MoreDateFunctions;
 
 /**
- * An object that handles access to DataBase and performs necessary queries and input to it. Since multiple
- * threads require access to the database concurrently, one object should be shared and functions
- * need to be threadsafe. 
+ * An object that handles access to the LogStore and builds reports from it. Since multiple threads require
+ * access to the store concurrently, one object should be shared and functions need to be threadsafe. Log
+ * entries are written in batches by a LogWriter so that callers don't wait on the store, and minute, hour and
+ * day LogRollups are kept up to date with each batch so that regular reports don't read every log entry. An
+ * optional SampleStore keeps the result of every probe alongside the log.
  * @author Cory Ma
  */
 public class DBAccessHandler
 {
-	//JDBC Driver Name and Database URL
-	private final String JDBC_DRIVER;  
-	private final String DB_URL;
+	private final LogStore logStore;
 	
-	//Database Credentials
-	private final String USER;
-	private final String PASSWORD;
+	//Log writer settings, the LogWriter is started with the store
+	private final long LOG_FLUSH_WAIT_MS = 5000;
+	private int logQueueCapacity = 8192;
+	private int logBatchSize = 256;
+	private long logFlushIntervalMs = 500;
+	private LogWriter logWriter;
 	
-	//Table Names
-	private final String LOG_TABLE;
-	private final String SITE_TABLE;
-	
-	private Connection dbConnection;
+	private LogSpool logSpool;
+	private SampleStore sampleStore;
 	
 	/**
 	 * Constructor.
-	 * @param dbName         Name of the database
-	 * @param dbUser         User name for database
-	 * @param dbPassword     Password for database
+	 * @param store     LogStore to keep the site and log entries in
 	 */
-	public DBAccessHandler(String dbName, String dbUser, String dbPassword)
+	public DBAccessHandler(LogStore store)
 	{
-		DB_URL = "jdbc:mysql://localhost/" + dbName;
-		USER = dbUser;
-		PASSWORD = dbPassword;
-		
-		JDBC_DRIVER = "com.mysql.jdbc.Driver";
-		LOG_TABLE = "log";
-		SITE_TABLE = "site";
+		logStore = store;
+	}
+	
+	/**
+	 * Sets how log entries are batched, must be called before initDBConnection() to take effect.
+	 * @param queueCapacity       Number of log entries that may wait to be written before new ones are dropped
+	 * @param batchSize           Number of log entries written in one batch at most
+	 * @param flushIntervalMs     Number of milliseconds a log entry may wait before its batch is written
+	 */
+	public void setLogWriterSettings(int queueCapacity, int batchSize, long flushIntervalMs)
+	{
+		logQueueCapacity = queueCapacity;
+		logBatchSize = batchSize;
+		logFlushIntervalMs = flushIntervalMs;
+	}
+	
+	/**
+	 * Sets a LogSpool to keep log entries in while the LogStore can't take them, must be called before
+	 * initDBConnection().
+	 * @param spool     LogSpool to use, null to retry failed writes in memory instead
+	 */
+	public void setLogSpool(LogSpool spool)
+	{
+		logSpool = spool;
+	}
+	
+	/**
+	 * Sets a SampleStore to keep the result of every probe in, must be called before initDBConnection().
+	 * @param store     SampleStore to use, null to not keep samples
+	 */
+	public void setSampleStore(SampleStore store)
+	{
+		sampleStore = store;
 	}
 	
 	/**
-	 * Initializes the DataBase connection by loading the driver and establishing the connection.
-	 * @throws ClassNotFoundException
+	 * Opens the LogStore, LogSpool and SampleStore, then starts the LogWriter.
 	 * @throws SQLException
 	 */
-	public synchronized void initDBConnection() throws ClassNotFoundException, SQLException
+	public void initDBConnection() throws SQLException
 	{
-		Class.forName(JDBC_DRIVER);
-		dbConnection = DriverManager.getConnection(DB_URL, USER, PASSWORD);
+		logStore.open();
+		if(logSpool != null)
+		{
+			try
+			{
+				logSpool.open();
+			}
+			catch(IOException ioEx)
+			{
+				throw new SQLException("Could not open log spool", ioEx);
+			}
+		}
+		if(sampleStore != null)
+		{
+			try
+			{
+				sampleStore.open();
+			}
+			catch(IOException ioEx)
+			{
+				throw new SQLException("Could not open sample store", ioEx);
+			}
+		}
+		logWriter = new LogWriter(this, logQueueCapacity, logBatchSize, logFlushIntervalMs, logSpool);
+		logWriter.start();
 	}
 	
 	/**
-	 * Closes the connection to the database, should not be called outside the main thread.
+	 * Writes out any queued log entries and closes the LogStore, should not be called outside the main thread.
 	 */
-	public synchronized void closeDBConnection()
+	public void closeDBConnection()
 	{
-		try
+		if(logWriter != null)
+		{
+			logWriter.shutDown();
+			try
+			{
+				logWriter.join();
+			}
+			catch(InterruptedException iE)
+			{
+				iE.printStackTrace();
+			}
+		}
+		logStore.close();
+		if(logSpool != null)
 		{
-			dbConnection.close();
+			logSpool.close();
 		}
-		catch(SQLException sqlE)
+		if(sampleStore != null)
 		{
-			sqlE.printStackTrace();
+			sampleStore.close();
 		}
 	}
 	
 	/**
-	 * Inserts an entry into the log table in the database.
+	 * Queues an entry to be inserted into the log. The entry is dropped if the LogWriter has fallen too far behind.
 	 * @param siteName      Name assigned to the PingSite
 	 * @param statusNum     Status number associated with the type of response to the ping
 	 * 	        1 - Site unreachable
@@ -87,237 +145,274 @@ public class DBAccessHandler
 	 * @param pingTime      Time of the ping command
 	 * @param ipAddress     IP Address logged from the ping
 	 * @param latency       Latency logged from the ping
-	 * @throws SQLException
 	 */
-	public synchronized void insertLogEntry(String siteName, int statusNum, Date pingTime, String ipAddress, double latency) throws SQLException
+	public void insertLogEntry(String siteName, int statusNum, Date pingTime, String ipAddress, double latency)
 	{
-		Statement sqlStatement = dbConnection.createStatement();
-		
-		int sitePKey = getSitePKey(siteName);
-		
-		Timestamp timestampInsert = new Timestamp(pingTime.getTime());; 
-		String latencyInsertString = "NULL";
-		String ipInsertString = "NULL";
-		if(!ipAddress.isEmpty())
+		insertLogEntry(siteName, statusNum, pingTime, ipAddress, latency, null);
+	}
+	
+	/**
+	 * Queues an entry to be inserted into the log, for an entry that ends an outage. The entry is dropped if the
+	 * LogWriter has fallen too far behind.
+	 * @param siteName        Name assigned to the PingSite
+	 * @param statusNum       Status number associated with the type of response to the ping
+	 * @param pingTime        Time of the ping command
+	 * @param ipAddress       IP Address logged from the ping
+	 * @param latency         Latency logged from the ping
+	 * @param outageStart     Time the outage that this entry ends started, null if it doesn't end one
+	 */
+	public void insertLogEntry(String siteName, int statusNum, Date pingTime, String ipAddress, double latency, Date outageStart)
+	{
+		logWriter.enqueue(new LogEntry(siteName, statusNum, pingTime, ipAddress, latency, outageStart));
+	}
+	
+	/**
+	 * Adds the result of a probe to the SampleStore, if there is one. Most samples are only added to the site's block
+	 * in memory, the probe waits on the disk once every SampleBlockSize probes when the block is written. A sample that
+	 * can't be written is dropped rather than failing the probe.
+	 * @param siteName       Name assigned to the PingSite
+	 * @param pingTime       Time of the ping command
+	 * @param latency        Latency logged from the ping
+	 * @param reachable      Whether the site was reachable, its latency is kept as NaN if not
+	 */
+	public void insertSample(String siteName, Date pingTime, double latency, boolean reachable)
+	{
+		if(sampleStore != null)
 		{
-			ipInsertString = ipAddress;
+			try
+			{
+				sampleStore.addSample(siteName, pingTime.getTime(), reachable ? (float)latency : Float.NaN);
+			}
+			catch(IOException ioEx)
+			{
+				ioEx.printStackTrace();
+			}
 		}
-		if(latency != -1)
+	}
+	
+	/**
+	 * Reads the probe results of a site from the SampleStore, passing nothing to the SampleHandler if there is no store.
+	 * @param siteName          Name assigned to the PingSite
+	 * @param startTime         Time to start from
+	 * @param endTime           Time to end before
+	 * @param sampleHandler     SampleHandler to pass the samples to, in time order
+	 * @throws IOException
+	 */
+	public void selectSamples(String siteName, Date startTime, Date endTime, SampleHandler sampleHandler) throws IOException
+	{
+		if(sampleStore != null)
 		{
-			latencyInsertString = Double.toString(latency);
+			sampleStore.selectSamples(siteName, startTime.getTime(), endTime.getTime(), sampleHandler);
 		}
-		
-		String sql = "INSERT INTO " + LOG_TABLE + " (fksiteid, fkstatusid, pingtime, ipaddress, latency) VALUES (" + Integer.toString(sitePKey) + ", " + 
-				Integer.toString(statusNum) + ", '" + timestampInsert + "', '" + ipInsertString + "', " + latencyInsertString + ")";
-
-		sqlStatement.executeUpdate(sql);
-		sqlStatement.close();
 	}
 	
 	/**
-	 * Inserts an entry into the site table with PingSite information.
-	 * @param siteName     Name assigned to the PingSite
-	 * @param address      Address assigned to the PingSite
+	 * Inserts a batch of entries into the log along with their rollups, used by the LogWriter.
+	 * @param logEntries     Entries to insert
 	 * @throws SQLException
 	 */
-	public synchronized void insertSiteEntry(String siteName, String address) throws SQLException
+	void insertLogEntries(List<LogEntry> logEntries) throws SQLException
 	{
-		int sitePKey = getSitePKey(siteName);
-		
-		if(sitePKey == -1)
+		logStore.insertLogEntries(logEntries, LogRollup.buildRollups(logEntries));
+	}
+	
+	/**
+	 * Deletes up to a number of log entries older than the retention of their status, used by the RetentionThread.
+	 * @param statusCutoffs     Time before which entries are deleted, by status number. Statuses without one are kept.
+	 * @param maxEntries        Number of entries to delete at most
+	 * @return The number of entries deleted, 0 once there are none left to delete
+	 * @throws SQLException
+	 */
+	public int deleteExpiredLogEntries(Map<Integer, Date> statusCutoffs, int maxEntries) throws SQLException
+	{
+		return logStore.deleteLogEntries(statusCutoffs, maxEntries);
+	}
+	
+	/**
+	 * Checks if there is a SampleStore that deletes old samples, used to decide whether a RetentionThread is needed.
+	 * @return true if the SampleStore has a retention, false if there is no store or it keeps samples forever
+	 */
+	public boolean hasSampleRetention()
+	{
+		return sampleStore != null && sampleStore.hasRetention();
+	}
+	
+	/**
+	 * Deletes the SampleStore's files of days older than its retention, used by the RetentionThread.
+	 * @return The number of day files deleted, 0 if there is no store
+	 */
+	public int deleteExpiredSamples()
+	{
+		int numDeleted = 0;
+		if(sampleStore != null)
 		{
-			Statement sqlStatement = dbConnection.createStatement();
-			String sql = "INSERT INTO " + SITE_TABLE + " (name, address) VALUES ('" +
-					siteName + "', '" + address + "')";
-			
-			sqlStatement.executeUpdate(sql);
-			sqlStatement.close();
+			numDeleted = sampleStore.deleteExpiredSamples(System.currentTimeMillis());
 		}
+		return numDeleted;
+	}
+	
+	/**
+	 * Inserts a site with PingSite information, if it isn't already there.
+	 * @param siteName     Name assigned to the PingSite
+	 * @param address      Address assigned to the PingSite
+	 * @throws SQLException
+	 */
+	public void insertSiteEntry(String siteName, String address) throws SQLException
+	{
+		logStore.insertSite(siteName, address);
 	}
 	
 	/**
-	 * Queries the database and builds a message string for a regular report email.
+	 * Queries the LogStore and builds a message string for a regular report email. Every site is totalled by one
+	 * query over the rollups, so this only renders the results.
 	 * @param activePingSiteNames     List of active ping site names
-	 * @param emergencyStartTime      Time to start the report at
-	 * @param emergencyEndTime        Time to end the report at
+	 * @param reportStartTime         Time to start the report at
+	 * @param reportEndTime           Time to end the report at
 	 * @return The String for the regular report email
 	 * @throws SQLException
 	 */
-	public synchronized String buildRegularReportMessage(Vector<String> activePingSiteNames, Date reportStartTime, Date reportEndTime) throws SQLException
+	public String buildRegularReportMessage(Vector<String> activePingSiteNames, Date reportStartTime, Date reportEndTime) throws SQLException
 	{
-		String message = "";
+		flushLogEntries();
+		HashMap<String, LogRollup> rollupTotals = logStore.selectRollupTotals(planRollupRanges(reportStartTime, reportEndTime));
+		StringBuilder message = new StringBuilder();
 		for(String siteName : activePingSiteNames)
 		{
-			int unreachableCount = 0;
-			double maxLatency = 0;
-			ArrayList<SiteRecord> siteRecords = selectReportLog(siteName, reportStartTime, reportEndTime);
-			for(SiteRecord siteRecord : siteRecords)
-			{
-				if(siteRecord.getStatusNum() == 1)
-				{
-					unreachableCount++;
-				}
-				else if(siteRecord.getStatusNum() == 3)
-				{
-					if(siteRecord.getLatency() > maxLatency)
-					{
-						maxLatency = siteRecord.getLatency();
-					}
-				}
-			}
-			if(unreachableCount != 0 || maxLatency != 0)
+			LogRollup siteRollup = rollupTotals.get(siteName);
+			if(siteRollup != null && (siteRollup.getUnreachableCount() != 0 || siteRollup.getMaxLatency() > 0))
 			{
-				message += "Report for " + siteName + ": \nNumber of Times Unreachable: " + Integer.toString(unreachableCount) + 
-						"\nMaximum Latency: " + Double.toString(maxLatency) + "\n\n";
+				message.append("Report for ").append(siteName).append(": \nNumber of Times Unreachable: ").append(siteRollup.getUnreachableCount())
+						.append("\nSeconds Unreachable: ").append(Math.round(siteRollup.getOutageSeconds()))
+						.append("\nMaximum Latency: ").append(Math.max(0, siteRollup.getMaxLatency()))
+						.append("\nAverage Slow Latency: ").append(Math.max(0, Math.round(siteRollup.getAvgLatency() * 100) / 100.0)).append("\n\n");
 			}
 		}
 		
-		if(message.isEmpty())
+		if(message.length() == 0)
 		{
-			message = "Nothing to report.";
+			message.append("Nothing to report.");
 		}
-		message = "ConnectionMonitor Report for " + MoreDateFunctions.formatDateAsTimestamp(reportStartTime) + " to " + 
-				MoreDateFunctions.formatDateAsTimestamp(reportEndTime) + "\n\n" + message;
 		
-		return message;
+		return "ConnectionMonitor Report for " + MoreDateFunctions.formatDateAsTimestamp(reportStartTime) + " to " + 
+				MoreDateFunctions.formatDateAsTimestamp(reportEndTime) + "\n\n" + message;
 	}
 	
 	/**
-	 * Queries the database and builds a message string for an emergency report email.
+	 * Queries the LogStore and builds a message string for an emergency report email. Entries are folded into the
+	 * message as they are read, so only the message itself is held in memory however long the period is.
 	 * @param emergencyStartTIme     Time to start the report at
 	 * @param emergencyEndTime       Time to end the report at
 	 * @return The String for the emergency report email
 	 * @throws SQLException
 	 */
-	public synchronized String buildEmergencyReportMessage(Date emergencyStartTime, Date emergencyEndTime) throws SQLException
+	public String buildEmergencyReportMessage(Date emergencyStartTime, Date emergencyEndTime) throws SQLException
 	{
-		ArrayList<SiteRecord> siteRecords = selectEmergencyReportLog(emergencyStartTime, emergencyEndTime);
-		String message = "";
-		for(SiteRecord siteRecord : siteRecords)
+		flushLogEntries();
+		final StringBuilder message = new StringBuilder();
+		logStore.selectLog(emergencyStartTime, emergencyEndTime, new SiteRecordHandler()
 		{
-			if(siteRecord.getStatusNum() == 1)
-			{
-				message += MoreDateFunctions.formatDateAsTimestamp(new Date(siteRecord.getPingTime().getTime())) + ": " + 
-						siteRecord.getSiteName() + " became unreachable.\n";
-			}
-			else if(siteRecord.getStatusNum() == 2)
+			@Override
+			public void handleRecord(SiteRecord siteRecord)
 			{
-				message += MoreDateFunctions.formatDateAsTimestamp(new Date(siteRecord.getPingTime().getTime())) + ": " + 
-						siteRecord.getSiteName() + " became reachable again.\n";
+				if(siteRecord.getStatusNum() == 1)
+				{
+					message.append(MoreDateFunctions.formatDateAsTimestamp(new Date(siteRecord.getPingTime().getTime()))).append(": ")
+							.append(siteRecord.getSiteName()).append(" became unreachable.\n");
+				}
+				else if(siteRecord.getStatusNum() == 2)
+				{
+					message.append(MoreDateFunctions.formatDateAsTimestamp(new Date(siteRecord.getPingTime().getTime()))).append(": ")
+							.append(siteRecord.getSiteName()).append(" became reachable again.\n");
+				}
 			}
-		}
+		});
 		
-		return message;
+		return message.toString();
 	}
 	
 	/**
-	 * Performs a query on the log table to get information required for a regular report email.
-	 * @param siteName      Name assigned to the PingSite
-	 * @param startTime     Time to start the query's WHERE clause from
-	 * @param endTime       Time to end the query's WHERE clause at
-	 * @return The list for the EmailReportHandler to parse out information
-	 * @throws SQLException
+	 * Splits a range into the RollupRanges that total it from the fewest buckets, using day buckets where they fit
+	 * within the range, hour buckets where those fit, and minute buckets for the rest. The range is rounded down to
+	 * the minute.
+	 * @param startTime     Time to start the range at
+	 * @param endTime       Time to end the range before
+	 * @return The RollupRanges, empty ones are left out
 	 */
-	private synchronized ArrayList<SiteRecord> selectReportLog(String siteName, Date startTime, Date endTime) throws SQLException
+	private ArrayList<RollupRange> planRollupRanges(Date startTime, Date endTime)
 	{
-		ArrayList<SiteRecord> siteRecords = new ArrayList<>();
-		int sitePKey = getSitePKey(siteName);
-		Timestamp startTimestamp = new Timestamp(startTime.getTime());
-		Timestamp endTimestamp = new Timestamp(endTime.getTime());
+		ArrayList<RollupRange> rollupRanges = new ArrayList<>();
+		long start = RollupPeriod.MINUTE.getBucketStart(startTime.getTime());
+		long end = RollupPeriod.MINUTE.getBucketStart(endTime.getTime());
 		
-		if(sitePKey != -1)
+		long hourStart = roundUp(start, RollupPeriod.HOUR);
+		long hourEnd = RollupPeriod.HOUR.getBucketStart(end);
+		if(hourStart >= hourEnd)
 		{
-			Statement sqlStatement = dbConnection.createStatement();
-			String sql = "SELECT * FROM " + LOG_TABLE + " WHERE (pingtime >= '" + startTimestamp + "' AND pingtime < '" + endTimestamp + "') AND fksiteid = " + Integer.toString(sitePKey);
-			
-			ResultSet queryResult = sqlStatement.executeQuery(sql);
-
-			while(queryResult.next())
+			addRollupRange(rollupRanges, RollupPeriod.MINUTE, start, end);
+		}
+		else
+		{
+			addRollupRange(rollupRanges, RollupPeriod.MINUTE, start, hourStart);
+			addRollupRange(rollupRanges, RollupPeriod.MINUTE, hourEnd, end);
+			long dayStart = roundUp(hourStart, RollupPeriod.DAY);
+			long dayEnd = RollupPeriod.DAY.getBucketStart(hourEnd);
+			if(dayStart >= dayEnd)
 			{
-				siteRecords.add(new SiteRecord(siteName, queryResult.getInt("fkstatusid"), queryResult.getTimestamp("pingtime"), queryResult.getFloat("latency")));
+				addRollupRange(rollupRanges, RollupPeriod.HOUR, hourStart, hourEnd);
+			}
+			else
+			{
+				addRollupRange(rollupRanges, RollupPeriod.HOUR, hourStart, dayStart);
+				addRollupRange(rollupRanges, RollupPeriod.DAY, dayStart, dayEnd);
+				addRollupRange(rollupRanges, RollupPeriod.HOUR, dayEnd, hourEnd);
 			}
-
-			sqlStatement.close();
 		}
 		
-		return siteRecords;
+		return rollupRanges;
 	}
 	
 	/**
-	 * Performs a query on the log table to get information required for an emergency report email.
-	 * @param startTime     Time to start the query's WHERE clause from
-	 * @param endTime       Time to end the query's WHERE clause at
-	 * @return The list for the EmailReportHandler to parse out information
-	 * @throws SQLException
+	 * Adds a RollupRange to a list if it isn't empty.
+	 * @param rollupRanges     List to add to
+	 * @param period           RollupPeriod of the buckets
+	 * @param start            Earliest bucket start in milliseconds
+	 * @param end              Bucket start to end before in milliseconds
 	 */
-	private synchronized ArrayList<SiteRecord> selectEmergencyReportLog(Date startTime, Date endTime) throws SQLException
+	private void addRollupRange(ArrayList<RollupRange> rollupRanges, RollupPeriod period, long start, long end)
 	{
-		ArrayList<SiteRecord> siteRecords = new ArrayList<>();
-		Timestamp startTimestamp = new Timestamp(startTime.getTime());
-		Timestamp endTimestamp = new Timestamp(endTime.getTime());
-		
-		Statement sqlStatement = dbConnection.createStatement();
-		String sql = "SELECT * FROM " + LOG_TABLE + " WHERE (pingtime >= '" + startTimestamp + "' AND pingtime <= '" + endTimestamp + "')";
-		
-		ResultSet queryResult = sqlStatement.executeQuery(sql);
-
-		while(queryResult.next())
+		if(start < end)
 		{
-			String siteName = getSiteName(queryResult.getInt("fksiteid"));
-			siteRecords.add(new SiteRecord(siteName, queryResult.getInt("fkstatusid"), queryResult.getTimestamp("pingtime"), queryResult.getFloat("latency")));
+			rollupRanges.add(new RollupRange(period, start, end));
 		}
-
-		sqlStatement.close();
-		
-		return siteRecords;
 	}
 	
 	/**
-	 * Queries the site table by name to find its primary key.
-	 * @param siteName     Name assigned to the PingSite
-	 * @return The primary key of the PingSite entry in the site table
-	 * @throws SQLException
+	 * Rounds a time up to the start of a bucket.
+	 * @param time       Time in milliseconds
+	 * @param period     RollupPeriod of the buckets
+	 * @return The start of the first bucket at or after the time
 	 */
-	private synchronized int getSitePKey(String siteName) throws SQLException
+	private long roundUp(long time, RollupPeriod period)
 	{
-		int pKey = -1;
-
-		Statement sqlStatement = dbConnection.createStatement();
-		String sql = "SELECT pksiteid FROM " + SITE_TABLE + " WHERE name = '" + siteName + "'";
-		ResultSet queryResult = sqlStatement.executeQuery(sql);
-
-		if(queryResult.next())
-		{
-			pKey = queryResult.getInt("pksiteid");
-		}
-		
-		sqlStatement.close();
-		queryResult.close();
-		
-		return pKey;
+		return period.getBucketStart(time + period.getBucketMs() - 1);
 	}
 	
 	/**
-	 * Queries the site table by primary key to get the name associated with a PingSite.
-	 * @param pKey     Primary key to query with
-	 * @return The name associated with a PingSite
-	 * @throws SQLException
+	 * Waits for the LogWriter to write out queued log entries so that reports include them. If the store
+	 * isn't keeping up the report goes ahead without them after a few seconds.
 	 */
-	private synchronized String getSiteName(int pKey) throws SQLException
+	private void flushLogEntries()
 	{
-		String siteName = "";
-		Statement sqlStatement = dbConnection.createStatement();
-		String sql = "SELECT * FROM " + SITE_TABLE + " WHERE pksiteid = '" + Integer.toString(pKey) + "'";
-		ResultSet queryResult = sqlStatement.executeQuery(sql);
-
-		if(queryResult.next())
+		try
+		{
+			if(!logWriter.flush(LOG_FLUSH_WAIT_MS))
+			{
+				System.out.println("Timed out waiting for log entries to be written, report may be incomplete.");
+			}
+		}
+		catch(InterruptedException iE)
 		{
-			siteName = queryResult.getString("name");
+			iE.printStackTrace();
 		}
-		
-		sqlStatement.close();
-		queryResult.close();
-		
-		return siteName;
 	}
 }
@@ -0,0 +1,103 @@
+package org.connectionmonitor.db;
+
+import java.util.Date;
+
+/**
+ * An entry waiting to be inserted into the log table.
+ * @author Cory Ma
+ */
+public class LogEntry
+{
+	private final String SITE_NAME;
+	private final int STATUS_NUM;
+	private final Date PING_TIME;
+	private final String IP_ADDRESS;
+	private final double LATENCY;
+	private final Date OUTAGE_START;
+	
+	/**
+	 * Constructor.
+	 * @param name          Name assigned to the PingSite
+	 * @param status        Status number associated with the type of response to the ping
+	 * @param time          Time of the ping command
+	 * @param ipAddress     IP Address logged from the ping
+	 * @param latency       Latency logged from the ping, -1 if there was none
+	 */
+	public LogEntry(String name, int status, Date time, String ipAddress, double latency)
+	{
+		this(name, status, time, ipAddress, latency, null);
+	}
+	
+	/**
+	 * Constructor.
+	 * @param name            Name assigned to the PingSite
+	 * @param status          Status number associated with the type of response to the ping
+	 * @param time            Time of the ping command
+	 * @param ipAddress       IP Address logged from the ping
+	 * @param latency         Latency logged from the ping, -1 if there was none
+	 * @param outageStart     Time the outage that this entry ends started, null if it doesn't end one
+	 */
+	public LogEntry(String name, int status, Date time, String ipAddress, double latency, Date outageStart)
+	{
+		SITE_NAME = name;
+		STATUS_NUM = status;
+		PING_TIME = time;
+		IP_ADDRESS = ipAddress;
+		LATENCY = latency;
+		OUTAGE_START = outageStart;
+	}
+	
+	/**
+	 * Gets the SITE_NAME for the entry.
+	 * @return The name of the site
+	 */
+	public String getSiteName()
+	{
+		return SITE_NAME;
+	}
+	
+	/**
+	 * Gets the STATUS_NUM for the entry.
+	 * @return The status number of the ping result
+	 */
+	public int getStatusNum()
+	{
+		return STATUS_NUM;
+	}
+	
+	/**
+	 * Gets the PING_TIME for the entry.
+	 * @return The time of the ping
+	 */
+	public Date getPingTime()
+	{
+		return PING_TIME;
+	}
+	
+	/**
+	 * Gets the IP_ADDRESS for the entry.
+	 * @return The IP address of the ping, empty if there was none
+	 */
+	public String getIPAddress()
+	{
+		return IP_ADDRESS;
+	}
+	
+	/**
+	 * Gets the LATENCY for the entry.
+	 * @return The latency of the ping, -1 if there was none
+	 */
+	public double getLatency()
+	{
+		return LATENCY;
+	}
+	
+	/**
+	 * Gets the OUTAGE_START for the entry.
+	 * @return The time the outage that this entry ends started, null if it doesn't end one
+	 */
+	public Date getOutageStart()
+	{
+		return OUTAGE_START;
+	}
+}
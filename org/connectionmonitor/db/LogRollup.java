@@ -0,0 +1,272 @@
+package org.connectionmonitor.db;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Totals of one site's log entries over one bucket of a RollupPeriod. Latency figures only cover slow pings,
+ * since those are the only log entries whose latency is reported. Outage seconds come from entries of sites
+ * becoming reachable again, and are split between the buckets the outage covered.
+ * @author Cory Ma
+ */
+public class LogRollup
+{
+	private final String siteName;
+	private final RollupPeriod rollupPeriod;
+	private final long bucketStart;
+	private int unreachableCount = 0;
+	private int reachableAgainCount = 0;
+	private int slowCount = 0;
+	private double minLatency = -1;
+	private double maxLatency = -1;
+	private double sumLatency = 0;
+	private double outageSeconds = 0;
+	
+	/**
+	 * Constructor for an empty rollup.
+	 * @param name       Name assigned to the PingSite
+	 * @param period     RollupPeriod of the bucket
+	 * @param start      Start of the bucket in milliseconds
+	 */
+	public LogRollup(String name, RollupPeriod period, long start)
+	{
+		siteName = name;
+		rollupPeriod = period;
+		bucketStart = start;
+	}
+	
+	/**
+	 * Constructor for a rollup read back from a LogStore.
+	 * @param name                Name assigned to the PingSite
+	 * @param period              RollupPeriod of the bucket
+	 * @param start               Start of the bucket in milliseconds
+	 * @param unreachable         Number of unreachable entries
+	 * @param reachableAgain      Number of reachable again entries
+	 * @param slow                Number of slow entries
+	 * @param minSlowLatency      Lowest latency of the slow entries, -1 if none
+	 * @param maxSlowLatency      Highest latency of the slow entries, -1 if none
+	 * @param sumSlowLatency      Sum of the latencies of the slow entries
+	 * @param outage              Seconds of outage within the bucket
+	 */
+	public LogRollup(String name, RollupPeriod period, long start, int unreachable, int reachableAgain, int slow, 
+			double minSlowLatency, double maxSlowLatency, double sumSlowLatency, double outage)
+	{
+		this(name, period, start);
+		unreachableCount = unreachable;
+		reachableAgainCount = reachableAgain;
+		slowCount = slow;
+		minLatency = minSlowLatency;
+		maxLatency = maxSlowLatency;
+		sumLatency = sumSlowLatency;
+		outageSeconds = outage;
+	}
+	
+	/**
+	 * Builds the rollups that a batch of log entries adds, for every RollupPeriod.
+	 * @param logEntries     Entries to roll up
+	 * @return One rollup per site, period and bucket touched by the batch
+	 */
+	public static ArrayList<LogRollup> buildRollups(List<LogEntry> logEntries)
+	{
+		LinkedHashMap<String, LogRollup> rollups = new LinkedHashMap<>();
+		for(LogEntry logEntry : logEntries)
+		{
+			long pingTime = logEntry.getPingTime().getTime();
+			for(RollupPeriod period : RollupPeriod.values())
+			{
+				getRollup(rollups, logEntry.getSiteName(), period, period.getBucketStart(pingTime)).addEntry(logEntry);
+				if(logEntry.getOutageStart() != null)
+				{
+					long outageStart = Math.min(logEntry.getOutageStart().getTime(), pingTime);
+					for(long bucket = period.getBucketStart(outageStart); bucket < pingTime; bucket += period.getBucketMs())
+					{
+						long overlapMs = Math.min(pingTime, bucket + period.getBucketMs()) - Math.max(outageStart, bucket);
+						getRollup(rollups, logEntry.getSiteName(), period, bucket).addOutageSeconds(overlapMs / 1000.0);
+					}
+				}
+			}
+		}
+		return new ArrayList<>(rollups.values());
+	}
+	
+	/**
+	 * Gets the rollup for a bucket out of a map, adding an empty one if there isn't one yet.
+	 * @param rollups         Map of rollups being built
+	 * @param siteName        Name assigned to the PingSite
+	 * @param period          RollupPeriod of the bucket
+	 * @param bucketStart     Start of the bucket in milliseconds
+	 * @return The rollup for the bucket
+	 */
+	private static LogRollup getRollup(LinkedHashMap<String, LogRollup> rollups, String siteName, RollupPeriod period, long bucketStart)
+	{
+		String key = siteName + "/" + period.getID() + "/" + bucketStart;
+		LogRollup rollup = rollups.get(key);
+		if(rollup == null)
+		{
+			rollup = new LogRollup(siteName, period, bucketStart);
+			rollups.put(key, rollup);
+		}
+		return rollup;
+	}
+	
+	/**
+	 * Counts a log entry in the rollup.
+	 * @param logEntry     Entry to count
+	 */
+	public void addEntry(LogEntry logEntry)
+	{
+		switch(logEntry.getStatusNum())
+		{
+		case 1:
+			unreachableCount++;
+			break;
+		case 2:
+			reachableAgainCount++;
+			break;
+		case 3:
+			slowCount++;
+			addSlowLatency(logEntry.getLatency(), logEntry.getLatency(), logEntry.getLatency());
+			break;
+		default:
+			break;
+		}
+	}
+	
+	/**
+	 * Adds seconds of outage to the rollup.
+	 * @param seconds     Seconds of outage to add
+	 */
+	public void addOutageSeconds(double seconds)
+	{
+		outageSeconds += seconds;
+	}
+	
+	/**
+	 * Adds the totals of another rollup to this one.
+	 * @param other     Rollup to add
+	 */
+	public void merge(LogRollup other)
+	{
+		unreachableCount += other.unreachableCount;
+		reachableAgainCount += other.reachableAgainCount;
+		slowCount += other.slowCount;
+		outageSeconds += other.outageSeconds;
+		if(other.minLatency != -1)
+		{
+			addSlowLatency(other.minLatency, other.maxLatency, other.sumLatency);
+		}
+	}
+	
+	/**
+	 * Adds slow latency figures to the rollup.
+	 * @param otherMin     Lowest latency to add
+	 * @param otherMax     Highest latency to add
+	 * @param otherSum     Sum of the latencies to add
+	 */
+	private void addSlowLatency(double otherMin, double otherMax, double otherSum)
+	{
+		minLatency = (minLatency == -1) ? otherMin : Math.min(minLatency, otherMin);
+		maxLatency = Math.max(maxLatency, otherMax);
+		sumLatency += otherSum;
+	}
+	
+	/**
+	 * Gets the name of the site.
+	 * @return The name assigned to the PingSite
+	 */
+	public String getSiteName()
+	{
+		return siteName;
+	}
+	
+	/**
+	 * Gets the RollupPeriod of the bucket.
+	 * @return The RollupPeriod
+	 */
+	public RollupPeriod getRollupPeriod()
+	{
+		return rollupPeriod;
+	}
+	
+	/**
+	 * Gets the start of the bucket.
+	 * @return The start of the bucket in milliseconds
+	 */
+	public long getBucketStart()
+	{
+		return bucketStart;
+	}
+	
+	/**
+	 * Gets the number of unreachable entries.
+	 * @return The number of times the site was logged as unreachable
+	 */
+	public int getUnreachableCount()
+	{
+		return unreachableCount;
+	}
+	
+	/**
+	 * Gets the number of reachable again entries.
+	 * @return The number of times the site was logged as reachable again
+	 */
+	public int getReachableAgainCount()
+	{
+		return reachableAgainCount;
+	}
+	
+	/**
+	 * Gets the number of slow entries.
+	 * @return The number of times the site was logged as slow
+	 */
+	public int getSlowCount()
+	{
+		return slowCount;
+	}
+	
+	/**
+	 * Gets the lowest latency of the slow entries.
+	 * @return The lowest latency, -1 if there were no slow entries
+	 */
+	public double getMinLatency()
+	{
+		return minLatency;
+	}
+	
+	/**
+	 * Gets the highest latency of the slow entries.
+	 * @return The highest latency, -1 if there were no slow entries
+	 */
+	public double getMaxLatency()
+	{
+		return maxLatency;
+	}
+	
+	/**
+	 * Gets the sum of the latencies of the slow entries, for averaging.
+	 * @return The sum of the latencies
+	 */
+	public double getSumLatency()
+	{
+		return sumLatency;
+	}
+	
+	/**
+	 * Gets the average latency of the slow entries.
+	 * @return The average latency, -1 if there were no slow entries
+	 */
+	public double getAvgLatency()
+	{
+		return (slowCount == 0) ? -1 : sumLatency / slowCount;
+	}
+	
+	/**
+	 * Gets the seconds of outage within the bucket.
+	 * @return The seconds of outage
+	 */
+	public double getOutageSeconds()
+	{
+		return outageSeconds;
+	}
+}
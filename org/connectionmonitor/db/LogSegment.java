@@ -0,0 +1,348 @@
+package org.connectionmonitor.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+
+import org.my.libraries.IOUtilities;
+
+/**
+ * One append-only file of a SegmentLogStore, holding the log entries of one hour in fixed size records. The file is
+ * memory-mapped so appends are plain memory writes. Appended records only become visible once committed, when the
+ * record count in the header is updated, so a batch that fails part way leaves nothing behind.
+ * 
+ * The time index holds the latest ping time seen up to the end of each block of records. Entries arrive close to
+ * time order but not exactly, and since those values only ever go up a binary search on them finds the first block
+ * that can hold a time, so queries skip the start of the segment without missing anything.
+ * @author Cory Ma
+ */
+public class LogSegment
+{
+	public final static int HEADER_SIZE = 64;
+	public final static int RECORD_SIZE = 64;
+	public final static int RECORD_CAPACITY = 65536;
+	
+	private final static int MAGIC = 0x434D4C53; //"CMLS"
+	private final static int VERSION = 1;
+	private final static int COUNT_OFFSET = 16;
+	private final static int MAX_IP_LENGTH = RECORD_SIZE - 25;
+	private final static int INDEX_BLOCK = 256;
+	
+	private final File segmentFile;
+	private final long hourStart;
+	private final int part;
+	
+	private MappedByteBuffer buffer;
+	private int recordCount = 0;
+	private int pendingCount = 0;
+	private long minTime = Long.MAX_VALUE;
+	private long maxTime = Long.MIN_VALUE;
+	private long[] blockMaxTimes = new long[16];
+	
+	/**
+	 * Constructor. The file isn't touched until load() is called.
+	 * @param file         File the segment is kept in
+	 * @param hour         Start of the hour the segment covers, in milliseconds
+	 * @param filePart     Number of the segment within the hour, since a full segment continues in another
+	 */
+	public LogSegment(File file, long hour, int filePart)
+	{
+		segmentFile = file;
+		hourStart = hour;
+		part = filePart;
+	}
+	
+	/**
+	 * Maps the file, creating it if it doesn't exist, and builds the time index from its records. Does nothing
+	 * if already loaded, and may be called again after unload(). Synchronized since several report threads may
+	 * load the same segment at once.
+	 * @throws IOException
+	 */
+	public synchronized void load() throws IOException
+	{
+		if(buffer == null)
+		{
+			boolean isNew = !segmentFile.exists();
+			RandomAccessFile randomAccessFile = new RandomAccessFile(segmentFile, "rw");
+			try
+			{
+				FileChannel fileChannel = randomAccessFile.getChannel();
+				buffer = fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + ((long)RECORD_CAPACITY * RECORD_SIZE));
+			}
+			finally
+			{
+				IOUtilities.closeCloseable(randomAccessFile); //The mapping stays valid after the file is closed
+			}
+			
+			if(isNew)
+			{
+				buffer.putInt(0, MAGIC);
+				buffer.putInt(4, VERSION);
+				buffer.putLong(8, hourStart);
+				buffer.putInt(COUNT_OFFSET, 0);
+			}
+			else if(buffer.getInt(0) != MAGIC)
+			{
+				buffer = null;
+				throw new IOException(segmentFile + " is not a log segment");
+			}
+			
+			recordCount = Math.min(buffer.getInt(COUNT_OFFSET), RECORD_CAPACITY);
+			pendingCount = recordCount;
+			minTime = Long.MAX_VALUE;
+			maxTime = Long.MIN_VALUE;
+			for(int recordIndex = 0; recordIndex < recordCount; recordIndex++)
+			{
+				indexRecord(recordIndex, getPingTime(recordIndex));
+			}
+		}
+	}
+	
+	/**
+	 * Gets the start of the hour the segment covers.
+	 * @return The start of the hour in milliseconds
+	 */
+	public long getHourStart()
+	{
+		return hourStart;
+	}
+	
+	/**
+	 * Gets the number of the segment within its hour.
+	 * @return The part number
+	 */
+	public int getPart()
+	{
+		return part;
+	}
+	
+	/**
+	 * Gets the file the segment is kept in.
+	 * @return The segment file
+	 */
+	public File getFile()
+	{
+		return segmentFile;
+	}
+	
+	/**
+	 * Gets the number of committed records.
+	 * @return The number of records
+	 */
+	public int getRecordCount()
+	{
+		return recordCount;
+	}
+	
+	/**
+	 * Gets the number of committed records without mapping the file, reading just the count from its header if the
+	 * segment isn't loaded.
+	 * @return The number of records
+	 * @throws IOException
+	 */
+	public synchronized int readRecordCount() throws IOException
+	{
+		int count = recordCount;
+		if(buffer == null)
+		{
+			RandomAccessFile randomAccessFile = new RandomAccessFile(segmentFile, "r");
+			try
+			{
+				if(randomAccessFile.readInt() != MAGIC)
+				{
+					throw new IOException(segmentFile + " is not a log segment");
+				}
+				randomAccessFile.seek(COUNT_OFFSET);
+				count = Math.min(randomAccessFile.readInt(), RECORD_CAPACITY);
+			}
+			finally
+			{
+				IOUtilities.closeCloseable(randomAccessFile);
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * Writes the segment's changes out to disk and drops the mapping of the file, so a segment that is no longer
+	 * written to doesn't hold its memory and so its file can be deleted. The mapping is released once the buffer is
+	 * garbage collected. Must not be called while the segment is in use, load() maps it again when it is needed.
+	 */
+	public synchronized void unload()
+	{
+		if(buffer != null)
+		{
+			buffer.force();
+			buffer = null;
+		}
+	}
+
+	
+	/**
+	 * Checks if every committed record is older than the retention of its status. The segment must be loaded.
+	 * @param statusCutoffs     Time before which records are expired, by status number. Statuses without one never expire.
+	 * @return true if every record is expired, false if not
+	 */
+	public boolean isExpired(Map<Integer, Date> statusCutoffs)
+	{
+		boolean isExpired = true;
+		for(int recordIndex = 0; recordIndex < recordCount && isExpired; recordIndex++)
+		{
+			int offset = HEADER_SIZE + (recordIndex * RECORD_SIZE);
+			Date cutoff = statusCutoffs.get(buffer.getInt(offset + 12));
+			isExpired = (cutoff != null && buffer.getLong(offset) < cutoff.getTime());
+		}
+		return isExpired;
+	}
+	
+	/**
+	 * Checks if another record can be appended.
+	 * @return true if the segment is full, false if not
+	 */
+	public boolean isFull()
+	{
+		return pendingCount >= RECORD_CAPACITY;
+	}
+	
+	/**
+	 * Appends a record, which isn't visible until commit() is called. The segment must be loaded and not full.
+	 * @param logEntry     Entry to append
+	 * @param siteID       ID of the entry's site
+	 */
+	public void append(LogEntry logEntry, int siteID)
+	{
+		int offset = HEADER_SIZE + (pendingCount * RECORD_SIZE);
+		byte[] ipBytes = logEntry.getIPAddress().getBytes(StandardCharsets.US_ASCII);
+		int ipLength = Math.min(ipBytes.length, MAX_IP_LENGTH);
+		buffer.putLong(offset, logEntry.getPingTime().getTime());
+		buffer.putInt(offset + 8, siteID);
+		buffer.putInt(offset + 12, logEntry.getStatusNum());
+		buffer.putDouble(offset + 16, logEntry.getLatency());
+		buffer.put(offset + 24, (byte)ipLength);
+		for(int ipIndex = 0; ipIndex < ipLength; ipIndex++)
+		{
+			buffer.put(offset + 25 + ipIndex, ipBytes[ipIndex]);
+		}
+		pendingCount++;
+	}
+	
+	/**
+	 * Makes every record appended since the last commit visible.
+	 */
+	public void commit()
+	{
+		for(int recordIndex = recordCount; recordIndex < pendingCount; recordIndex++)
+		{
+			indexRecord(recordIndex, getPingTime(recordIndex));
+		}
+		buffer.putInt(COUNT_OFFSET, pendingCount);
+		recordCount = pendingCount;
+	}
+	
+	/**
+	 * Throws away every record appended since the last commit.
+	 */
+	public void rollback()
+	{
+		if(buffer != null)
+		{
+			pendingCount = recordCount;
+		}
+	}
+	
+	/**
+	 * Writes the segment's changes out to disk.
+	 */
+	public void force()
+	{
+		if(buffer != null)
+		{
+			buffer.force();
+		}
+	}
+	
+	/**
+	 * Passes the committed records with a ping time in a range to a SiteRecordHandler. The segment must be loaded.
+	 * @param startTime       Earliest ping time to include, in milliseconds
+	 * @param endTime         Latest ping time to include, in milliseconds
+	 * @param siteNames       Map of site ID to site name, for naming the records
+	 * @param recordHandler   SiteRecordHandler to pass the records to
+	 */
+	public void select(long startTime, long endTime, Map<Integer, String> siteNames, SiteRecordHandler recordHandler)
+	{
+		if(recordCount > 0 && maxTime >= startTime && minTime <= endTime)
+		{
+			for(int recordIndex = findFirstBlock(startTime) * INDEX_BLOCK; recordIndex < recordCount; recordIndex++)
+			{
+				int offset = HEADER_SIZE + (recordIndex * RECORD_SIZE);
+				long pingTime = buffer.getLong(offset);
+				if(pingTime >= startTime && pingTime <= endTime)
+				{
+					double latency = buffer.getDouble(offset + 16);
+					String siteName = siteNames.get(buffer.getInt(offset + 8));
+					//Matches the MySQL store, where a missing latency reads back as 0
+					recordHandler.handleRecord(new SiteRecord(siteName == null ? "" : siteName, buffer.getInt(offset + 12), 
+							new Timestamp(pingTime), latency == -1 ? 0 : latency));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Gets the ping time of a record.
+	 * @param recordIndex     Index of the record
+	 * @return The ping time in milliseconds
+	 */
+	private long getPingTime(int recordIndex)
+	{
+		return buffer.getLong(HEADER_SIZE + (recordIndex * RECORD_SIZE));
+	}
+	
+	/**
+	 * Adds a committed record to the time index.
+	 * @param recordIndex     Index of the record
+	 * @param pingTime        Ping time of the record in milliseconds
+	 */
+	private void indexRecord(int recordIndex, long pingTime)
+	{
+		int block = recordIndex / INDEX_BLOCK;
+		if(block >= blockMaxTimes.length)
+		{
+			blockMaxTimes = Arrays.copyOf(blockMaxTimes, blockMaxTimes.length * 2);
+		}
+		minTime = Math.min(minTime, pingTime);
+		maxTime = Math.max(maxTime, pingTime);
+		blockMaxTimes[block] = maxTime;
+	}
+	
+	/**
+	 * Finds the first block of records that can hold a ping time at or after a time.
+	 * @param startTime     Time to find in milliseconds
+	 * @return The index of the block
+	 */
+	private int findFirstBlock(long startTime)
+	{
+		int low = 0;
+		int high = (recordCount - 1) / INDEX_BLOCK;
+		while(low < high)
+		{
+			int middle = (low + high) >>> 1;
+			if(blockMaxTimes[middle] < startTime)
+			{
+				low = middle + 1;
+			}
+			else
+			{
+				high = middle;
+			}
+		}
+		return low;
+	}
+}
@@ -0,0 +1,515 @@
+package org.connectionmonitor.db;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import org.my.libraries.IOUtilities;
+
+/**
+ * Append-only files on local disk that hold batches of log entries while the LogStore can't take them, so they can
+ * be written in the same order once it can. Each batch is forced to disk as it is appended, so a batch is only
+ * synced once however many entries it holds. A batch that fails part way through being appended is cut back off the
+ * file, so later batches never follow a broken one. Batches are read back from the oldest, and a file is deleted once
+ * every batch in it has been read back. The read position is written to a temporary file, forced to disk and moved
+ * over the old one after every batch, so a crash leaves either the old or the new position and can only write the
+ * one batch that was being written back a second time.
+ *
+ * Files are named spool-[sequence].dat and start a new one once the current one passes FILE_ROLL_BYTES. Each batch
+ * is written as:
+ *     int  - Number of entries
+ *     int  - Number of bytes of entries
+ *     long - CRC32 of the entry bytes, so a batch cut off by a crash is recognised and ignored
+ *     The entries
+ *
+ * Not threadsafe, it is only used by the LogWriter thread.
+ * @author Cory Ma
+ */
+public class LogSpool
+{
+	private final static String SPOOL_PREFIX = "spool-";
+	private final static String SPOOL_EXTENSION = ".dat";
+	private final static String POSITION_FILENAME = "spool.pos";
+	private final static String POSITION_TEMP_FILENAME = "spool.pos.tmp";
+	private final static long FILE_ROLL_BYTES = 4 * 1024 * 1024;
+	private final static int BATCH_HEADER_SIZE = 16;
+	
+	private final File spoolDirectory;
+	private final long maxBytes;
+	
+	//Spool files by sequence number
+	private final TreeMap<Long, File> spoolFiles = new TreeMap<>();
+	private long totalBytes = 0;
+	
+	private FileOutputStream appendFileStream;
+	private long appendSequence = 0;
+	
+	private long readSequence = -1;
+	private long readOffset = 0;
+	private long peekedOffset = -1;
+	private int peekedCount = 0;
+	
+	//Entries appended but not yet committed
+	private long entryCount = 0;
+	
+	/**
+	 * Constructor.
+	 * @param directory     Path of the directory to keep the spool in, created if it doesn't exist
+	 * @param maxSize       Largest number of bytes the spool files may take up together
+	 */
+	public LogSpool(String directory, long maxSize)
+	{
+		spoolDirectory = new File(directory);
+		maxBytes = maxSize;
+	}
+	
+	/**
+	 * Creates the directory if needed, finds the spool files left from before and where reading them stopped.
+	 * New batches always go in a new file, so a batch cut off at the end of an old file stays at the end.
+	 * @throws IOException
+	 */
+	public void open() throws IOException
+	{
+		if(!spoolDirectory.isDirectory() && !spoolDirectory.mkdirs())
+		{
+			throw new IOException("Could not create spool directory " + spoolDirectory);
+		}
+		for(File spoolFile : spoolDirectory.listFiles())
+		{
+			String fileName = spoolFile.getName();
+			if(fileName.startsWith(SPOOL_PREFIX) && fileName.endsWith(SPOOL_EXTENSION))
+			{
+				try
+				{
+					long sequence = Long.parseLong(fileName.substring(SPOOL_PREFIX.length(), fileName.length() - SPOOL_EXTENSION.length()));
+					spoolFiles.put(sequence, spoolFile);
+					totalBytes += spoolFile.length();
+					appendSequence = Math.max(appendSequence, sequence + 1);
+				}
+				catch(NumberFormatException nfE)
+				{
+					System.out.println("Ignoring " + spoolFile + " in the spool, it isn't named like a spool file.");
+				}
+			}
+		}
+		loadPosition();
+		countEntries();
+	}
+	
+	/**
+	 * Closes the file being appended to.
+	 */
+	public void close()
+	{
+		if(appendFileStream != null)
+		{
+			IOUtilities.closeCloseable(appendFileStream);
+			appendFileStream = null;
+		}
+	}
+	
+	/**
+	 * Checks if there are batches waiting to be read back.
+	 * @return true if the spool is empty, false if not
+	 */
+	public boolean isEmpty()
+	{
+		return spoolFiles.isEmpty();
+	}
+	
+	/**
+	 * Gets the number of entries waiting to be read back and committed, including those left from before open().
+	 * @return The number of entries
+	 */
+	public long getEntryCount()
+	{
+		return entryCount;
+	}
+	
+	/**
+	 * Gets the number of bytes the spool files take up.
+	 * @return The number of bytes
+	 */
+	public long getSizeBytes()
+	{
+		return totalBytes;
+	}
+	
+	/**
+	 * Appends a batch and forces it to disk. If that fails the file is cut back to where the batch started.
+	 * @param logEntries     Entries of the batch
+	 * @return true if the batch was appended, false if it would make the spool larger than its limit
+	 * @throws IOException
+	 */
+	public boolean append(List<LogEntry> logEntries) throws IOException
+	{
+		ByteArrayOutputStream entryBytes = new ByteArrayOutputStream(logEntries.size() * 64);
+		DataOutputStream entryOutStream = new DataOutputStream(entryBytes);
+		for(LogEntry logEntry : logEntries)
+		{
+			entryOutStream.writeUTF(logEntry.getSiteName());
+			entryOutStream.writeInt(logEntry.getStatusNum());
+			entryOutStream.writeLong(logEntry.getPingTime().getTime());
+			entryOutStream.writeUTF(logEntry.getIPAddress());
+			entryOutStream.writeDouble(logEntry.getLatency());
+			entryOutStream.writeLong(logEntry.getOutageStart() == null ? -1 : logEntry.getOutageStart().getTime());
+		}
+		entryOutStream.flush();
+		byte[] batchBytes = entryBytes.toByteArray();
+		
+		boolean isAppended = false;
+		if(totalBytes + BATCH_HEADER_SIZE + batchBytes.length <= maxBytes)
+		{
+			CRC32 checksum = new CRC32();
+			checksum.update(batchBytes);
+			FileOutputStream spoolFileStream = getAppendFileStream();
+			long batchStart = spoolFileStream.getChannel().size();
+			try
+			{
+				DataOutputStream spoolOutStream = new DataOutputStream(spoolFileStream);
+				spoolOutStream.writeInt(logEntries.size());
+				spoolOutStream.writeInt(batchBytes.length);
+				spoolOutStream.writeLong(checksum.getValue());
+				spoolOutStream.write(batchBytes);
+				spoolOutStream.flush();
+				spoolFileStream.getFD().sync();
+				isAppended = true;
+			}
+			finally
+			{
+				if(!isAppended)
+				{
+					discardPartialBatch(spoolFileStream, batchStart);
+				}
+			}
+			totalBytes += BATCH_HEADER_SIZE + batchBytes.length;
+			entryCount += logEntries.size();
+		}
+		return isAppended;
+	}
+	
+	/**
+	 * Reads the oldest batch that hasn't been read back yet, without moving past it until commit() is called.
+	 * A file is deleted once there are no more complete batches in it, which skips a batch cut off by a crash.
+	 * @return The entries of the batch, null if the spool is empty
+	 * @throws IOException
+	 */
+	public ArrayList<LogEntry> peek() throws IOException
+	{
+		ArrayList<LogEntry> logEntries = null;
+		while(logEntries == null && !spoolFiles.isEmpty())
+		{
+			if(readSequence != spoolFiles.firstKey())
+			{
+				readSequence = spoolFiles.firstKey();
+				readOffset = 0;
+			}
+			logEntries = readBatch(spoolFiles.firstEntry().getValue());
+			if(logEntries == null)
+			{
+				deleteFirstFile();
+			}
+		}
+		return logEntries;
+	}
+	
+	/**
+	 * Moves past the batch returned by the last peek(), once it has been written to the LogStore. The new position
+	 * is on disk by the time this returns without an exception. If saving it fails the batch is still moved past,
+	 * so it is only read back a second time if the program stops before the position is next saved.
+	 * @throws IOException
+	 */
+	public void commit() throws IOException
+	{
+		if(peekedOffset != -1)
+		{
+			readOffset = peekedOffset;
+			peekedOffset = -1;
+			entryCount = Math.max(0, entryCount - peekedCount);
+			savePosition();
+		}
+	}
+	
+	/**
+	 * Reads the batch at the read position of a file.
+	 * @param spoolFile     File to read from
+	 * @return The entries of the batch, null if there is no complete batch at the read position
+	 * @throws IOException
+	 */
+	private ArrayList<LogEntry> readBatch(File spoolFile) throws IOException
+	{
+		ArrayList<LogEntry> logEntries = null;
+		RandomAccessFile spoolRandomFile = new RandomAccessFile(spoolFile, "r");
+		try
+		{
+			byte[] batchBytes = readBatchBytes(spoolRandomFile, readOffset);
+			if(batchBytes != null)
+			{
+				spoolRandomFile.seek(readOffset);
+				peekedCount = spoolRandomFile.readInt();
+				logEntries = parseBatch(batchBytes, peekedCount);
+				peekedOffset = readOffset + BATCH_HEADER_SIZE + batchBytes.length;
+			}
+		}
+		finally
+		{
+			IOUtilities.closeCloseable(spoolRandomFile);
+		}
+		return logEntries;
+	}
+	
+	/**
+	 * Reads the entry bytes of the batch at an offset of a file, checking them against the batch's CRC32.
+	 * @param spoolRandomFile     File to read from
+	 * @param offset              Offset of the batch in the file
+	 * @return The entry bytes, null if there is no complete batch at the offset
+	 * @throws IOException
+	 */
+	private byte[] readBatchBytes(RandomAccessFile spoolRandomFile, long offset) throws IOException
+	{
+		byte[] batchBytes = null;
+		if(offset + BATCH_HEADER_SIZE <= spoolRandomFile.length())
+		{
+			spoolRandomFile.seek(offset + 4); //Entry count is read by the caller
+			int byteLength = spoolRandomFile.readInt();
+			long expectedChecksum = spoolRandomFile.readLong();
+			if(byteLength >= 0 && offset + BATCH_HEADER_SIZE + byteLength <= spoolRandomFile.length())
+			{
+				byte[] readBytes = new byte[byteLength];
+				spoolRandomFile.readFully(readBytes);
+				CRC32 checksum = new CRC32();
+				checksum.update(readBytes);
+				if(checksum.getValue() == expectedChecksum)
+				{
+					batchBytes = readBytes;
+				}
+			}
+		}
+		return batchBytes;
+	}
+	
+	/**
+	 * Counts the entries left in the spool from before open(), from the read position up to the first incomplete
+	 * batch of each file.
+	 * @throws IOException
+	 */
+	private void countEntries() throws IOException
+	{
+		for(Map.Entry<Long, File> spoolFileEntry : spoolFiles.entrySet())
+		{
+			RandomAccessFile spoolRandomFile = new RandomAccessFile(spoolFileEntry.getValue(), "r");
+			try
+			{
+				long offset = spoolFileEntry.getKey() == readSequence ? readOffset : 0;
+				byte[] batchBytes = readBatchBytes(spoolRandomFile, offset);
+				while(batchBytes != null)
+				{
+					spoolRandomFile.seek(offset);
+					entryCount += spoolRandomFile.readInt();
+					offset += BATCH_HEADER_SIZE + batchBytes.length;
+					batchBytes = readBatchBytes(spoolRandomFile, offset);
+				}
+			}
+			finally
+			{
+				IOUtilities.closeCloseable(spoolRandomFile);
+			}
+		}
+	}
+	
+	/**
+	 * Reads the entries out of a batch's bytes.
+	 * @param batchBytes     Bytes of the entries
+	 * @param entryCount     Number of entries
+	 * @return The entries
+	 * @throws IOException
+	 */
+	private ArrayList<LogEntry> parseBatch(byte[] batchBytes, int entryCount) throws IOException
+	{
+		ArrayList<LogEntry> logEntries = new ArrayList<>(entryCount);
+		DataInputStream entryInStream = new DataInputStream(new ByteArrayInputStream(batchBytes));
+		for(int entryIndex = 0; entryIndex < entryCount; entryIndex++)
+		{
+			String siteName = entryInStream.readUTF();
+			int statusNum = entryInStream.readInt();
+			Date pingTime = new Date(entryInStream.readLong());
+			String ipAddress = entryInStream.readUTF();
+			double latency = entryInStream.readDouble();
+			long outageStart = entryInStream.readLong();
+			logEntries.add(new LogEntry(siteName, statusNum, pingTime, ipAddress, latency, outageStart == -1 ? null : new Date(outageStart)));
+		}
+		return logEntries;
+	}
+	
+	/**
+	 * Gets the stream of the file being appended to, starting a new file if there is none or it has grown past
+	 * FILE_ROLL_BYTES.
+	 * @return The stream
+	 * @throws IOException
+	 */
+	private FileOutputStream getAppendFileStream() throws IOException
+	{
+		if(appendFileStream != null && appendFileStream.getChannel().size() >= FILE_ROLL_BYTES)
+		{
+			close();
+		}
+		if(appendFileStream == null)
+		{
+			File spoolFile = new File(spoolDirectory, SPOOL_PREFIX + appendSequence + SPOOL_EXTENSION);
+			appendFileStream = new FileOutputStream(spoolFile, true);
+			spoolFiles.put(appendSequence, spoolFile);
+			appendSequence++;
+		}
+		return appendFileStream;
+	}
+	
+	/**
+	 * Deletes the oldest spool file once everything in it has been read back.
+	 * @throws IOException
+	 */
+	private void deleteFirstFile() throws IOException
+	{
+		long sequence = spoolFiles.firstKey();
+		File spoolFile = spoolFiles.remove(sequence);
+		if(sequence == appendSequence - 1)
+		{
+			close();
+		}
+		totalBytes = Math.max(0, totalBytes - spoolFile.length());
+		if(!spoolFile.delete())
+		{
+			System.out.println("Could not delete spool file " + spoolFile);
+		}
+		readSequence = -1;
+		readOffset = 0;
+		savePosition();
+	}
+	
+	/**
+	 * Cuts a partly appended batch back off the end of the file being appended to. If even that fails, the file is
+	 * closed so later batches start a new one and the broken batch stays at the end, where it is skipped.
+	 * @param spoolFileStream     Stream of the file being appended to
+	 * @param batchStart          Length of the file before the batch was appended
+	 */
+	private void discardPartialBatch(FileOutputStream spoolFileStream, long batchStart)
+	{
+		try
+		{
+			spoolFileStream.getChannel().truncate(batchStart);
+		}
+		catch(IOException ioEx)
+		{
+			ioEx.printStackTrace();
+			File spoolFile = spoolFiles.get(appendSequence - 1);
+			totalBytes += Math.max(0, spoolFile.length() - batchStart);
+			close();
+		}
+	}
+	
+	/**
+	 * Saves the read position so batches already read back aren't read back again after a restart, which would add
+	 * their entries to the rollups twice. The position is written to a temporary file and forced to disk before it is
+	 * moved over the old one, so the saved position is never cut off part way.
+	 * @throws IOException
+	 */
+	private void savePosition() throws IOException
+	{
+		File positionTempFile = new File(spoolDirectory, POSITION_TEMP_FILENAME);
+		FileOutputStream positionFileStream = new FileOutputStream(positionTempFile);
+		try
+		{
+			DataOutputStream positionOutStream = new DataOutputStream(positionFileStream);
+			positionOutStream.writeLong(readSequence);
+			positionOutStream.writeLong(readOffset);
+			positionOutStream.flush();
+			positionFileStream.getFD().sync();
+		}
+		finally
+		{
+			IOUtilities.closeCloseable(positionFileStream);
+		}
+		Files.move(positionTempFile.toPath(), new File(spoolDirectory, POSITION_FILENAME).toPath(), StandardCopyOption.ATOMIC_MOVE, 
+				StandardCopyOption.REPLACE_EXISTING);
+		syncDirectory();
+	}
+	
+	/**
+	 * Forces the spool directory to disk so a file moved into it stays moved after a crash. Some platforms can't open
+	 * a directory for this, where the move is left to the file system.
+	 */
+	private void syncDirectory()
+	{
+		FileChannel directoryChannel = null;
+		try
+		{
+			directoryChannel = FileChannel.open(spoolDirectory.toPath(), StandardOpenOption.READ);
+			directoryChannel.force(true);
+		}
+		catch(IOException ioEx)
+		{
+			//Not supported here
+		}
+		finally
+		{
+			if(directoryChannel != null)
+			{
+				IOUtilities.closeCloseable(directoryChannel);
+			}
+		}
+	}
+	
+	/**
+	 * Loads the read position saved by savePosition(), if it is for a file that is still there.
+	 */
+	private void loadPosition()
+	{
+		File positionFile = new File(spoolDirectory, POSITION_FILENAME);
+		if(positionFile.exists())
+		{
+			DataInputStream positionInStream = null;
+			try
+			{
+				positionInStream = new DataInputStream(new FileInputStream(positionFile));
+				long sequence = positionInStream.readLong();
+				long offset = positionInStream.readLong();
+				if(spoolFiles.containsKey(sequence))
+				{
+					readSequence = sequence;
+					readOffset = offset;
+				}
+			}
+			catch(EOFException eofEx)
+			{
+				//Cut off while being written, start from the beginning of the oldest file
+			}
+			catch(IOException ioEx)
+			{
+				ioEx.printStackTrace();
+			}
+			finally
+			{
+				if(positionInStream != null)
+				{
+					IOUtilities.closeCloseable(positionInStream);
+				}
+			}
+		}
+	}
+}
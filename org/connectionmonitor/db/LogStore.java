@@ -0,0 +1,72 @@
+package org.connectionmonitor.db;
+
+import java.sql.SQLException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Storage for the site and log tables that DBAccessHandler reports from. Failures are reported as SQLExceptions
+ * whatever the backend, so callers handle every store the same way. Implementations must be threadsafe, though
+ * log entries are only ever inserted from the LogWriter thread.
+ * @author Cory Ma
+ */
+public interface LogStore
+{
+	/**
+	 * Opens the store so it is ready for use.
+	 * @throws SQLException
+	 */
+	public void open() throws SQLException;
+	
+	/**
+	 * Closes the store, releasing anything it holds.
+	 */
+	public void close();
+	
+	/**
+	 * Adds a site if there isn't one with the same name already.
+	 * @param siteName     Name assigned to the PingSite
+	 * @param address      Address assigned to the PingSite
+	 * @throws SQLException
+	 */
+	public void insertSite(String siteName, String address) throws SQLException;
+	
+	/**
+	 * Adds a batch of log entries and adds the batch's totals to the stored rollups, either all of it or none if
+	 * it fails.
+	 * @param logEntries     Entries to add
+	 * @param rollups        Totals of the entries for each bucket they touch, to add to the stored rollups
+	 * @throws SQLException
+	 */
+	public void insertLogEntries(List<LogEntry> logEntries, List<LogRollup> rollups) throws SQLException;
+	
+	/**
+	 * Reads the log entries of every site from a start time up to and including an end time, passing each to a
+	 * SiteRecordHandler as it is read.
+	 * @param startTime         Time to start from
+	 * @param endTime           Time to end at
+	 * @param recordHandler     SiteRecordHandler to pass the entries to, generally in the order they were added
+	 * @throws SQLException
+	 */
+	public void selectLog(Date startTime, Date endTime, SiteRecordHandler recordHandler) throws SQLException;
+	
+	/**
+	 * Totals the stored rollups of every site over a set of RollupRanges in one pass.
+	 * @param rollupRanges     RollupRanges to total, which must not overlap
+	 * @return The totals by site name, each starting at the earliest range. Sites without entries in the ranges are left out.
+	 * @throws SQLException
+	 */
+	public HashMap<String, LogRollup> selectRollupTotals(List<RollupRange> rollupRanges) throws SQLException;
+	
+	/**
+	 * Deletes log entries older than the retention of their status, a few at a time so that inserts aren't held up.
+	 * Rollups are left alone, so reports still have the totals of the deleted entries.
+	 * @param statusCutoffs     Time before which entries are deleted, by status number. Statuses without one are kept.
+	 * @param maxEntries        Number of entries to delete at most, though a store may go over it by what it deletes at once
+	 * @return The number of entries deleted, 0 once there are none left to delete
+	 * @throws SQLException
+	 */
+	public int deleteLogEntries(Map<Integer, Date> statusCutoffs, int maxEntries) throws SQLException;
+}
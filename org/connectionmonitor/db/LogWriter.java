@@ -0,0 +1,387 @@
+package org.connectionmonitor.db;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.connectionmonitor.metrics.Gauge;
+import org.connectionmonitor.metrics.MonitorMetrics;
+
+/**
+ * Thread that writes log entries to the database in batches, so probe threads only hand entries off to a RingBuffer
+ * and never wait on the database. A batch is written once it reaches the batch size or its oldest entry has waited
+ * the flush interval. Entries are dropped and counted if the buffer fills while the database can't keep up.
+ * With a LogSpool, batches the database fails on, or that arrive while the queue is backed up or older batches are
+ * still spooled, are appended to the spool instead and written to the database in order once it can take them.
+ * @author Cory Ma
+ */
+public class LogWriter extends Thread
+{
+	public final static String QUEUE_DEPTH = "log.queueDepth";
+	public final static String FLUSH_MS = "log.flushMs";
+	public final static String DROPPED = "log.dropped";
+	public final static String SPOOL_BYTES = "spool.bytes";
+	public final static String SPOOL_REPLAYED = "spool.replayed";
+	public final static String SPOOL_REPLAY_PER_SEC = "spool.replayPerSec";
+	
+	private final long IDLE_PARK_MS = 10;
+	private final long RETRY_DELAY_MS = 1000;
+	private final int REPLAY_BATCHES_PER_TURN = 16;
+	
+	private final DBAccessHandler dbAccessHandler;
+	private final RingBuffer<LogEntry> logEntries;
+	private final int batchSize;
+	private final long flushIntervalNs;
+	private final LogSpool logSpool;
+	private final int backlogThreshold;
+	
+	//Entries left in the spool by an earlier run, replayed first and not counted towards flush()
+	private long priorSpooledCount = 0;
+	
+	//Whether the database is failing writes, so going down and coming back are only reported once each
+	private boolean isStoreDown = false;
+	private long nextReplayTime = 0;
+	
+	private final AtomicLong enqueuedCount = new AtomicLong(0);
+	private volatile long processedCount = 0;
+	private volatile boolean isFlushRequested = false;
+	private volatile boolean isShutDown = false;
+	
+	private final ReentrantLock flushLock = new ReentrantLock();
+	private final Condition flushed = flushLock.newCondition();
+	
+	private final Gauge queueDepth = MonitorMetrics.gauge(QUEUE_DEPTH);
+	private final Gauge flushMs = MonitorMetrics.gauge(FLUSH_MS);
+	private final Gauge dropped = MonitorMetrics.gauge(DROPPED);
+	private final Gauge spoolBytes = MonitorMetrics.gauge(SPOOL_BYTES);
+	private final Gauge spoolReplayed = MonitorMetrics.gauge(SPOOL_REPLAYED);
+	private final Gauge spoolReplayPerSec = MonitorMetrics.gauge(SPOOL_REPLAY_PER_SEC);
+	
+	/**
+	 * Constructor.
+	 * @param dbHandler           DBAccessHandler to write the batches with
+	 * @param queueCapacity       Number of entries that may wait to be written before new ones are dropped
+	 * @param maxBatchSize        Number of entries written in one batch at most
+	 * @param flushIntervalMs     Number of milliseconds an entry may wait before its batch is written
+	 * @param spool               Opened LogSpool to keep batches in while the database can't take them, null for none
+	 */
+	public LogWriter(DBAccessHandler dbHandler, int queueCapacity, int maxBatchSize, long flushIntervalMs, LogSpool spool)
+	{
+		super("LogWriter");
+		setDaemon(true);
+		dbAccessHandler = dbHandler;
+		logEntries = new RingBuffer<>(queueCapacity);
+		batchSize = Math.max(1, maxBatchSize);
+		flushIntervalNs = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+		logSpool = spool;
+		backlogThreshold = Math.max(1, queueCapacity / 2);
+		if(logSpool != null)
+		{
+			spoolBytes.set(logSpool.getSizeBytes());
+			priorSpooledCount = logSpool.getEntryCount();
+		}
+	}
+	
+	/**
+	 * Hands an entry off to be written. Never blocks.
+	 * @param logEntry     Entry to write
+	 * @return true if the entry was queued, false if it was dropped because the queue is full
+	 */
+	public boolean enqueue(LogEntry logEntry)
+	{
+		boolean queued = logEntries.offer(logEntry);
+		if(queued)
+		{
+			enqueuedCount.incrementAndGet();
+			queueDepth.increment();
+		}
+		else
+		{
+			dropped.increment();
+		}
+		return queued;
+	}
+	
+	/**
+	 * Writes everything queued before this call right away and waits for it to finish, so that queries made
+	 * afterwards see it. Entries that were spooled only count once they have been written from the spool, so this
+	 * times out while the database is unavailable instead of reporting entries that aren't in it.
+	 * @param timeoutMs     Longest number of milliseconds to wait
+	 * @return true if everything was written, false if the wait timed out
+	 * @throws InterruptedException
+	 */
+	public boolean flush(long timeoutMs) throws InterruptedException
+	{
+		long flushTarget = enqueuedCount.get();
+		long remainingNs = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+		if(processedCount < flushTarget)
+		{
+			isFlushRequested = true;
+			LockSupport.unpark(this);
+			flushLock.lock();
+			try
+			{
+				while(processedCount < flushTarget && remainingNs > 0)
+				{
+					remainingNs = flushed.awaitNanos(remainingNs);
+				}
+			}
+			finally
+			{
+				flushLock.unlock();
+			}
+		}
+		return processedCount >= flushTarget;
+	}
+	
+	/**
+	 * Stops the thread once everything queued has been written.
+	 */
+	public void shutDown()
+	{
+		isShutDown = true;
+		LockSupport.unpark(this);
+	}
+	
+	/**
+	 * Overridden Thread run() method. Drains the queue into batches and writes them until shut down and empty.
+	 */
+	@Override
+	public void run()
+	{
+		ArrayList<LogEntry> batch = new ArrayList<>(batchSize);
+		long batchStart = 0;
+		while(!isShutDown || !logEntries.isEmpty() || !batch.isEmpty())
+		{
+			LogEntry logEntry = logEntries.poll();
+			if(logEntry != null)
+			{
+				if(batch.isEmpty())
+				{
+					batchStart = System.nanoTime();
+				}
+				batch.add(logEntry);
+				queueDepth.decrement();
+			}
+			
+			long batchAge = System.nanoTime() - batchStart;
+			boolean isDue = batch.size() >= batchSize || (logEntry == null && !batch.isEmpty() &&
+					(isFlushRequested || isShutDown || batchAge >= flushIntervalNs));
+			if(isDue)
+			{
+				writeBatch(batch);
+			}
+			else if(logEntry == null && isReplayDue())
+			{
+				replaySpool();
+			}
+			else if(logEntry == null)
+			{
+				if(batch.isEmpty() && logEntries.isEmpty())
+				{
+					isFlushRequested = false;
+				}
+				long parkNs = TimeUnit.MILLISECONDS.toNanos(IDLE_PARK_MS);
+				if(!batch.isEmpty())
+				{
+					parkNs = Math.min(parkNs, flushIntervalNs - batchAge);
+				}
+				LockSupport.parkNanos(this, Math.max(1, parkNs));
+			}
+		}
+	}
+	
+	/**
+	 * Checks if spooled batches should be written to the database now. They are left while shutting down, while the
+	 * queue is backed up, and until RETRY_DELAY_MS after the database last failed.
+	 * @return true if spooled batches should be written, false if not
+	 */
+	private boolean isReplayDue()
+	{
+		return logSpool != null && !isShutDown && !logSpool.isEmpty() && logEntries.size() < batchSize &&
+				System.currentTimeMillis() >= nextReplayTime;
+	}
+	
+	/**
+	 * Writes up to REPLAY_BATCHES_PER_TURN of the oldest spooled batches to the database, so queued entries still get
+	 * a turn in between.
+	 */
+	private void replaySpool()
+	{
+		long startTime = System.nanoTime();
+		int replayedCount = 0;
+		try
+		{
+			ArrayList<LogEntry> spooledBatch = logSpool.peek();
+			for(int batchIndex = 0; batchIndex < REPLAY_BATCHES_PER_TURN && spooledBatch != null; batchIndex++)
+			{
+				dbAccessHandler.insertLogEntries(spooledBatch);
+				replayedCount += spooledBatch.size();
+				countReplayed(spooledBatch.size());
+				logSpool.commit();
+				spooledBatch = batchIndex + 1 < REPLAY_BATCHES_PER_TURN ? logSpool.peek() : null;
+			}
+			setStoreDown(false);
+		}
+		catch(SQLException sqlE)
+		{
+			sqlE.printStackTrace();
+			setStoreDown(true);
+			nextReplayTime = System.currentTimeMillis() + RETRY_DELAY_MS;
+		}
+		catch(IOException ioEx)
+		{
+			ioEx.printStackTrace();
+			nextReplayTime = System.currentTimeMillis() + RETRY_DELAY_MS;
+		}
+		long elapsedNs = Math.max(1, System.nanoTime() - startTime);
+		spoolReplayed.add(replayedCount);
+		spoolReplayPerSec.set(replayedCount * TimeUnit.SECONDS.toNanos(1) / elapsedNs);
+		spoolBytes.set(logSpool.getSizeBytes());
+		if(replayedCount > 0 && logSpool.isEmpty())
+		{
+			System.out.println("Finished writing spooled log entries to the database at " + new Date());
+		}
+	}
+	
+	/**
+	 * Counts entries written from the spool as processed, once the ones left by an earlier run have been passed.
+	 * @param replayedCount     Number of entries written from the spool
+	 */
+	private void countReplayed(int replayedCount)
+	{
+		long priorCount = Math.min(priorSpooledCount, replayedCount);
+		priorSpooledCount -= priorCount;
+		addProcessed(replayedCount - priorCount);
+	}
+	
+	/**
+	 * Appends a batch to the spool and clears it, where it isn't counted as processed until it is written from the
+	 * spool. It is counted as dropped instead if the spool is full or can't be written.
+	 * @param batch     Entries to spool
+	 */
+	private void spoolBatch(ArrayList<LogEntry> batch)
+	{
+		boolean isSpooled = false;
+		try
+		{
+			isSpooled = logSpool.append(batch);
+		}
+		catch(IOException ioEx)
+		{
+			ioEx.printStackTrace();
+		}
+		spoolBytes.set(logSpool.getSizeBytes());
+		if(isSpooled)
+		{
+			batch.clear();
+		}
+		else
+		{
+			dropped.add(batch.size());
+			finishBatch(batch);
+		}
+	}
+	
+	/**
+	 * Records whether the database is failing writes, printing a line when that changes.
+	 * @param isDown     true if the last write failed, false if it succeeded
+	 */
+	private void setStoreDown(boolean isDown)
+	{
+		if(isDown != isStoreDown)
+		{
+			isStoreDown = isDown;
+			if(isDown && logSpool != null)
+			{
+				System.out.println("Database writes failing, spooling log entries to disk at " + new Date());
+			}
+			else if(isDown)
+			{
+				System.out.println("Database writes failing, retrying log entries at " + new Date());
+			}
+			else
+			{
+				System.out.println("Database writes succeeding again at " + new Date());
+			}
+		}
+	}
+	
+	/**
+	 * Writes a batch to the database and clears it. With a spool, the batch is spooled instead if older batches are
+	 * still spooled or the queue is backed up, and if the write fails. Without one, a failed write is waited on and
+	 * tried again, except while shutting down where it is given up on so the program can still end.
+	 * @param batch     Entries to write
+	 */
+	private void writeBatch(ArrayList<LogEntry> batch)
+	{
+		long startTime = System.nanoTime();
+		if(logSpool != null && (!logSpool.isEmpty() || logEntries.size() >= backlogThreshold))
+		{
+			spoolBatch(batch);
+		}
+		else
+		{
+			try
+			{
+				dbAccessHandler.insertLogEntries(batch);
+				flushMs.set(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+				setStoreDown(false);
+				finishBatch(batch);
+			}
+			catch(SQLException sqlE)
+			{
+				sqlE.printStackTrace();
+				setStoreDown(true);
+				if(logSpool != null)
+				{
+					nextReplayTime = System.currentTimeMillis() + RETRY_DELAY_MS;
+					spoolBatch(batch);
+				}
+				else if(isShutDown)
+				{
+					dropped.add(batch.size());
+					finishBatch(batch);
+				}
+				else
+				{
+					LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(RETRY_DELAY_MS));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Counts a batch as processed, clears it, and wakes anything waiting in flush().
+	 * @param batch     Entries that were processed
+	 */
+	private void finishBatch(ArrayList<LogEntry> batch)
+	{
+		addProcessed(batch.size());
+		batch.clear();
+	}
+	
+	/**
+	 * Adds to the number of entries processed and wakes anything waiting in flush().
+	 * @param count     Number of entries processed
+	 */
+	private void addProcessed(long count)
+	{
+		flushLock.lock();
+		try
+		{
+			processedCount += count;
+			flushed.signalAll();
+		}
+		finally
+		{
+			flushLock.unlock();
+		}
+	}
+}
@@ -0,0 +1,533 @@
+package org.connectionmonitor.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * LogStore kept in a MySQL database. Each call borrows its own Connection from a ConnectionPool, so reports and
+ * log writes don't wait on each other. Private methods are given the Connection to use. The tables are created
+ * or brought up to date by a SchemaManager when the store is opened.
+ * @author Cory Ma
+ */
+public class MySqlLogStore implements LogStore
+{
+	//JDBC Driver Name and Database URL
+	private final String JDBC_DRIVER;  
+	private final String DB_URL;
+	
+	//Database Credentials
+	private final String USER;
+	private final String PASSWORD;
+	
+	//Table Names
+	private final String LOG_TABLE;
+	private final String SITE_TABLE;
+	private final String ROLLUP_TABLE;
+	private final String STATUS_TABLE;
+	
+	//Parameterized SQL, prepared once per connection on the server and reused through the driver's statement cache
+	private final String INSERT_LOG_SQL;
+	private final String INSERT_SITE_SQL;
+	private final String SELECT_EMERGENCY_LOG_SQL;
+	private final String SELECT_SITES_SQL;
+	private final String SELECT_SITE_PKEY_SQL;
+	private final String UPSERT_ROLLUP_SQL;
+	private final String SELECT_ROLLUP_TOTALS_SQL;
+	private final String ROLLUP_RANGE_SQL;
+	private final String DELETE_LOG_SQL;
+	
+	private final SchemaManager schemaManager;
+	private final int POOL_SIZE;
+	private ConnectionPool connectionPool;
+	
+	//Cache of site table keys by name, so log writes and reports don't query it
+	private final ConcurrentHashMap<String, Integer> sitePKeys = new ConcurrentHashMap<>();
+	
+	/**
+	 * Constructor.
+	 * @param dbName         Name of the database
+	 * @param dbUser         User name for database
+	 * @param dbPassword     Password for database
+	 * @param poolSize       Largest number of connections to the database open at once
+	 * @param isPartitioned  Whether to partition the log table by month if it doesn't exist yet
+	 */
+	public MySqlLogStore(String dbName, String dbUser, String dbPassword, int poolSize, boolean isPartitioned)
+	{
+		DB_URL = "jdbc:mysql://localhost/" + dbName + "?useServerPrepStmts=true&cachePrepStmts=true&prepStmtCacheSize=32" + 
+				"&rewriteBatchedStatements=true";
+		USER = dbUser;
+		PASSWORD = dbPassword;
+		POOL_SIZE = poolSize;
+		
+		JDBC_DRIVER = "com.mysql.jdbc.Driver";
+		LOG_TABLE = "log";
+		SITE_TABLE = "site";
+		ROLLUP_TABLE = "rollup";
+		STATUS_TABLE = "status";
+		schemaManager = new SchemaManager(LOG_TABLE, SITE_TABLE, STATUS_TABLE, ROLLUP_TABLE, isPartitioned);
+		
+		INSERT_LOG_SQL = "INSERT INTO " + LOG_TABLE + " (fksiteid, fkstatusid, pingtime, ipaddress, latency) VALUES (?, ?, ?, ?, ?)";
+		INSERT_SITE_SQL = "INSERT INTO " + SITE_TABLE + " (name, address) VALUES (?, ?)";
+		SELECT_EMERGENCY_LOG_SQL = "SELECT " + SITE_TABLE + ".name, fkstatusid, pingtime, latency FROM " + LOG_TABLE + " LEFT JOIN " + 
+				SITE_TABLE + " ON " + SITE_TABLE + ".pksiteid = " + LOG_TABLE + ".fksiteid WHERE (pingtime >= ? AND pingtime <= ?)";
+		SELECT_SITES_SQL = "SELECT pksiteid, name FROM " + SITE_TABLE;
+		SELECT_SITE_PKEY_SQL = "SELECT pksiteid FROM " + SITE_TABLE + " WHERE name = ?";
+		//Adds to an existing bucket, LEAST and GREATEST give NULL if either side is, so COALESCE falls back to whichever isn't
+		UPSERT_ROLLUP_SQL = "INSERT INTO " + ROLLUP_TABLE + " (fksiteid, period, bucketstart, unreachablecount, reachableagaincount, " + 
+				"slowcount, minlatency, maxlatency, sumlatency, outageseconds) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE " + 
+				"unreachablecount = unreachablecount + VALUES(unreachablecount), " + 
+				"reachableagaincount = reachableagaincount + VALUES(reachableagaincount), " + 
+				"slowcount = slowcount + VALUES(slowcount), " + 
+				"minlatency = COALESCE(LEAST(minlatency, VALUES(minlatency)), minlatency, VALUES(minlatency)), " + 
+				"maxlatency = COALESCE(GREATEST(maxlatency, VALUES(maxlatency)), maxlatency, VALUES(maxlatency)), " + 
+				"sumlatency = sumlatency + VALUES(sumlatency), " + 
+				"outageseconds = outageseconds + VALUES(outageseconds)";
+		//Conditions for each range are ORed onto the end by selectRollupTotals()
+		SELECT_ROLLUP_TOTALS_SQL = "SELECT " + SITE_TABLE + ".name, SUM(unreachablecount) AS unreachablecount, " + 
+				"SUM(reachableagaincount) AS reachableagaincount, SUM(slowcount) AS slowcount, MIN(minlatency) AS minlatency, " + 
+				"MAX(maxlatency) AS maxlatency, SUM(sumlatency) AS sumlatency, SUM(outageseconds) AS outageseconds FROM " + ROLLUP_TABLE + 
+				" JOIN " + SITE_TABLE + " ON " + SITE_TABLE + ".pksiteid = " + ROLLUP_TABLE + ".fksiteid WHERE ";
+		ROLLUP_RANGE_SQL = "(period = ? AND bucketstart >= ? AND bucketstart < ?)";
+		DELETE_LOG_SQL = "DELETE FROM " + LOG_TABLE + " WHERE fkstatusid = ? AND pingtime < ? LIMIT ?";
+	}
+	
+	/**
+	 * Loads the driver, sets up the ConnectionPool, brings the tables up to date and loads the site table into the
+	 * cache. Warnings are printed if the report queries can't use an index.
+	 * @throws SQLException
+	 */
+	@Override
+	public void open() throws SQLException
+	{
+		try
+		{
+			Class.forName(JDBC_DRIVER);
+		}
+		catch(ClassNotFoundException cnfE)
+		{
+			throw new SQLException("MySQL JDBC driver not found", cnfE);
+		}
+		connectionPool = new ConnectionPool(DB_URL, USER, PASSWORD, POOL_SIZE);
+		Connection connection = connectionPool.borrow();
+		boolean hadError = true;
+		try
+		{
+			schemaManager.ensureSchema(connection);
+			checkReportQueryPlans(connection, System.currentTimeMillis(), System.currentTimeMillis());
+			loadSiteCache(connection);
+			hadError = false;
+		}
+		finally
+		{
+			connectionPool.release(connection, hadError);
+		}
+	}
+	
+	/**
+	 * Checks that the report queries over a period can use an index, printing a warning for each that can't.
+	 * @param connection     Connection to the database
+	 * @param startTime      Start of the period in milliseconds
+	 * @param endTime        End of the period in milliseconds
+	 * @return true if both queries can use an index, false if not
+	 * @throws SQLException
+	 */
+	boolean checkReportQueryPlans(Connection connection, long startTime, long endTime) throws SQLException
+	{
+		boolean isEmergencyIndexed = schemaManager.checkQueryPlan(connection, "emergency report", SELECT_EMERGENCY_LOG_SQL, 
+				new Timestamp(startTime), new Timestamp(endTime));
+		boolean isRegularIndexed = schemaManager.checkQueryPlan(connection, "regular report", buildRollupTotalsSql(1), 
+				RollupPeriod.DAY.getID(), startTime, endTime);
+		return isEmergencyIndexed && isRegularIndexed;
+	}
+	
+	/**
+	 * Closes the connections to the database.
+	 */
+	@Override
+	public void close()
+	{
+		connectionPool.close();
+	}
+	
+	/**
+	 * Inserts an entry into the site table with PingSite information.
+	 * @param siteName     Name assigned to the PingSite
+	 * @param address      Address assigned to the PingSite
+	 * @throws SQLException
+	 */
+	@Override
+	public void insertSite(String siteName, String address) throws SQLException
+	{
+		Connection connection = connectionPool.borrow();
+		boolean hadError = true;
+		try
+		{
+			int sitePKey = getSitePKey(connection, siteName);
+		
+			if(sitePKey == -1)
+			{
+				PreparedStatement sqlStatement = connection.prepareStatement(INSERT_SITE_SQL, Statement.RETURN_GENERATED_KEYS);
+				sqlStatement.setString(1, siteName);
+				sqlStatement.setString(2, address);
+			
+				sqlStatement.executeUpdate();
+				ResultSet generatedKeys = sqlStatement.getGeneratedKeys();
+				if(generatedKeys.next())
+				{
+					cacheSite(generatedKeys.getInt(1), siteName);
+				}
+				generatedKeys.close();
+				sqlStatement.close();
+			}
+			hadError = false;
+		}
+		finally
+		{
+			connectionPool.release(connection, hadError);
+		}
+	}
+	
+	/**
+	 * Inserts a batch of entries into the log table and adds to the rollup table in one transaction.
+	 * @param logEntries     Entries to insert
+	 * @param rollups        Totals of the entries to add to the rollup table
+	 * @throws SQLException
+	 */
+	@Override
+	public void insertLogEntries(List<LogEntry> logEntries, List<LogRollup> rollups) throws SQLException
+	{
+		Connection connection = connectionPool.borrow();
+		boolean hadError = true;
+		try
+		{
+			PreparedStatement sqlStatement = connection.prepareStatement(INSERT_LOG_SQL);
+			PreparedStatement rollupStatement = connection.prepareStatement(UPSERT_ROLLUP_SQL);
+			connection.setAutoCommit(false);
+			try
+			{
+				for(LogEntry logEntry : logEntries)
+				{
+					sqlStatement.setInt(1, getSitePKey(connection, logEntry.getSiteName()));
+					sqlStatement.setInt(2, logEntry.getStatusNum());
+					sqlStatement.setTimestamp(3, new Timestamp(logEntry.getPingTime().getTime()));
+					if(logEntry.getIPAddress().isEmpty())
+					{
+						sqlStatement.setNull(4, Types.CHAR);
+					}
+					else
+					{
+						sqlStatement.setString(4, logEntry.getIPAddress());
+					}
+					if(logEntry.getLatency() == -1)
+					{
+						sqlStatement.setNull(5, Types.FLOAT);
+					}
+					else
+					{
+						sqlStatement.setDouble(5, logEntry.getLatency());
+					}
+					sqlStatement.addBatch();
+				}
+				sqlStatement.executeBatch();
+				for(LogRollup logRollup : rollups)
+				{
+					addRollupBatch(connection, rollupStatement, logRollup);
+				}
+				rollupStatement.executeBatch();
+				connection.commit();
+			}
+			catch(SQLException sqlE)
+			{
+				connection.rollback();
+				throw sqlE;
+			}
+			finally
+			{
+				connection.setAutoCommit(true);
+				sqlStatement.close();
+				rollupStatement.close();
+			}
+			hadError = false;
+		}
+		finally
+		{
+			connectionPool.release(connection, hadError);
+		}
+	}
+	
+	/**
+	 * Performs a query on the log table for the entries of every site, streaming the results. Site names are
+	 * joined in by the query, since no other query can be run on the connection while the results are streaming.
+	 * @param startTime         Time to start the query's WHERE clause from
+	 * @param endTime           Time to end the query's WHERE clause at
+	 * @param recordHandler     SiteRecordHandler to pass the entries to
+	 * @throws SQLException
+	 */
+	@Override
+	public void selectLog(Date startTime, Date endTime, SiteRecordHandler recordHandler) throws SQLException
+	{
+		Connection connection = connectionPool.borrow();
+		boolean hadError = true;
+		try
+		{
+			PreparedStatement sqlStatement = prepareStreamingStatement(connection, SELECT_EMERGENCY_LOG_SQL);
+			try
+			{
+				sqlStatement.setTimestamp(1, new Timestamp(startTime.getTime()));
+				sqlStatement.setTimestamp(2, new Timestamp(endTime.getTime()));
+				
+				ResultSet queryResult = sqlStatement.executeQuery();
+				while(queryResult.next())
+				{
+					String siteName = queryResult.getString("name");
+					recordHandler.handleRecord(new SiteRecord(siteName == null ? "" : siteName, queryResult.getInt("fkstatusid"), 
+							queryResult.getTimestamp("pingtime"), queryResult.getFloat("latency")));
+				}
+			}
+			finally
+			{
+				sqlStatement.close(); //Also reads out the rest of the results if the handler threw
+			}
+			hadError = false;
+		}
+		finally
+		{
+			connectionPool.release(connection, hadError);
+		}
+	}
+	
+	/**
+	 * Totals the rollup table for every site over a set of RollupRanges with one grouped query.
+	 * @param rollupRanges     RollupRanges to total
+	 * @return The totals by site name
+	 * @throws SQLException
+	 */
+	@Override
+	public HashMap<String, LogRollup> selectRollupTotals(List<RollupRange> rollupRanges) throws SQLException
+	{
+		HashMap<String, LogRollup> rollupTotals = new HashMap<>();
+		if(!rollupRanges.isEmpty())
+		{
+			long start = Long.MAX_VALUE;
+			Connection connection = connectionPool.borrow();
+			boolean hadError = true;
+			try
+			{
+				PreparedStatement sqlStatement = connection.prepareStatement(buildRollupTotalsSql(rollupRanges.size()));
+				int parameterIndex = 1;
+				for(RollupRange rollupRange : rollupRanges)
+				{
+					sqlStatement.setInt(parameterIndex++, rollupRange.getRollupPeriod().getID());
+					sqlStatement.setLong(parameterIndex++, rollupRange.getStartTime());
+					sqlStatement.setLong(parameterIndex++, rollupRange.getEndTime());
+					start = Math.min(start, rollupRange.getStartTime());
+				}
+				
+				ResultSet queryResult = sqlStatement.executeQuery();
+				
+				while(queryResult.next())
+				{
+					String siteName = queryResult.getString("name");
+					double minLatency = queryResult.getDouble("minlatency");
+					if(queryResult.wasNull())
+					{
+						minLatency = -1;
+					}
+					double maxLatency = queryResult.getDouble("maxlatency");
+					if(queryResult.wasNull())
+					{
+						maxLatency = -1;
+					}
+					rollupTotals.put(siteName, new LogRollup(siteName, RollupPeriod.MINUTE, start, queryResult.getInt("unreachablecount"), 
+							queryResult.getInt("reachableagaincount"), queryResult.getInt("slowcount"), minLatency, maxLatency, 
+							queryResult.getDouble("sumlatency"), queryResult.getDouble("outageseconds")));
+				}
+				
+				sqlStatement.close();
+				hadError = false;
+			}
+			finally
+			{
+				connectionPool.release(connection, hadError);
+			}
+		}
+		
+		return rollupTotals;
+	}
+	
+	/**
+	 * Builds the rollup totals query for a number of ranges. Only a few different numbers of ranges are ever
+	 * used, so each is prepared once and reused from the statement cache.
+	 * @param rangeCount     Number of ranges
+	 * @return The SQL of the query
+	 */
+	private String buildRollupTotalsSql(int rangeCount)
+	{
+		StringBuilder totalsSql = new StringBuilder(SELECT_ROLLUP_TOTALS_SQL);
+		for(int rangeIndex = 0; rangeIndex < rangeCount; rangeIndex++)
+		{
+			if(rangeIndex > 0)
+			{
+				totalsSql.append(" OR ");
+			}
+			totalsSql.append(ROLLUP_RANGE_SQL);
+		}
+		totalsSql.append(" GROUP BY ").append(ROLLUP_TABLE).append(".fksiteid, ").append(SITE_TABLE).append(".name");
+		return totalsSql.toString();
+	}
+	
+	/**
+	 * Deletes log entries older than the retention of their status, each status with its own DELETE ... LIMIT so
+	 * that no statement holds its locks for long.
+	 * @param statusCutoffs     Time before which entries are deleted, by status number
+	 * @param maxEntries        Number of entries to delete at most
+	 * @return The number of entries deleted
+	 * @throws SQLException
+	 */
+	@Override
+	public int deleteLogEntries(Map<Integer, Date> statusCutoffs, int maxEntries) throws SQLException
+	{
+		int numDeleted = 0;
+		Connection connection = connectionPool.borrow();
+		boolean hadError = true;
+		try
+		{
+			PreparedStatement sqlStatement = connection.prepareStatement(DELETE_LOG_SQL);
+			for(Map.Entry<Integer, Date> statusCutoff : statusCutoffs.entrySet())
+			{
+				if(numDeleted < maxEntries)
+				{
+					sqlStatement.setInt(1, statusCutoff.getKey());
+					sqlStatement.setTimestamp(2, new Timestamp(statusCutoff.getValue().getTime()));
+					sqlStatement.setInt(3, maxEntries - numDeleted);
+					numDeleted += sqlStatement.executeUpdate();
+				}
+			}
+			sqlStatement.close();
+			hadError = false;
+		}
+		finally
+		{
+			connectionPool.release(connection, hadError);
+		}
+		
+		return numDeleted;
+	}
+	
+	/**
+	 * Adds the parameters of a rollup to the upsert statement's batch.
+	 * @param connection          Connection the statement belongs to
+	 * @param rollupStatement     Upsert statement to add to
+	 * @param logRollup           Rollup to add
+	 * @throws SQLException
+	 */
+	private void addRollupBatch(Connection connection, PreparedStatement rollupStatement, LogRollup logRollup) throws SQLException
+	{
+		rollupStatement.setInt(1, getSitePKey(connection, logRollup.getSiteName()));
+		rollupStatement.setInt(2, logRollup.getRollupPeriod().getID());
+		rollupStatement.setLong(3, logRollup.getBucketStart());
+		rollupStatement.setInt(4, logRollup.getUnreachableCount());
+		rollupStatement.setInt(5, logRollup.getReachableAgainCount());
+		rollupStatement.setInt(6, logRollup.getSlowCount());
+		if(logRollup.getMinLatency() == -1)
+		{
+			rollupStatement.setNull(7, Types.DOUBLE);
+			rollupStatement.setNull(8, Types.DOUBLE);
+		}
+		else
+		{
+			rollupStatement.setDouble(7, logRollup.getMinLatency());
+			rollupStatement.setDouble(8, logRollup.getMaxLatency());
+		}
+		rollupStatement.setDouble(9, logRollup.getSumLatency());
+		rollupStatement.setDouble(10, logRollup.getOutageSeconds());
+		rollupStatement.addBatch();
+	}
+	
+	/**
+	 * Loads every entry of the site table into the cache.
+	 * @param connection     Connection to query with
+	 * @throws SQLException
+	 */
+	private void loadSiteCache(Connection connection) throws SQLException
+	{
+		PreparedStatement sqlStatement = connection.prepareStatement(SELECT_SITES_SQL);
+		ResultSet queryResult = sqlStatement.executeQuery();
+
+		while(queryResult.next())
+		{
+			cacheSite(queryResult.getInt("pksiteid"), queryResult.getString("name"));
+		}
+		
+		sqlStatement.close();
+		queryResult.close();
+	}
+	
+	/**
+	 * Adds a site table entry to the cache.
+	 * @param pKey         Primary key of the entry
+	 * @param siteName     Name assigned to the PingSite
+	 */
+	private void cacheSite(int pKey, String siteName)
+	{
+		sitePKeys.put(siteName, pKey);
+	}
+	
+	/**
+	 * Finds the primary key of a PingSite in the site table, from the cache when possible and otherwise by
+	 * querying the site table by name.
+	 * @param connection     Connection to query with
+	 * @param siteName       Name assigned to the PingSite
+	 * @return The primary key of the PingSite entry in the site table, -1 if there is none
+	 * @throws SQLException
+	 */
+	private int getSitePKey(Connection connection, String siteName) throws SQLException
+	{
+		Integer pKey = sitePKeys.get(siteName);
+		
+		if(pKey == null)
+		{
+			pKey = -1;
+			PreparedStatement sqlStatement = connection.prepareStatement(SELECT_SITE_PKEY_SQL);
+			sqlStatement.setString(1, siteName);
+			ResultSet queryResult = sqlStatement.executeQuery();
+	
+			if(queryResult.next())
+			{
+				pKey = queryResult.getInt("pksiteid");
+				cacheSite(pKey, siteName);
+			}
+			
+			sqlStatement.close();
+			queryResult.close();
+		}
+		
+		return pKey;
+	}
+	
+	/**
+	 * Prepares a forward-only, read-only statement whose results are streamed from the server a row at a time
+	 * instead of all being read into memory by the driver when the query runs. The connection can't run another
+	 * statement until the results are read or the statement is closed.
+	 * @param connection     Connection to prepare the statement on
+	 * @param sql            SQL of the query
+	 * @return The prepared statement
+	 * @throws SQLException
+	 */
+	private PreparedStatement prepareStreamingStatement(Connection connection, String sql) throws SQLException
+	{
+		PreparedStatement sqlStatement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		sqlStatement.setFetchSize(Integer.MIN_VALUE); //MySQL driver's signal to stream
+		return sqlStatement;
+	}
+}
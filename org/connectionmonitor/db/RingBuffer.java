@@ -0,0 +1,96 @@
+package org.connectionmonitor.db;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded lock-free queue for many producer threads and a single consumer thread. Producers claim a slot by
+ * advancing the tail and then publish into it, the consumer takes from the head and clears the slot. Nothing
+ * ever blocks, so a producer finds out the buffer is full straight away instead of waiting on the consumer.
+ * @author Cory Ma
+ * @param <E> Type of element held
+ */
+public class RingBuffer<E>
+{
+	private final AtomicReferenceArray<E> slots;
+	private final int mask;
+	private final AtomicLong head = new AtomicLong(0);
+	private final AtomicLong tail = new AtomicLong(0);
+	
+	/**
+	 * Constructor.
+	 * @param minCapacity     Smallest number of elements the buffer must hold, rounded up to a power of two
+	 */
+	public RingBuffer(int minCapacity)
+	{
+		int capacity = Integer.highestOneBit(Math.max(2, minCapacity) - 1) << 1;
+		slots = new AtomicReferenceArray<>(capacity);
+		mask = capacity - 1;
+	}
+	
+	/**
+	 * Adds an element to the tail of the buffer. Safe to call from any number of threads.
+	 * @param element     Element to add, must not be null
+	 * @return true if the element was added, false if the buffer was full
+	 */
+	public boolean offer(E element)
+	{
+		boolean added = false;
+		boolean isFull = false;
+		while(!added && !isFull)
+		{
+			long claimIndex = tail.get();
+			if(claimIndex - head.get() > mask)
+			{
+				isFull = true;
+			}
+			else if(tail.compareAndSet(claimIndex, claimIndex + 1))
+			{
+				//The slot may still be waiting on the consumer to clear it from the last pass around the ring
+				int slot = (int)claimIndex & mask;
+				while(slots.get(slot) != null)
+				{
+					Thread.yield();
+				}
+				slots.lazySet(slot, element);
+				added = true;
+			}
+		}
+		return added;
+	}
+	
+	/**
+	 * Removes the element at the head of the buffer. Must only be called from the single consumer thread.
+	 * @return The head element, null if the buffer is empty or the next element isn't published yet
+	 */
+	public E poll()
+	{
+		long headIndex = head.get();
+		int slot = (int)headIndex & mask;
+		E element = slots.get(slot);
+		if(element != null)
+		{
+			slots.lazySet(slot, null);
+			head.lazySet(headIndex + 1);
+		}
+		return element;
+	}
+	
+	/**
+	 * Gets the number of elements claimed in the buffer, which may include some not yet published.
+	 * @return The number of elements in the buffer
+	 */
+	public int size()
+	{
+		return (int)Math.max(0, tail.get() - head.get());
+	}
+	
+	/**
+	 * Checks if nothing has been claimed in the buffer.
+	 * @return true if the buffer is empty, false if not
+	 */
+	public boolean isEmpty()
+	{
+		return size() == 0;
+	}
+}
@@ -0,0 +1,72 @@
+package org.connectionmonitor.db;
+
+/**
+ * Enumeration of the bucket sizes LogRollups are kept at.
+ * @author Cory Ma
+ */
+public enum RollupPeriod
+{
+	MINUTE(1, 60000L),
+	HOUR(2, 3600000L),
+	DAY(3, 86400000L);
+	
+	private final int ID;
+	private final long BUCKET_MS;
+	
+	/**
+	 * Constructor.
+	 * @param id           Number the period is stored as
+	 * @param bucketMs     Length of a bucket in milliseconds
+	 */
+	private RollupPeriod(int id, long bucketMs)
+	{
+		ID = id;
+		BUCKET_MS = bucketMs;
+	}
+	
+	/**
+	 * Gets the number the period is stored as.
+	 * @return The ID of the period
+	 */
+	public int getID()
+	{
+		return ID;
+	}
+	
+	/**
+	 * Gets the length of a bucket.
+	 * @return The length of a bucket in milliseconds
+	 */
+	public long getBucketMs()
+	{
+		return BUCKET_MS;
+	}
+	
+	/**
+	 * Rounds a time down to the start of its bucket. Buckets are aligned to UTC.
+	 * @param time     Time in milliseconds
+	 * @return The start of the bucket in milliseconds
+	 */
+	public long getBucketStart(long time)
+	{
+		return time - (time % BUCKET_MS);
+	}
+	
+	/**
+	 * Finds the RollupPeriod stored as a number.
+	 * @param id     Number the period is stored as
+	 * @return The matching RollupPeriod, MINUTE if unrecognized
+	 */
+	public static RollupPeriod fromID(int id)
+	{
+		RollupPeriod rollupPeriod = MINUTE;
+		for(RollupPeriod period : values())
+		{
+			if(period.getID() == id)
+			{
+				rollupPeriod = period;
+			}
+		}
+		return rollupPeriod;
+	}
+}
@@ -0,0 +1,53 @@
+package org.connectionmonitor.db;
+
+/**
+ * A range of bucket starts of one RollupPeriod, the pieces a report period is split into so that it is totalled
+ * from the fewest and largest buckets.
+ * @author Cory Ma
+ */
+public class RollupRange
+{
+	private final RollupPeriod rollupPeriod;
+	private final long startTime;
+	private final long endTime;
+	
+	/**
+	 * Constructor.
+	 * @param period     RollupPeriod of the buckets
+	 * @param start      Earliest bucket start in milliseconds
+	 * @param end        Bucket start to end before in milliseconds
+	 */
+	public RollupRange(RollupPeriod period, long start, long end)
+	{
+		rollupPeriod = period;
+		startTime = start;
+		endTime = end;
+	}
+	
+	/**
+	 * Gets the RollupPeriod of the buckets.
+	 * @return The RollupPeriod
+	 */
+	public RollupPeriod getRollupPeriod()
+	{
+		return rollupPeriod;
+	}
+	
+	/**
+	 * Gets the earliest bucket start.
+	 * @return The time in milliseconds
+	 */
+	public long getStartTime()
+	{
+		return startTime;
+	}
+	
+	/**
+	 * Gets the bucket start to end before.
+	 * @return The time in milliseconds
+	 */
+	public long getEndTime()
+	{
+		return endTime;
+	}
+}
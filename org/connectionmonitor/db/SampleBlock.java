@@ -0,0 +1,203 @@
+package org.connectionmonitor.db;
+
+import java.util.Arrays;
+
+/**
+ * Compresses the samples of one site into a block of bits as they are added. Times are stored as the difference
+ * between the gaps of consecutive samples, which is 0 or close to it for a site probed on a steady interval, and
+ * latencies as the bits that changed from the previous latency, which is little for a steady site. The first sample
+ * keeps its time in the block's header and its latency in full.
+ * 
+ * Time gap changes use a prefix of 1 bits ended by a 0 to pick the size of the value that follows:
+ *     0                   - Same gap as before
+ *     10 + 7 bits         - Change of -63 to 64 ms
+ *     110 + 9 bits        - Change of -255 to 256 ms
+ *     1110 + 12 bits      - Change of -2047 to 2048 ms
+ *     1111 + 32 bits      - Any other change
+ * Latencies are XORed with the previous latency:
+ *     0                   - Same latency as before
+ *     10 + bits           - Changed bits fall within the previous window, only the window is written
+ *     11 + 5 + 5 + bits   - Number of leading zeros, number of changed bits less one, then the changed bits
+ * @author Cory Ma
+ */
+public class SampleBlock
+{
+	private final long firstTime;
+	
+	private byte[] data = new byte[256];
+	private long bitCount = 0;
+	private int sampleCount = 0;
+	
+	private long lastTime;
+	private long lastGap = 0;
+	private int lastLatencyBits;
+	private int lastLeadingZeros = -1;
+	private int lastTrailingZeros = 0;
+	
+	/**
+	 * Constructor.
+	 * @param time     Time of the first sample that will be added in milliseconds
+	 */
+	public SampleBlock(long time)
+	{
+		firstTime = time;
+		lastTime = time;
+	}
+	
+	/**
+	 * Checks if a sample can be added after the ones in the block. Samples must not go back in time, and the gap
+	 * from the previous sample must fit in the time encoding.
+	 * @param time     Time of the sample in milliseconds
+	 * @return true if the sample can be added, false if it needs a new block
+	 */
+	public boolean canAdd(long time)
+	{
+		return (time >= lastTime && time - lastTime <= Integer.MAX_VALUE);
+	}
+	
+	/**
+	 * Compresses a sample into the block. canAdd() must be checked first.
+	 * @param time        Time of the sample in milliseconds
+	 * @param latency     Latency of the sample, NaN if the site was unreachable
+	 */
+	public void add(long time, float latency)
+	{
+		int latencyBits = Float.floatToIntBits(latency);
+		if(sampleCount == 0)
+		{
+			writeBits(latencyBits, 32);
+		}
+		else
+		{
+			long gap = time - lastTime;
+			writeGapChange(gap - lastGap);
+			writeLatencyChange(latencyBits ^ lastLatencyBits);
+			lastGap = gap;
+		}
+		lastTime = time;
+		lastLatencyBits = latencyBits;
+		sampleCount++;
+	}
+	
+	/**
+	 * Writes the change between the gap before this sample and the gap before the previous one.
+	 * @param gapChange     Change in milliseconds
+	 */
+	private void writeGapChange(long gapChange)
+	{
+		if(gapChange == 0)
+		{
+			writeBits(0, 1);
+		}
+		else if(gapChange >= -63 && gapChange <= 64)
+		{
+			writeBits(0x2, 2);
+			writeBits(gapChange, 7);
+		}
+		else if(gapChange >= -255 && gapChange <= 256)
+		{
+			writeBits(0x6, 3);
+			writeBits(gapChange, 9);
+		}
+		else if(gapChange >= -2047 && gapChange <= 2048)
+		{
+			writeBits(0xE, 4);
+			writeBits(gapChange, 12);
+		}
+		else
+		{
+			writeBits(0xF, 4);
+			writeBits(gapChange, 32);
+		}
+	}
+	
+	/**
+	 * Writes the bits that changed from the previous latency.
+	 * @param xorBits     Previous latency's bits XORed with this latency's bits
+	 */
+	private void writeLatencyChange(int xorBits)
+	{
+		if(xorBits == 0)
+		{
+			writeBits(0, 1);
+		}
+		else
+		{
+			int leadingZeros = Math.min(Integer.numberOfLeadingZeros(xorBits), 31);
+			int trailingZeros = Integer.numberOfTrailingZeros(xorBits);
+			if(lastLeadingZeros != -1 && leadingZeros >= lastLeadingZeros && trailingZeros >= lastTrailingZeros)
+			{
+				writeBits(0x2, 2);
+				writeBits(xorBits >>> lastTrailingZeros, 32 - lastLeadingZeros - lastTrailingZeros);
+			}
+			else
+			{
+				int changedBits = 32 - leadingZeros - trailingZeros;
+				writeBits(0x3, 2);
+				writeBits(leadingZeros, 5);
+				writeBits(changedBits - 1, 5);
+				writeBits(xorBits >>> trailingZeros, changedBits);
+				lastLeadingZeros = leadingZeros;
+				lastTrailingZeros = trailingZeros;
+			}
+		}
+	}
+	
+	/**
+	 * Appends the low bits of a value to the block, highest bit first.
+	 * @param value       Value to take the bits from
+	 * @param numBits     Number of low bits to write, up to 64
+	 */
+	private void writeBits(long value, int numBits)
+	{
+		int bytesNeeded = (int)((bitCount + numBits + 7) >>> 3);
+		if(bytesNeeded > data.length)
+		{
+			data = Arrays.copyOf(data, Math.max(data.length * 2, bytesNeeded));
+		}
+		for(int bit = numBits - 1; bit >= 0; bit--)
+		{
+			if(((value >>> bit) & 1) != 0)
+			{
+				data[(int)(bitCount >>> 3)] |= (byte)(0x80 >>> (int)(bitCount & 7));
+			}
+			bitCount++;
+		}
+	}
+	
+	/**
+	 * Gets the time of the first sample.
+	 * @return The time in milliseconds
+	 */
+	public long getFirstTime()
+	{
+		return firstTime;
+	}
+	
+	/**
+	 * Gets the time of the last sample added.
+	 * @return The time in milliseconds
+	 */
+	public long getLastTime()
+	{
+		return lastTime;
+	}
+	
+	/**
+	 * Gets the number of samples added.
+	 * @return The number of samples
+	 */
+	public int getSampleCount()
+	{
+		return sampleCount;
+	}
+	
+	/**
+	 * Gets a copy of the compressed samples.
+	 * @return The bytes of the block, the last one padded with 0 bits
+	 */
+	public byte[] getData()
+	{
+		return Arrays.copyOf(data, (int)((bitCount + 7) >>> 3));
+	}
+}
@@ -0,0 +1,133 @@
+package org.connectionmonitor.db;
+
+/**
+ * Reads back the samples compressed into a SampleBlock, see SampleBlock for the encoding.
+ * @author Cory Ma
+ */
+public class SampleDecoder
+{
+	private final byte[] data;
+	private long bitPosition = 0;
+	
+	/**
+	 * Constructor.
+	 * @param blockData     Bytes of the block
+	 */
+	public SampleDecoder(byte[] blockData)
+	{
+		data = blockData;
+	}
+	
+	/**
+	 * Decodes every sample of the block and passes the ones within a range to a SampleHandler.
+	 * @param firstTime         Time of the first sample in milliseconds
+	 * @param sampleCount       Number of samples in the block
+	 * @param startTime         Earliest sample time to include, in milliseconds
+	 * @param endTime           Sample time to end before, in milliseconds
+	 * @param sampleHandler     SampleHandler to pass the samples to
+	 */
+	public void decode(long firstTime, int sampleCount, long startTime, long endTime, SampleHandler sampleHandler)
+	{
+		long time = firstTime;
+		long gap = 0;
+		int latencyBits = 0;
+		int leadingZeros = 0;
+		int trailingZeros = 0;
+		boolean isPastEnd = false;
+		for(int sampleIndex = 0; sampleIndex < sampleCount && !isPastEnd; sampleIndex++)
+		{
+			if(sampleIndex == 0)
+			{
+				latencyBits = (int)readBits(32);
+			}
+			else
+			{
+				gap += readGapChange();
+				time += gap;
+				if(readBits(1) != 0)
+				{
+					if(readBits(1) != 0)
+					{
+						leadingZeros = (int)readBits(5);
+						trailingZeros = 32 - leadingZeros - ((int)readBits(5) + 1);
+					}
+					latencyBits ^= (int)readBits(32 - leadingZeros - trailingZeros) << trailingZeros;
+				}
+			}
+			if(time >= endTime)
+			{
+				isPastEnd = true;
+			}
+			else if(time >= startTime)
+			{
+				sampleHandler.handleSample(time, Float.intBitsToFloat(latencyBits));
+			}
+		}
+	}
+	
+	/**
+	 * Reads the change between the gap before a sample and the gap before the previous one.
+	 * @return The change in milliseconds
+	 */
+	private long readGapChange()
+	{
+		int prefixOnes = 0;
+		while(prefixOnes < 4 && readBits(1) != 0)
+		{
+			prefixOnes++;
+		}
+		long gapChange;
+		switch(prefixOnes)
+		{
+		case 0:
+			gapChange = 0;
+			break;
+		case 1:
+			gapChange = readSigned(7);
+			break;
+		case 2:
+			gapChange = readSigned(9);
+			break;
+		case 3:
+			gapChange = readSigned(12);
+			break;
+		default:
+			gapChange = readSigned(32);
+		}
+		return gapChange;
+	}
+	
+	/**
+	 * Reads a value written from the low bits of a possibly negative number. The range of each size is shifted up
+	 * by one from two's complement, so the top value wraps around to the bottom one and is moved back up.
+	 * @param numBits     Number of bits to read
+	 * @return The value
+	 */
+	private long readSigned(int numBits)
+	{
+		long value = readBits(numBits);
+		long half = 1L << (numBits - 1);
+		if(value > half)
+		{
+			value -= (1L << numBits);
+		}
+		return value;
+	}
+	
+	/**
+	 * Reads bits from the block, highest bit first.
+	 * @param numBits     Number of bits to read, up to 64
+	 * @return The bits in the low bits of the value
+	 */
+	private long readBits(int numBits)
+	{
+		long value = 0;
+		for(int bit = 0; bit < numBits; bit++)
+		{
+			int bitValue = (data[(int)(bitPosition >>> 3)] >>> (7 - (int)(bitPosition & 7))) & 1;
+			value = (value << 1) | bitValue;
+			bitPosition++;
+		}
+		return value;
+	}
+}
@@ -0,0 +1,16 @@
+package org.connectionmonitor.db;
+
+/**
+ * Interface for receiving samples read from a SampleStore one at a time, so a long range doesn't need to be held in
+ * memory all at once.
+ * @author Cory Ma
+ */
+public interface SampleHandler
+{
+	/**
+	 * Called for each sample found, in the order the samples were taken.
+	 * @param time        Time of the probe in milliseconds
+	 * @param latency     Latency of the probe, NaN if the site was unreachable
+	 */
+	public void handleSample(long time, float latency);
+}
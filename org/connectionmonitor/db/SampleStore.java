@@ -0,0 +1,415 @@
+package org.connectionmonitor.db;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.my.libraries.IOUtilities;
+
+/**
+ * Keeps the result of every probe, not just the ones logged, so healthy latency history can be looked back on. Each
+ * site's samples are compressed into SampleBlocks, and a block is appended to the site's file for the day once it
+ * holds blockSize samples, when the day ends or when the store is closed. Each block is written with its time range,
+ * so a range scan skips the blocks outside of it without decompressing them. A block that fails part way through
+ * being written is cut back off the file, so later blocks never follow a broken one. Samples still in a site's current
+ * block are lost if the application stops without closing the store. Day files older than the retention are deleted
+ * by deleteExpiredSamples().
+ * 
+ * Each site's samples are guarded by a ReentrantLock rather than synchronized, since probes may run on virtual threads
+ * and a block is written to disk while holding it.
+ * 
+ * The files are kept in a directory per site as [day start].smp, with each block written as:
+ *     long - Time of the first sample
+ *     long - Time of the last sample
+ *     int  - Number of samples
+ *     int  - Number of bytes of compressed samples
+ *     The compressed samples
+ * @author Cory Ma
+ */
+public class SampleStore
+{
+	private final static String SAMPLE_EXTENSION = ".smp";
+	private final static long DAY_MS = TimeUnit.DAYS.toMillis(1);
+	
+	private final File storeDirectory;
+	private final int blockSize;
+	private final int retainDays;
+	
+	//Block being filled for each site by name
+	private final ConcurrentHashMap<String, SiteSamples> siteSamples = new ConcurrentHashMap<>();
+	
+	/**
+	 * Constructor.
+	 * @param directory     Path of the directory to keep the samples in, created if it doesn't exist
+	 * @param size          Number of samples to compress into a block before it is written
+	 * @param days          Number of days to keep samples for, 0 to keep them forever
+	 */
+	public SampleStore(String directory, int size, int days)
+	{
+		storeDirectory = new File(directory);
+		blockSize = size;
+		retainDays = days;
+	}
+	
+	/**
+	 * Creates the directory if needed.
+	 * @throws IOException
+	 */
+	public void open() throws IOException
+	{
+		if(!storeDirectory.isDirectory() && !storeDirectory.mkdirs())
+		{
+			throw new IOException("Could not create sample store directory " + storeDirectory);
+		}
+	}
+	
+	/**
+	 * Writes out the block being filled for each site.
+	 */
+	public void close()
+	{
+		for(SiteSamples samples : siteSamples.values())
+		{
+			samples.lock.lock();
+			try
+			{
+				samples.writeBlock();
+			}
+			catch(IOException ioEx)
+			{
+				ioEx.printStackTrace();
+			}
+			finally
+			{
+				samples.lock.unlock();
+			}
+		}
+	}
+	
+	/**
+	 * Checks if samples are ever deleted.
+	 * @return true if samples are kept for a number of days, false if they are kept forever
+	 */
+	public boolean hasRetention()
+	{
+		return retainDays > 0;
+	}
+	
+	/**
+	 * Deletes every site's day files whose whole day is older than the retention.
+	 * @param now     Current time in milliseconds
+	 * @return The number of files deleted
+	 */
+	public int deleteExpiredSamples(long now)
+	{
+		int numDeleted = 0;
+		File[] siteDirectories = storeDirectory.listFiles();
+		if(retainDays > 0 && siteDirectories != null)
+		{
+			long cutoff = now - TimeUnit.DAYS.toMillis(retainDays);
+			for(File siteDirectory : siteDirectories)
+			{
+				File[] sampleFiles = siteDirectory.listFiles();
+				if(sampleFiles != null)
+				{
+					for(File sampleFile : sampleFiles)
+					{
+						String fileName = sampleFile.getName();
+						if(fileName.endsWith(SAMPLE_EXTENSION))
+						{
+							try
+							{
+								long dayStart = Long.parseLong(fileName.substring(0, fileName.length() - SAMPLE_EXTENSION.length()));
+								if(dayStart + DAY_MS <= cutoff)
+								{
+									if(sampleFile.delete())
+									{
+										numDeleted++;
+									}
+									else
+									{
+										System.out.println("Could not delete expired sample file " + sampleFile);
+									}
+								}
+							}
+							catch(NumberFormatException nfE)
+							{
+								//Not a day file, left alone
+							}
+						}
+					}
+				}
+			}
+		}
+		return numDeleted;
+	}
+	
+	/**
+	 * Adds the result of a probe to the site's current block, writing the block out first if the sample doesn't
+	 * belong in it and afterwards if it's full.
+	 * @param siteName     Name assigned to the PingSite
+	 * @param time         Time of the probe in milliseconds
+	 * @param latency      Latency of the probe, NaN if the site was unreachable
+	 * @throws IOException
+	 */
+	public void addSample(String siteName, long time, float latency) throws IOException
+	{
+		SiteSamples samples = getSiteSamples(siteName);
+		samples.lock.lock();
+		try
+		{
+			SampleBlock sampleBlock = samples.currentBlock;
+			if(sampleBlock != null && (!sampleBlock.canAdd(time) || getDayStart(time) != getDayStart(sampleBlock.getFirstTime())))
+			{
+				samples.writeBlock();
+			}
+			if(samples.currentBlock == null)
+			{
+				samples.currentBlock = new SampleBlock(time);
+			}
+			samples.currentBlock.add(time, latency);
+			if(samples.currentBlock.getSampleCount() >= blockSize)
+			{
+				samples.writeBlock();
+			}
+		}
+		finally
+		{
+			samples.lock.unlock();
+		}
+	}
+	
+	/**
+	 * Reads the samples of a site within a range, from the files of the days it covers and then the site's current
+	 * block.
+	 * @param siteName          Name assigned to the PingSite
+	 * @param startTime         Earliest sample time to include, in milliseconds
+	 * @param endTime           Sample time to end before, in milliseconds
+	 * @param sampleHandler     SampleHandler to pass the samples to, in time order
+	 * @throws IOException
+	 */
+	public void selectSamples(String siteName, long startTime, long endTime, SampleHandler sampleHandler) throws IOException
+	{
+		SiteSamples samples = getSiteSamples(siteName);
+		for(long dayStart = getDayStart(startTime); dayStart < endTime; dayStart += DAY_MS)
+		{
+			File sampleFile = samples.getDayFile(dayStart);
+			if(sampleFile.exists())
+			{
+				selectFromFile(sampleFile, startTime, endTime, sampleHandler);
+			}
+		}
+		
+		long firstTime = 0;
+		int sampleCount = 0;
+		byte[] blockData = null;
+		samples.lock.lock();
+		try
+		{
+			if(samples.currentBlock != null)
+			{
+				firstTime = samples.currentBlock.getFirstTime();
+				sampleCount = samples.currentBlock.getSampleCount();
+				blockData = samples.currentBlock.getData();
+			}
+		}
+		finally
+		{
+			samples.lock.unlock();
+		}
+		if(blockData != null && firstTime < endTime)
+		{
+			new SampleDecoder(blockData).decode(firstTime, sampleCount, startTime, endTime, sampleHandler);
+		}
+	}
+	
+	/**
+	 * Reads the samples within a range from one day's file, skipping blocks that are entirely outside of it.
+	 * @param sampleFile        File to read
+	 * @param startTime         Earliest sample time to include, in milliseconds
+	 * @param endTime           Sample time to end before, in milliseconds
+	 * @param sampleHandler     SampleHandler to pass the samples to
+	 * @throws IOException
+	 */
+	private void selectFromFile(File sampleFile, long startTime, long endTime, SampleHandler sampleHandler) throws IOException
+	{
+		DataInputStream sampleInStream = new DataInputStream(new BufferedInputStream(new FileInputStream(sampleFile)));
+		try
+		{
+			boolean isEnd = false;
+			while(!isEnd)
+			{
+				try
+				{
+					long firstTime = sampleInStream.readLong();
+					long lastTime = sampleInStream.readLong();
+					int sampleCount = sampleInStream.readInt();
+					int dataLength = sampleInStream.readInt();
+					if(sampleCount < 0 || dataLength < 0)
+					{
+						isEnd = true; //Not a block header, nothing after it can be trusted
+					}
+					else if(lastTime < startTime || firstTime >= endTime)
+					{
+						if(sampleInStream.skipBytes(dataLength) < dataLength)
+						{
+							isEnd = true;
+						}
+					}
+					else
+					{
+						byte[] blockData = new byte[dataLength];
+						sampleInStream.readFully(blockData);
+						new SampleDecoder(blockData).decode(firstTime, sampleCount, startTime, endTime, sampleHandler);
+					}
+				}
+				catch(EOFException eofEx)
+				{
+					isEnd = true; //Also drops a block that was only partly written
+				}
+			}
+		}
+		finally
+		{
+			IOUtilities.closeCloseable(sampleInStream);
+		}
+	}
+	
+	/**
+	 * Gets the samples being kept for a site, starting them if the site has none yet.
+	 * @param siteName     Name assigned to the PingSite
+	 * @return The site's samples
+	 * @throws IOException
+	 */
+	private SiteSamples getSiteSamples(String siteName) throws IOException
+	{
+		SiteSamples samples = siteSamples.get(siteName);
+		if(samples == null)
+		{
+			SiteSamples newSamples = new SiteSamples(new File(storeDirectory, encodeSiteName(siteName)));
+			samples = siteSamples.putIfAbsent(siteName, newSamples);
+			if(samples == null)
+			{
+				samples = newSamples;
+			}
+		}
+		return samples;
+	}
+	
+	/**
+	 * Encodes a site name so it can be used as a directory name.
+	 * @param siteName     Name assigned to the PingSite
+	 * @return The encoded name
+	 * @throws IOException
+	 */
+	private String encodeSiteName(String siteName) throws IOException
+	{
+		String encodedName;
+		try
+		{
+			encodedName = URLEncoder.encode(siteName, "UTF-8").replace(".", "%2E").replace("*", "%2A");
+		}
+		catch(UnsupportedEncodingException ueEx)
+		{
+			throw new IOException(ueEx);
+		}
+		return encodedName;
+	}
+	
+	/**
+	 * Rounds a time down to the start of its day in UTC.
+	 * @param time     Time in milliseconds
+	 * @return The start of the day in milliseconds
+	 */
+	private long getDayStart(long time)
+	{
+		return time - (time % DAY_MS);
+	}
+	
+	/**
+	 * The samples of one site, which are only touched while holding its lock.
+	 */
+	private class SiteSamples
+	{
+		private final ReentrantLock lock = new ReentrantLock();
+		private final File siteDirectory;
+		private SampleBlock currentBlock;
+		
+		/**
+		 * Constructor.
+		 * @param directory     Directory to keep the site's files in
+		 */
+		private SiteSamples(File directory)
+		{
+			siteDirectory = directory;
+		}
+		
+		/**
+		 * Gets the file of one day's samples.
+		 * @param dayStart     Start of the day in milliseconds
+		 * @return The file
+		 */
+		private File getDayFile(long dayStart)
+		{
+			return new File(siteDirectory, Long.toString(dayStart) + SAMPLE_EXTENSION);
+		}
+		
+		/**
+		 * Appends the current block to the file for its day and starts a new block with the next sample. If the write
+		 * fails the file is cut back to where the block started.
+		 * @throws IOException
+		 */
+		private void writeBlock() throws IOException
+		{
+			if(currentBlock != null)
+			{
+				SampleBlock sampleBlock = currentBlock;
+				currentBlock = null; //A block that fails to write is dropped rather than written again with the next one
+				if(!siteDirectory.isDirectory() && !siteDirectory.mkdirs())
+				{
+					throw new IOException("Could not create sample directory " + siteDirectory);
+				}
+				byte[] blockData = sampleBlock.getData();
+				FileOutputStream sampleFileStream = new FileOutputStream(getDayFile(getDayStart(sampleBlock.getFirstTime())), true);
+				boolean isWritten = false;
+				try
+				{
+					long blockStart = sampleFileStream.getChannel().size();
+					try
+					{
+						DataOutputStream sampleOutStream = new DataOutputStream(new BufferedOutputStream(sampleFileStream));
+						sampleOutStream.writeLong(sampleBlock.getFirstTime());
+						sampleOutStream.writeLong(sampleBlock.getLastTime());
+						sampleOutStream.writeInt(sampleBlock.getSampleCount());
+						sampleOutStream.writeInt(blockData.length);
+						sampleOutStream.write(blockData);
+						sampleOutStream.flush();
+						isWritten = true;
+					}
+					finally
+					{
+						if(!isWritten)
+						{
+							sampleFileStream.getChannel().truncate(blockStart);
+						}
+					}
+				}
+				finally
+				{
+					IOUtilities.closeCloseable(sampleFileStream);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,269 @@
+package org.connectionmonitor.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.HashSet;
+
+/**
+ * Creates and updates the tables a MySqlLogStore uses, so the database only needs to exist beforehand. Every step
+ * checks what is already there first, so it is safe to run on every start and brings a database made from older
+ * DDL up to date. The log table is indexed by (pingtime) for the emergency report's query of every site's entries
+ * over a period. The rollup table is indexed by (period, bucketstart) for totalling every site's buckets over a
+ * period.
+ * 
+ * A new log table can optionally be partitioned by month of pingtime, so queries over a period only read the
+ * partitions it covers. Partitions are added for the months ahead on each start, and entries past the last one
+ * go to a catch-all partition, so a long run without a restart is still correct. An existing unpartitioned log
+ * table is left as it is.
+ * @author Cory Ma
+ */
+public class SchemaManager
+{
+	private final static int PARTITION_MONTHS_AHEAD = 3;
+	private final static String CATCHALL_PARTITION = "pmax";
+	
+	private final String LOG_TABLE;
+	private final String SITE_TABLE;
+	private final String STATUS_TABLE;
+	private final String ROLLUP_TABLE;
+	
+	private final String CREATE_LOG_SQL;
+	private final String CREATE_PARTITIONED_LOG_SQL;
+	private final String CREATE_SITE_SQL;
+	private final String CREATE_STATUS_SQL;
+	private final String CREATE_ROLLUP_SQL;
+	private final String INSERT_STATUS_SQL;
+	private final String SELECT_INDEX_SQL;
+	private final String SELECT_PARTITIONS_SQL;
+	
+	private final boolean isLogPartitioned;
+	
+	/**
+	 * Constructor.
+	 * @param logTable          Name of the log table
+	 * @param siteTable         Name of the site table
+	 * @param statusTable       Name of the status table
+	 * @param rollupTable       Name of the rollup table
+	 * @param isPartitioned     Whether to partition the log table by month if it is created
+	 */
+	public SchemaManager(String logTable, String siteTable, String statusTable, String rollupTable, boolean isPartitioned)
+	{
+		LOG_TABLE = logTable;
+		SITE_TABLE = siteTable;
+		STATUS_TABLE = statusTable;
+		ROLLUP_TABLE = rollupTable;
+		isLogPartitioned = isPartitioned;
+		
+		String logColumns = "pklogid BIGINT NOT NULL AUTO_INCREMENT, fksiteid INT, fkstatusid INT, pingtime DATETIME NOT NULL, " + 
+				"ipaddress CHAR(15), latency FLOAT, ";
+		CREATE_LOG_SQL = "CREATE TABLE IF NOT EXISTS " + LOG_TABLE + " (" + logColumns + "PRIMARY KEY (pklogid))";
+		//Every unique key of a partitioned table must include the partitioning column
+		CREATE_PARTITIONED_LOG_SQL = "CREATE TABLE IF NOT EXISTS " + LOG_TABLE + " (" + logColumns + "PRIMARY KEY (pklogid, pingtime)) " + 
+				"PARTITION BY RANGE (TO_DAYS(pingtime)) (PARTITION " + CATCHALL_PARTITION + " VALUES LESS THAN MAXVALUE)";
+		CREATE_SITE_SQL = "CREATE TABLE IF NOT EXISTS " + SITE_TABLE + " (pksiteid INT NOT NULL PRIMARY KEY AUTO_INCREMENT, " + 
+				"name CHAR(15), address CHAR(30))";
+		CREATE_STATUS_SQL = "CREATE TABLE IF NOT EXISTS " + STATUS_TABLE + " (pkstatusid INT NOT NULL PRIMARY KEY, statustype CHAR(20))";
+		CREATE_ROLLUP_SQL = "CREATE TABLE IF NOT EXISTS " + ROLLUP_TABLE + " (fksiteid INT, period TINYINT, bucketstart BIGINT, " + 
+				"unreachablecount INT, reachableagaincount INT, slowcount INT, minlatency FLOAT, maxlatency FLOAT, sumlatency DOUBLE, " + 
+				"outageseconds DOUBLE, PRIMARY KEY (fksiteid, period, bucketstart))";
+		INSERT_STATUS_SQL = "INSERT IGNORE INTO " + STATUS_TABLE + " VALUES (1, 'Unreachable'), (2, 'Reachable Again'), (3, 'Slow')";
+		SELECT_INDEX_SQL = "SELECT COUNT(*) FROM information_schema.STATISTICS WHERE table_schema = DATABASE() AND table_name = ? " + 
+				"AND index_name = ?";
+		SELECT_PARTITIONS_SQL = "SELECT partition_name FROM information_schema.PARTITIONS WHERE table_schema = DATABASE() " + 
+				"AND table_name = ? AND partition_name IS NOT NULL";
+	}
+	
+	/**
+	 * Creates any missing tables, status rows and indexes, and adds the coming months' partitions to a partitioned
+	 * log table.
+	 * @param connection     Connection to the database
+	 * @throws SQLException
+	 */
+	public void ensureSchema(Connection connection) throws SQLException
+	{
+		Statement sqlStatement = connection.createStatement();
+		try
+		{
+			sqlStatement.executeUpdate(isLogPartitioned ? CREATE_PARTITIONED_LOG_SQL : CREATE_LOG_SQL);
+			sqlStatement.executeUpdate(CREATE_SITE_SQL);
+			sqlStatement.executeUpdate(CREATE_STATUS_SQL);
+			sqlStatement.executeUpdate(CREATE_ROLLUP_SQL);
+			sqlStatement.executeUpdate(INSERT_STATUS_SQL);
+		}
+		finally
+		{
+			sqlStatement.close();
+		}
+		
+		ensureIndex(connection, LOG_TABLE, "idx_log_time", "pingtime");
+		ensureIndex(connection, ROLLUP_TABLE, "idx_rollup_period_bucket", "period, bucketstart");
+		
+		HashSet<String> partitionNames = getPartitionNames(connection, LOG_TABLE);
+		if(partitionNames.contains(CATCHALL_PARTITION))
+		{
+			ensurePartitions(connection, partitionNames);
+		}
+		else if(isLogPartitioned)
+		{
+			System.out.println("The " + LOG_TABLE + " table already exists without partitions, it is left unpartitioned.");
+		}
+	}
+	
+	/**
+	 * Checks that the database can use an index for a query, printing a warning if the query would have to read
+	 * the whole table. Only the indexes the query could use are checked, since on a small table the database may
+	 * rightly choose to read every row anyway.
+	 * @param connection      Connection to the database
+	 * @param description     Description of the query for the warning
+	 * @param sql             SQL of the query
+	 * @param parameters      Values for the query's parameters
+	 * @return true if every table in the query has an index it can use, false if not
+	 * @throws SQLException
+	 */
+	public boolean checkQueryPlan(Connection connection, String description, String sql, Object... parameters) throws SQLException
+	{
+		boolean isIndexed = true;
+		PreparedStatement sqlStatement = connection.prepareStatement("EXPLAIN " + sql);
+		try
+		{
+			for(int parameterIndex = 0; parameterIndex < parameters.length; parameterIndex++)
+			{
+				sqlStatement.setObject(parameterIndex + 1, parameters[parameterIndex]);
+			}
+			ResultSet queryResult = sqlStatement.executeQuery();
+			while(queryResult.next())
+			{
+				if(queryResult.getString("possible_keys") == null)
+				{
+					isIndexed = false;
+					System.out.println("Warning: the " + description + " query can't use an index on " + queryResult.getString("table") + 
+							" and will read the whole table.");
+				}
+			}
+			queryResult.close();
+		}
+		finally
+		{
+			sqlStatement.close();
+		}
+		return isIndexed;
+	}
+	
+	/**
+	 * Adds an index to a table if there isn't one with the same name.
+	 * @param connection     Connection to the database
+	 * @param table          Name of the table
+	 * @param indexName      Name of the index
+	 * @param columns        Columns of the index, separated by commas
+	 * @throws SQLException
+	 */
+	private void ensureIndex(Connection connection, String table, String indexName, String columns) throws SQLException
+	{
+		boolean hasIndex;
+		PreparedStatement sqlStatement = connection.prepareStatement(SELECT_INDEX_SQL);
+		try
+		{
+			sqlStatement.setString(1, table);
+			sqlStatement.setString(2, indexName);
+			ResultSet queryResult = sqlStatement.executeQuery();
+			hasIndex = queryResult.next() && queryResult.getInt(1) > 0;
+			queryResult.close();
+		}
+		finally
+		{
+			sqlStatement.close();
+		}
+		
+		if(!hasIndex)
+		{
+			System.out.println("Adding index " + indexName + " to the " + table + " table, this may take a while on a large table.");
+			Statement alterStatement = connection.createStatement();
+			try
+			{
+				alterStatement.executeUpdate("ALTER TABLE " + table + " ADD INDEX " + indexName + " (" + columns + ")");
+			}
+			finally
+			{
+				alterStatement.close();
+			}
+		}
+	}
+	
+	/**
+	 * Gets the names of a table's partitions.
+	 * @param connection     Connection to the database
+	 * @param table          Name of the table
+	 * @return The partition names, empty if the table isn't partitioned
+	 * @throws SQLException
+	 */
+	private HashSet<String> getPartitionNames(Connection connection, String table) throws SQLException
+	{
+		HashSet<String> partitionNames = new HashSet<>();
+		PreparedStatement sqlStatement = connection.prepareStatement(SELECT_PARTITIONS_SQL);
+		try
+		{
+			sqlStatement.setString(1, table);
+			ResultSet queryResult = sqlStatement.executeQuery();
+			while(queryResult.next())
+			{
+				partitionNames.add(queryResult.getString(1));
+			}
+			queryResult.close();
+		}
+		finally
+		{
+			sqlStatement.close();
+		}
+		return partitionNames;
+	}
+	
+	/**
+	 * Splits a partition for each month from the current one to PARTITION_MONTHS_AHEAD months ahead off of the
+	 * catch-all partition, skipping months that already have one. Months must be added in order, so a month is
+	 * only added if no later month has been.
+	 * @param connection         Connection to the database
+	 * @param partitionNames     Names of the log table's existing partitions
+	 * @throws SQLException
+	 */
+	private void ensurePartitions(Connection connection, HashSet<String> partitionNames) throws SQLException
+	{
+		SimpleDateFormat nameFormat = new SimpleDateFormat("'p'yyyyMM");
+		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+		Calendar monthStart = Calendar.getInstance();
+		monthStart.set(Calendar.DAY_OF_MONTH, 1);
+		
+		String latestName = "";
+		for(String partitionName : partitionNames)
+		{
+			if(!partitionName.equals(CATCHALL_PARTITION) && partitionName.compareTo(latestName) > 0)
+			{
+				latestName = partitionName;
+			}
+		}
+		
+		Statement sqlStatement = connection.createStatement();
+		try
+		{
+			for(int month = 0; month <= PARTITION_MONTHS_AHEAD; month++)
+			{
+				String partitionName = nameFormat.format(monthStart.getTime());
+				monthStart.add(Calendar.MONTH, 1);
+				if(partitionName.compareTo(latestName) > 0)
+				{
+					sqlStatement.executeUpdate("ALTER TABLE " + LOG_TABLE + " REORGANIZE PARTITION " + CATCHALL_PARTITION + " INTO (PARTITION " + 
+							partitionName + " VALUES LESS THAN (TO_DAYS('" + dateFormat.format(monthStart.getTime()) + "')), PARTITION " + 
+							CATCHALL_PARTITION + " VALUES LESS THAN MAXVALUE)");
+				}
+			}
+		}
+		finally
+		{
+			sqlStatement.close();
+		}
+	}
+}
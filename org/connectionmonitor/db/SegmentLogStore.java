@@ -0,0 +1,757 @@
+package org.connectionmonitor.db;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.my.libraries.IOUtilities;
+
+/**
+ * LogStore kept in files of a local directory, for stations that can't run a MySQL server. Log entries are appended
+ * to memory-mapped LogSegments, one or more per hour by ping time, so a report only reads the segments of the hours
+ * it covers. Sites are appended to a small file of their own. Writes reach the operating system as soon as they are
+ * made and are forced to disk when a segment fills up, when it is unloaded and when the store is closed. Only the
+ * current hour's segments stay mapped; segments of earlier hours are unloaded once nothing is using them and mapped
+ * again when a report or a late entry needs them. Rollups are kept in memory and
+ * appended to a journal with every batch, which is rewritten with one record per rollup when it grows too long.
+ * @author Cory Ma
+ */
+public class SegmentLogStore implements LogStore
+{
+	private final static String SITES_FILENAME = "sites.dat";
+	private final static String SEGMENT_EXTENSION = ".seg";
+	private final static String ROLLUPS_FILENAME = "rollups.dat";
+	private final static int ROLLUP_RECORD_SIZE = 57;
+	//Journal is compacted once it holds this many times more records than there are rollups
+	private final static int ROLLUP_COMPACT_FACTOR = 4;
+	private final static long HOUR_MS = TimeUnit.HOURS.toMillis(1);
+	private final static int STATUS_COUNT = 3; //Statuses are numbered from 1, as in the MySQL status table
+	
+	private final File storeDirectory;
+	
+	//Segments by hour, each hour's segments in part order
+	private final TreeMap<Long, ArrayList<LogSegment>> segments = new TreeMap<>();
+	private final ConcurrentHashMap<String, Integer> siteIDs = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<Integer, String> siteNames = new ConcurrentHashMap<>();
+	//Rollups by site name and period ID, each in bucket start order
+	private final HashMap<String, TreeMap<Long, LogRollup>> rollupBuckets = new HashMap<>();
+	private int rollupCount = 0;
+	private long rollupJournalLength = 0;
+	
+	//Inserts take the write lock and selects the read lock, so a select never sees a batch half appended
+	private final ReentrantReadWriteLock storeLock = new ReentrantReadWriteLock();
+	
+	/**
+	 * Constructor.
+	 * @param directory     Path of the directory to keep the store in, created if it doesn't exist
+	 */
+	public SegmentLogStore(String directory)
+	{
+		storeDirectory = new File(directory);
+	}
+	
+	/**
+	 * Creates the directory if needed, loads the sites and finds the existing segments.
+	 * @throws SQLException
+	 */
+	@Override
+	public void open() throws SQLException
+	{
+		storeLock.writeLock().lock();
+		try
+		{
+			if(!storeDirectory.isDirectory() && !storeDirectory.mkdirs())
+			{
+				throw new SQLException("Could not create log store directory " + storeDirectory);
+			}
+			loadSites();
+			loadRollups();
+			File[] segmentFiles = storeDirectory.listFiles();
+			for(File segmentFile : segmentFiles)
+			{
+				addSegmentFile(segmentFile);
+			}
+		}
+		catch(IOException ioEx)
+		{
+			throw new SQLException("Could not open log store " + storeDirectory, ioEx);
+		}
+		finally
+		{
+			storeLock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Forces every loaded segment to disk.
+	 */
+	@Override
+	public void close()
+	{
+		storeLock.writeLock().lock();
+		try
+		{
+			for(ArrayList<LogSegment> hourSegments : segments.values())
+			{
+				for(LogSegment logSegment : hourSegments)
+				{
+					logSegment.force();
+				}
+			}
+		}
+		finally
+		{
+			storeLock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Appends a site to the sites file if there isn't one with the same name already.
+	 * @param siteName     Name assigned to the PingSite
+	 * @param address      Address assigned to the PingSite
+	 * @throws SQLException
+	 */
+	@Override
+	public void insertSite(String siteName, String address) throws SQLException
+	{
+		storeLock.writeLock().lock();
+		try
+		{
+			getSiteID(siteName, address);
+		}
+		catch(IOException ioEx)
+		{
+			throw new SQLException("Could not add site " + siteName, ioEx);
+		}
+		finally
+		{
+			storeLock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Appends a batch of entries to the segments of their hours and its rollups to the journal, committing the entries
+	 * only once all are appended and the rollups are on disk.
+	 * @param logEntries     Entries to add
+	 * @param rollups        Totals of the entries to add to the rollups
+	 * @throws SQLException
+	 */
+	@Override
+	public void insertLogEntries(List<LogEntry> logEntries, List<LogRollup> rollups) throws SQLException
+	{
+		IdentityHashMap<LogSegment, Boolean> touchedSegments = new IdentityHashMap<>();
+		storeLock.writeLock().lock();
+		try
+		{
+			for(LogEntry logEntry : logEntries)
+			{
+				LogSegment logSegment = getWritableSegment(getHourStart(logEntry.getPingTime().getTime()));
+				logSegment.append(logEntry, getSiteID(logEntry.getSiteName(), ""));
+				touchedSegments.put(logSegment, Boolean.TRUE);
+			}
+			appendRollups(rollups);
+			for(LogSegment logSegment : touchedSegments.keySet())
+			{
+				logSegment.commit();
+			}
+			for(LogRollup logRollup : rollups)
+			{
+				addRollup(logRollup);
+			}
+			compactRollups();
+			unloadPastSegments();
+		}
+		catch(IOException ioEx)
+		{
+			for(LogSegment logSegment : touchedSegments.keySet())
+			{
+				logSegment.rollback();
+			}
+			truncateRollups();
+			throw new SQLException("Could not write log entries to " + storeDirectory, ioEx);
+		}
+		finally
+		{
+			storeLock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Reads the entries of every site from the segments covering a range.
+	 * @param startTime         Time to start from
+	 * @param endTime           Time to end at
+	 * @param recordHandler     SiteRecordHandler to pass the entries to
+	 * @throws SQLException
+	 */
+	@Override
+	public void selectLog(Date startTime, Date endTime, SiteRecordHandler recordHandler) throws SQLException
+	{
+		select(startTime.getTime(), endTime.getTime(), recordHandler);
+	}
+	
+	/**
+	 * Totals the rollups of every site over a set of RollupRanges.
+	 * @param rollupRanges     RollupRanges to total
+	 * @return The totals by site name
+	 * @throws SQLException
+	 */
+	@Override
+	public HashMap<String, LogRollup> selectRollupTotals(List<RollupRange> rollupRanges) throws SQLException
+	{
+		HashMap<String, LogRollup> rollupTotals = new HashMap<>();
+		long start = Long.MAX_VALUE;
+		for(RollupRange rollupRange : rollupRanges)
+		{
+			start = Math.min(start, rollupRange.getStartTime());
+		}
+		
+		storeLock.readLock().lock();
+		try
+		{
+			for(String siteName : siteIDs.keySet())
+			{
+				LogRollup siteTotal = null;
+				for(RollupRange rollupRange : rollupRanges)
+				{
+					TreeMap<Long, LogRollup> siteRollups = rollupBuckets.get(getRollupKey(siteName, rollupRange.getRollupPeriod()));
+					if(siteRollups != null && rollupRange.getStartTime() < rollupRange.getEndTime())
+					{
+						for(LogRollup logRollup : siteRollups.subMap(rollupRange.getStartTime(), rollupRange.getEndTime()).values())
+						{
+							if(siteTotal == null)
+							{
+								siteTotal = new LogRollup(siteName, RollupPeriod.MINUTE, start);
+							}
+							siteTotal.merge(logRollup);
+						}
+					}
+				}
+				if(siteTotal != null)
+				{
+					rollupTotals.put(siteName, siteTotal);
+				}
+			}
+		}
+		finally
+		{
+			storeLock.readLock().unlock();
+		}
+		return rollupTotals;
+	}
+	
+	/**
+	 * Deletes the files of segments in which every entry is older than the retention of its status. Segments are
+	 * deleted whole, so an entry with a longer retention keeps the rest of its segment until it expires too. A segment
+	 * whose hour ended before the cutoff of every status is known to be expired from its file name, so only the
+	 * segments of hours between the earliest and latest cutoffs are mapped to check their entries.
+	 * @param statusCutoffs     Time before which entries are deleted, by status number
+	 * @param maxEntries        Number of entries to delete at most, though the last segment deleted may go over it
+	 * @return The number of entries deleted
+	 * @throws SQLException
+	 */
+	@Override
+	public int deleteLogEntries(Map<Integer, Date> statusCutoffs, int maxEntries) throws SQLException
+	{
+		int numDeleted = 0;
+		long latestCutoff = Long.MIN_VALUE;
+		for(Date cutoff : statusCutoffs.values())
+		{
+			latestCutoff = Math.max(latestCutoff, cutoff.getTime());
+		}
+		long earliestCutoff = Long.MAX_VALUE;
+		for(int statusNum = 1; statusNum <= STATUS_COUNT; statusNum++)
+		{
+			Date cutoff = statusCutoffs.get(statusNum);
+			earliestCutoff = Math.min(earliestCutoff, cutoff == null ? Long.MIN_VALUE : cutoff.getTime());
+		}
+		
+		storeLock.writeLock().lock();
+		try
+		{
+			//Only hours that ended before the latest cutoff can hold nothing but expired entries
+			Iterator<ArrayList<LogSegment>> hourIterator = segments.headMap(getHourStart(latestCutoff), false).values().iterator();
+			while(hourIterator.hasNext() && numDeleted < maxEntries)
+			{
+				ArrayList<LogSegment> hourSegments = hourIterator.next();
+				Iterator<LogSegment> segmentIterator = hourSegments.iterator();
+				while(segmentIterator.hasNext() && numDeleted < maxEntries)
+				{
+					LogSegment logSegment = segmentIterator.next();
+					boolean isHourExpired = logSegment.getHourStart() + HOUR_MS <= earliestCutoff;
+					if(!isHourExpired)
+					{
+						logSegment.load();
+					}
+					if(isHourExpired || logSegment.isExpired(statusCutoffs))
+					{
+						int recordCount = logSegment.readRecordCount();
+						logSegment.unload();
+						if(logSegment.getFile().delete())
+						{
+							segmentIterator.remove();
+							numDeleted += recordCount;
+						}
+						else
+						{
+							System.out.println("Could not delete expired log segment " + logSegment.getFile());
+						}
+					}
+				}
+				if(hourSegments.isEmpty())
+				{
+					hourIterator.remove();
+				}
+			}
+			unloadPastSegments();
+		}
+		catch(IOException ioEx)
+		{
+			throw new SQLException("Could not delete log entries from " + storeDirectory, ioEx);
+		}
+		finally
+		{
+			storeLock.writeLock().unlock();
+		}
+		return numDeleted;
+	}
+	
+	/**
+	 * Reads entries from every segment whose hour overlaps a range.
+	 * @param startTime        Earliest ping time to include, in milliseconds
+	 * @param endTime          Latest ping time to include, in milliseconds
+	 * @param recordHandler    SiteRecordHandler to pass the entries to
+	 * @throws SQLException
+	 */
+	private void select(long startTime, long endTime, SiteRecordHandler recordHandler) throws SQLException
+	{
+		storeLock.readLock().lock();
+		try
+		{
+			for(ArrayList<LogSegment> hourSegments : segments.subMap(getHourStart(startTime), true, endTime, true).values())
+			{
+				for(LogSegment logSegment : hourSegments)
+				{
+					logSegment.load();
+					logSegment.select(startTime, endTime, siteNames, recordHandler);
+				}
+			}
+		}
+		catch(IOException ioEx)
+		{
+			throw new SQLException("Could not read log entries from " + storeDirectory, ioEx);
+		}
+		finally
+		{
+			storeLock.readLock().unlock();
+		}
+		
+		//Other selects may still be reading the past segments, so they are only unloaded if nothing else holds the store
+		if(storeLock.writeLock().tryLock())
+		{
+			try
+			{
+				unloadPastSegments();
+			}
+			finally
+			{
+				storeLock.writeLock().unlock();
+			}
+		}
+	}
+	
+	/**
+	 * Unloads every segment of an hour before the current one, since entries are rarely added to them once their hour
+	 * has passed. Must be called with the write lock held, so no select is reading them.
+	 */
+	private void unloadPastSegments()
+	{
+		for(ArrayList<LogSegment> hourSegments : segments.headMap(getHourStart(System.currentTimeMillis()), false).values())
+		{
+			for(LogSegment logSegment : hourSegments)
+			{
+				logSegment.unload();
+			}
+		}
+	}
+	
+	/**
+	 * Gets the last segment of an hour, starting a new one if there is none or it's full.
+	 * @param hourStart     Start of the hour in milliseconds
+	 * @return The loaded segment
+	 * @throws IOException
+	 */
+	private LogSegment getWritableSegment(long hourStart) throws IOException
+	{
+		ArrayList<LogSegment> hourSegments = segments.get(hourStart);
+		LogSegment logSegment = null;
+		if(hourSegments != null)
+		{
+			logSegment = hourSegments.get(hourSegments.size() - 1);
+			logSegment.load();
+		}
+		if(logSegment == null || logSegment.isFull())
+		{
+			int part = 0;
+			if(logSegment != null)
+			{
+				logSegment.force();
+				part = logSegment.getPart() + 1;
+			}
+			logSegment = new LogSegment(new File(storeDirectory, Long.toString(hourStart) + "-" + part + SEGMENT_EXTENSION), 
+					hourStart, part);
+			logSegment.load();
+			addSegment(logSegment);
+		}
+		return logSegment;
+	}
+	
+	/**
+	 * Adds an existing file to the segments if it is named like a segment, as [hour start]-[part].seg.
+	 * @param segmentFile     File to add
+	 */
+	private void addSegmentFile(File segmentFile)
+	{
+		String fileName = segmentFile.getName();
+		int separator = fileName.indexOf('-');
+		if(fileName.endsWith(SEGMENT_EXTENSION) && separator > 0)
+		{
+			try
+			{
+				long hourStart = Long.parseLong(fileName.substring(0, separator));
+				int part = Integer.parseInt(fileName.substring(separator + 1, fileName.length() - SEGMENT_EXTENSION.length()));
+				addSegment(new LogSegment(segmentFile, hourStart, part));
+			}
+			catch(NumberFormatException nfE)
+			{
+				System.out.println("Ignoring " + segmentFile + " in the log store, it isn't named like a segment.");
+			}
+		}
+	}
+	
+	/**
+	 * Adds a segment to the list for its hour, keeping the list in part order.
+	 * @param logSegment     Segment to add
+	 */
+	private void addSegment(LogSegment logSegment)
+	{
+		ArrayList<LogSegment> hourSegments = segments.get(logSegment.getHourStart());
+		if(hourSegments == null)
+		{
+			hourSegments = new ArrayList<>();
+			segments.put(logSegment.getHourStart(), hourSegments);
+		}
+		int insertIndex = hourSegments.size();
+		while(insertIndex > 0 && hourSegments.get(insertIndex - 1).getPart() > logSegment.getPart())
+		{
+			insertIndex--;
+		}
+		hourSegments.add(insertIndex, logSegment);
+	}
+	
+	/**
+	 * Gets the ID of a site, appending the site to the sites file if it is new.
+	 * @param siteName     Name assigned to the PingSite
+	 * @param address      Address assigned to the PingSite, only used if the site is new
+	 * @return The ID of the site
+	 * @throws IOException
+	 */
+	private int getSiteID(String siteName, String address) throws IOException
+	{
+		Integer siteID = siteIDs.get(siteName);
+		if(siteID == null)
+		{
+			siteID = siteIDs.size() + 1;
+			FileOutputStream sitesFileStream = new FileOutputStream(new File(storeDirectory, SITES_FILENAME), true);
+			DataOutputStream sitesOutStream = new DataOutputStream(sitesFileStream);
+			try
+			{
+				sitesOutStream.writeInt(siteID);
+				sitesOutStream.writeUTF(siteName);
+				sitesOutStream.writeUTF(address);
+				sitesOutStream.flush();
+				sitesFileStream.getFD().sync();
+			}
+			finally
+			{
+				IOUtilities.closeCloseable(sitesOutStream);
+			}
+			cacheSite(siteID, siteName);
+		}
+		return siteID;
+	}
+	
+	/**
+	 * Loads every site from the sites file.
+	 * @throws IOException
+	 */
+	private void loadSites() throws IOException
+	{
+		File sitesFile = new File(storeDirectory, SITES_FILENAME);
+		if(sitesFile.exists())
+		{
+			DataInputStream sitesInStream = new DataInputStream(new BufferedInputStream(new FileInputStream(sitesFile)));
+			try
+			{
+				boolean isEnd = false;
+				while(!isEnd)
+				{
+					try
+					{
+						int siteID = sitesInStream.readInt();
+						String siteName = sitesInStream.readUTF();
+						sitesInStream.readUTF(); //Address isn't needed for reports
+						cacheSite(siteID, siteName);
+					}
+					catch(EOFException eofEx)
+					{
+						isEnd = true; //Also drops a site that was only partly written
+					}
+				}
+			}
+			finally
+			{
+				IOUtilities.closeCloseable(sitesInStream);
+			}
+		}
+	}
+	
+	/**
+	 * Appends a batch of rollups to the journal and forces it to disk. The length before the append is kept so
+	 * truncateRollups can undo it.
+	 * @param newRollups     Rollups to append
+	 * @throws IOException
+	 */
+	private void appendRollups(List<LogRollup> newRollups) throws IOException
+	{
+		writeRollups(new File(storeDirectory, ROLLUPS_FILENAME), true, newRollups);
+	}
+	
+	/**
+	 * Replaces the journal with one record per rollup in memory once it holds too many more records than that.
+	 * A failure leaves the old journal in place, which still holds the same totals.
+	 */
+	private void compactRollups()
+	{
+		long journalRecords = rollupJournalLength / ROLLUP_RECORD_SIZE;
+		if(journalRecords > 1024 && journalRecords > (long)ROLLUP_COMPACT_FACTOR * rollupCount)
+		{
+			File rollupsFile = new File(storeDirectory, ROLLUPS_FILENAME);
+			File tempFile = new File(storeDirectory, ROLLUPS_FILENAME + ".tmp");
+			ArrayList<LogRollup> allRollups = new ArrayList<>(rollupCount);
+			for(TreeMap<Long, LogRollup> siteRollups : rollupBuckets.values())
+			{
+				allRollups.addAll(siteRollups.values());
+			}
+			try
+			{
+				writeRollups(tempFile, false, allRollups);
+				if(!tempFile.renameTo(rollupsFile))
+				{
+					throw new IOException("Could not replace " + rollupsFile);
+				}
+				rollupJournalLength = rollupsFile.length();
+			}
+			catch(IOException ioEx)
+			{
+				ioEx.printStackTrace();
+			}
+		}
+	}
+	
+	/**
+	 * Writes rollups to a file and forces it to disk.
+	 * @param rollupsFile     File to write to
+	 * @param isAppend        Whether to append to the file instead of replacing it
+	 * @param fileRollups     Rollups to write
+	 * @throws IOException
+	 */
+	private void writeRollups(File rollupsFile, boolean isAppend, List<LogRollup> fileRollups) throws IOException
+	{
+		FileOutputStream rollupsFileStream = new FileOutputStream(rollupsFile, isAppend);
+		DataOutputStream rollupsOutStream = new DataOutputStream(new BufferedOutputStream(rollupsFileStream));
+		try
+		{
+			for(LogRollup logRollup : fileRollups)
+			{
+				rollupsOutStream.writeByte(logRollup.getRollupPeriod().getID());
+				rollupsOutStream.writeInt(getSiteID(logRollup.getSiteName(), ""));
+				rollupsOutStream.writeLong(logRollup.getBucketStart());
+				rollupsOutStream.writeInt(logRollup.getUnreachableCount());
+				rollupsOutStream.writeInt(logRollup.getReachableAgainCount());
+				rollupsOutStream.writeInt(logRollup.getSlowCount());
+				rollupsOutStream.writeDouble(logRollup.getMinLatency());
+				rollupsOutStream.writeDouble(logRollup.getMaxLatency());
+				rollupsOutStream.writeDouble(logRollup.getSumLatency());
+				rollupsOutStream.writeDouble(logRollup.getOutageSeconds());
+			}
+			rollupsOutStream.flush();
+			rollupsFileStream.getFD().sync();
+		}
+		finally
+		{
+			IOUtilities.closeCloseable(rollupsOutStream);
+		}
+		if(isAppend)
+		{
+			rollupJournalLength += (long)ROLLUP_RECORD_SIZE * fileRollups.size();
+		}
+	}
+	
+	/**
+	 * Cuts the journal back to the length it had before a failed batch was appended.
+	 */
+	private void truncateRollups()
+	{
+		File rollupsFile = new File(storeDirectory, ROLLUPS_FILENAME);
+		RandomAccessFile rollupsRandomFile = null;
+		try
+		{
+			if(rollupsFile.length() > rollupJournalLength)
+			{
+				rollupsRandomFile = new RandomAccessFile(rollupsFile, "rw");
+				rollupsRandomFile.setLength(rollupJournalLength);
+			}
+			else
+			{
+				rollupJournalLength = rollupsFile.length();
+			}
+		}
+		catch(IOException ioEx)
+		{
+			ioEx.printStackTrace();
+		}
+		finally
+		{
+			IOUtilities.closeCloseable(rollupsRandomFile);
+		}
+	}
+	
+	/**
+	 * Replays the rollup journal into memory.
+	 * @throws IOException
+	 */
+	private void loadRollups() throws IOException
+	{
+		File rollupsFile = new File(storeDirectory, ROLLUPS_FILENAME);
+		if(rollupsFile.exists())
+		{
+			DataInputStream rollupsInStream = new DataInputStream(new BufferedInputStream(new FileInputStream(rollupsFile)));
+			try
+			{
+				boolean isEnd = false;
+				while(!isEnd)
+				{
+					try
+					{
+						RollupPeriod period = RollupPeriod.fromID(rollupsInStream.readByte());
+						String siteName = siteNames.get(rollupsInStream.readInt());
+						LogRollup logRollup = new LogRollup(siteName, period, rollupsInStream.readLong(), rollupsInStream.readInt(), 
+								rollupsInStream.readInt(), rollupsInStream.readInt(), rollupsInStream.readDouble(), 
+								rollupsInStream.readDouble(), rollupsInStream.readDouble(), rollupsInStream.readDouble());
+						rollupJournalLength += ROLLUP_RECORD_SIZE;
+						if(siteName != null && period != null)
+						{
+							addRollup(logRollup);
+						}
+					}
+					catch(EOFException eofEx)
+					{
+						isEnd = true; //Also drops a rollup that was only partly written
+					}
+				}
+			}
+			finally
+			{
+				IOUtilities.closeCloseable(rollupsInStream);
+			}
+		}
+	}
+	
+	/**
+	 * Adds a rollup into the one in memory for the same bucket, or keeps a copy of it if there is none.
+	 * @param logRollup     Rollup to add
+	 */
+	private void addRollup(LogRollup logRollup)
+	{
+		String rollupKey = getRollupKey(logRollup.getSiteName(), logRollup.getRollupPeriod());
+		TreeMap<Long, LogRollup> siteRollups = rollupBuckets.get(rollupKey);
+		if(siteRollups == null)
+		{
+			siteRollups = new TreeMap<>();
+			rollupBuckets.put(rollupKey, siteRollups);
+		}
+		LogRollup existing = siteRollups.get(logRollup.getBucketStart());
+		if(existing == null)
+		{
+			siteRollups.put(logRollup.getBucketStart(), copyRollup(logRollup));
+			rollupCount++;
+		}
+		else
+		{
+			existing.merge(logRollup);
+		}
+	}
+	
+	/**
+	 * Copies a rollup so the one kept in memory can't be changed by the caller.
+	 * @param logRollup     Rollup to copy
+	 * @return The copy
+	 */
+	private LogRollup copyRollup(LogRollup logRollup)
+	{
+		LogRollup copy = new LogRollup(logRollup.getSiteName(), logRollup.getRollupPeriod(), logRollup.getBucketStart());
+		copy.merge(logRollup);
+		return copy;
+	}
+	
+	/**
+	 * Gets the key of a site and period in the rollups map.
+	 * @param siteName     Name assigned to the PingSite
+	 * @param period       RollupPeriod of the buckets
+	 * @return The key
+	 */
+	private String getRollupKey(String siteName, RollupPeriod period)
+	{
+		return siteName + "/" + period.getID();
+	}
+	
+	/**
+	 * Adds a site to the maps in both directions.
+	 * @param siteID       ID of the site
+	 * @param siteName     Name assigned to the PingSite
+	 */
+	private void cacheSite(int siteID, String siteName)
+	{
+		siteIDs.put(siteName, siteID);
+		siteNames.put(siteID, siteName);
+	}
+	
+	/**
+	 * Rounds a time down to the start of its hour.
+	 * @param time     Time in milliseconds
+	 * @return The start of the hour in milliseconds
+	 */
+	private long getHourStart(long time)
+	{
+		return time - (time % HOUR_MS);
+	}
+}
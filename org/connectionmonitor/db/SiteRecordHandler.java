@@ -0,0 +1,16 @@
+package org.connectionmonitor.db;
+
+/**
+ * Interface for receiving the entries of a log query one at a time as they are read, so a report over a long
+ * period doesn't hold every entry in memory at once.
+ * @author Cory Ma
+ */
+public interface SiteRecordHandler
+{
+	/**
+	 * Called for each entry found. This runs while the query is still being read, so it should not query the
+	 * LogStore itself.
+	 * @param siteRecord     The entry
+	 */
+	public void handleRecord(SiteRecord siteRecord);
+}
@@ -0,0 +1,313 @@
+package org.connectionmonitor.email;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.mail.Address;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.internet.AddressException;
+
+import org.connectionmonitor.metrics.Gauge;
+import org.connectionmonitor.metrics.MonitorMetrics;
+
+/**
+ * Thread that sends queued emails with an Emailer, so threads that create reports never wait on the mail server.
+ * A message that fails to send because of the connection or mail server is tried again after a delay that doubles each
+ * time, up to MAX_ATTEMPTS. A message rejected for its addresses is not, since sending it again can't succeed and would
+ * resend it to any addresses that did accept it. New messages are dropped and counted if the queue fills while the
+ * mail server is unreachable. With a digest window, messages queued within the window of the first one are combined
+ * into one digest per recipient list, so a burst of reports during an incident goes out as a single email.
+ * @author Cory Ma
+ */
+public class EmailDispatcher extends Thread
+{
+	public final static String QUEUE_DEPTH = "email.queueDepth";
+	public final static String DROPPED = "email.dropped";
+	public final static String RETRIES = "email.retries";
+	
+	private final static long POLL_MS = 1000;
+	private final static long FIRST_RETRY_DELAY_MS = 5000;
+	private final static long MAX_RETRY_DELAY_MS = 5 * 60 * 1000;
+	private final static int MAX_ATTEMPTS = 8;
+	
+	private final Emailer emailer;
+	private final ArrayBlockingQueue<OutboundEmail> outboundEmails;
+	private final long digestWindowNs;
+	private volatile boolean isShutDown = false;
+	
+	private final Gauge queueDepth = MonitorMetrics.gauge(QUEUE_DEPTH);
+	private final Gauge dropped = MonitorMetrics.gauge(DROPPED);
+	private final Gauge retries = MonitorMetrics.gauge(RETRIES);
+	
+	/**
+	 * Constructor.
+	 * @param emailSender       Emailer to send the messages with
+	 * @param queueCapacity     Number of messages that may wait to be sent before new ones are dropped
+	 * @param digestWindowMs    Number of milliseconds to collect messages into one digest for, 0 to send each alone
+	 */
+	public EmailDispatcher(Emailer emailSender, int queueCapacity, long digestWindowMs)
+	{
+		super("EmailDispatcher");
+		setDaemon(true);
+		emailer = emailSender;
+		outboundEmails = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+		digestWindowNs = TimeUnit.MILLISECONDS.toNanos(digestWindowMs);
+	}
+	
+	/**
+	 * Hands a message off to be sent. Never blocks.
+	 * @param recipientList     List of email addresses to send the message to
+	 * @param subject           Subject of the message
+	 * @param body              Body of the message
+	 * @return true if the message was queued, false if it was dropped because the queue is full
+	 */
+	public boolean enqueue(String recipientList, String subject, String body)
+	{
+		boolean queued = outboundEmails.offer(new OutboundEmail(recipientList, subject, body));
+		if(queued)
+		{
+			queueDepth.increment();
+		}
+		else
+		{
+			dropped.increment();
+			System.out.println(subject + " dropped, too many messages waiting to be sent");
+		}
+		return queued;
+	}
+	
+	/**
+	 * Stops the thread once everything queued has been sent. Messages that fail while shutting down aren't retried
+	 * so the program can still end.
+	 */
+	public void shutDown()
+	{
+		isShutDown = true;
+		LockSupport.unpark(this);
+	}
+	
+	/**
+	 * Overridden Thread run() method. Sends queued messages in order until shut down and empty, then closes the
+	 * connection to the mail server. A message that throws a RuntimeException is counted as dropped and the thread
+	 * carries on, since nothing would be sent again once it ended.
+	 */
+	@Override
+	public void run()
+	{
+		while(!isShutDown || !outboundEmails.isEmpty())
+		{
+			try
+			{
+				OutboundEmail outboundEmail = outboundEmails.poll(POLL_MS, TimeUnit.MILLISECONDS);
+				if(outboundEmail != null)
+				{
+					queueDepth.decrement();
+					if(digestWindowNs > 0)
+					{
+						for(OutboundEmail digestEmail : collectDigests(outboundEmail))
+						{
+							send(digestEmail);
+						}
+					}
+					else
+					{
+						send(outboundEmail);
+					}
+				}
+			}
+			catch(InterruptedException iE)
+			{
+				iE.printStackTrace();
+			}
+			catch(RuntimeException rE)
+			{
+				rE.printStackTrace();
+				dropped.increment();
+			}
+		}
+		emailer.close();
+	}
+	
+	/**
+	 * Collects the messages queued within the digest window of the first one and combines those going to the same
+	 * recipient list. The window is cut short when shutting down.
+	 * @param firstEmail     First message of the window
+	 * @return One message per recipient list, in the order the lists were first seen
+	 * @throws InterruptedException
+	 */
+	private ArrayList<OutboundEmail> collectDigests(OutboundEmail firstEmail) throws InterruptedException
+	{
+		LinkedHashMap<String, ArrayList<OutboundEmail>> emailsByRecipients = new LinkedHashMap<>();
+		long windowEnd = System.nanoTime() + digestWindowNs;
+		OutboundEmail outboundEmail = firstEmail;
+		while(outboundEmail != null)
+		{
+			ArrayList<OutboundEmail> recipientEmails = emailsByRecipients.get(outboundEmail.getRecipientList());
+			if(recipientEmails == null)
+			{
+				recipientEmails = new ArrayList<>();
+				emailsByRecipients.put(outboundEmail.getRecipientList(), recipientEmails);
+			}
+			recipientEmails.add(outboundEmail);
+			
+			long remainingNs = windowEnd - System.nanoTime();
+			outboundEmail = isShutDown ? outboundEmails.poll() : outboundEmails.poll(Math.max(0, remainingNs), TimeUnit.NANOSECONDS);
+			if(outboundEmail != null)
+			{
+				queueDepth.decrement();
+			}
+		}
+		
+		ArrayList<OutboundEmail> digestEmails = new ArrayList<>(emailsByRecipients.size());
+		for(ArrayList<OutboundEmail> recipientEmails : emailsByRecipients.values())
+		{
+			if(recipientEmails.size() == 1)
+			{
+				digestEmails.add(recipientEmails.get(0));
+			}
+			else
+			{
+				StringBuilder digestBody = new StringBuilder();
+				for(OutboundEmail recipientEmail : recipientEmails)
+				{
+					digestBody.append(recipientEmail.getSubject()).append("\n\n").append(recipientEmail.getBody()).append("\n\n");
+				}
+				String digestSubject = recipientEmails.get(0).getSubject() + " (+" + (recipientEmails.size() - 1) + " more)";
+				digestEmails.add(new OutboundEmail(recipientEmails.get(0).getRecipientList(), digestSubject, digestBody.toString()));
+			}
+		}
+		return digestEmails;
+	}
+	
+	/**
+	 * Sends a message, waiting and trying again if the connection or mail server fails until it has been tried
+	 * MAX_ATTEMPTS times. A message rejected for its addresses is dropped right away.
+	 * @param outboundEmail     Message to send
+	 */
+	private void send(OutboundEmail outboundEmail)
+	{
+		long retryDelayMs = FIRST_RETRY_DELAY_MS;
+		boolean isSent = false;
+		boolean isGivenUp = false;
+		int attempt = 1;
+		while(!isSent && !isGivenUp)
+		{
+			try
+			{
+				emailer.sendMessage(outboundEmail.getRecipientList(), outboundEmail.getSubject(), outboundEmail.getBody());
+				isSent = true;
+			}
+			catch(SendFailedException sfE)
+			{
+				sfE.printStackTrace();
+				System.out.println(outboundEmail.getSubject() + " rejected, sent to: " + formatAddresses(sfE.getValidSentAddresses()) +
+						" invalid: " + formatAddresses(sfE.getInvalidAddresses()) + " not sent to: " + formatAddresses(sfE.getValidUnsentAddresses()));
+				dropped.increment();
+				isGivenUp = true;
+			}
+			catch(AddressException aE)
+			{
+				aE.printStackTrace();
+				System.out.println(outboundEmail.getSubject() + " dropped, its recipient list can't be parsed");
+				dropped.increment();
+				isGivenUp = true;
+			}
+			catch(RuntimeException rE)
+			{
+				rE.printStackTrace();
+				System.out.println(outboundEmail.getSubject() + " dropped after an unexpected error");
+				dropped.increment();
+				isGivenUp = true;
+			}
+			catch(MessagingException mE)
+			{
+				mE.printStackTrace();
+				if(isShutDown || attempt >= MAX_ATTEMPTS)
+				{
+					System.out.println(outboundEmail.getSubject() + " dropped after " + attempt + " attempts");
+					dropped.increment();
+					isGivenUp = true;
+				}
+				else
+				{
+					retries.increment();
+					LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(retryDelayMs));
+					retryDelayMs = Math.min(retryDelayMs * 2, MAX_RETRY_DELAY_MS);
+					attempt++;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Lists addresses for a log line.
+	 * @param addresses     Addresses to list, may be null
+	 * @return The addresses separated by commas, "none" if there are none
+	 */
+	private String formatAddresses(Address[] addresses)
+	{
+		StringBuilder addressList = new StringBuilder();
+		if(addresses != null)
+		{
+			for(Address address : addresses)
+			{
+				addressList.append(addressList.length() > 0 ? "," : "").append(address);
+			}
+		}
+		return addressList.length() > 0 ? addressList.toString() : "none";
+	}
+	
+	/**
+	 * A message waiting to be sent.
+	 */
+	private static class OutboundEmail
+	{
+		private final String recipientList;
+		private final String subject;
+		private final String body;
+		
+		/**
+		 * Constructor.
+		 * @param recipients      List of email addresses to send the message to
+		 * @param emailSubject    Subject of the message
+		 * @param emailBody       Body of the message
+		 */
+		public OutboundEmail(String recipients, String emailSubject, String emailBody)
+		{
+			recipientList = recipients;
+			subject = emailSubject;
+			body = emailBody;
+		}
+		
+		/**
+		 * Gets the list of email addresses to send the message to.
+		 * @return The list of email addresses
+		 */
+		public String getRecipientList()
+		{
+			return recipientList;
+		}
+		
+		/**
+		 * Gets the subject of the message.
+		 * @return The subject
+		 */
+		public String getSubject()
+		{
+			return subject;
+		}
+		
+		/**
+		 * Gets the body of the message.
+		 * @return The body
+		 */
+		public String getBody()
+		{
+			return body;
+		}
+	}
+}
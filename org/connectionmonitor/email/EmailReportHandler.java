@@ -1,24 +1,28 @@
 package org.connectionmonitor.email;
 
 import java.util.Date;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.my.libraries.MoreDateFunctions;
 
 /**
  * An object that handles synchronization for Emailer and parses together information from DBAccessHandler to create reports.
  * Since multiple threads require access to the database concurrently, one object should be shared and functions
- * need to be threadsafe. 
+ * need to be threadsafe. Reports are handed off to an EmailDispatcher, so no thread waits on the mail server.
  * @author Cory Ma
  */
 public class EmailReportHandler
 {
-	private final Emailer emailer;
+	private final EmailDispatcher emailDispatcher;
 	private String notifyList, emergencyNotifyList; 
 	private int reportFrequency;
 	private volatile int numEmergencyReportSites;
 	private Date startEmergency, lastRegularReport;
 	private String stationHeader;
 	
+	//A ReentrantLock is used over synchronized so virtual threads waiting on it aren't pinned
+	private final ReentrantLock reportLock = new ReentrantLock();
+	
 	/**
 	 * Constructor
 	 * @param emailSender            Emailer for sending reports with
@@ -27,10 +31,14 @@ public class EmailReportHandler
 	 * @param emailList              List of email addresses to send regular reports to
 	 * @param emergencyEmailList     List of email addresses to send emergency reports to
 	 * @param stationName            Name of the station, to add to email subjects
+	 * @param digestWindowMs         Number of milliseconds to combine reports into one email for, 0 to send each alone
+	 * @param queueCapacity          Number of emails that may wait to be sent before new ones are dropped
 	 */
-	public EmailReportHandler(Emailer emailSender, int emailFrequency, String emailList, String emergencyEmailList, String stationName)
+	public EmailReportHandler(Emailer emailSender, int emailFrequency, String emailList, String emergencyEmailList, String stationName,
+			long digestWindowMs, int queueCapacity)
 	{
-		emailer = emailSender;
+		emailDispatcher = new EmailDispatcher(emailSender, queueCapacity, digestWindowMs);
+		emailDispatcher.start();
 		notifyList = emailList;
 		emergencyNotifyList = emergencyEmailList;
 		reportFrequency = emailFrequency;
@@ -49,33 +57,49 @@ public class EmailReportHandler
 	/**
 	 * Checks to see if a regular report needs to be sent.
 	 */
-	public synchronized CheckNeedEmailResponse checkReportSend()
+	public CheckNeedEmailResponse checkReportSend()
 	{
-		CheckNeedEmailResponse response;
-		Date currentDate = new Date();
-		if(MoreDateFunctions.timeDiffInHours(currentDate, lastRegularReport) >= reportFrequency)
+		reportLock.lock();
+		try
 		{
-			currentDate = MoreDateFunctions.roundToHour(currentDate);
-			response = new CheckNeedEmailResponse(lastRegularReport, currentDate);
-			lastRegularReport = currentDate;
+			CheckNeedEmailResponse response;
+			Date currentDate = new Date();
+			if(MoreDateFunctions.timeDiffInHours(currentDate, lastRegularReport) >= reportFrequency)
+			{
+				currentDate = MoreDateFunctions.roundToHour(currentDate);
+				response = new CheckNeedEmailResponse(lastRegularReport, currentDate);
+				lastRegularReport = currentDate;
+			}
+			else
+			{
+				response = new CheckNeedEmailResponse();
+			}
+			return response;
 		}
-		else
+		finally
 		{
-			response = new CheckNeedEmailResponse();
+			reportLock.unlock();
 		}
-		return response;
 	}
 	
 	/**
 	 * Increments the number of PingSites that are unreachable, notes the time when the first one becomes unreachable.
 	 * @param emergencyStartTime     Time the site became unreachable
 	 */
-	public synchronized void incrementNumEmergencyReportSites(Date emergencyStartTime)
+	public void incrementNumEmergencyReportSites(Date emergencyStartTime)
 	{
-		numEmergencyReportSites++;
-		if(numEmergencyReportSites == 1)
+		reportLock.lock();
+		try
+		{
+			numEmergencyReportSites++;
+			if(numEmergencyReportSites == 1)
+			{
+				startEmergency = new Date(emergencyStartTime.getTime() - 5000); //Subtract 5 seconds to account for reporting discrepancies
+			}
+		}
+		finally
 		{
-			startEmergency = new Date(emergencyStartTime.getTime() - 5000); //Subtract 5 seconds to account for reporting discrepancies
+			reportLock.unlock();
 		}
 	}
 	
@@ -83,36 +107,61 @@ public class EmailReportHandler
 	 * Decrements the number of PingSites that are unreachable, sends the emergency report when all are reachable again.
 	 * @param emergencyEndTime     Time the site became reachable again
 	 */
-	public synchronized CheckNeedEmailResponse decrementNumEmergencyReportSites(Date emergencyEndTime)
+	public CheckNeedEmailResponse decrementNumEmergencyReportSites(Date emergencyEndTime)
 	{
-		CheckNeedEmailResponse response;
-		numEmergencyReportSites--;
-		if(numEmergencyReportSites == 0)
+		reportLock.lock();
+		try
 		{
-			response = new CheckNeedEmailResponse(startEmergency, new Date(emergencyEndTime.getTime() + 5000));
+			CheckNeedEmailResponse response;
+			numEmergencyReportSites--;
+			if(numEmergencyReportSites == 0)
+			{
+				response = new CheckNeedEmailResponse(startEmergency, new Date(emergencyEndTime.getTime() + 5000));
+			}
+			else
+			{
+				response = new CheckNeedEmailResponse();
+			}
+			return response;
 		}
-		else
+		finally
 		{
-			response = new CheckNeedEmailResponse();
+			reportLock.unlock();
 		}
-		return response;
 	}
 	
 	/**
-	 * Synchronizes sending of email.
-	 * @param message     Time all sites became reachable to end report at
+	 * Queues a report to be sent, never waits on the mail server.
+	 * @param isEmergency     true to send to the emergency list, false to send to the regular list
+	 * @param message         Body of the report
 	 */
-	public synchronized void sendReport(boolean isEmergency, String message)
+	public void sendReport(boolean isEmergency, String message)
 	{
 		if(isEmergency)
 		{
 			String subject = stationHeader + "ConnectionMonitor Site Unreachable Notification";
-			emailer.sendMessage(emergencyNotifyList, subject, message);
+			emailDispatcher.enqueue(emergencyNotifyList, subject, message);
 		}
 		else
 		{
 			String subject = stationHeader + "ConnectionMonitor Regular Report";
-			emailer.sendMessage(notifyList, subject, message);
+			emailDispatcher.enqueue(notifyList, subject, message);
+		}
+	}
+	
+	/**
+	 * Sends any queued reports and stops the EmailDispatcher, should not be called outside the main thread.
+	 */
+	public void close()
+	{
+		emailDispatcher.shutDown();
+		try
+		{
+			emailDispatcher.join();
+		}
+		catch(InterruptedException iE)
+		{
+			iE.printStackTrace();
 		}
 	}
 }
\ No newline at end of file
@@ -5,6 +5,7 @@ import java.util.Properties;
 import javax.mail.Message;
 import javax.mail.MessagingException;
 import javax.mail.PasswordAuthentication;
+import javax.mail.SendFailedException;
 import javax.mail.Session;
 import javax.mail.Transport;
 import javax.mail.internet.InternetAddress;
@@ -12,65 +13,137 @@ import javax.mail.internet.MimeMessage;
 
 /**
  * An object for sending out an email. Synchronization to this object should be handled
- * outside of it in multiple threads.
+ * outside of it in multiple threads, EmailDispatcher only uses it from its own thread.
+ * One connection to the mail server is kept open and reused for each message, so the handshake and login are only
+ * done again once it has been idle for IDLE_TIMEOUT_MS or a send on it fails.
  * @author Cory Ma
  */
 public class Emailer
 {
 	private final String username;
     private final String password;
+    private final String smtpHost;
+    private final int smtpPort;
     private Session session;
     
+    //Mail servers drop connections idle for longer than this, so they are reopened before they would be
+    private final long IDLE_TIMEOUT_MS = 60000;
+    private Transport transport;
+    private long lastSendTime = 0;
+    
     /**
      * Constructor
-     * @param emailAddress      Email address to send from, currently has to be a Gmail address
+     * @param emailAddress      Email address to send from, has to be a Gmail address unless another host is given
      * @param emailPassword     Password for email
+     * @param host              Host name of the SMTP server
+     * @param port              Port of the SMTP server
      */
-    public Emailer(String emailAddress, String emailPassword)
+    public Emailer(String emailAddress, String emailPassword, String host, int port)
     {
     	username = emailAddress;
     	password = emailPassword;
+    	smtpHost = host;
+    	smtpPort = port;
     	
     	initSession();
     }
     
     /**
-     * Sends an email.
+     * Sends an email over the open connection, opening a new one if there is none or it has been idle too long.
+     * If the send fails for a reason other than the message's addresses, it is tried once more on a new connection.
      * @param recepientList     List of email addresses to send message to
      * @param subject           Subject of email
      * @param body              Body of email
+     * @throws MessagingException
      */
-    public void sendMessage(String recepientList, String subject, String body)
+    public void sendMessage(String recepientList, String subject, String body) throws MessagingException
 	{
-		try
-        {
-            Message message = new MimeMessage(session);
-            message.setFrom(new InternetAddress(username));
-            message.setRecipients(Message.RecipientType.TO, InternetAddress.parse(recepientList));
-            message.setSubject(subject);
-            message.setText(body);
-
-            Transport.send(message);
+        Message message = new MimeMessage(session);
+        message.setFrom(new InternetAddress(username));
+        message.setRecipients(Message.RecipientType.TO, InternetAddress.parse(recepientList));
+        message.setSubject(subject);
+        message.setText(body);
 
-            System.out.println(subject + " Sent");
+        message.saveChanges();
+        try
+        {
+        	getTransport().sendMessage(message, message.getAllRecipients());
         }
-		catch(MessagingException e)
-		{
-            e.printStackTrace();
+        catch(MessagingException mE)
+        {
+        	//A connection that broke is also reported as a SendFailedException, so it is only a rejection of the
+        	//message's addresses if the server is still connected
+        	if(mE instanceof SendFailedException && transport != null && transport.isConnected())
+        	{
+        		throw mE;
+        	}
+        	closeTransport();
+        	getTransport().sendMessage(message, message.getAllRecipients());
         }
+        lastSendTime = System.currentTimeMillis();
+
+        System.out.println(subject + " Sent");
 	}
     
     /**
-     * Initializes the session to send emails with, currently configured for gmail addresses.
+     * Closes the connection to the mail server, if there is one.
+     */
+    public void close()
+    {
+    	closeTransport();
+    }
+    
+    /**
+     * Gets the open connection to the mail server, opening a new one if there is none or it has been idle too long.
+     * @return The connected Transport
+     * @throws MessagingException
+     */
+    private Transport getTransport() throws MessagingException
+    {
+    	if(transport != null && System.currentTimeMillis() - lastSendTime > IDLE_TIMEOUT_MS)
+    	{
+    		closeTransport();
+    	}
+    	if(transport == null)
+    	{
+    		Transport newTransport = session.getTransport("smtp");
+    		newTransport.connect(smtpHost, smtpPort, username, password);
+    		transport = newTransport;
+    		lastSendTime = System.currentTimeMillis();
+    	}
+    	return transport;
+    }
+    
+    /**
+     * Closes the connection to the mail server, ignoring errors since it is likely already broken.
+     */
+    private void closeTransport()
+    {
+    	if(transport != null)
+    	{
+    		try
+    		{
+    			transport.close();
+    		}
+    		catch(MessagingException mE)
+    		{
+    			//Connection is being discarded either way
+    		}
+    		transport = null;
+    	}
+    }
+    
+    /**
+     * Initializes the session to send emails with, using STARTTLS and login as Gmail requires.
      */
 	private void initSession()
 	{
 		Properties props = new Properties();
-		//Currently only set up for a gmail address
+		//Set up for Gmail by default, other servers are used through SmtpHost and SmtpPort
         props.put("mail.smtp.starttls.enable", "true");
         props.put("mail.smtp.auth", "true");
-        props.put("mail.smtp.host", "smtp.gmail.com");
-        props.put("mail.smtp.port", "587");
+        props.put("mail.smtp.host", smtpHost);
+        props.put("mail.smtp.port", Integer.toString(smtpPort));
 
         session = Session.getInstance(props,
         		new javax.mail.Authenticator()
@@ -0,0 +1,80 @@
+package org.connectionmonitor.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A threadsafe metric value that can go up and down, which also tracks the highest value it reached since the
+ * peak was last read so short bursts between reports aren't missed.
+ * @author Cory Ma
+ */
+public class Gauge
+{
+	private final AtomicLong value = new AtomicLong(0);
+	private final AtomicLong peak = new AtomicLong(0);
+	
+	/**
+	 * Adds to the value.
+	 * @param amount     Amount to add, may be negative
+	 */
+	public void add(long amount)
+	{
+		updatePeak(value.addAndGet(amount));
+	}
+	
+	/**
+	 * Adds one to the value.
+	 */
+	public void increment()
+	{
+		add(1);
+	}
+	
+	/**
+	 * Subtracts one from the value.
+	 */
+	public void decrement()
+	{
+		add(-1);
+	}
+	
+	/**
+	 * Sets the value.
+	 * @param newValue     Value to set
+	 */
+	public void set(long newValue)
+	{
+		value.set(newValue);
+		updatePeak(newValue);
+	}
+	
+	/**
+	 * Gets the current value.
+	 * @return The current value
+	 */
+	public long get()
+	{
+		return value.get();
+	}
+	
+	/**
+	 * Gets the highest value since the last call, then starts tracking again from the current value.
+	 * @return The peak value
+	 */
+	public long getAndResetPeak()
+	{
+		return peak.getAndSet(value.get());
+	}
+	
+	/**
+	 * Raises the peak if a value is higher than it.
+	 * @param newValue     Value to compare to the peak
+	 */
+	private void updatePeak(long newValue)
+	{
+		long currentPeak = peak.get();
+		while(newValue > currentPeak && !peak.compareAndSet(currentPeak, newValue))
+		{
+			currentPeak = peak.get();
+		}
+	}
+}
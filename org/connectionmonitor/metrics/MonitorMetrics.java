@@ -0,0 +1,52 @@
+package org.connectionmonitor.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Registry of the named Gauges used to watch ConnectionMonitor's internal load. Any class can look up a Gauge by
+ * name to update it, and the report lists every Gauge registered so far.
+ * @author Cory Ma
+ */
+public final class MonitorMetrics
+{
+	public final static String PROBES_IN_FLIGHT = "probes.inFlight";
+	public final static String PROBES_TIMED_OUT = "probes.timedOut";
+	
+	private final static ConcurrentSkipListMap<String, Gauge> GAUGES = new ConcurrentSkipListMap<>();
+	
+	/**
+	 * Gets the Gauge with a name, creating it if it doesn't exist yet.
+	 * @param name     Name of the Gauge
+	 * @return The Gauge with the name
+	 */
+	public static Gauge gauge(String name)
+	{
+		Gauge gauge = GAUGES.get(name);
+		if(gauge == null)
+		{
+			Gauge newGauge = new Gauge();
+			gauge = GAUGES.putIfAbsent(name, newGauge);
+			if(gauge == null)
+			{
+				gauge = newGauge;
+			}
+		}
+		return gauge;
+	}
+	
+	/**
+	 * Builds a report of every Gauge's current and peak values, resetting the peaks.
+	 * @return The report String, one Gauge per line
+	 */
+	public static String buildReport()
+	{
+		StringBuilder report = new StringBuilder();
+		for(Map.Entry<String, Gauge> entry : GAUGES.entrySet())
+		{
+			report.append(entry.getKey()).append(": ").append(entry.getValue().get())
+					.append(" (peak ").append(entry.getValue().getAndResetPeak()).append(")\n");
+		}
+		return report.toString();
+	}
+}
@@ -0,0 +1,15 @@
+package org.connectionmonitor.ping;
+
+/**
+ * Interface for Probers that can start a probe without waiting for its results.
+ * @author Cory Ma
+ */
+public interface AsyncProber extends Prober
+{
+	/**
+	 * Starts a probe on a site, the results are passed to the callback when it finishes.
+	 * @param pingSite          PingSite to probe
+	 * @param probeCallback     Callback to receive the results of the probe
+	 */
+	public void probeAsync(PingSite pingSite, ProbeCallback probeCallback);
+}
@@ -0,0 +1,193 @@
+package org.connectionmonitor.ping;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Prober that probes many sites with a single run of an external multi-target command such as fping, then
+ * splits the output back up into a PingResponse per site. The command is given every address at the end of its
+ * arguments and must print one line per target that starts with the address as given, containing "alive" and the
+ * latency as "(12.3 ms)" when the target replied, which is what fping -e prints. Targets missing from the output
+ * are counted as unreachable. Addresses are resolved through the DnsCache so the command is only given IP addresses.
+ * @author Cory Ma
+ */
+public class BatchPingProber implements Prober
+{
+	private final long DEADLINE_MARGIN_MS = 1000;
+	private final long PER_TARGET_DEADLINE_MS = 10; //fping sends to each target 10 ms apart by default
+	private volatile String probeCommand = "fping -e -r 0 -t 1000";
+	private final DnsCache dnsCache;
+	
+	/**
+	 * Constructor.
+	 * @param cache     DnsCache to get the addresses of sites from
+	 */
+	public BatchPingProber(DnsCache cache)
+	{
+		dnsCache = cache;
+	}
+	
+	/**
+	 * Sets the command used to probe, without the addresses.
+	 * @param command     Multi-target command to run
+	 */
+	public void setProbeCommand(String command)
+	{
+		probeCommand = command;
+	}
+	
+	/**
+	 * Probes a single site by running the command with only its address. Probing sites together through
+	 * probeBatch() should be preferred.
+	 * @param pingSite     PingSite to probe
+	 * @return The results of the probe
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	@Override
+	public PingResponse probe(PingSite pingSite) throws IOException, InterruptedException
+	{
+		return probeBatch(Collections.singletonList(pingSite)).get(pingSite);
+	}
+	
+	/**
+	 * Probes every site in a list with one run of the command. The command is destroyed if it runs past the longest
+	 * probe timeout of the sites plus time to send to every target, and sites without results are counted as timed out.
+	 * @param pingSites     List of PingSites to probe
+	 * @return The results of the probe for each site
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public HashMap<PingSite, PingResponse> probeBatch(List<PingSite> pingSites) throws IOException, InterruptedException
+	{
+		HashMap<String, PingResponse> targetResponses = new HashMap<>();
+		HashMap<PingSite, PingResponse> siteResponses = new HashMap<>();
+		HashMap<PingSite, String> siteTargets = new HashMap<>();
+		//Sites sharing an address are only probed once
+		LinkedHashMap<String, Boolean> targets = new LinkedHashMap<>();
+		long deadlineMs = 0;
+		boolean timedOut = false;
+		for(PingSite pingSite : pingSites)
+		{
+			deadlineMs = Math.max(deadlineMs, pingSite.getProbeTimeout());
+			try
+			{
+				String siteIP = dnsCache.resolveIP(pingSite);
+				siteTargets.put(pingSite, siteIP);
+				targets.put(siteIP, Boolean.TRUE);
+			}
+			catch(UnknownHostException uhEx)
+			{
+				//Unresolvable address is left out and counted as unreachable
+			}
+		}
+		
+		if(!targets.isEmpty())
+		{
+			ArrayList<String> command = new ArrayList<>();
+			Collections.addAll(command, probeCommand.trim().split("\\s+"));
+			command.addAll(targets.keySet());
+			ProcessBuilder processBuilder = new ProcessBuilder(command);
+			processBuilder.redirectErrorStream(true);
+			Process batchProcess = processBuilder.start();
+			deadlineMs += DEADLINE_MARGIN_MS + (PER_TARGET_DEADLINE_MS * targets.size());
+			ProcessDeadline processDeadline = new ProcessDeadline(batchProcess, deadlineMs);
+			
+			PingOutputParser outputParser = new PingOutputParser();
+			BufferedReader stdInput = new BufferedReader(new InputStreamReader(batchProcess.getInputStream()));
+			try
+			{
+				String processInput;
+				while((processInput = stdInput.readLine()) != null)
+				{
+					parseTargetLine(processInput, targets, outputParser, targetResponses);
+				}
+			}
+			finally
+			{
+				stdInput.close();
+			}
+			batchProcess.waitFor(); //Return value is not used since it's non-zero whenever any target is unreachable
+			processDeadline.cancel();
+			timedOut = processDeadline.hasExpired();
+		}
+		
+		for(PingSite pingSite : pingSites)
+		{
+			String siteIP = siteTargets.get(pingSite);
+			PingResponse pingResponse = targetResponses.get(siteIP);
+			if(pingResponse == null)
+			{
+				pingResponse = new PingResponse(false, siteIP == null ? "" : siteIP, -1, timedOut && siteIP != null);
+			}
+			siteResponses.put(pingSite, pingResponse);
+		}
+		
+		return siteResponses;
+	}
+	
+	/**
+	 * Nothing is held between probes so there is nothing to release.
+	 */
+	@Override
+	public void close()
+	{}
+	
+	/**
+	 * Parses a line of the command's output into a PingResponse for the target it starts with.
+	 * @param processInput        Output line from the command
+	 * @param targets             Addresses given to the command
+	 * @param outputParser        Parser used to find the IP address in the line
+	 * @param targetResponses     Map of address to PingResponse to add the results to
+	 */
+	private void parseTargetLine(String processInput, HashMap<String, Boolean> targets, PingOutputParser outputParser, 
+			HashMap<String, PingResponse> targetResponses)
+	{
+		String line = processInput.trim();
+		int targetEnd = line.indexOf(' ');
+		if(targetEnd > 0 && targets.containsKey(line.substring(0, targetEnd)))
+		{
+			String target = line.substring(0, targetEnd);
+			double pingLatency = -1;
+			boolean reachable = line.contains(" alive");
+			if(reachable)
+			{
+				pingLatency = parseLatency(line);
+			}
+			byte[] lineBytes = line.getBytes();
+			outputParser.parseLine(lineBytes, 0, lineBytes.length);
+			targetResponses.put(target, new PingResponse(reachable, outputParser.getIP(), pingLatency));
+		}
+	}
+	
+	/**
+	 * Parses the latency from a line of output, written as (12.3 ms).
+	 * @param line     Output line from the command
+	 * @return The latency if successful, otherwise -1
+	 */
+	private double parseLatency(String line)
+	{
+		double pingLatency = -1;
+		int latencyStart = line.indexOf('(');
+		int latencyEnd = line.indexOf(" ms)", latencyStart);
+		if(latencyStart != -1 && latencyEnd != -1)
+		{
+			try
+			{
+				pingLatency = Double.parseDouble(line.substring(latencyStart + 1, latencyEnd).trim());
+			}
+			catch(NumberFormatException nfEx)
+			{
+				nfEx.printStackTrace();
+			}
+		}
+		return pingLatency;
+	}
+}
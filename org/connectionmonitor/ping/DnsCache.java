@@ -0,0 +1,188 @@
+package org.connectionmonitor.ping;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.connectionmonitor.metrics.MonitorMetrics;
+
+/**
+ * Caches the resolved address of each PingSite so probes go straight to an IP address instead of resolving the
+ * site's host name every time, which would add resolver time to the measured latency. Entries older than the TTL are
+ * resolved again by a background thread, keeping the old address if the resolver fails. Time spent resolving is
+ * recorded in its own metrics so slow DNS can be told apart from slow network.
+ * @author Cory Ma
+ */
+public class DnsCache
+{
+	public final static String RESOLVE_MS = "dns.resolveMs";
+	public final static String RESOLVE_FAILURES = "dns.resolveFailures";
+	
+	private final long MIN_REFRESH_CHECK_MS = 1000;
+	
+	private final ConcurrentHashMap<String, CachedAddress> cachedAddresses = new ConcurrentHashMap<>();
+	private volatile long ttlMs = 300000;
+	private ScheduledExecutorService refresher;
+	private boolean isClosed = false;
+	
+	/**
+	 * Sets how long a resolved address is used before it is resolved again.
+	 * @param ttlSeconds     Seconds to cache addresses for, 0 to resolve on every probe
+	 */
+	public void setTTL(int ttlSeconds)
+	{
+		ttlMs = ttlSeconds * 1000L;
+	}
+	
+	/**
+	 * Gets the address to probe for a site, resolving it only if it isn't cached yet.
+	 * @param pingSite     PingSite to get the address of
+	 * @return The resolved address of the site
+	 * @throws UnknownHostException if the site's address has never been resolved successfully
+	 */
+	public InetAddress resolve(PingSite pingSite) throws UnknownHostException
+	{
+		InetAddress inetAddress;
+		if(ttlMs <= 0)
+		{
+			inetAddress = lookup(pingSite.getAddress()).inetAddress;
+		}
+		else
+		{
+			CachedAddress cachedAddress = cachedAddresses.get(pingSite.getName());
+			if(cachedAddress == null || !cachedAddress.hostName.equals(pingSite.getAddress()))
+			{
+				cachedAddress = lookup(pingSite.getAddress());
+				cachedAddresses.put(pingSite.getName(), cachedAddress);
+				ensureRefresher();
+			}
+			inetAddress = cachedAddress.inetAddress;
+		}
+		return inetAddress;
+	}
+	
+	/**
+	 * Gets the IP address to probe for a site as a String.
+	 * @param pingSite     PingSite to get the address of
+	 * @return The resolved IP address of the site
+	 * @throws UnknownHostException if the site's address has never been resolved successfully
+	 */
+	public String resolveIP(PingSite pingSite) throws UnknownHostException
+	{
+		return resolve(pingSite).getHostAddress();
+	}
+	
+	/**
+	 * Stops the background refresh thread.
+	 */
+	public synchronized void close()
+	{
+		isClosed = true;
+		if(refresher != null)
+		{
+			refresher.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Starts the background refresh thread on first use.
+	 */
+	private synchronized void ensureRefresher()
+	{
+		if(refresher == null && !isClosed)
+		{
+			refresher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+			{
+				@Override
+				public Thread newThread(Runnable runnable)
+				{
+					Thread thread = new Thread(runnable, "DnsCacheRefresher");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			long checkMs = Math.max(MIN_REFRESH_CHECK_MS, ttlMs / 4);
+			refresher.scheduleWithFixedDelay(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					refreshExpired();
+				}
+			}, checkMs, checkMs, TimeUnit.MILLISECONDS);
+		}
+	}
+	
+	/**
+	 * Resolves every cached address older than the TTL again. Addresses that fail to resolve are kept until they succeed.
+	 */
+	private void refreshExpired()
+	{
+		long now = System.currentTimeMillis();
+		for(Map.Entry<String, CachedAddress> entry : cachedAddresses.entrySet())
+		{
+			CachedAddress cachedAddress = entry.getValue();
+			if(now - cachedAddress.resolvedAt >= ttlMs)
+			{
+				try
+				{
+					cachedAddresses.replace(entry.getKey(), cachedAddress, lookup(cachedAddress.hostName));
+				}
+				catch(UnknownHostException uhEx)
+				{
+					System.out.println("Could not refresh address for " + entry.getKey() + ", keeping " + cachedAddress.inetAddress.getHostAddress());
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Resolves a host name, recording how long it took.
+	 * @param hostName     Host name or IP address to resolve
+	 * @return The resolved address
+	 * @throws UnknownHostException
+	 */
+	private CachedAddress lookup(String hostName) throws UnknownHostException
+	{
+		long startTime = System.nanoTime();
+		InetAddress inetAddress;
+		try
+		{
+			inetAddress = InetAddress.getByName(hostName);
+		}
+		catch(UnknownHostException uhEx)
+		{
+			MonitorMetrics.gauge(RESOLVE_FAILURES).increment();
+			throw uhEx;
+		}
+		MonitorMetrics.gauge(RESOLVE_MS).set(Math.round((double)(System.nanoTime() - startTime) / 1000000));
+		return new CachedAddress(hostName, inetAddress);
+	}
+	
+	/**
+	 * A resolved address along with when it was resolved.
+	 */
+	private static class CachedAddress
+	{
+		private final String hostName;
+		private final InetAddress inetAddress;
+		private final long resolvedAt;
+		
+		/**
+		 * Constructor.
+		 * @param name        Host name that was resolved
+		 * @param address     Resolved address
+		 */
+		public CachedAddress(String name, InetAddress address)
+		{
+			hostName = name;
+			inetAddress = address;
+			resolvedAt = System.currentTimeMillis();
+		}
+	}
+}
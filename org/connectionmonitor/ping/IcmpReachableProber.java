@@ -0,0 +1,70 @@
+package org.connectionmonitor.ping;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Prober that uses InetAddress.isReachable. This sends an ICMP echo request when the JVM has the
+ * privileges to do so, otherwise it falls back to a TCP connection attempt to the echo port.
+ * @author Cory Ma
+ */
+public class IcmpReachableProber implements Prober
+{
+	private final DnsCache dnsCache;
+	
+	/**
+	 * Constructor.
+	 * @param cache     DnsCache to get the addresses of sites from
+	 */
+	public IcmpReachableProber(DnsCache cache)
+	{
+		dnsCache = cache;
+	}
+	
+	/**
+	 * Checks whether the site is reachable, timing how long it took to answer.
+	 * @param pingSite     PingSite to probe
+	 * @return The results of the probe
+	 * @throws IOException
+	 */
+	@Override
+	public PingResponse probe(PingSite pingSite) throws IOException
+	{
+		String pingIP = "";
+		double pingLatency = -1;
+		boolean reachable = false;
+		boolean timedOut = false;
+		
+		try
+		{
+			InetAddress inetAddress = dnsCache.resolve(pingSite);
+			pingIP = inetAddress.getHostAddress();
+			
+			long startTime = System.nanoTime();
+			reachable = inetAddress.isReachable(pingSite.getProbeTimeout());
+			double elapsedMs = (double)(System.nanoTime() - startTime) / 1000000;
+			if(reachable)
+			{
+				pingLatency = elapsedMs;
+			}
+			else
+			{
+				timedOut = (elapsedMs >= pingSite.getProbeTimeout()); //No answer at all, rather than a refusal
+			}
+		}
+		catch(UnknownHostException uhEx)
+		{
+			//Unresolvable address is treated the same as an unreachable site
+		}
+		
+		return new PingResponse(reachable, pingIP, pingLatency, timedOut);
+	}
+	
+	/**
+	 * Nothing is held between probes so there is nothing to release.
+	 */
+	@Override
+	public void close()
+	{}
+}
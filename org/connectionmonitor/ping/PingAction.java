@@ -1,85 +1,82 @@
 package org.connectionmonitor.ping;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.sql.SQLException;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.EnumMap;
 
 /**
- * Class for executing the ping command and parsing its results.
+ * Class for probing a PingSite with the Prober selected for it in the config.
  * @author Cory Ma
  */
 public class PingAction
 {
+	private static final EnumMap<ProberType, Prober> PROBERS = new EnumMap<>(ProberType.class);
+	private static final DnsCache DNS_CACHE = new DnsCache();
+	private static final BatchPingProber BATCH_PROBER = new BatchPingProber(DNS_CACHE);
+	
+	static
+	{
+		PROBERS.put(ProberType.SYSTEM, new SystemPingProber(DNS_CACHE));
+		PROBERS.put(ProberType.TCP, new TcpConnectProber(DNS_CACHE));
+		PROBERS.put(ProberType.ICMP, new IcmpReachableProber(DNS_CACHE));
+		PROBERS.put(ProberType.STREAM, new StreamingPingProber(DNS_CACHE));
+		PROBERS.put(ProberType.ASYNC_TCP, new SelectorTcpProber(DNS_CACHE));
+		PROBERS.put(ProberType.BATCH, BATCH_PROBER);
+	}
+	
 	/**
-	 * Executes the ping command and parses the results.
-	 * @return true if the site was reachable
+	 * Probes a site with its Prober and returns the results.
+	 * @param pingSite     PingSite to probe
+	 * @return The results of the probe
 	 * @throws IOException
 	 * @throws InterruptedException
-	 * @throws SQLException
 	 */
-	public static PingResponse pingSite(String siteAddress) throws IOException, InterruptedException
+	public static PingResponse pingSite(PingSite pingSite) throws IOException, InterruptedException
 	{
-		String processInput = null;
-		String pingIP = "";
-		double pingLatency = -1;
-		String command = "ping -c 1 " + siteAddress;
-		
-        Process pingProcess = java.lang.Runtime.getRuntime().exec(command); //Forks process and executes command
-		BufferedReader stdInput = new BufferedReader(new InputStreamReader(pingProcess.getInputStream()));
-		int returnVal = pingProcess.waitFor(); //Waits for return from ping command
-		boolean reachable = (returnVal == 0);
-		while(((processInput = stdInput.readLine()) != null))
-		{
-			if(pingIP.isEmpty())
-			{
-				pingIP = parsePingIP(processInput);
-			}
-			if(reachable && pingLatency == -1)
-			{
-				pingLatency = parsePingLatency(processInput);
-			}
-	    }
-		return new PingResponse(reachable, pingIP, pingLatency);
+		return getProber(pingSite.getProberType()).probe(pingSite);
 	}
 	
 	/**
-	 * Parses the IP address from output line from the ping.
-	 * @param pingString     Output line from the ping
-	 * @return The IP address if successful, otherwise an empty String
+	 * Gets the Prober for a ProberType, the system ping command is used as a fallback.
+	 * @param proberType     Type of Prober to get
+	 * @return The Prober associated with the type
 	 */
-	private static String parsePingIP(String pingString)
+	public static Prober getProber(ProberType proberType)
 	{
-		String pingIP = "";
-		Pattern ipPattern = Pattern.compile(".*\\b(\\d{1,3}\\.\\d{1,3}\\.\\d{1,3}\\.\\d{1,3})\\b.*");
-		Matcher ipMatcher = ipPattern.matcher(pingString);
-		if(ipMatcher.find())
+		Prober prober = PROBERS.get(proberType);
+		if(prober == null)
 		{
-			pingIP = ipMatcher.group(1);
+			prober = PROBERS.get(ProberType.SYSTEM);
 		}
-		return pingIP;
+		return prober;
+	}
+	
+	/**
+	 * Gets the Prober that probes many sites with one command.
+	 * @return The BatchPingProber
+	 */
+	public static BatchPingProber getBatchProber()
+	{
+		return BATCH_PROBER;
+	}
+	
+	/**
+	 * Gets the DnsCache the Probers get the addresses of sites from.
+	 * @return The DnsCache
+	 */
+	public static DnsCache getDnsCache()
+	{
+		return DNS_CACHE;
 	}
 	
 	/**
-	 * Parses the latency from an output line from the ping.
-	 * @param pingString     Output line from the ping
-	 * @return The latency if successful, otherwise -1
+	 * Closes every Prober and the DnsCache, should not be called outside the main thread.
 	 */
-	private static double parsePingLatency(String pingString)
+	public static void closeProbers()
 	{
-		double pingLatency = -1;
-		Pattern latencyPattern = Pattern.compile(".*time=(\\d{1,6}.\\d{1,3}) ms");
-		Matcher latencyMatcher = latencyPattern.matcher(pingString);
-		String latencyString;
-		
-		if(latencyMatcher.find())
+		for(Prober prober : PROBERS.values())
 		{
-			latencyString = latencyMatcher.group(1);
-			pingLatency = Double.parseDouble(latencyString);
+			prober.close();
 		}
-		
-		return pingLatency;
+		DNS_CACHE.close();
 	}
 }
@@ -34,12 +34,15 @@ public class PingHandler
 	/**
 	 * Determines what actions need to be done based on results of a ping and returns the decision.
 	 * @param pingResponse       Results of the ping
+	 * @param isConfirmed        Whether the outage was already confirmed by a burst of failed confirmation probes, so
+	 *                           it is reported without waiting out outageEmergency seconds
 	 * @return NO_PROBLEMS by default
-	 * 	        SITE_UNREACHABLE if site is unreachable after outageEmergency seconds have passed with wasSiteUnreachable is set
+	 * 	        SITE_UNREACHABLE if site is unreachable after outageEmergency seconds have passed with wasSiteUnreachable is set,
+	 * 	        or as soon as the outage is confirmed
 	 * 	        SITE_REACHABLE_AGAIN if site is reachable after wasSiteUnreachable is set
 	 * 	        SITE_LATENCY_SLOW if site is reachable but latency is greater than bounds set in config
 	 */
-	public PingHandlerResponse handlePing(PingResponse pingResponse)
+	public PingHandlerResponse handlePing(PingResponse pingResponse, boolean isConfirmed)
 	{
 		PingHandlerResponse response = PingHandlerResponse.NO_PROBLEMS;
 		
@@ -66,7 +69,7 @@ public class PingHandler
 		{
 			if(wasSiteUnreachable)
 			{
-				if((MoreDateFunctions.timeDiffInSeconds(currentDate, outageStart) > outageEmergency) && !needEmergencyNotification)
+				if((isConfirmed || MoreDateFunctions.timeDiffInSeconds(currentDate, outageStart) > outageEmergency) && !needEmergencyNotification)
 				{
 					response = PingHandlerResponse.SITE_UNREACHABLE;
 					needEmergencyNotification = true;
@@ -82,6 +85,15 @@ public class PingHandler
 		return response;
 	}
 	
+	/**
+	 * Gets the time of the first unreachable ping of the current or most recent outage.
+	 * @return The start of the outage, null if there hasn't been one
+	 */
+	public Date getOutageStart()
+	{
+		return outageStart;
+	}
+	
 	/**
 	 * Resets flags set for emergency reporting.
 	 */
@@ -0,0 +1,360 @@
+package org.connectionmonitor.ping;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the output of the system's ping command line by line and pulls out the IP address, sequence number,
+ * ttl and latency. The bytes are scanned directly in a reused buffer without creating a String per line or
+ * using regular expressions, and the fields of the last line read are kept until the next one. Both the
+ * iputils (icmp_seq=) and busybox (seq=) reply formats are understood. Not threadsafe, each reader of output
+ * needs its own parser.
+ * @author Cory Ma
+ */
+public class PingOutputParser
+{
+	private final static byte[] SEQ_KEY = {'s', 'e', 'q', '='}; //Matches both icmp_seq= and seq=
+	private final static byte[] TTL_KEY = {'t', 't', 'l', '='};
+	private final static byte[] TIME_KEY = {'t', 'i', 'm', 'e', '='};
+	
+	private final int BUFFER_SIZE = 4096;
+	
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private InputStream inputStream;
+	private int bufferStart, bufferEnd;
+	
+	//Fields of the last line read, -1 when missing from the line
+	private int ipBits;
+	private boolean hasIP;
+	private int seq;
+	private int ttl;
+	private double latency;
+	
+	//The last IP address String created, kept so repeated replies from the same address don't create new ones
+	private int cachedIPBits;
+	private String cachedIP = null;
+	
+	/**
+	 * Sets the stream to read ping output from, discarding anything left from a previous stream.
+	 * @param processOutput     Output stream of the ping command
+	 */
+	public void reset(InputStream processOutput)
+	{
+		inputStream = processOutput;
+		bufferStart = 0;
+		bufferEnd = 0;
+		clearFields();
+	}
+	
+	/**
+	 * Reads and parses the next line of output. Lines too long for the buffer are skipped since ping never
+	 * prints anything that long that is of use.
+	 * @return true if a line was read, false if the end of the output was reached
+	 * @throws IOException
+	 */
+	public boolean nextLine() throws IOException
+	{
+		boolean lineRead = false;
+		boolean endOfOutput = false;
+		while(!lineRead && !endOfOutput)
+		{
+			int lineEnd = indexOf((byte)'\n', bufferStart, bufferEnd);
+			if(lineEnd != -1)
+			{
+				parseLine(buffer, bufferStart, lineEnd);
+				bufferStart = lineEnd + 1;
+				lineRead = true;
+			}
+			else
+			{
+				if(bufferStart > 0)
+				{
+					//Shift the partial line to the front to make room
+					System.arraycopy(buffer, bufferStart, buffer, 0, bufferEnd - bufferStart);
+					bufferEnd -= bufferStart;
+					bufferStart = 0;
+				}
+				else if(bufferEnd == buffer.length)
+				{
+					bufferEnd = 0; //Line too long, drop it
+				}
+				
+				int bytesRead = inputStream.read(buffer, bufferEnd, buffer.length - bufferEnd);
+				if(bytesRead == -1)
+				{
+					endOfOutput = true;
+					if(bufferEnd > bufferStart)
+					{
+						//Last line without a line break
+						parseLine(buffer, bufferStart, bufferEnd);
+						bufferStart = bufferEnd;
+						lineRead = true;
+					}
+				}
+				else
+				{
+					bufferEnd += bytesRead;
+				}
+			}
+		}
+		return lineRead;
+	}
+	
+	/**
+	 * Parses a single line of ping output held in a byte array.
+	 * @param line      Bytes holding the line
+	 * @param start     Index the line starts at
+	 * @param end       Index just past the end of the line
+	 */
+	public void parseLine(byte[] line, int start, int end)
+	{
+		clearFields();
+		parseIP(line, start, end);
+		
+		int valueStart = indexAfter(line, start, end, SEQ_KEY);
+		if(valueStart != -1)
+		{
+			seq = parseInt(line, valueStart, end);
+		}
+		valueStart = indexAfter(line, start, end, TTL_KEY);
+		if(valueStart != -1)
+		{
+			ttl = parseInt(line, valueStart, end);
+		}
+		valueStart = indexAfter(line, start, end, TIME_KEY);
+		if(valueStart != -1)
+		{
+			latency = parseDecimal(line, valueStart, end);
+		}
+	}
+	
+	/**
+	 * Gets whether the last line contained an IP address.
+	 * @return true if an IP address was found, false if not
+	 */
+	public boolean hasIP()
+	{
+		return hasIP;
+	}
+	
+	/**
+	 * Gets the IP address from the last line.
+	 * @return The IP address if one was found, otherwise an empty String
+	 */
+	public String getIP()
+	{
+		String pingIP = "";
+		if(hasIP)
+		{
+			if(cachedIP == null || cachedIPBits != ipBits)
+			{
+				cachedIPBits = ipBits;
+				cachedIP = (ipBits >>> 24) + "." + ((ipBits >>> 16) & 0xFF) + "." + ((ipBits >>> 8) & 0xFF) + "." + (ipBits & 0xFF);
+			}
+			pingIP = cachedIP;
+		}
+		return pingIP;
+	}
+	
+	/**
+	 * Gets the reply sequence number from the last line.
+	 * @return The sequence number if one was found, otherwise -1
+	 */
+	public int getSeq()
+	{
+		return seq;
+	}
+	
+	/**
+	 * Gets the ttl from the last line.
+	 * @return The ttl if one was found, otherwise -1
+	 */
+	public int getTTL()
+	{
+		return ttl;
+	}
+	
+	/**
+	 * Gets the latency from the last line.
+	 * @return The latency in milliseconds if one was found, otherwise -1
+	 */
+	public double getLatency()
+	{
+		return latency;
+	}
+	
+	/**
+	 * Resets the fields of the last line to missing.
+	 */
+	private void clearFields()
+	{
+		hasIP = false;
+		seq = -1;
+		ttl = -1;
+		latency = -1;
+	}
+	
+	/**
+	 * Finds the first dotted quad IP address in a line that stands on its own, not as part of a longer word.
+	 * @param line      Bytes holding the line
+	 * @param start     Index the line starts at
+	 * @param end       Index just past the end of the line
+	 */
+	private void parseIP(byte[] line, int start, int end)
+	{
+		for(int index = start; index < end && !hasIP; index++)
+		{
+			if(isDigit(line[index]) && (index == start || !isWordByte(line[index - 1])))
+			{
+				int bits = 0;
+				int position = index;
+				int octetCount = 0;
+				boolean valid = true;
+				while(valid && octetCount < 4)
+				{
+					int octet = 0;
+					int digitCount = 0;
+					while(position < end && isDigit(line[position]) && digitCount < 4)
+					{
+						octet = (octet * 10) + (line[position] - '0');
+						digitCount++;
+						position++;
+					}
+					valid = (digitCount >= 1 && digitCount <= 3 && octet <= 255);
+					if(valid)
+					{
+						bits = (bits << 8) | octet;
+						octetCount++;
+						if(octetCount < 4)
+						{
+							valid = (position < end && line[position] == '.');
+							position++;
+						}
+					}
+				}
+				if(valid && (position == end || !isWordByte(line[position])))
+				{
+					hasIP = true;
+					ipBits = bits;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Finds a key in a line.
+	 * @param line      Bytes holding the line
+	 * @param start     Index the line starts at
+	 * @param end       Index just past the end of the line
+	 * @param key       Bytes of the key
+	 * @return The index just past the key, -1 if not found
+	 */
+	private static int indexAfter(byte[] line, int start, int end, byte[] key)
+	{
+		int foundIndex = -1;
+		for(int index = start; index <= end - key.length && foundIndex == -1; index++)
+		{
+			int matched = 0;
+			while(matched < key.length && line[index + matched] == key[matched])
+			{
+				matched++;
+			}
+			if(matched == key.length)
+			{
+				foundIndex = index + key.length;
+			}
+		}
+		return foundIndex;
+	}
+	
+	/**
+	 * Parses a non-negative integer at a position.
+	 * @param line     Bytes holding the line
+	 * @param start    Index the integer starts at
+	 * @param end      Index just past the end of the line
+	 * @return The integer, -1 if there are no digits at the position
+	 */
+	private static int parseInt(byte[] line, int start, int end)
+	{
+		int value = -1;
+		for(int index = start; index < end && isDigit(line[index]); index++)
+		{
+			value = (value == -1 ? 0 : value * 10) + (line[index] - '0');
+		}
+		return value;
+	}
+	
+	/**
+	 * Parses a non-negative decimal number such as 12 or 0.045 at a position.
+	 * @param line     Bytes holding the line
+	 * @param start    Index the number starts at
+	 * @param end      Index just past the end of the line
+	 * @return The number, -1 if there are no digits at the position
+	 */
+	private static double parseDecimal(byte[] line, int start, int end)
+	{
+		long digits = 0;
+		long divisor = 1;
+		boolean hasDigits = false;
+		boolean inFraction = false;
+		int index = start;
+		while(index < end && (isDigit(line[index]) || (line[index] == '.' && !inFraction)))
+		{
+			if(line[index] == '.')
+			{
+				inFraction = true;
+			}
+			else
+			{
+				digits = (digits * 10) + (line[index] - '0');
+				hasDigits = true;
+				if(inFraction)
+				{
+					divisor *= 10;
+				}
+			}
+			index++;
+		}
+		return hasDigits ? (double)digits / divisor : -1;
+	}
+	
+	/**
+	 * Finds a byte in a range of the buffer.
+	 * @param target     Byte to find
+	 * @param start      Index to start at
+	 * @param end        Index to stop before
+	 * @return The index of the byte, -1 if not found
+	 */
+	private int indexOf(byte target, int start, int end)
+	{
+		int foundIndex = -1;
+		for(int index = start; index < end && foundIndex == -1; index++)
+		{
+			if(buffer[index] == target)
+			{
+				foundIndex = index;
+			}
+		}
+		return foundIndex;
+	}
+	
+	/**
+	 * Checks whether a byte is an ASCII digit.
+	 * @param value     Byte to check
+	 * @return true if the byte is a digit
+	 */
+	private static boolean isDigit(byte value)
+	{
+		return (value >= '0' && value <= '9');
+	}
+	
+	/**
+	 * Checks whether a byte is part of a word, the same as \w in a regular expression.
+	 * @param value     Byte to check
+	 * @return true if the byte is a letter, digit or underscore
+	 */
+	private static boolean isWordByte(byte value)
+	{
+		return isDigit(value) || (value >= 'a' && value <= 'z') || (value >= 'A' && value <= 'Z') || value == '_';
+	}
+}
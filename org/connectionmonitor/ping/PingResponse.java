@@ -12,6 +12,7 @@ public class PingResponse
 	private final String ip;
 	private final double latency;
 	private final Date pingTime;
+	private final boolean timedOut;
 	
 	/**
 	 * Constructor.
@@ -21,10 +22,36 @@ public class PingResponse
 	 */
 	public PingResponse(boolean isReachable, String ipAddress, double pingLatency)
 	{
-		reachable = isReachable;
+		this(isReachable, ipAddress, pingLatency, false);
+	}
+	
+	/**
+	 * Constructor.
+	 * @param isReachable     If the ping reached its destination
+	 * @param ipAddress       IP address of the ping
+	 * @param pingLatency     Latency of the ping
+	 * @param isTimedOut      If the ping was cut off at the site's probe timeout, such pings are never reachable
+	 */
+	public PingResponse(boolean isReachable, String ipAddress, double pingLatency, boolean isTimedOut)
+	{
+		this(isReachable, ipAddress, pingLatency, isTimedOut, new Date());
+	}
+	
+	/**
+	 * Constructor, for pings whose result is only known some time after they were sent.
+	 * @param isReachable     If the ping reached its destination
+	 * @param ipAddress       IP address of the ping
+	 * @param pingLatency     Latency of the ping
+	 * @param isTimedOut      If the ping was cut off at the site's probe timeout, such pings are never reachable
+	 * @param time            Time of the ping
+	 */
+	public PingResponse(boolean isReachable, String ipAddress, double pingLatency, boolean isTimedOut, Date time)
+	{
+		reachable = isReachable && !isTimedOut;
 		ip = ipAddress;
 		latency = pingLatency;
-		pingTime = new Date();
+		pingTime = time;
+		timedOut = isTimedOut;
 	}
 	
 	/**
@@ -36,6 +63,15 @@ public class PingResponse
 		return reachable;
 	}
 	
+	/**
+	 * Gets whether the ping was cut off at the site's probe timeout instead of getting an answer.
+	 * @return true if the ping timed out, false if not
+	 */
+	public boolean getTimedOut()
+	{
+		return timedOut;
+	}
+	
 	/**
 	 * Gets the IP address of the ping.
 	 * @return The IP address of the ping
@@ -9,9 +9,13 @@ public class PingSite
 	private final String NAME, ADDRESS;
 	private double avgLatency, latencyStdDeviation;
 	private int deviationTolerance;
+	private ProberType proberType;
+	private int probePort;
+	private double probeInterval;
+	private int probeTimeout;
 	
 	/**
-	 * Constructor.
+	 * Constructor. The site is probed once a second with the system's ping command until set otherwise.
 	 * @param siteName                    Name of the site
 	 * @param siteAddress                 Address of the site
 	 * @param siteAvgLatency              Average latency for pings of the site
@@ -25,8 +29,12 @@ public class PingSite
 		avgLatency = siteAvgLatency;
 		latencyStdDeviation = siteLatencyStdDeviation;
 		deviationTolerance = siteDeviationTolerance;
+		proberType = ProberType.SYSTEM;
+		probePort = 80;
+		probeInterval = 1;
+		probeTimeout = 2000;
 	}
-
+	
 	/**
 	 * Gets the NAME of the site.
 	 * @return The name of the site
@@ -72,6 +80,42 @@ public class PingSite
 		return deviationTolerance;
 	}
 
+	/**
+	 * Gets the type of Prober used to probe the site.
+	 * @return The ProberType of the site
+	 */
+	public ProberType getProberType()
+	{
+		return proberType;
+	}
+
+	/**
+	 * Gets the port used by Probers that connect to the site.
+	 * @return The probe port of the site
+	 */
+	public int getProbePort()
+	{
+		return probePort;
+	}
+
+	/**
+	 * Gets the number of seconds between probes for Probers that pace themselves.
+	 * @return The probe interval of the site
+	 */
+	public double getProbeInterval()
+	{
+		return probeInterval;
+	}
+
+	/**
+	 * Gets the number of milliseconds a probe of the site may take before it is cut off and counted as timed out.
+	 * @return The probe timeout of the site
+	 */
+	public int getProbeTimeout()
+	{
+		return probeTimeout;
+	}
+
 	/**
 	 * Sets the average latency of the site.
 	 * @param siteAvgLatency     Average latency for pings of the site
@@ -99,6 +143,42 @@ public class PingSite
 		deviationTolerance = siteDeviationTolerance;
 	}
 	
+	/**
+	 * Sets the type of Prober used to probe the site.
+	 * @param siteProberType     Type of Prober used to probe the site
+	 */
+	public void setProberType(ProberType siteProberType)
+	{
+		proberType = siteProberType;
+	}
+
+	/**
+	 * Sets the port used by Probers that connect to the site.
+	 * @param siteProbePort     Port used by Probers that connect to the site
+	 */
+	public void setProbePort(int siteProbePort)
+	{
+		probePort = siteProbePort;
+	}
+
+	/**
+	 * Sets the number of seconds between probes for Probers that pace themselves.
+	 * @param siteProbeInterval     Number of seconds between probes
+	 */
+	public void setProbeInterval(double siteProbeInterval)
+	{
+		probeInterval = siteProbeInterval;
+	}
+	
+	/**
+	 * Sets the number of milliseconds a probe of the site may take before it is cut off and counted as timed out.
+	 * @param siteProbeTimeout     Number of milliseconds before a probe times out
+	 */
+	public void setProbeTimeout(int siteProbeTimeout)
+	{
+		probeTimeout = siteProbeTimeout;
+	}
+	
 	/**
 	 * Overridden toString() method. Displays PingSite info.
 	 */
@@ -109,6 +189,7 @@ public class PingSite
 				"\n  Address: " + getAddress() + 
 				"\n  Average Latency: " + getAvgLatency() + 
 				"\n  Standard Deviation: " + getLatencyStdDeviation() + 
-				"\n  Deviation Tolerance: " + getDeviationTolerance();
+				"\n  Deviation Tolerance: " + getDeviationTolerance() + 
+				"\n  Prober: " + getProberType().getConfigName();
 	}
 }
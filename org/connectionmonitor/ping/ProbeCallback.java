@@ -0,0 +1,15 @@
+package org.connectionmonitor.ping;
+
+/**
+ * Interface for receiving the results of a probe started with an AsyncProber.
+ * @author Cory Ma
+ */
+public interface ProbeCallback
+{
+	/**
+	 * Called once with the results of the probe. This runs on the AsyncProber's own thread, so it
+	 * should hand off any slow work instead of doing it inline.
+	 * @param pingResponse     The results of the probe
+	 */
+	public void probeComplete(PingResponse pingResponse);
+}
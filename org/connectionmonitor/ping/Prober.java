@@ -0,0 +1,25 @@
+package org.connectionmonitor.ping;
+
+import java.io.IOException;
+
+/**
+ * Interface for the different ways a PingSite can be probed. Every implementation produces the same
+ * PingResponse so that results can be handled the same way regardless of how the probe was done.
+ * @author Cory Ma
+ */
+public interface Prober
+{
+	/**
+	 * Performs a single probe on a site.
+	 * @param pingSite     PingSite to probe
+	 * @return The results of the probe
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public PingResponse probe(PingSite pingSite) throws IOException, InterruptedException;
+	
+	/**
+	 * Releases any resources held by the Prober, should not be called outside the main thread.
+	 */
+	public void close();
+}
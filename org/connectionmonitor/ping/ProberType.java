@@ -0,0 +1,66 @@
+package org.connectionmonitor.ping;
+
+/**
+ * Enumeration of the Prober implementations that can be selected for a PingSite.
+ * @author Cory Ma
+ */
+public enum ProberType
+{
+	SYSTEM("system", false),
+	TCP("tcp", false),
+	ICMP("icmp", false),
+	STREAM("stream", true),
+	ASYNC_TCP("asynctcp", false),
+	BATCH("batch", false);
+	
+	private final String CONFIG_NAME;
+	private final boolean SELF_PACED;
+	
+	/**
+	 * Constructor.
+	 * @param configName     Name used to select the type in the config file
+	 * @param selfPaced      Whether the Prober waits for the site's probe interval on its own
+	 */
+	private ProberType(String configName, boolean selfPaced)
+	{
+		CONFIG_NAME = configName;
+		SELF_PACED = selfPaced;
+	}
+	
+	/**
+	 * Gets the name used to select the type in the config file.
+	 * @return The config name of the type
+	 */
+	public String getConfigName()
+	{
+		return CONFIG_NAME;
+	}
+	
+	/**
+	 * Gets whether the Prober waits for the site's probe interval on its own, in which case callers
+	 * should not add a delay between probes.
+	 * @return true if the Prober paces itself, false if not
+	 */
+	public boolean isSelfPaced()
+	{
+		return SELF_PACED;
+	}
+	
+	/**
+	 * Finds the ProberType associated with a name from the config file.
+	 * @param configName     Name from the config file
+	 * @return The matching ProberType, SYSTEM if the name is empty or unrecognized
+	 */
+	public static ProberType fromConfigName(String configName)
+	{
+		ProberType proberType = SYSTEM;
+		for(ProberType type : values())
+		{
+			if(type.getConfigName().equalsIgnoreCase(configName))
+			{
+				proberType = type;
+			}
+		}
+		return proberType;
+	}
+}
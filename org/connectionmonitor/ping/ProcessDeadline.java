@@ -0,0 +1,69 @@
+package org.connectionmonitor.ping;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A deadline for a probe's child process. If the process hasn't finished by the deadline it is destroyed, so a probe
+ * to a blackholed destination or a stuck resolver can't hold up its caller for longer than the site's probe timeout.
+ * All deadlines share one background thread.
+ * @author Cory Ma
+ */
+public class ProcessDeadline implements Runnable
+{
+	private final static ScheduledExecutorService REAPER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+	{
+		@Override
+		public Thread newThread(Runnable runnable)
+		{
+			Thread thread = new Thread(runnable, "ProcessDeadlineReaper");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	
+	private final Process process;
+	private final ScheduledFuture<?> deadlineFuture;
+	private volatile boolean hasExpired = false;
+	
+	/**
+	 * Constructor. Starts the deadline.
+	 * @param childProcess     Process to destroy when the deadline passes
+	 * @param timeoutMs        Milliseconds until the deadline
+	 */
+	public ProcessDeadline(Process childProcess, long timeoutMs)
+	{
+		process = childProcess;
+		deadlineFuture = REAPER.schedule(this, timeoutMs, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Runs at the deadline, destroying the process.
+	 */
+	@Override
+	public void run()
+	{
+		hasExpired = true;
+		process.destroy();
+	}
+	
+	/**
+	 * Cancels the deadline once the process has finished.
+	 */
+	public void cancel()
+	{
+		deadlineFuture.cancel(false);
+	}
+	
+	/**
+	 * Gets whether the deadline passed and the process was destroyed.
+	 * @return true if the process was destroyed, false if not
+	 */
+	public boolean hasExpired()
+	{
+		return hasExpired;
+	}
+}
@@ -0,0 +1,356 @@
+package org.connectionmonitor.ping;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.my.libraries.IOUtilities;
+
+/**
+ * Prober that times TCP connects to any number of sites from a single thread, multiplexing every pending
+ * connect on one Selector. Connects that don't finish by their deadline are closed and reported as unreachable.
+ * As with TcpConnectProber, a refused connection still counts as reachable.
+ * @author Cory Ma
+ */
+public class SelectorTcpProber implements AsyncProber
+{
+	private final long AWAIT_MARGIN_MS = 1000;
+	
+	private final DnsCache dnsCache;
+	private final ConcurrentLinkedQueue<PendingProbe> newProbes = new ConcurrentLinkedQueue<>();
+	private final PriorityQueue<PendingProbe> deadlines = new PriorityQueue<>(); //Only used by the selector thread
+	private Selector selector;
+	private Thread selectorThread;
+	private volatile boolean isClosed = false;
+	
+	/**
+	 * Constructor.
+	 * @param cache     DnsCache to get the addresses of sites from
+	 */
+	public SelectorTcpProber(DnsCache cache)
+	{
+		dnsCache = cache;
+	}
+	
+	/**
+	 * Starts a probe and waits for its results, at most the probe timeout plus AWAIT_MARGIN_MS so a caller is never
+	 * left waiting on a selector thread that has stopped.
+	 * @param pingSite     PingSite to probe
+	 * @return The results of the probe
+	 * @throws InterruptedException
+	 */
+	@Override
+	public PingResponse probe(PingSite pingSite) throws InterruptedException
+	{
+		final CountDownLatch probeLatch = new CountDownLatch(1);
+		final PingResponse[] result = new PingResponse[1];
+		probeAsync(pingSite, new ProbeCallback()
+		{
+			@Override
+			public void probeComplete(PingResponse pingResponse)
+			{
+				result[0] = pingResponse;
+				probeLatch.countDown();
+			}
+		});
+		PingResponse pingResponse;
+		if(probeLatch.await(pingSite.getProbeTimeout() + AWAIT_MARGIN_MS, TimeUnit.MILLISECONDS))
+		{
+			pingResponse = result[0];
+		}
+		else
+		{
+			pingResponse = new PingResponse(false, "", -1, true);
+		}
+		return pingResponse;
+	}
+	
+	/**
+	 * Gets the site's address and hands the connect off to the selector thread.
+	 * @param pingSite          PingSite to probe
+	 * @param probeCallback     Callback to receive the results of the probe
+	 */
+	@Override
+	public void probeAsync(PingSite pingSite, ProbeCallback probeCallback)
+	{
+		try
+		{
+			InetAddress inetAddress = dnsCache.resolve(pingSite);
+			submit(new PendingProbe(new InetSocketAddress(inetAddress, pingSite.getProbePort()), pingSite.getProbeTimeout(),
+					probeCallback));
+		}
+		catch(UnknownHostException uhEx)
+		{
+			//Unresolvable address is treated the same as an unreachable site
+			probeCallback.probeComplete(new PingResponse(false, "", -1));
+		}
+		catch(IOException ioEx)
+		{
+			ioEx.printStackTrace();
+			probeCallback.probeComplete(new PingResponse(false, "", -1));
+		}
+	}
+	
+	/**
+	 * Stops the selector thread, pending probes are reported as unreachable.
+	 */
+	@Override
+	public void close()
+	{
+		Thread thread;
+		synchronized(this)
+		{
+			isClosed = true;
+			thread = selectorThread;
+		}
+		if(thread != null)
+		{
+			selector.wakeup();
+			try
+			{
+				thread.join();
+			}
+			catch(InterruptedException iE)
+			{
+				iE.printStackTrace();
+			}
+		}
+	}
+	
+	/**
+	 * Queues a probe for the selector thread, opening the Selector and starting its thread on first use.
+	 * @param pendingProbe     Probe to queue
+	 * @throws IOException
+	 */
+	private synchronized void submit(PendingProbe pendingProbe) throws IOException
+	{
+		if(isClosed)
+		{
+			throw new IOException("SelectorTcpProber is closed");
+		}
+		if(selectorThread == null)
+		{
+			selector = Selector.open();
+			selectorThread = new Thread(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					runSelector();
+				}
+			}, "SelectorTcpProber");
+			selectorThread.setDaemon(true);
+			selectorThread.start();
+		}
+		newProbes.add(pendingProbe);
+		selector.wakeup();
+	}
+	
+	/**
+	 * Selector thread loop. Starts newly submitted connects, finishes the ones that are ready and expires the
+	 * ones past their deadline, sleeping in select() until the earliest deadline in between. Exceptions are caught
+	 * on each pass so the thread keeps running, since every pending and future probe depends on it.
+	 */
+	private void runSelector()
+	{
+		while(!isClosed)
+		{
+			try
+			{
+				startNewProbes();
+				selector.select(getSelectTimeout());
+				Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+				while(selectedKeys.hasNext())
+				{
+					SelectionKey selectionKey = selectedKeys.next();
+					selectedKeys.remove();
+					PendingProbe pendingProbe = (PendingProbe)selectionKey.attachment();
+					pendingProbe.complete(finishConnect(pendingProbe.socketChannel));
+				}
+				expireProbes(System.nanoTime());
+			}
+			catch(IOException ioEx)
+			{
+				ioEx.printStackTrace();
+			}
+			catch(RuntimeException rE)
+			{
+				rE.printStackTrace();
+			}
+		}
+		
+		//Fail anything still waiting so no caller is left blocked, nothing new can be submitted once closed
+		synchronized(this)
+		{
+			startNewProbes();
+		}
+		expireProbes(Long.MAX_VALUE);
+		IOUtilities.closeCloseable(selector);
+	}
+	
+	/**
+	 * Opens a channel and starts the connect for every probe submitted since the last pass.
+	 */
+	private void startNewProbes()
+	{
+		PendingProbe pendingProbe;
+		while((pendingProbe = newProbes.poll()) != null)
+		{
+			try
+			{
+				SocketChannel socketChannel = SocketChannel.open();
+				pendingProbe.socketChannel = socketChannel;
+				socketChannel.configureBlocking(false);
+				pendingProbe.startTime = System.nanoTime();
+				pendingProbe.deadline = pendingProbe.startTime + (pendingProbe.timeoutMs * 1000000L);
+				if(socketChannel.connect(pendingProbe.socketAddress))
+				{
+					pendingProbe.complete(true);
+				}
+				else
+				{
+					socketChannel.register(selector, SelectionKey.OP_CONNECT, pendingProbe);
+					deadlines.add(pendingProbe);
+				}
+			}
+			catch(IOException ioEx)
+			{
+				pendingProbe.complete(TcpConnectProber.isConnectionRefused(ioEx));
+			}
+		}
+	}
+	
+	/**
+	 * Reports every unfinished probe whose deadline has passed as timed out. Probes that already finished
+	 * are dropped from the deadline heap as they reach the top of it.
+	 * @param now     Current System.nanoTime(), Long.MAX_VALUE to fail everything when closing
+	 */
+	private void expireProbes(long now)
+	{
+		PendingProbe pendingProbe;
+		while((pendingProbe = deadlines.peek()) != null && (pendingProbe.isDone || pendingProbe.deadline - now <= 0))
+		{
+			deadlines.poll();
+			if(!pendingProbe.isDone)
+			{
+				pendingProbe.complete(false, now != Long.MAX_VALUE);
+			}
+		}
+	}
+	
+	/**
+	 * Gets how long select() may sleep before the earliest pending deadline.
+	 * @return The select timeout in milliseconds, 0 to wait until woken if nothing is pending
+	 */
+	private long getSelectTimeout()
+	{
+		long selectTimeout = 0;
+		PendingProbe pendingProbe = deadlines.peek();
+		if(pendingProbe != null)
+		{
+			selectTimeout = Math.max(1, (pendingProbe.deadline - System.nanoTime()) / 1000000);
+		}
+		return selectTimeout;
+	}
+	
+	/**
+	 * Finishes connecting a SocketChannel that was selected for OP_CONNECT.
+	 * @param socketChannel     Channel to finish connecting
+	 * @return true if the destination answered, false if not
+	 */
+	private boolean finishConnect(SocketChannel socketChannel)
+	{
+		boolean answered;
+		try
+		{
+			answered = socketChannel.finishConnect();
+		}
+		catch(IOException ioEx)
+		{
+			answered = TcpConnectProber.isConnectionRefused(ioEx);
+		}
+		return answered;
+	}
+	
+	/**
+	 * A connect that has been submitted but not yet reported, ordered by deadline. Only touched by the selector
+	 * thread once submitted.
+	 */
+	private static class PendingProbe implements Comparable<PendingProbe>
+	{
+		private final InetSocketAddress socketAddress;
+		private final long timeoutMs;
+		private final ProbeCallback probeCallback;
+		private SocketChannel socketChannel;
+		private long startTime;
+		private long deadline;
+		private boolean isDone = false;
+		
+		/**
+		 * Constructor.
+		 * @param address      Address to connect to
+		 * @param timeout      Milliseconds the connect may take before it times out
+		 * @param callback     Callback to receive the results of the probe
+		 */
+		public PendingProbe(InetSocketAddress address, long timeout, ProbeCallback callback)
+		{
+			socketAddress = address;
+			timeoutMs = timeout;
+			probeCallback = callback;
+		}
+		
+		/**
+		 * Closes the channel and reports the results of the probe.
+		 * @param reachable     Whether the destination answered
+		 */
+		public void complete(boolean reachable)
+		{
+			complete(reachable, false);
+		}
+		
+		/**
+		 * Closes the channel and reports the results of the probe.
+		 * @param reachable     Whether the destination answered
+		 * @param timedOut      Whether the probe was cut off at its deadline
+		 */
+		public void complete(boolean reachable, boolean timedOut)
+		{
+			double pingLatency = reachable ? (double)(System.nanoTime() - startTime) / 1000000 : -1;
+			isDone = true;
+			if(socketChannel != null)
+			{
+				IOUtilities.closeCloseable(socketChannel);
+			}
+			try
+			{
+				probeCallback.probeComplete(new PingResponse(reachable, socketAddress.getAddress().getHostAddress(), pingLatency,
+					timedOut));
+			}
+			catch(RuntimeException rE)
+			{
+				//A failing callback must not stop the selector thread it is called from
+				rE.printStackTrace();
+			}
+		}
+		
+		/**
+		 * Orders probes by deadline, earliest first.
+		 * @param other     PendingProbe to compare to
+		 * @return A negative number, zero, or a positive number if this deadline is earlier, the same, or later
+		 */
+		@Override
+		public int compareTo(PendingProbe other)
+		{
+			return Long.signum(deadline - other.deadline);
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package org.connectionmonitor.ping;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Prober that keeps one long running system ping command per site and hands out its replies as they
+ * are parsed, instead of starting a new process for every probe. Each probe waits for the next reply,
+ * so the site's probe interval sets the pace.
+ * @author Cory Ma
+ */
+public class StreamingPingProber implements Prober
+{
+	private final ConcurrentHashMap<String, StreamingPingProcess> pingProcesses = new ConcurrentHashMap<>();
+	private volatile boolean isClosed = false;
+	private final DnsCache dnsCache;
+	
+	/**
+	 * Constructor.
+	 * @param cache     DnsCache to get the addresses of sites from
+	 */
+	public StreamingPingProber(DnsCache cache)
+	{
+		dnsCache = cache;
+	}
+	
+	/**
+	 * Waits for the next result from the site's ping process, starting the process if it isn't running yet.
+	 * @param pingSite     PingSite to probe
+	 * @return The results of the next ping
+	 * @throws InterruptedException
+	 */
+	@Override
+	public PingResponse probe(PingSite pingSite) throws InterruptedException
+	{
+		return getPingProcess(pingSite).nextResponse();
+	}
+	
+	/**
+	 * Stops every ping process.
+	 */
+	@Override
+	public void close()
+	{
+		isClosed = true;
+		for(StreamingPingProcess pingProcess : pingProcesses.values())
+		{
+			pingProcess.close();
+		}
+		pingProcesses.clear();
+	}
+	
+	/**
+	 * Gets the ping process for a site, starting one if it doesn't exist.
+	 * @param pingSite     PingSite to get the process for
+	 * @return The ping process for the site
+	 */
+	private StreamingPingProcess getPingProcess(PingSite pingSite)
+	{
+		StreamingPingProcess pingProcess = pingProcesses.get(pingSite.getName());
+		if(pingProcess == null && !isClosed)
+		{
+			StreamingPingProcess newPingProcess = new StreamingPingProcess(pingSite, dnsCache);
+			pingProcess = pingProcesses.putIfAbsent(pingSite.getName(), newPingProcess);
+			if(pingProcess == null)
+			{
+				pingProcess = newPingProcess;
+				pingProcess.start();
+			}
+		}
+		if(pingProcess == null)
+		{
+			throw new IllegalStateException("StreamingPingProber is closed");
+		}
+		return pingProcess;
+	}
+}
@@ -0,0 +1,297 @@
+package org.connectionmonitor.ping;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.my.libraries.IOUtilities;
+
+/**
+ * A persistent system ping command for a single site. A supervising thread parses each line of output into
+ * a PingResponse as it arrives and restarts the command whenever it dies. Since a ping command that gets no reply
+ * doesn't print anything, the oldest ping that is neither answered nor reported is tracked by its sequence number
+ * and estimated send time, and it is reported lost as soon as the site's probe timeout passes after it was sent.
+ * @author Cory Ma
+ */
+public class StreamingPingProcess
+{
+	private final int QUEUE_CAPACITY = 64;
+	private final int SEQ_MASK = 0xFFFF; //Sequence numbers are 16 bits
+	private final long MIN_RESTART_DELAY_MS = 1000;
+	private final long MAX_RESTART_DELAY_MS = 30000;
+	
+	private final PingSite pingSite;
+	private final DnsCache dnsCache;
+	private final LinkedBlockingQueue<PingResponse> responses;
+	private final Thread supervisorThread;
+	private final PingOutputParser outputParser; //Only used by the supervising thread
+	//A ReentrantLock is used over synchronized so virtual threads waiting on it aren't pinned
+	private final ReentrantLock pendingLock = new ReentrantLock();
+	
+	private volatile boolean isClosed = false;
+	private volatile Process pingProcess;
+	private volatile String pingIP = ""; //Written by the supervising thread, read by nextResponse()
+	//The oldest ping neither answered nor reported lost, guarded by pendingLock
+	private long pendingSendTime = System.currentTimeMillis();
+	private int pendingSeq = -1; //Not known until the first reply of each command
+	
+	/**
+	 * Constructor.
+	 * @param site      PingSite to ping
+	 * @param cache     DnsCache to get the address of the site from
+	 */
+	public StreamingPingProcess(PingSite site, DnsCache cache)
+	{
+		pingSite = site;
+		dnsCache = cache;
+		responses = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+		outputParser = new PingOutputParser();
+		supervisorThread = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				supervise();
+			}
+		}, site.getName() + "-StreamingPing");
+		supervisorThread.setDaemon(true);
+	}
+	
+	/**
+	 * Starts the supervising thread, which launches the ping command.
+	 */
+	public void start()
+	{
+		supervisorThread.start();
+	}
+	
+	/**
+	 * Stops the ping command and its supervising thread.
+	 */
+	public void close()
+	{
+		isClosed = true;
+		supervisorThread.interrupt();
+		Process process = pingProcess;
+		if(process != null)
+		{
+			process.destroy();
+		}
+	}
+	
+	/**
+	 * Waits for the next result of the ping command. If no reply arrives by the time the oldest pending ping passes
+	 * the site's probe timeout, that ping is counted as timed out, timed from when it was sent.
+	 * @return The results of the next ping
+	 * @throws InterruptedException
+	 */
+	public PingResponse nextResponse() throws InterruptedException
+	{
+		PingResponse pingResponse = null;
+		while(pingResponse == null)
+		{
+			long waitMs = getLossDeadline() - System.currentTimeMillis();
+			pingResponse = responses.poll(Math.max(waitMs, 0), TimeUnit.MILLISECONDS);
+			if(pingResponse == null)
+			{
+				//A reply may have moved the deadline while waiting, in which case wait again
+				pingResponse = takeDueLoss();
+			}
+		}
+		return pingResponse;
+	}
+	
+	/**
+	 * Gets the time at which the oldest pending ping is lost if no reply has arrived.
+	 * @return The deadline in milliseconds
+	 */
+	private long getLossDeadline()
+	{
+		pendingLock.lock();
+		try
+		{
+			return pendingSendTime + pingSite.getProbeTimeout();
+		}
+		finally
+		{
+			pendingLock.unlock();
+		}
+	}
+	
+	/**
+	 * Reports the oldest pending ping as timed out if its deadline has passed, moving on to the ping sent a probe
+	 * interval after it.
+	 * @return A timed out PingResponse, or null if the deadline hasn't passed
+	 */
+	private PingResponse takeDueLoss()
+	{
+		PingResponse pingResponse = null;
+		pendingLock.lock();
+		try
+		{
+			if(System.currentTimeMillis() >= pendingSendTime + pingSite.getProbeTimeout())
+			{
+				pingResponse = new PingResponse(false, pingIP, -1, true, new Date(pendingSendTime));
+				pendingSendTime += getIntervalMs();
+				if(pendingSeq != -1)
+				{
+					pendingSeq = (pendingSeq + 1) & SEQ_MASK;
+				}
+			}
+		}
+		finally
+		{
+			pendingLock.unlock();
+		}
+		return pingResponse;
+	}
+	
+	/**
+	 * Gets the site's probe interval, which the ping command sends at.
+	 * @return The interval in milliseconds
+	 */
+	private long getIntervalMs()
+	{
+		return (long)(pingSite.getProbeInterval() * 1000);
+	}
+	
+	/**
+	 * Keeps the ping command running until closed, restarting it with an increasing delay each time it dies.
+	 */
+	private void supervise()
+	{
+		long restartDelay = MIN_RESTART_DELAY_MS;
+		while(!isClosed)
+		{
+			boolean hadOutput = false;
+			try
+			{
+				hadOutput = runPingProcess();
+			}
+			catch(IOException ioEx)
+			{
+				ioEx.printStackTrace();
+			}
+			
+			if(!isClosed)
+			{
+				restartDelay = hadOutput ? MIN_RESTART_DELAY_MS : Math.min(restartDelay * 2, MAX_RESTART_DELAY_MS);
+				try
+				{
+					Thread.sleep(restartDelay);
+				}
+				catch(InterruptedException iE)
+				{
+					//Interrupted by close(), loop condition will end supervision
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Launches the ping command and parses its output until it ends.
+	 * @return true if any replies were parsed before the command ended
+	 * @throws IOException
+	 */
+	private boolean runPingProcess() throws IOException
+	{
+		boolean hadOutput = false;
+		
+		ProcessBuilder processBuilder = new ProcessBuilder("ping", "-i", String.valueOf(pingSite.getProbeInterval()), dnsCache.resolveIP(pingSite));
+		processBuilder.redirectErrorStream(true);
+		pingProcess = processBuilder.start();
+		pendingLock.lock();
+		try
+		{
+			//Sequence numbers start over with each new command, whose first ping is sent right away
+			pendingSendTime = System.currentTimeMillis();
+			pendingSeq = -1;
+		}
+		finally
+		{
+			pendingLock.unlock();
+		}
+		outputParser.reset(pingProcess.getInputStream());
+		try
+		{
+			while(!isClosed && outputParser.nextLine())
+			{
+				hadOutput |= handleLine();
+			}
+		}
+		finally
+		{
+			pingProcess.destroy();
+			IOUtilities.closeCloseable(pingProcess.getInputStream());
+		}
+		
+		return hadOutput;
+	}
+	
+	/**
+	 * Handles the line of output last read by the parser. A reply that comes after its ping was already reported
+	 * timed out is dropped. Otherwise any pending pings sent before it are queued as lost, since the command
+	 * has moved past them, timed a probe interval apart counting back from when the reply was sent, and then the
+	 * reply is queued.
+	 * @return true if the line was a reply
+	 */
+	private boolean handleLine()
+	{
+		boolean isReply = false;
+		if(pingIP.isEmpty())
+		{
+			pingIP = outputParser.getIP();
+		}
+		
+		int seq = outputParser.getSeq();
+		double pingLatency = outputParser.getLatency();
+		if(seq != -1 && pingLatency != -1)
+		{
+			isReply = true;
+			long replySendTime = System.currentTimeMillis() - (long)pingLatency;
+			long intervalMs = getIntervalMs();
+			pendingLock.lock();
+			try
+			{
+				//Before the first reply of a command only the send times are known, after it sequence numbers are
+				//compared, wrapping around like the command's
+				int seqsAhead = pendingSeq == -1 ? (int)Math.round((replySendTime - pendingSendTime) / (double)intervalMs) :
+						(short)(seq - pendingSeq);
+				if(seqsAhead < 0)
+				{
+					pendingSeq = (seq - seqsAhead) & SEQ_MASK;
+				}
+				else
+				{
+					for(int seqsBack = seqsAhead; seqsBack > 0; seqsBack--)
+					{
+						offer(new PingResponse(false, pingIP, -1, false, new Date(replySendTime - (seqsBack * intervalMs))));
+					}
+					offer(new PingResponse(true, pingIP, pingLatency));
+					pendingSeq = (seq + 1) & SEQ_MASK;
+					pendingSendTime = replySendTime + intervalMs;
+				}
+			}
+			finally
+			{
+				pendingLock.unlock();
+			}
+		}
+		
+		return isReply;
+	}
+	
+	/**
+	 * Queues a PingResponse, dropping the oldest one if nothing has been taking them.
+	 * @param pingResponse     PingResponse to queue
+	 */
+	private void offer(PingResponse pingResponse)
+	{
+		while(!responses.offer(pingResponse))
+		{
+			responses.poll();
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package org.connectionmonitor.ping;
+
+import java.io.IOException;
+import java.net.UnknownHostException;
+
+import org.my.libraries.IOUtilities;
+
+/**
+ * Prober that executes the system's ping command once per probe and parses its results. The site's address is
+ * resolved through the DnsCache so that the command doesn't spend time resolving it on every probe.
+ * @author Cory Ma
+ */
+public class SystemPingProber implements Prober
+{
+	//One parser per thread so its buffer is reused from probe to probe
+	private final static ThreadLocal<PingOutputParser> OUTPUT_PARSERS = new ThreadLocal<PingOutputParser>()
+	{
+		@Override
+		protected PingOutputParser initialValue()
+		{
+			return new PingOutputParser();
+		}
+	};
+	
+	private final DnsCache dnsCache;
+	
+	/**
+	 * Constructor.
+	 * @param cache     DnsCache to get the addresses of sites from
+	 */
+	public SystemPingProber(DnsCache cache)
+	{
+		dnsCache = cache;
+	}
+	
+	/**
+	 * Executes the ping command on the site's resolved address and parses the results.
+	 * @param pingSite     PingSite to ping
+	 * @return The results of the ping
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	@Override
+	public PingResponse probe(PingSite pingSite) throws IOException, InterruptedException
+	{
+		PingResponse pingResponse;
+		try
+		{
+			pingResponse = pingAddress(dnsCache.resolveIP(pingSite), pingSite.getProbeTimeout());
+		}
+		catch(UnknownHostException uhEx)
+		{
+			pingResponse = new PingResponse(false, "", -1); //Same as the ping command failing to resolve the address
+		}
+		return pingResponse;
+	}
+	
+	/**
+	 * Executes the ping command and parses the results. The command is destroyed if it hasn't returned by the
+	 * timeout and the ping is counted as timed out.
+	 * @param siteIP        IP address to ping
+	 * @param timeoutMs     Milliseconds to wait for the command to return
+	 * @return The results of the ping
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	private PingResponse pingAddress(String siteIP, int timeoutMs) throws IOException, InterruptedException
+	{
+		String pingIP = "";
+		double pingLatency = -1;
+		//Set command to perform single ping -c 1 works with Linux/Mac
+		String command = "ping -c 1 " + siteIP;
+		
+		Process pingProcess = java.lang.Runtime.getRuntime().exec(command); //Forks process and executes command
+		PingOutputParser outputParser = OUTPUT_PARSERS.get();
+		outputParser.reset(pingProcess.getInputStream());
+		ProcessDeadline processDeadline = new ProcessDeadline(pingProcess, timeoutMs);
+		int returnVal = pingProcess.waitFor(); //Waits for return from ping command, or for the deadline to destroy it
+		processDeadline.cancel();
+		boolean timedOut = processDeadline.hasExpired();
+		boolean reachable = (returnVal == 0 && !timedOut);
+		try
+		{
+			while(!timedOut && outputParser.nextLine())
+			{
+				if(pingIP.isEmpty())
+				{
+					pingIP = outputParser.getIP();
+				}
+				if(reachable && pingLatency == -1)
+				{
+					pingLatency = outputParser.getLatency();
+				}
+			}
+		}
+		finally
+		{
+			IOUtilities.closeCloseable(pingProcess.getInputStream());
+		}
+		return new PingResponse(reachable, pingIP.isEmpty() ? siteIP : pingIP, pingLatency, timedOut);
+	}
+	
+	/**
+	 * Nothing is held between probes so there is nothing to release.
+	 */
+	@Override
+	public void close()
+	{}
+}
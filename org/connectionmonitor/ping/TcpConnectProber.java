@@ -0,0 +1,138 @@
+package org.connectionmonitor.ping;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+import org.my.libraries.IOUtilities;
+
+/**
+ * Prober that measures the round trip time of a TCP connect to a PingSite's port, done in process
+ * through a non-blocking SocketChannel. A refused connection still counts as reachable since the
+ * destination had to answer to refuse it.
+ * @author Cory Ma
+ */
+public class TcpConnectProber implements Prober
+{
+	private final DnsCache dnsCache;
+	
+	/**
+	 * Constructor.
+	 * @param cache     DnsCache to get the addresses of sites from
+	 */
+	public TcpConnectProber(DnsCache cache)
+	{
+		dnsCache = cache;
+	}
+	
+	/**
+	 * Opens and closes a TCP connection to the site, timing how long the connect took.
+	 * @param pingSite     PingSite to probe
+	 * @return The results of the probe
+	 * @throws IOException
+	 */
+	@Override
+	public PingResponse probe(PingSite pingSite) throws IOException
+	{
+		String pingIP = "";
+		double pingLatency = -1;
+		boolean reachable = false;
+		boolean timedOut = false;
+		
+		try
+		{
+			InetAddress inetAddress = dnsCache.resolve(pingSite);
+			pingIP = inetAddress.getHostAddress();
+			
+			Selector selector = Selector.open();
+			SocketChannel socketChannel = SocketChannel.open();
+			try
+			{
+				socketChannel.configureBlocking(false);
+				long startTime = System.nanoTime();
+				boolean connected;
+				try
+				{
+					connected = socketChannel.connect(new InetSocketAddress(inetAddress, pingSite.getProbePort()));
+					if(!connected)
+					{
+						socketChannel.register(selector, SelectionKey.OP_CONNECT);
+						if(selector.select(pingSite.getProbeTimeout()) > 0)
+						{
+							connected = finishConnect(socketChannel);
+						}
+						else
+						{
+							timedOut = true;
+						}
+					}
+				}
+				catch(IOException ioEx)
+				{
+					//A non-blocking connect can still fail right away, such as a refusal from a local address
+					connected = isConnectionRefused(ioEx);
+				}
+				if(connected)
+				{
+					reachable = true;
+					pingLatency = (double)(System.nanoTime() - startTime) / 1000000;
+				}
+			}
+			finally
+			{
+				IOUtilities.closeCloseable(socketChannel);
+				IOUtilities.closeCloseable(selector);
+			}
+		}
+		catch(UnknownHostException uhEx)
+		{
+			//Unresolvable address is treated the same as an unreachable site
+		}
+		
+		return new PingResponse(reachable, pingIP, pingLatency, timedOut);
+	}
+	
+	/**
+	 * Finishes connecting a SocketChannel that was selected for OP_CONNECT.
+	 * @param socketChannel     Channel to finish connecting
+	 * @return true if the destination answered, false if not
+	 */
+	private boolean finishConnect(SocketChannel socketChannel)
+	{
+		boolean answered;
+		try
+		{
+			answered = socketChannel.finishConnect();
+		}
+		catch(IOException ioEx)
+		{
+			answered = isConnectionRefused(ioEx);
+		}
+		return answered;
+	}
+	
+	/**
+	 * Checks whether a failed connect was refused by the destination, meaning it answered with a reset, as opposed
+	 * to getting no answer. This goes by the type of the exception, since its message differs between platforms and
+	 * JDKs. A refusal is thrown as a ConnectException, while NoRouteToHostException, PortUnreachableException and
+	 * other IOExceptions mean there was no answer.
+	 * @param ioEx     Exception thrown by the connect
+	 * @return true if the connection was refused, false if not
+	 */
+	static boolean isConnectionRefused(IOException ioEx)
+	{
+		return ioEx instanceof ConnectException;
+	}
+	
+	/**
+	 * Nothing is held between probes so there is nothing to release.
+	 */
+	@Override
+	public void close()
+	{}
+}
@@ -0,0 +1,15 @@
+# Stand-in for fping -e used by BatchPingProberCheck, so the batch prober can be checked without fping or a network.
+# The first argument is a file each run appends its targets to, the rest are the targets as fping would get them.
+# Targets ending in .2 are unreachable, ones ending in .3 are left out of the output, one ending in .9 hangs until the
+# command is destroyed and the rest are alive after 1.5 ms.
+RUN_LOG=$1
+shift
+echo "$@" >> "$RUN_LOG"
+for TARGET in "$@"; do
+    case "$TARGET" in
+        *.2) echo "$TARGET is unreachable" ;;
+        *.3) ;;
+        *.9) exec sleep 30 ;;
+        *) echo "$TARGET is alive (1.5 ms)" ;;
+    esac
+done
@@ -0,0 +1,192 @@
+package org.connectionmonitor.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Measures log insert throughput against a MySQL server three ways. The first concatenates each insert into SQL and
+ * looks up the site's key with another concatenated query for every entry, as log entries were written before
+ * prepared statements. The second prepares the insert once on the server and runs it for each entry. The third is
+ * MySqlLogStore.insertLogEntries() in batches of DEFAULT_BATCH_SIZE, which the LogWriter uses, and also writes the
+ * rollups. Each way inserts the same entries, spread over SITE_COUNT sites a second apart, and prints the entries
+ * per second it managed. The ping rate of a deployment is the number of sites probed each second, so any way that
+ * manages less than that falls behind.
+ * 
+ * The database given must be empty, its tables are created by MySqlLogStore and dropped at the end.
+ * Run with: ./ConnectionMonitor.sh check LogInsertBenchmark [database] [user] [password] [entries]
+ * @author Cory Ma
+ */
+public class LogInsertBenchmark
+{
+	private final static int SITE_COUNT = 20;
+	private final static int DEFAULT_ENTRIES = 5000;
+	private final static int DEFAULT_BATCH_SIZE = 256;
+	
+	/**
+	 * Runs the benchmark.
+	 * @param args     Name of an empty database, user name, password and optionally the number of entries to insert each way
+	 * @throws SQLException
+	 */
+	public static void main(String[] args) throws SQLException
+	{
+		if(args.length < 3)
+		{
+			System.out.println("Usage: LogInsertBenchmark [database] [user] [password] [entries]");
+			System.exit(1);
+		}
+		int entryCount = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_ENTRIES;
+		ScratchDatabase scratchDatabase = new ScratchDatabase(args[0], args[1], args[2]);
+		List<LogEntry> logEntries = buildEntries(entryCount);
+		
+		MySqlLogStore logStore = scratchDatabase.openStore(false);
+		try
+		{
+			for(int siteNum = 0; siteNum < SITE_COUNT; siteNum++)
+			{
+				logStore.insertSite("site" + siteNum, "10.0.0." + siteNum);
+			}
+			
+			long concatenatedMs = runConcatenated(scratchDatabase, logEntries);
+			long preparedMs = runPrepared(scratchDatabase, logEntries);
+			long batchStart = System.currentTimeMillis();
+			for(int batchStartIndex = 0; batchStartIndex < logEntries.size(); batchStartIndex += DEFAULT_BATCH_SIZE)
+			{
+				List<LogEntry> batch = logEntries.subList(batchStartIndex, Math.min(batchStartIndex + DEFAULT_BATCH_SIZE, logEntries.size()));
+				logStore.insertLogEntries(batch, LogRollup.buildRollups(batch));
+			}
+			long batchedMs = System.currentTimeMillis() - batchStart;
+			
+			System.out.println("Inserted " + entryCount + " entries each way for " + SITE_COUNT + " sites");
+			printResult("Concatenated, key looked up per entry", concatenatedMs, entryCount);
+			printResult("Server prepared, one entry at a time ", preparedMs, entryCount);
+			printResult("LogWriter batches with rollups       ", batchedMs, entryCount);
+		}
+		finally
+		{
+			logStore.close();
+			scratchDatabase.dropTables();
+		}
+	}
+	
+	/**
+	 * Builds the entries to insert, a mix of the three statuses for each site a second apart.
+	 * @param entryCount     Number of entries to build
+	 * @return The entries in time order
+	 */
+	private static List<LogEntry> buildEntries(int entryCount)
+	{
+		List<LogEntry> logEntries = new ArrayList<>(entryCount);
+		long startTime = System.currentTimeMillis() - (entryCount * 1000L);
+		for(int entryNum = 0; entryNum < entryCount; entryNum++)
+		{
+			int siteNum = entryNum % SITE_COUNT;
+			int statusNum = (entryNum % 3) + 1;
+			double latency = statusNum == 1 ? -1 : 20 + (entryNum % 50);
+			logEntries.add(new LogEntry("site" + siteNum, statusNum, new Date(startTime + (entryNum * 1000L)),
+					statusNum == 1 ? "" : "10.0.0." + siteNum, latency));
+		}
+		return logEntries;
+	}
+	
+	/**
+	 * Inserts the entries the way they were before prepared statements, one concatenated query for the site's key and
+	 * one concatenated insert per entry.
+	 * @param scratchDatabase     Database to insert into
+	 * @param logEntries          Entries to insert
+	 * @return Milliseconds taken
+	 * @throws SQLException
+	 */
+	private static long runConcatenated(ScratchDatabase scratchDatabase, List<LogEntry> logEntries) throws SQLException
+	{
+		Connection connection = scratchDatabase.connect(false);
+		long startTime = System.currentTimeMillis();
+		try
+		{
+			for(LogEntry logEntry : logEntries)
+			{
+				Statement sqlStatement = connection.createStatement();
+				ResultSet queryResult = sqlStatement.executeQuery("SELECT pksiteid FROM site WHERE name = '" + logEntry.getSiteName() + "'");
+				queryResult.next();
+				int sitePKey = queryResult.getInt(1);
+				queryResult.close();
+				
+				String ipInsertString = logEntry.getIPAddress().isEmpty() ? "NULL" : logEntry.getIPAddress();
+				String latencyInsertString = logEntry.getLatency() == -1 ? "NULL" : Double.toString(logEntry.getLatency());
+				sqlStatement.executeUpdate("INSERT INTO log (fksiteid, fkstatusid, pingtime, ipaddress, latency) VALUES (" + sitePKey + ", " +
+						logEntry.getStatusNum() + ", '" + new Timestamp(logEntry.getPingTime().getTime()) + "', '" + ipInsertString + "', " +
+						latencyInsertString + ")");
+				sqlStatement.close();
+			}
+		}
+		finally
+		{
+			connection.close();
+		}
+		return System.currentTimeMillis() - startTime;
+	}
+	
+	/**
+	 * Inserts the entries one at a time through an insert prepared once on the server, with the site's key bound.
+	 * @param scratchDatabase     Database to insert into
+	 * @param logEntries          Entries to insert
+	 * @return Milliseconds taken
+	 * @throws SQLException
+	 */
+	private static long runPrepared(ScratchDatabase scratchDatabase, List<LogEntry> logEntries) throws SQLException
+	{
+		Connection connection = scratchDatabase.connect(true);
+		long startTime = System.currentTimeMillis();
+		try
+		{
+			PreparedStatement keyStatement = connection.prepareStatement("SELECT pksiteid FROM site WHERE name = ?");
+			PreparedStatement sqlStatement = connection.prepareStatement("INSERT INTO log (fksiteid, fkstatusid, pingtime, ipaddress, latency) " +
+					"VALUES (?, ?, ?, ?, ?)");
+			for(LogEntry logEntry : logEntries)
+			{
+				keyStatement.setString(1, logEntry.getSiteName());
+				ResultSet queryResult = keyStatement.executeQuery();
+				queryResult.next();
+				sqlStatement.setInt(1, queryResult.getInt(1));
+				queryResult.close();
+				sqlStatement.setInt(2, logEntry.getStatusNum());
+				sqlStatement.setTimestamp(3, new Timestamp(logEntry.getPingTime().getTime()));
+				sqlStatement.setString(4, logEntry.getIPAddress().isEmpty() ? null : logEntry.getIPAddress());
+				if(logEntry.getLatency() == -1)
+				{
+					sqlStatement.setNull(5, Types.FLOAT);
+				}
+				else
+				{
+					sqlStatement.setDouble(5, logEntry.getLatency());
+				}
+				sqlStatement.executeUpdate();
+			}
+			keyStatement.close();
+			sqlStatement.close();
+		}
+		finally
+		{
+			connection.close();
+		}
+		return System.currentTimeMillis() - startTime;
+	}
+	
+	/**
+	 * Prints the throughput of one way of inserting.
+	 * @param name           Name of the way of inserting
+	 * @param elapsedMs      Milliseconds taken
+	 * @param entryCount     Number of entries inserted
+	 */
+	private static void printResult(String name, long elapsedMs, int entryCount)
+	{
+		System.out.println(String.format("%s: %d ms, %.0f entries/s", name, elapsedMs, entryCount * 1000.0 / Math.max(1, elapsedMs)));
+	}
+}
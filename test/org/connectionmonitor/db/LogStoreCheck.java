@@ -0,0 +1,284 @@
+package org.connectionmonitor.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks a LogStore end to end, either a MySqlLogStore in an empty database or a SegmentLogStore in a new temporary
+ * directory. Each site gets a batch of entries three days old and one from the last hour. While the recent entries are
+ * written one at a time, another thread reads the log over and over, so a slow report must not hold up or break
+ * inserts. Then the streamed log must hold every entry, the rollup totals over the whole period must match the
+ * entries, and retention of one day must delete exactly the old entries while leaving the totals alone. Exits with
+ * 1 if any check fails.
+ * 
+ * The database given must be empty, its tables are created by MySqlLogStore and dropped at the end.
+ * Run with: ./ConnectionMonitor.sh check LogStoreCheck segment
+ *       or: ./ConnectionMonitor.sh check LogStoreCheck mysql [database] [user] [password]
+ * @author Cory Ma
+ */
+public class LogStoreCheck
+{
+	private final static int SITE_COUNT = 3;
+	private final static long OUTAGE_MS = 30000;
+	private final static int DELETE_BATCH_SIZE = 5;
+	private final static long READER_JOIN_MS = 30000;
+	
+	private static boolean isPassing = true;
+	
+	/**
+	 * Runs the checks.
+	 * @param args     "segment", or "mysql" followed by the name of an empty database, user name and password
+	 * @throws SQLException
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public static void main(String[] args) throws SQLException, IOException, InterruptedException
+	{
+		if(args.length == 1 && args[0].equals("segment"))
+		{
+			File storeDirectory = Files.createTempDirectory("logstore").toFile();
+			SegmentLogStore logStore = new SegmentLogStore(storeDirectory.getPath());
+			logStore.open();
+			try
+			{
+				checkStore(logStore);
+			}
+			finally
+			{
+				logStore.close();
+				deleteDirectory(storeDirectory);
+			}
+		}
+		else if(args.length == 4 && args[0].equals("mysql"))
+		{
+			ScratchDatabase scratchDatabase = new ScratchDatabase(args[1], args[2], args[3]);
+			MySqlLogStore logStore = scratchDatabase.openStore(false);
+			try
+			{
+				checkStore(logStore);
+			}
+			finally
+			{
+				logStore.close();
+				scratchDatabase.dropTables();
+			}
+		}
+		else
+		{
+			System.out.println("Usage: LogStoreCheck segment, or LogStoreCheck mysql [database] [user] [password]");
+			System.exit(1);
+		}
+		
+		System.out.println(isPassing ? "All log store checks passed" : "Some log store checks failed");
+		if(!isPassing)
+		{
+			System.exit(1);
+		}
+	}
+	
+	/**
+	 * Runs every check on an open store.
+	 * @param logStore     LogStore to check
+	 * @throws SQLException
+	 * @throws InterruptedException
+	 */
+	private static void checkStore(final LogStore logStore) throws SQLException, InterruptedException
+	{
+		long now = System.currentTimeMillis();
+		long oldTime = RollupPeriod.HOUR.getBucketStart(now - TimeUnit.DAYS.toMillis(3)) + TimeUnit.MINUTES.toMillis(10);
+		long recentTime = now - TimeUnit.MINUTES.toMillis(30);
+		final Date periodStart = new Date(RollupPeriod.HOUR.getBucketStart(oldTime) - RollupPeriod.HOUR.getBucketMs());
+		final Date periodEnd = new Date(now + RollupPeriod.HOUR.getBucketMs());
+		
+		for(int siteNum = 0; siteNum < SITE_COUNT; siteNum++)
+		{
+			logStore.insertSite("site" + siteNum, "10.0.0." + siteNum);
+		}
+		logStore.insertSite("site0", "10.0.0.0");
+		List<LogEntry> oldEntries = buildEntries(oldTime);
+		logStore.insertLogEntries(oldEntries, LogRollup.buildRollups(oldEntries));
+		
+		//Reads the log over and over while the recent entries are written
+		final AtomicInteger readCount = new AtomicInteger(0);
+		final List<Exception> readerErrors = Collections.synchronizedList(new ArrayList<Exception>());
+		final List<LogEntry> recentEntries = buildEntries(recentTime);
+		Thread readerThread = new Thread("LogStoreCheckReader")
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					while(readCount.get() < recentEntries.size())
+					{
+						countEntries(logStore, periodStart, periodEnd);
+						readCount.incrementAndGet();
+					}
+				}
+				catch(SQLException sqlE)
+				{
+					readerErrors.add(sqlE);
+				}
+			}
+		};
+		readerThread.start();
+		for(LogEntry logEntry : recentEntries)
+		{
+			List<LogEntry> batch = Collections.singletonList(logEntry);
+			logStore.insertLogEntries(batch, LogRollup.buildRollups(batch));
+		}
+		readerThread.join(READER_JOIN_MS);
+		check("log read " + readCount.get() + " times while entries were written", !readerThread.isAlive() && readerErrors.isEmpty());
+		
+		int entryCount = oldEntries.size() + recentEntries.size();
+		HashMap<String, Integer> siteCounts = countEntries(logStore, periodStart, periodEnd);
+		check("streamed log holds every entry " + siteCounts, siteCounts.size() == SITE_COUNT && sum(siteCounts) == entryCount);
+		checkTotals(logStore, periodStart, periodEnd, "rollup totals match the entries");
+		
+		HashMap<Integer, Date> statusCutoffs = new HashMap<>();
+		for(int statusNum = 1; statusNum <= 3; statusNum++)
+		{
+			statusCutoffs.put(statusNum, new Date(now - TimeUnit.DAYS.toMillis(1)));
+		}
+		int totalDeleted = 0;
+		int numDeleted;
+		while((numDeleted = logStore.deleteLogEntries(statusCutoffs, DELETE_BATCH_SIZE)) > 0)
+		{
+			totalDeleted += numDeleted;
+		}
+		check("retention deleted the " + oldEntries.size() + " old entries (deleted " + totalDeleted + ")", totalDeleted == oldEntries.size());
+		siteCounts = countEntries(logStore, periodStart, periodEnd);
+		check("recent entries kept " + siteCounts, sum(siteCounts) == recentEntries.size());
+		checkTotals(logStore, periodStart, periodEnd, "rollup totals kept after retention");
+	}
+	
+	/**
+	 * Builds the entries of every site starting at a time, a second apart. Each site has 2 unreachable entries, 2
+	 * reachable again entries ending OUTAGE_MS of outage each, and 4 slow entries of 100 to 130 ms.
+	 * @param startTime     Time of the first entry in milliseconds
+	 * @return The entries in time order
+	 */
+	private static List<LogEntry> buildEntries(long startTime)
+	{
+		List<LogEntry> logEntries = new ArrayList<>();
+		long pingTime = startTime;
+		for(int siteNum = 0; siteNum < SITE_COUNT; siteNum++)
+		{
+			String siteName = "site" + siteNum;
+			String siteIP = "10.0.0." + siteNum;
+			for(int entryNum = 0; entryNum < 2; entryNum++)
+			{
+				logEntries.add(new LogEntry(siteName, 1, new Date(pingTime += 1000), "", -1));
+				logEntries.add(new LogEntry(siteName, 2, new Date(pingTime += 1000), siteIP, 20, new Date(pingTime - OUTAGE_MS)));
+			}
+			for(int entryNum = 0; entryNum < 4; entryNum++)
+			{
+				logEntries.add(new LogEntry(siteName, 3, new Date(pingTime += 1000), siteIP, 100 + (entryNum * 10)));
+			}
+		}
+		return logEntries;
+	}
+	
+	/**
+	 * Reads the log over a period and counts the entries of each site.
+	 * @param logStore      LogStore to read
+	 * @param startTime     Time to start from
+	 * @param endTime       Time to end at
+	 * @return The number of entries by site name
+	 * @throws SQLException
+	 */
+	private static HashMap<String, Integer> countEntries(LogStore logStore, Date startTime, Date endTime) throws SQLException
+	{
+		final HashMap<String, Integer> siteCounts = new HashMap<>();
+		logStore.selectLog(startTime, endTime, new SiteRecordHandler()
+		{
+			@Override
+			public void handleRecord(SiteRecord siteRecord)
+			{
+				Integer count = siteCounts.get(siteRecord.getSiteName());
+				siteCounts.put(siteRecord.getSiteName(), count == null ? 1 : count + 1);
+			}
+		});
+		return siteCounts;
+	}
+	
+	/**
+	 * Checks the hour rollup totals of every site over a period, which holds both batches of entries.
+	 * @param logStore      LogStore to total
+	 * @param startTime     Start of the period
+	 * @param endTime       End of the period
+	 * @param name          Description of the check
+	 * @throws SQLException
+	 */
+	private static void checkTotals(LogStore logStore, Date startTime, Date endTime, String name) throws SQLException
+	{
+		HashMap<String, LogRollup> siteTotals = logStore.selectRollupTotals(Collections.singletonList(
+				new RollupRange(RollupPeriod.HOUR, startTime.getTime(), endTime.getTime())));
+		boolean isMatching = siteTotals.size() == SITE_COUNT;
+		for(LogRollup siteTotal : siteTotals.values())
+		{
+			isMatching &= siteTotal.getUnreachableCount() == 4 && siteTotal.getReachableAgainCount() == 4 && siteTotal.getSlowCount() == 8 &&
+					siteTotal.getMaxLatency() == 130 && siteTotal.getSumLatency() == 920 && siteTotal.getOutageSeconds() == 4 * OUTAGE_MS / 1000.0;
+		}
+		check(name, isMatching);
+	}
+	
+	/**
+	 * Adds up counts.
+	 * @param counts     Counts by name
+	 * @return The sum of the counts
+	 */
+	private static int sum(HashMap<String, Integer> counts)
+	{
+		int total = 0;
+		for(int count : counts.values())
+		{
+			total += count;
+		}
+		return total;
+	}
+	
+	/**
+	 * Deletes a directory and everything in it.
+	 * @param directory     Directory to delete
+	 */
+	private static void deleteDirectory(File directory)
+	{
+		File[] files = directory.listFiles();
+		if(files != null)
+		{
+			for(File file : files)
+			{
+				if(file.isDirectory())
+				{
+					deleteDirectory(file);
+				}
+				else
+				{
+					file.delete();
+				}
+			}
+		}
+		directory.delete();
+	}
+	
+	/**
+	 * Prints the result of one check, remembering if it failed.
+	 * @param name         Description of what is checked
+	 * @param isPassed     Whether the check passed
+	 */
+	private static void check(String name, boolean isPassed)
+	{
+		System.out.println((isPassed ? "PASS " : "FAIL ") + name);
+		isPassing &= isPassed;
+	}
+}
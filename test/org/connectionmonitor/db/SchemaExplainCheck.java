@@ -0,0 +1,253 @@
+package org.connectionmonitor.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks with EXPLAIN that the indexes SchemaManager adds are used by the report queries. A log of ENTRY_COUNT entries
+ * over SPAN_DAYS days is written through MySqlLogStore, then a one hour period must be read through idx_log_time
+ * and examine only a small part of the table, and both report queries must pass MySqlLogStore's own plan check.
+ * With idx_log_time dropped the same period must read the whole table, and running SchemaManager again must add the
+ * index back. Finally the log is made again as a partitioned table, and a period within one month must only read that
+ * month's partition. Exits with 1 if any check fails.
+ * 
+ * The database given must be empty, its tables are created by MySqlLogStore and dropped at the end.
+ * Run with: ./ConnectionMonitor.sh check SchemaExplainCheck [database] [user] [password]
+ * @author Cory Ma
+ */
+public class SchemaExplainCheck
+{
+	private final static int SITE_COUNT = 20;
+	private final static int ENTRY_COUNT = 20000;
+	private final static int SPAN_DAYS = 60;
+	private final static int BATCH_SIZE = 256;
+	private final static String SELECT_PERIOD_SQL = "SELECT * FROM log WHERE pingtime >= ? AND pingtime <= ?";
+	
+	private static boolean isPassing = true;
+	
+	/**
+	 * Runs the checks.
+	 * @param args     Name of an empty database, user name and password
+	 * @throws SQLException
+	 */
+	public static void main(String[] args) throws SQLException
+	{
+		if(args.length < 3)
+		{
+			System.out.println("Usage: SchemaExplainCheck [database] [user] [password]");
+			System.exit(1);
+		}
+		ScratchDatabase scratchDatabase = new ScratchDatabase(args[0], args[1], args[2]);
+		long now = System.currentTimeMillis();
+		long periodEnd = now - TimeUnit.DAYS.toMillis(SPAN_DAYS / 2);
+		long periodStart = periodEnd - TimeUnit.HOURS.toMillis(1);
+		
+		MySqlLogStore logStore = scratchDatabase.openStore(false);
+		try
+		{
+			fillLog(logStore, now - TimeUnit.DAYS.toMillis(SPAN_DAYS), now);
+			Connection connection = scratchDatabase.connect(false);
+			try
+			{
+				analyzeTables(connection);
+				check("report queries pass the plan check", logStore.checkReportQueryPlans(connection, periodStart, periodEnd));
+				checkPeriodPlan(connection, periodStart, periodEnd, true);
+				
+				Statement sqlStatement = connection.createStatement();
+				sqlStatement.executeUpdate("ALTER TABLE log DROP INDEX idx_log_time");
+				sqlStatement.close();
+				check("plan check warns without idx_log_time", !logStore.checkReportQueryPlans(connection, periodStart, periodEnd));
+				checkPeriodPlan(connection, periodStart, periodEnd, false);
+				
+				SchemaManager schemaManager = new SchemaManager("log", "site", "status", "rollup", false);
+				schemaManager.ensureSchema(connection);
+				schemaManager.ensureSchema(connection); //Must change nothing the second time
+				analyzeTables(connection);
+				check("report queries pass the plan check once SchemaManager runs again",
+						logStore.checkReportQueryPlans(connection, periodStart, periodEnd));
+				checkPeriodPlan(connection, periodStart, periodEnd, true);
+			}
+			finally
+			{
+				connection.close();
+			}
+		}
+		finally
+		{
+			logStore.close();
+			scratchDatabase.dropTables();
+		}
+		
+		checkPartitions(scratchDatabase);
+		
+		System.out.println(isPassing ? "All schema checks passed" : "Some schema checks failed");
+		if(!isPassing)
+		{
+			System.exit(1);
+		}
+	}
+	
+	/**
+	 * Makes the log again as a partitioned table, filled from the start of the current month to the end of the next,
+	 * and checks that a period within the next month only reads its partition.
+	 * @param scratchDatabase     Database to check in
+	 * @throws SQLException
+	 */
+	private static void checkPartitions(ScratchDatabase scratchDatabase) throws SQLException
+	{
+		Calendar monthStart = Calendar.getInstance();
+		monthStart.set(Calendar.DAY_OF_MONTH, 1);
+		monthStart.set(Calendar.HOUR_OF_DAY, 0);
+		monthStart.set(Calendar.MINUTE, 0);
+		monthStart.set(Calendar.SECOND, 0);
+		monthStart.set(Calendar.MILLISECOND, 0);
+		long fillStart = monthStart.getTimeInMillis();
+		monthStart.add(Calendar.MONTH, 1);
+		long nextMonthStart = monthStart.getTimeInMillis();
+		String nextMonthPartition = new SimpleDateFormat("'p'yyyyMM").format(monthStart.getTime());
+		monthStart.add(Calendar.MONTH, 1);
+		
+		MySqlLogStore logStore = scratchDatabase.openStore(true);
+		try
+		{
+			fillLog(logStore, fillStart, monthStart.getTimeInMillis());
+			Connection connection = scratchDatabase.connect(false);
+			try
+			{
+				analyzeTables(connection);
+				long periodStart = nextMonthStart + TimeUnit.DAYS.toMillis(10);
+				ResultSet queryResult = explainPeriod(connection, periodStart, periodStart + TimeUnit.HOURS.toMillis(1));
+				ResultSetMetaData metaData = queryResult.getMetaData();
+				boolean hasPartitionsColumn = false;
+				for(int column = 1; column <= metaData.getColumnCount(); column++)
+				{
+					hasPartitionsColumn |= metaData.getColumnLabel(column).equalsIgnoreCase("partitions");
+				}
+				if(hasPartitionsColumn)
+				{
+					queryResult.next();
+					String partitions = queryResult.getString("partitions");
+					check("period in one month reads only " + nextMonthPartition + " (read " + partitions + ")", nextMonthPartition.equals(partitions));
+				}
+				else
+				{
+					System.out.println("SKIP partition check, this server's EXPLAIN doesn't list partitions");
+				}
+				queryResult.getStatement().close();
+			}
+			finally
+			{
+				connection.close();
+			}
+		}
+		finally
+		{
+			logStore.close();
+			scratchDatabase.dropTables();
+		}
+	}
+	
+	/**
+	 * Writes ENTRY_COUNT entries evenly over a period through the store, along with their rollups.
+	 * @param logStore      MySqlLogStore to write to
+	 * @param startTime     Time of the first entry in milliseconds
+	 * @param endTime       Time to end the entries before in milliseconds
+	 * @throws SQLException
+	 */
+	private static void fillLog(MySqlLogStore logStore, long startTime, long endTime) throws SQLException
+	{
+		for(int siteNum = 0; siteNum < SITE_COUNT; siteNum++)
+		{
+			logStore.insertSite("site" + siteNum, "10.0.0." + siteNum);
+		}
+		long entryGap = (endTime - startTime) / ENTRY_COUNT;
+		List<LogEntry> logEntries = new ArrayList<>(BATCH_SIZE);
+		for(int entryNum = 0; entryNum < ENTRY_COUNT; entryNum++)
+		{
+			int siteNum = entryNum % SITE_COUNT;
+			logEntries.add(new LogEntry("site" + siteNum, 3, new Date(startTime + (entryNum * entryGap)), "10.0.0." + siteNum, 100));
+			if(logEntries.size() == BATCH_SIZE || entryNum == ENTRY_COUNT - 1)
+			{
+				logStore.insertLogEntries(logEntries, LogRollup.buildRollups(logEntries));
+				logEntries.clear();
+			}
+		}
+	}
+	
+	/**
+	 * Updates the statistics the database plans queries with, so they reflect the entries just written.
+	 * @param connection     Connection to the database
+	 * @throws SQLException
+	 */
+	private static void analyzeTables(Connection connection) throws SQLException
+	{
+		Statement sqlStatement = connection.createStatement();
+		sqlStatement.executeQuery("ANALYZE TABLE log, rollup").close();
+		sqlStatement.close();
+	}
+	
+	/**
+	 * Runs EXPLAIN on a query of every entry in a period.
+	 * @param connection     Connection to the database
+	 * @param startTime      Start of the period in milliseconds
+	 * @param endTime        End of the period in milliseconds
+	 * @return The result of EXPLAIN, whose Statement the caller must close
+	 * @throws SQLException
+	 */
+	private static ResultSet explainPeriod(Connection connection, long startTime, long endTime) throws SQLException
+	{
+		PreparedStatement sqlStatement = connection.prepareStatement("EXPLAIN " + SELECT_PERIOD_SQL);
+		sqlStatement.setTimestamp(1, new Timestamp(startTime));
+		sqlStatement.setTimestamp(2, new Timestamp(endTime));
+		return sqlStatement.executeQuery();
+	}
+	
+	/**
+	 * Checks the plan for reading every entry in a period, printing the index used and rows examined.
+	 * @param connection     Connection to the database
+	 * @param startTime      Start of the period in milliseconds
+	 * @param endTime        End of the period in milliseconds
+	 * @param isIndexed      Whether idx_log_time should be used, if not the whole table should be read
+	 * @throws SQLException
+	 */
+	private static void checkPeriodPlan(Connection connection, long startTime, long endTime, boolean isIndexed) throws SQLException
+	{
+		ResultSet queryResult = explainPeriod(connection, startTime, endTime);
+		queryResult.next();
+		String key = queryResult.getString("key");
+		String accessType = queryResult.getString("type");
+		long rows = queryResult.getLong("rows");
+		queryResult.getStatement().close();
+		String plan = " (type " + accessType + ", key " + key + ", " + rows + " of " + ENTRY_COUNT + " rows examined)";
+		if(isIndexed)
+		{
+			check("one hour period read through idx_log_time" + plan, "idx_log_time".equals(key) && rows < ENTRY_COUNT / 100);
+		}
+		else
+		{
+			check("one hour period reads the whole table without the index" + plan, "ALL".equals(accessType));
+		}
+	}
+	
+	/**
+	 * Prints the result of one check, remembering if it failed.
+	 * @param name         Description of what is checked
+	 * @param isPassed     Whether the check passed
+	 */
+	private static void check(String name, boolean isPassed)
+	{
+		System.out.println((isPassed ? "PASS " : "FAIL ") + name);
+		isPassing &= isPassed;
+	}
+}
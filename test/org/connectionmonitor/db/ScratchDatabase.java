@@ -0,0 +1,127 @@
+package org.connectionmonitor.db;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * An empty MySQL database lent to a check, which the check's MySqlLogStore creates its tables in. The database must
+ * not have any of the store's tables to begin with, so a check can't be pointed at a database holding a real log, and
+ * the tables are dropped again when the check is done.
+ * @author Cory Ma
+ */
+public class ScratchDatabase
+{
+	private final static String[] TABLES = {"log", "site", "status", "rollup"};
+	private final static int POOL_SIZE = 2;
+	
+	private final String dbName;
+	private final String dbUser;
+	private final String dbPassword;
+	
+	/**
+	 * Constructor.
+	 * @param name         Name of the database
+	 * @param user         User name for the database
+	 * @param password     Password for the database
+	 */
+	public ScratchDatabase(String name, String user, String password)
+	{
+		dbName = name;
+		dbUser = user;
+		dbPassword = password;
+	}
+	
+	/**
+	 * Opens a connection to the database on its own, outside of any MySqlLogStore.
+	 * @param isServerPrepared     Whether to prepare statements on the server and cache them, as MySqlLogStore does
+	 * @return The open Connection
+	 * @throws SQLException
+	 */
+	public Connection connect(boolean isServerPrepared) throws SQLException
+	{
+		String dbURL = "jdbc:mysql://localhost/" + dbName;
+		if(isServerPrepared)
+		{
+			dbURL += "?useServerPrepStmts=true&cachePrepStmts=true&prepStmtCacheSize=32";
+		}
+		try
+		{
+			Class.forName("com.mysql.jdbc.Driver");
+		}
+		catch(ClassNotFoundException cnfE)
+		{
+			throw new SQLException("MySQL JDBC driver not found", cnfE);
+		}
+		return DriverManager.getConnection(dbURL, dbUser, dbPassword);
+	}
+	
+	/**
+	 * Checks that none of the store's tables exist yet, then opens a MySqlLogStore, which creates them.
+	 * @param isPartitioned     Whether to partition the log table by month
+	 * @return The open MySqlLogStore
+	 * @throws SQLException if the database already has one of the tables, or it can't be reached
+	 */
+	public MySqlLogStore openStore(boolean isPartitioned) throws SQLException
+	{
+		Connection connection = connect(false);
+		try
+		{
+			Statement sqlStatement = connection.createStatement();
+			ResultSet queryResult = sqlStatement.executeQuery("SELECT COUNT(*) FROM information_schema.TABLES " +
+					"WHERE table_schema = DATABASE() AND table_name IN ('log', 'site', 'status', 'rollup')");
+			queryResult.next();
+			int tableCount = queryResult.getInt(1);
+			queryResult.close();
+			sqlStatement.close();
+			if(tableCount > 0)
+			{
+				throw new SQLException("Database " + dbName + " already has log tables, checks must be given an empty database");
+			}
+		}
+		finally
+		{
+			connection.close();
+		}
+		
+		MySqlLogStore logStore = new MySqlLogStore(dbName, dbUser, dbPassword, POOL_SIZE, isPartitioned);
+		boolean isOpen = false;
+		try
+		{
+			logStore.open();
+			isOpen = true;
+		}
+		finally
+		{
+			if(!isOpen)
+			{
+				dropTables(); //Anything made before the failure was made by this check
+			}
+		}
+		return logStore;
+	}
+	
+	/**
+	 * Drops the store's tables.
+	 * @throws SQLException
+	 */
+	public void dropTables() throws SQLException
+	{
+		Connection connection = connect(false);
+		try
+		{
+			Statement sqlStatement = connection.createStatement();
+			for(String table : TABLES)
+			{
+				sqlStatement.executeUpdate("DROP TABLE IF EXISTS " + table);
+			}
+			sqlStatement.close();
+		}
+		finally
+		{
+			connection.close();
+		}
+	}
+}
@@ -0,0 +1,134 @@
+package org.connectionmonitor.email;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+
+/**
+ * Checks the Emailer and EmailDispatcher against an SmtpStandIn. Several messages must go over one connection with
+ * one login, a message sent after the server drops the connection must be sent on a new one, and a message whose
+ * recipient is rejected must fail without opening another connection. Reports queued for the same recipients within
+ * the digest window must go out as one digest, and other recipients' reports on their own. Exits with 1 if any check
+ * fails.
+ * 
+ * Run with: ./ConnectionMonitor.sh check EmailerCheck
+ * @author Cory Ma
+ */
+public class EmailerCheck
+{
+	private final static long DIGEST_WINDOW_MS = 500;
+	private final static long DISPATCHER_JOIN_MS = 10000;
+	
+	private static boolean isPassing = true;
+	
+	/**
+	 * Runs the checks.
+	 * @param args     Not used
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException
+	{
+		SmtpStandIn smtpStandIn = new SmtpStandIn();
+		Emailer emailer = new Emailer("monitor@example.com", "password", "localhost", smtpStandIn.getPort());
+		try
+		{
+			sendMessage(emailer, "ops@example.com", "Report 1");
+			sendMessage(emailer, "ops@example.com", "Report 2");
+			sendMessage(emailer, "ops@example.com", "Report 3");
+			check("three messages sent", smtpStandIn.getSubjects().equals(Arrays.asList("Report 1", "Report 2", "Report 3")));
+			check("one connection and login reused for all three", smtpStandIn.getConnectionCount() == 1 && smtpStandIn.getLoginCount() == 1);
+			
+			smtpStandIn.dropConnections();
+			sendMessage(emailer, "ops@example.com", "After drop");
+			check("message after a dropped connection sent", lastSubject(smtpStandIn).equals("After drop"));
+			check("sent on a new connection", smtpStandIn.getConnectionCount() == 2 && smtpStandIn.getLoginCount() == 2);
+			
+			boolean isRejected = false;
+			try
+			{
+				emailer.sendMessage("reject@example.com", "Rejected", "body");
+			}
+			catch(SendFailedException sfE)
+			{
+				isRejected = true;
+			}
+			catch(MessagingException mE)
+			{
+				mE.printStackTrace();
+			}
+			check("rejected recipient fails with SendFailedException", isRejected);
+			check("rejection doesn't open another connection", smtpStandIn.getConnectionCount() == 2);
+			
+			int sentBefore = smtpStandIn.getSubjects().size();
+			EmailDispatcher emailDispatcher = new EmailDispatcher(emailer, 10, DIGEST_WINDOW_MS);
+			emailDispatcher.start();
+			emailDispatcher.enqueue("ops@example.com", "Outage 1", "body");
+			emailDispatcher.enqueue("ops@example.com", "Outage 2", "body");
+			emailDispatcher.enqueue("boss@example.com", "Summary", "body");
+			emailDispatcher.enqueue("ops@example.com", "Outage 3", "body");
+			Thread.sleep(DIGEST_WINDOW_MS * 2);
+			emailDispatcher.shutDown();
+			emailDispatcher.join(DISPATCHER_JOIN_MS);
+			List<String> subjects = smtpStandIn.getSubjects();
+			List<String> digestSubjects = subjects.subList(sentBefore, subjects.size());
+			check("digest window sends one digest per recipient list " + digestSubjects,
+					digestSubjects.equals(Arrays.asList("Outage 1 (+2 more)", "Summary")));
+			check("dispatcher finished on shut down", !emailDispatcher.isAlive());
+		}
+		finally
+		{
+			emailer.close();
+			smtpStandIn.close();
+		}
+		
+		System.out.println(isPassing ? "All email checks passed" : "Some email checks failed");
+		if(!isPassing)
+		{
+			System.exit(1);
+		}
+	}
+	
+	/**
+	 * Sends a message, printing the exception if it fails.
+	 * @param emailer           Emailer to send with
+	 * @param recipientList     Recipients of the message
+	 * @param subject           Subject of the message
+	 */
+	private static void sendMessage(Emailer emailer, String recipientList, String subject)
+	{
+		try
+		{
+			emailer.sendMessage(recipientList, subject, "body");
+		}
+		catch(MessagingException mE)
+		{
+			mE.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Gets the subject of the last message the stand-in accepted.
+	 * @param smtpStandIn     SmtpStandIn to check
+	 * @return The subject, empty if no message was accepted
+	 */
+	private static String lastSubject(SmtpStandIn smtpStandIn)
+	{
+		List<String> subjects = smtpStandIn.getSubjects();
+		return subjects.isEmpty() ? "" : subjects.get(subjects.size() - 1);
+	}
+	
+	/**
+	 * Prints the result of one check, remembering if it failed.
+	 * @param name         Description of what is checked
+	 * @param isPassed     Whether the check passed
+	 */
+	private static void check(String name, boolean isPassed)
+	{
+		System.out.println((isPassed ? "PASS " : "FAIL ") + name);
+		isPassing &= isPassed;
+	}
+}
@@ -0,0 +1,281 @@
+package org.connectionmonitor.email;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A stand-in SMTP server on a local port for checking an Emailer without a real mail server. It speaks just enough
+ * SMTP for JavaMail, accepts any login and any recipient except ones starting with "reject", and keeps the subject
+ * of each message it accepts. It counts connections and logins, so a check can tell whether one connection was reused.
+ * STARTTLS isn't offered, so the Emailer carries on without it.
+ * @author Cory Ma
+ */
+public class SmtpStandIn implements Runnable
+{
+	private final ServerSocket serverSocket;
+	private final AtomicInteger connectionCount = new AtomicInteger(0);
+	private final AtomicInteger loginCount = new AtomicInteger(0);
+	private final List<String> subjects = new ArrayList<>();
+	private final List<Socket> openSockets = new ArrayList<>();
+	
+	/**
+	 * Constructor. Starts listening on a free local port.
+	 * @throws IOException
+	 */
+	public SmtpStandIn() throws IOException
+	{
+		serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+		Thread acceptThread = new Thread(this, "SmtpStandIn");
+		acceptThread.setDaemon(true);
+		acceptThread.start();
+	}
+	
+	/**
+	 * Gets the port the stand-in listens on.
+	 * @return The local port
+	 */
+	public int getPort()
+	{
+		return serverSocket.getLocalPort();
+	}
+	
+	/**
+	 * Gets the number of connections made to the stand-in so far.
+	 * @return The number of connections
+	 */
+	public int getConnectionCount()
+	{
+		return connectionCount.get();
+	}
+	
+	/**
+	 * Gets the number of logins made to the stand-in so far.
+	 * @return The number of logins
+	 */
+	public int getLoginCount()
+	{
+		return loginCount.get();
+	}
+	
+	/**
+	 * Gets the subjects of the messages accepted so far, in the order they were accepted.
+	 * @return A copy of the subjects
+	 */
+	public List<String> getSubjects()
+	{
+		synchronized(subjects)
+		{
+			return new ArrayList<>(subjects);
+		}
+	}
+	
+	/**
+	 * Closes every open connection without a reply, as a mail server that drops a connection would.
+	 */
+	public void dropConnections()
+	{
+		synchronized(openSockets)
+		{
+			for(Socket socket : openSockets)
+			{
+				try
+				{
+					socket.close();
+				}
+				catch(IOException ioEx)
+				{
+					//Being dropped either way
+				}
+			}
+			openSockets.clear();
+		}
+	}
+	
+	/**
+	 * Stops listening and drops every open connection.
+	 */
+	public void close()
+	{
+		try
+		{
+			serverSocket.close();
+		}
+		catch(IOException ioEx)
+		{
+			ioEx.printStackTrace();
+		}
+		dropConnections();
+	}
+	
+	/**
+	 * Accepts connections until closed, serving each on its own thread.
+	 */
+	@Override
+	public void run()
+	{
+		while(!serverSocket.isClosed())
+		{
+			try
+			{
+				final Socket socket = serverSocket.accept();
+				connectionCount.incrementAndGet();
+				synchronized(openSockets)
+				{
+					openSockets.add(socket);
+				}
+				Thread sessionThread = new Thread(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						serve(socket);
+					}
+				}, "SmtpStandInSession");
+				sessionThread.setDaemon(true);
+				sessionThread.start();
+			}
+			catch(IOException ioEx)
+			{
+				//Closed
+			}
+		}
+	}
+	
+	/**
+	 * Serves one connection until the client quits or the connection is dropped.
+	 * @param socket     Socket of the connection
+	 */
+	private void serve(Socket socket)
+	{
+		try
+		{
+			BufferedReader input = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+			OutputStream output = socket.getOutputStream();
+			reply(output, "220 localhost SMTP stand-in");
+			boolean isQuit = false;
+			String line;
+			while(!isQuit && (line = input.readLine()) != null)
+			{
+				String command = line.toUpperCase();
+				if(command.startsWith("EHLO"))
+				{
+					reply(output, "250-localhost\r\n250 AUTH LOGIN PLAIN");
+				}
+				else if(command.startsWith("HELO") || command.startsWith("MAIL FROM") || command.startsWith("RSET") || command.startsWith("NOOP"))
+				{
+					reply(output, "250 OK");
+				}
+				else if(command.startsWith("AUTH"))
+				{
+					login(command, input, output);
+				}
+				else if(command.startsWith("RCPT TO"))
+				{
+					reply(output, command.startsWith("RCPT TO:<REJECT") ? "550 No such user" : "250 OK");
+				}
+				else if(command.startsWith("DATA"))
+				{
+					reply(output, "354 End data with <CR><LF>.<CR><LF>");
+					readMessage(input);
+					reply(output, "250 OK");
+				}
+				else if(command.startsWith("QUIT"))
+				{
+					reply(output, "221 Bye");
+					isQuit = true;
+				}
+				else
+				{
+					reply(output, "502 Not implemented");
+				}
+			}
+		}
+		catch(IOException ioEx)
+		{
+			//Dropped
+		}
+		finally
+		{
+			try
+			{
+				socket.close();
+			}
+			catch(IOException ioEx)
+			{
+				//Closing either way
+			}
+		}
+	}
+	
+	/**
+	 * Takes the client through a login, accepting any user name and password.
+	 * @param command     AUTH command line, upper cased
+	 * @param input       Reader of the connection
+	 * @param output      Stream of the connection
+	 * @throws IOException
+	 */
+	private void login(String command, BufferedReader input, OutputStream output) throws IOException
+	{
+		String[] parts = command.split(" ");
+		if(parts.length > 1 && parts[1].equals("LOGIN"))
+		{
+			if(parts.length < 3)
+			{
+				reply(output, "334 VXNlcm5hbWU6");
+				input.readLine();
+			}
+			reply(output, "334 UGFzc3dvcmQ6");
+			input.readLine();
+		}
+		else if(parts.length < 3)
+		{
+			reply(output, "334 ");
+			input.readLine();
+		}
+		loginCount.incrementAndGet();
+		reply(output, "235 Authenticated");
+	}
+	
+	/**
+	 * Reads a message up to the line with a single dot, keeping its subject.
+	 * @param input     Reader of the connection
+	 * @throws IOException
+	 */
+	private void readMessage(BufferedReader input) throws IOException
+	{
+		String subject = "";
+		String line;
+		while((line = input.readLine()) != null && !line.equals("."))
+		{
+			if(subject.isEmpty() && line.startsWith("Subject: "))
+			{
+				subject = line.substring("Subject: ".length());
+			}
+		}
+		synchronized(subjects)
+		{
+			subjects.add(subject);
+		}
+	}
+	
+	/**
+	 * Writes a reply line.
+	 * @param output     Stream of the connection
+	 * @param reply      Reply without its line break
+	 * @throws IOException
+	 */
+	private void reply(OutputStream output, String reply) throws IOException
+	{
+		output.write((reply + "\r\n").getBytes(StandardCharsets.US_ASCII));
+		output.flush();
+	}
+}
@@ -0,0 +1,116 @@
+package org.connectionmonitor.ping;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Checks BatchPingProber against test/fake-fping.sh, a stand-in for fping that answers by the last number of each
+ * address. Checks that every site in a batch is probed by one run of the command with each address given once, that
+ * the output is split back into the right PingResponse for each site, that sites missing from the output are
+ * unreachable and that a command that hangs is destroyed at the deadline with its sites counted as timed out. Exits
+ * with 1 if any check fails.
+ * 
+ * Run with: ./ConnectionMonitor.sh check BatchPingProberCheck
+ * @author Cory Ma
+ */
+public class BatchPingProberCheck
+{
+	private final static String FAKE_COMMAND = "sh test/fake-fping.sh ";
+	private final static int HANG_TIMEOUT_MS = 500;
+	
+	private static boolean isPassing = true;
+	
+	/**
+	 * Runs the checks.
+	 * @param args     Not used
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException
+	{
+		File runLog = File.createTempFile("fake-fping", ".log");
+		DnsCache dnsCache = new DnsCache();
+		dnsCache.setTTL(0);
+		BatchPingProber batchProber = new BatchPingProber(dnsCache);
+		batchProber.setProbeCommand(FAKE_COMMAND + runLog.getPath());
+		try
+		{
+			PingSite aliveSite = new PingSite("alive", "10.0.0.1", 5, 1, 3);
+			PingSite sharedSite = new PingSite("shared", "10.0.0.1", 5, 1, 3);
+			PingSite unreachableSite = new PingSite("unreachable", "10.0.0.2", 5, 1, 3);
+			PingSite missingSite = new PingSite("missing", "10.0.0.3", 5, 1, 3);
+			PingSite otherSite = new PingSite("other", "192.0.2.4", 5, 1, 3);
+			List<PingSite> pingSites = new ArrayList<>();
+			pingSites.add(aliveSite);
+			pingSites.add(sharedSite);
+			pingSites.add(unreachableSite);
+			pingSites.add(missingSite);
+			pingSites.add(otherSite);
+			
+			HashMap<PingSite, PingResponse> siteResponses = batchProber.probeBatch(pingSites);
+			List<String> runs = Files.readAllLines(runLog.toPath(), StandardCharsets.UTF_8);
+			check("one run for the batch", runs.size() == 1);
+			check("each address given once", runs.size() == 1 && runs.get(0).equals("10.0.0.1 10.0.0.2 10.0.0.3 192.0.2.4"));
+			checkResponse(siteResponses.get(aliveSite), true, "10.0.0.1", 1.5, false);
+			checkResponse(siteResponses.get(sharedSite), true, "10.0.0.1", 1.5, false);
+			checkResponse(siteResponses.get(unreachableSite), false, "10.0.0.2", -1, false);
+			checkResponse(siteResponses.get(missingSite), false, "10.0.0.3", -1, false);
+			checkResponse(siteResponses.get(otherSite), true, "192.0.2.4", 1.5, false);
+			
+			PingSite hangingSite = new PingSite("hanging", "10.0.0.9", 5, 1, 3);
+			hangingSite.setProbeTimeout(HANG_TIMEOUT_MS);
+			aliveSite.setProbeTimeout(HANG_TIMEOUT_MS); //The deadline is set by the longest timeout in the batch
+			pingSites.clear();
+			pingSites.add(aliveSite);
+			pingSites.add(hangingSite);
+			long hangStart = System.currentTimeMillis();
+			siteResponses = batchProber.probeBatch(pingSites);
+			long hangMs = System.currentTimeMillis() - hangStart;
+			check("hanging command destroyed at the deadline (took " + hangMs + " ms)", hangMs < HANG_TIMEOUT_MS + 2000);
+			checkResponse(siteResponses.get(aliveSite), true, "10.0.0.1", 1.5, false);
+			checkResponse(siteResponses.get(hangingSite), false, "10.0.0.9", -1, true);
+		}
+		finally
+		{
+			dnsCache.close();
+			runLog.delete();
+		}
+		
+		System.out.println(isPassing ? "All batch prober checks passed" : "Some batch prober checks failed");
+		if(!isPassing)
+		{
+			System.exit(1);
+		}
+	}
+	
+	/**
+	 * Checks the PingResponse of a site.
+	 * @param pingResponse     PingResponse to check
+	 * @param reachable        Whether the site should be reachable
+	 * @param ipAddress        IP address the response should have
+	 * @param latency          Latency the response should have
+	 * @param timedOut         Whether the probe should have timed out
+	 */
+	private static void checkResponse(PingResponse pingResponse, boolean reachable, String ipAddress, double latency, boolean timedOut)
+	{
+		check(ipAddress + " reachable=" + reachable + " latency=" + latency + " timedOut=" + timedOut, pingResponse != null &&
+				pingResponse.getReachable() == reachable && pingResponse.getIP().equals(ipAddress) &&
+				pingResponse.getLatency() == latency && pingResponse.getTimedOut() == timedOut);
+	}
+	
+	/**
+	 * Prints the result of one check, remembering if it failed.
+	 * @param name         Description of what is checked
+	 * @param isPassed     Whether the check passed
+	 */
+	private static void check(String name, boolean isPassed)
+	{
+		System.out.println((isPassed ? "PASS " : "FAIL ") + name);
+		isPassing &= isPassed;
+	}
+}
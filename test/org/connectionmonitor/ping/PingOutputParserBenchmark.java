@@ -0,0 +1,237 @@
+package org.connectionmonitor.ping;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Checks that PingOutputParser reads the same IP addresses and latencies from iputils and busybox ping output as the
+ * regular expressions it replaced, then times both over the same output and prints the time and bytes allocated per
+ * line of each. Each is warmed up before it is measured so the JIT has compiled it. Exits with 1 if the parser
+ * disagrees with the regular expressions on any line.
+ * 
+ * Run with: ./ConnectionMonitor.sh check PingOutputParserBenchmark [rounds]
+ * @author Cory Ma
+ */
+public class PingOutputParserBenchmark
+{
+	private final static String IPUTILS_OUTPUT =
+			"PING 8.8.8.8 (8.8.8.8) 56(84) bytes of data.\n" +
+			"64 bytes from 8.8.8.8: icmp_seq=1 ttl=118 time=9.52 ms\n" +
+			"64 bytes from 8.8.8.8: icmp_seq=2 ttl=118 time=10.1 ms\n" +
+			"64 bytes from 8.8.8.8: icmp_seq=3 ttl=118 time=123.456 ms\n" +
+			"64 bytes from 8.8.8.8: icmp_seq=4 ttl=118 time=9.87 ms\n" +
+			"\n" +
+			"--- 8.8.8.8 ping statistics ---\n" +
+			"4 packets transmitted, 4 received, 0% packet loss, time 3004ms\n" +
+			"rtt min/avg/max/mdev = 9.520/38.233/123.456/49.122 ms\n";
+	private final static String BUSYBOX_OUTPUT =
+			"PING 1.1.1.1 (1.1.1.1): 56 data bytes\n" +
+			"64 bytes from 1.1.1.1: seq=0 ttl=57 time=4.231 ms\n" +
+			"64 bytes from 1.1.1.1: seq=1 ttl=57 time=4.102 ms\n" +
+			"64 bytes from 1.1.1.1: seq=2 ttl=57 time=5.990 ms\n" +
+			"\n" +
+			"--- 1.1.1.1 ping statistics ---\n" +
+			"3 packets transmitted, 3 packets received, 0% packet loss\n" +
+			"round-trip min/avg/max = 4.102/4.774/5.990 ms\n";
+	
+	private final static int WARMUP_ROUNDS = 20000;
+	private final static int DEFAULT_ROUNDS = 100000;
+	
+	//Keeps the results used so the JIT can't drop the work being timed
+	private static double sink = 0;
+	
+	/**
+	 * Runs the check and the comparison.
+	 * @param args     Optional number of times to parse each output when timing
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		int rounds = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ROUNDS;
+		byte[][] outputs = {IPUTILS_OUTPUT.getBytes(StandardCharsets.US_ASCII), BUSYBOX_OUTPUT.getBytes(StandardCharsets.US_ASCII)};
+		
+		boolean isMatching = checkOutput("iputils", IPUTILS_OUTPUT) & checkOutput("busybox", BUSYBOX_OUTPUT);
+		if(isMatching)
+		{
+			int linesPerRound = countLines(IPUTILS_OUTPUT) + countLines(BUSYBOX_OUTPUT);
+			PingOutputParser outputParser = new PingOutputParser();
+			
+			runRegex(outputs, WARMUP_ROUNDS);
+			long regexAllocated = getAllocatedBytes();
+			long regexStart = System.nanoTime();
+			runRegex(outputs, rounds);
+			long regexNanos = System.nanoTime() - regexStart;
+			regexAllocated = getAllocatedBytes() - regexAllocated;
+			
+			runParser(outputParser, outputs, WARMUP_ROUNDS);
+			long parserAllocated = getAllocatedBytes();
+			long parserStart = System.nanoTime();
+			runParser(outputParser, outputs, rounds);
+			long parserNanos = System.nanoTime() - parserStart;
+			parserAllocated = getAllocatedBytes() - parserAllocated;
+			
+			long totalLines = (long)rounds * linesPerRound;
+			System.out.println("Parsed " + totalLines + " lines each way");
+			printResult("Regex ", regexNanos, regexAllocated, totalLines);
+			printResult("Parser", parserNanos, parserAllocated, totalLines);
+			System.out.println(String.format("Parser is %.1fx faster", (double)regexNanos / parserNanos));
+		}
+		else
+		{
+			System.exit(1);
+		}
+	}
+	
+	/**
+	 * Compares the parser with the regular expressions on each line of some output, printing the lines they disagree on.
+	 * Lines where the regular expressions find nothing aren't compared, since the parser also reads whole millisecond
+	 * times that they missed.
+	 * @param name       Name of the output format to print
+	 * @param output     Ping output to check
+	 * @return true if they agree on every line, false if not
+	 */
+	private static boolean checkOutput(String name, String output)
+	{
+		boolean isMatching = true;
+		PingOutputParser outputParser = new PingOutputParser();
+		for(String line : output.split("\n"))
+		{
+			byte[] lineBytes = line.getBytes(StandardCharsets.US_ASCII);
+			outputParser.parseLine(lineBytes, 0, lineBytes.length);
+			String regexIP = parsePingIP(line);
+			double regexLatency = parsePingLatency(line);
+			if((!regexIP.isEmpty() && !regexIP.equals(outputParser.getIP())) || (regexLatency != -1 && regexLatency != outputParser.getLatency()))
+			{
+				System.out.println(name + " mismatch on \"" + line + "\": regex " + regexIP + " " + regexLatency +
+						", parser " + outputParser.getIP() + " " + outputParser.getLatency());
+				isMatching = false;
+			}
+		}
+		if(isMatching)
+		{
+			System.out.println(name + " output parsed the same both ways");
+		}
+		return isMatching;
+	}
+	
+	/**
+	 * Reads each output line by line with a BufferedReader and the regular expressions, as ping output used to be read.
+	 * @param outputs     Ping outputs to read
+	 * @param rounds      Number of times to read each output
+	 * @throws IOException
+	 */
+	private static void runRegex(byte[][] outputs, int rounds) throws IOException
+	{
+		for(int i = 0; i < rounds; i++)
+		{
+			for(byte[] output : outputs)
+			{
+				BufferedReader stdInput = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(output)));
+				String processInput = null;
+				while((processInput = stdInput.readLine()) != null)
+				{
+					sink += parsePingIP(processInput).length() + parsePingLatency(processInput);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Reads each output line by line with a PingOutputParser, as ping output is read now.
+	 * @param outputParser     Parser to read with
+	 * @param outputs          Ping outputs to read
+	 * @param rounds           Number of times to read each output
+	 * @throws IOException
+	 */
+	private static void runParser(PingOutputParser outputParser, byte[][] outputs, int rounds) throws IOException
+	{
+		for(int i = 0; i < rounds; i++)
+		{
+			for(byte[] output : outputs)
+			{
+				outputParser.reset(new ByteArrayInputStream(output));
+				while(outputParser.nextLine())
+				{
+					sink += outputParser.getIP().length() + outputParser.getLatency();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Prints the time and allocation per line of one way of parsing.
+	 * @param name           Name of the way of parsing
+	 * @param nanos          Nanoseconds taken in total
+	 * @param allocated      Bytes allocated in total, -1 if unknown
+	 * @param totalLines     Number of lines parsed
+	 */
+	private static void printResult(String name, long nanos, long allocated, long totalLines)
+	{
+		String allocatedText = allocated < 0 ? "unknown" : String.format("%.1f", (double)allocated / totalLines);
+		System.out.println(String.format("%s: %.1f ns/line, %s bytes/line allocated", name, (double)nanos / totalLines, allocatedText));
+	}
+	
+	/**
+	 * Gets the number of bytes the current thread has allocated, if the JVM keeps count.
+	 * @return Number of bytes allocated so far, -1 if unknown
+	 */
+	private static long getAllocatedBytes()
+	{
+		long allocated = -1;
+		if(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)
+		{
+			allocated = ((com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return allocated;
+	}
+	
+	/**
+	 * Counts the lines of some output.
+	 * @param output     Output to count
+	 * @return The number of lines
+	 */
+	private static int countLines(String output)
+	{
+		return output.split("\n", -1).length - 1;
+	}
+	
+	/**
+	 * Parses the IP address from output line from the ping, as it was before PingOutputParser.
+	 * @param pingString     Output line from the ping
+	 * @return The IP address if successful, otherwise an empty String
+	 */
+	private static String parsePingIP(String pingString)
+	{
+		String pingIP = "";
+		Pattern ipPattern = Pattern.compile(".*\\b(\\d{1,3}\\.\\d{1,3}\\.\\d{1,3}\\.\\d{1,3})\\b.*");
+		Matcher ipMatcher = ipPattern.matcher(pingString);
+		if(ipMatcher.find())
+		{
+			pingIP = ipMatcher.group(1);
+		}
+		return pingIP;
+	}
+	
+	/**
+	 * Parses the latency from an output line from the ping, as it was before PingOutputParser.
+	 * @param pingString     Output line from the ping
+	 * @return The latency if successful, otherwise -1
+	 */
+	private static double parsePingLatency(String pingString)
+	{
+		double pingLatency = -1;
+		Pattern latencyPattern = Pattern.compile(".*time=(\\d{1,6}.\\d{1,3}) ms");
+		Matcher latencyMatcher = latencyPattern.matcher(pingString);
+		if(latencyMatcher.find())
+		{
+			pingLatency = Double.parseDouble(latencyMatcher.group(1));
+		}
+		return pingLatency;
+	}
+}